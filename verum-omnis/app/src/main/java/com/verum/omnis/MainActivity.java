@@ -1,9 +1,12 @@
 package com.verum.omnis;
 
+import android.content.SharedPreferences;
 import android.net.Uri;
+import android.os.Build;
 import android.os.Bundle;
 import android.provider.OpenableColumns;
 import android.widget.Button;
+import android.widget.EditText;
 import android.widget.ImageView;
 
 import androidx.activity.result.ActivityResultLauncher;
@@ -12,6 +15,7 @@ import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 
 import com.verum.omnis.core.AnalysisEngine;
+import com.verum.omnis.core.Metrics;
 import com.verum.omnis.core.PDFSealer;
 import com.verum.omnis.core.MediaForensics;
 import com.verum.omnis.ai.RnDMeshExchange;
@@ -24,6 +28,8 @@ import java.io.FileOutputStream;
 import java.io.InputStream;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * MainActivity – Select File / Verify / Generate PDF
@@ -31,7 +37,14 @@ import java.util.Map;
  */
 public class MainActivity extends AppCompatActivity {
 
+    private static final String PREFS = "verum_main";
+    private static final String PREF_CASE_ID = "case_id";
+
     private File selectedFile;
+    private EditText caseIdInput;
+    private String lastCaseId;
+    private AnalysisEngine.ForensicReport lastReport;
+    private final ExecutorService worker = Executors.newSingleThreadExecutor();
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -42,12 +55,15 @@ public class MainActivity extends AppCompatActivity {
         Button verifyBtn = findViewById(R.id.verifyBtn);
         Button pdfBtn = findViewById(R.id.pdfBtn);
         ImageView logo = findViewById(R.id.logo);
+        caseIdInput = findViewById(R.id.caseIdInput);
+        caseIdInput.setText(getSharedPreferences(PREFS, MODE_PRIVATE).getString(PREF_CASE_ID, ""));
 
         // File picker
         ActivityResultLauncher<String[]> filePicker =
                 registerForActivityResult(new ActivityResultContracts.OpenDocument(), uri -> {
                     if (uri != null) {
                         selectedFile = copyUriToCache(uri);
+                        lastReport = null;
                         showDialog("File Selected", "Selected: " + getFileName(uri));
                     }
                 });
@@ -55,93 +71,42 @@ public class MainActivity extends AppCompatActivity {
         selectBtn.setOnClickListener(v ->
                 filePicker.launch(new String[]{"*/*"}));
 
-        // Verify (now includes integrity + forensic in one report)
+        // Verify (now includes integrity + forensic in one report).  Analysis waits on the
+        // constitution gate and hashes the file, so it runs on the worker, never the main thread.
         verifyBtn.setOnClickListener(v -> {
-            try {
-                StringBuilder sb = new StringBuilder();
-
-                // === System Integrity Section ===
-                Map<String, String> results = IntegrityChecker.runChecks(this);
-                sb.append("=== System Integrity ===\n");
-                for (Map.Entry<String, String> e : results.entrySet()) {
-                    sb.append(e.getKey()).append(" → ").append(e.getValue()).append("\n");
-                }
-                sb.append("\n");
-
-                if (selectedFile == null) {
-                    sb.append("No file selected. Forensic analysis skipped.\n");
-                    showDialog("Unified Report", sb.toString());
-                    return;
-                }
-
-                // === Forensic Analysis Section ===
-                sb.append("=== Forensic Analysis ===\n");
-
-                AnalysisEngine.ForensicReport report =
-                        AnalysisEngine.analyze(this, selectedFile);
-
-                sb.append("Hash: ").append(report.evidenceHash)
-                        .append("\nRisk Score: ").append(report.riskScore)
-                        .append("\nJurisdiction: ").append(report.jurisdiction)
-                        .append("\nBlockchain: ").append(report.blockchainAnchor);
-
-                if (report.topLiabilities != null) {
-                    sb.append("\nTop Liabilities:");
-                    for (String liab : report.topLiabilities) {
-                        sb.append("\n• ").append(liab);
-                    }
-                }
-                if (report.behavioralProfile != null) {
-                    sb.append("\nBehavioral Profile:\n")
-                            .append(report.behavioralProfile.toString(2));
+            final File file = selectedFile;
+            final String caseId = caseId();
+            verifyBtn.setEnabled(false);
+            worker.execute(() -> {
+                String title = "Unified Report", text;
+                AnalysisEngine.ForensicReport report = null;
+                try {
+                    StringBuilder sb = new StringBuilder();
+                    report = verify(file, caseId, sb);
+                    text = sb.toString();
+                } catch (Exception e) {
+                    title = "Verify Failed";
+                    text = e.getMessage();
                 }
-                if (report.ledgerEntry != null) {
-                    sb.append("\nLedger Entry:");
-                    sb.append("\n• Case ID: ").append(report.ledgerEntry.caseId);
-                    sb.append("\n• Party: ").append(report.ledgerEntry.partyName);
-                    sb.append("\n• Amount: ").append(report.ledgerEntry.fraudAmount)
-                            .append(" ").append(report.ledgerEntry.currency);
-                    sb.append("\n• Amount (USD): ").append(report.ledgerEntry.fraudAmountUsd);
-                    sb.append("\n• Jurisdiction: ").append(report.ledgerEntry.partyJurisdiction);
-                    if (report.ledgerEntry.sealedPdf != null) {
-                        sb.append("\n• Sealed PDF: ").append(report.ledgerEntry.sealedPdf.getAbsolutePath());
-                    }
-                }
-
-                // MediaForensics metadata
-                HashMap<String, String> meta = MediaForensics.inspectFile(selectedFile);
-                if (meta != null && !meta.isEmpty()) {
-                    sb.append("\n\nFile Metadata:");
-                    for (Map.Entry<String, String> entry : meta.entrySet()) {
-                        sb.append("\n• ").append(entry.getKey())
-                                .append(": ").append(entry.getValue());
+                final String dialogTitle = title, dialogText = text;
+                final AnalysisEngine.ForensicReport done = report;
+                runOnUiThread(() -> {
+                    if (done != null && file == selectedFile) {
+                        lastCaseId = caseId;
+                        lastReport = done;
                     }
+                    verifyBtn.setEnabled(true);
+                    if (!isFinishing()) showDialog(dialogTitle, dialogText);
+                });
+                if (done == null) return;
+                try {
+                    exportAfterVerify(file, done);
+                } catch (Exception e) {
+                    runOnUiThread(() -> {
+                        if (!isFinishing()) showDialog("Verify Failed", e.getMessage());
+                    });
                 }
-
-                // Show unified report
-                showDialog("Unified Report", sb.toString());
-
-                // === Mesh export (still runs silently in background) ===
-                RnDController.Feedback fb =
-                        RnDController.synthesize(this,
-                                RulesEngine.analyzeFile(this, selectedFile));
-
-                File meshFile = RnDMeshExchange.exportPacketToFile(this, fb);
-                System.out.println("Mesh packet written: " + meshFile.getAbsolutePath());
-
-                RnDMeshExchange.exportPacketByEmail(
-                        this,
-                        fb,
-                        report,
-                        "smtp.yourprovider.com", 587,
-                        "automated_system@freethehustle.com",
-                        "your_smtp_password",
-                        "liam@example.com"
-                );
-
-            } catch (Exception e) {
-                showDialog("Verify Failed", e.getMessage());
-            }
+            });
         });
 
         // Generate PDF
@@ -154,6 +119,9 @@ public class MainActivity extends AppCompatActivity {
                 req.summary = (selectedFile != null)
                         ? "Sealed report for: " + selectedFile.getName()
                         : "No input file attached.";
+                if (selectedFile != null && lastReport != null && lastCaseId != null) {
+                    req.summary += "\n" + caseSummary(lastCaseId, lastReport);
+                }
                 req.includeQr = true;
                 req.includeHash = true;
 
@@ -166,6 +134,153 @@ public class MainActivity extends AppCompatActivity {
         });
     }
 
+    @Override
+    protected void onDestroy() {
+        worker.shutdown();
+        super.onDestroy();
+    }
+
+    /**
+     * Build the unified integrity + forensic report for {@code file} into {@code sb}.
+     * Runs on the worker; returns null when no file was selected.
+     */
+    private AnalysisEngine.ForensicReport verify(File file, String caseId, StringBuilder sb) throws Exception {
+        // === System Integrity Section ===
+        Map<String, String> results = IntegrityChecker.runChecks(this);
+        sb.append("=== System Integrity ===\n");
+        for (Map.Entry<String, String> e : results.entrySet()) {
+            sb.append(e.getKey()).append(" → ").append(e.getValue()).append("\n");
+        }
+        sb.append("\n");
+
+        if (file == null) {
+            sb.append("No file selected. Forensic analysis skipped.\n");
+            return null;
+        }
+
+        // === Forensic Analysis Section ===
+        sb.append("=== Forensic Analysis ===\n");
+
+        AnalysisEngine.ForensicReport report =
+                AnalysisEngine.analyze(this, file, caseId);
+
+        sb.append("Hash: ").append(report.evidenceHash)
+                .append("\nRisk Score: ").append(report.riskScore)
+                .append("\nJurisdiction: ").append(report.jurisdiction)
+                .append("\nBlockchain: ").append(report.blockchainAnchor);
+
+        if (report.topLiabilities != null) {
+            sb.append("\nTop Liabilities:");
+            for (String liab : report.topLiabilities) {
+                sb.append("\n• ").append(liab);
+            }
+        }
+        if (report.behavioralProfile != null) {
+            sb.append("\nBehavioral Profile:\n")
+                    .append(report.behavioralProfile.toString(2));
+        }
+        if (report.ledgerEntry != null) {
+            sb.append("\nLedger Entry:");
+            sb.append("\n• Case ID: ").append(report.ledgerEntry.caseId);
+            sb.append("\n• Party: ").append(report.ledgerEntry.partyName);
+            sb.append("\n• Amount: ").append(report.ledgerEntry.fraudAmount)
+                    .append(" ").append(report.ledgerEntry.currency);
+            sb.append("\n• Amount (USD): ").append(report.ledgerEntry.fraudAmountUsd);
+            sb.append("\n• Jurisdiction: ").append(report.ledgerEntry.partyJurisdiction);
+            if (report.ledgerEntry.sealedPdf != null) {
+                sb.append("\n• Sealed PDF: ").append(report.ledgerEntry.sealedPdf.getAbsolutePath());
+            } else if (report.ledgerEntry.sealFuture != null) {
+                sb.append("\n• Sealed PDF: queued");
+            }
+        }
+
+        // === Case Cross-Checks (only with a case id) ===
+        if (caseId != null) {
+            sb.append("\n\n=== Case ").append(caseId).append(" ===");
+            appendFindings(sb, "Near-Duplicate Images", report.nearDuplicates);
+            appendFindings(sb, "Timeline Findings", report.timelineFindings);
+            appendFindings(sb, "Statement Drift", report.microDrift);
+            if (report.caseProfile != null) {
+                sb.append("\nCase Profile:\n").append(report.caseProfile.toString(2));
+            }
+        }
+
+        // MediaForensics metadata
+        HashMap<String, String> meta = MediaForensics.inspectFile(file);
+        if (meta != null && !meta.isEmpty()) {
+            sb.append("\n\nFile Metadata:");
+            for (Map.Entry<String, String> entry : meta.entrySet()) {
+                sb.append("\n• ").append(entry.getKey())
+                        .append(": ").append(entry.getValue());
+            }
+        }
+
+        return report;
+    }
+
+    /** Metrics snapshot and mesh export after a report; runs on the worker. */
+    private void exportAfterVerify(File file, AnalysisEngine.ForensicReport report) throws Exception {
+        // Timing snapshot (verum_metrics.json / .prom in app files dir)
+        try {
+            Metrics.exportTo(getFilesDir(), Build.MODEL, "5.2.6/" + Build.VERSION.RELEASE);
+        } catch (Exception ignore) {
+            // metrics are diagnostic only
+        }
+
+        // === Mesh export (still runs silently in background) ===
+        RnDController.Feedback fb =
+                RnDController.synthesize(this,
+                        RulesEngine.analyzeFile(this, file));
+
+        File meshFile = RnDMeshExchange.exportPacketToFile(this, fb);
+        System.out.println("Mesh packet written: " + meshFile.getAbsolutePath());
+
+        RnDMeshExchange.exportPacketByEmail(
+                this,
+                fb,
+                report,
+                "smtp.yourprovider.com", 587,
+                "automated_system@freethehustle.com",
+                "your_smtp_password",
+                "liam@example.com"
+        );
+    }
+
+    /** Case id from the input (null when blank); remembered so later files join the same case. */
+    private String caseId() {
+        String id = caseIdInput.getText().toString().trim();
+        SharedPreferences.Editor prefs = getSharedPreferences(PREFS, MODE_PRIVATE).edit();
+        prefs.putString(PREF_CASE_ID, id).apply();
+        return id.isEmpty() ? null : id;
+    }
+
+    private static void appendFindings(StringBuilder sb, String title, String[] findings) {
+        sb.append("\n").append(title).append(":");
+        if (findings == null || findings.length == 0) {
+            sb.append(" none");
+            return;
+        }
+        for (String f : findings) {
+            sb.append("\n• ").append(f);
+        }
+    }
+
+    /** One-paragraph case cross-check summary for the sealed PDF. */
+    private static String caseSummary(String caseId, AnalysisEngine.ForensicReport report) {
+        StringBuilder sb = new StringBuilder("Case ").append(caseId).append(": ")
+                .append(count(report.nearDuplicates)).append(" near-duplicate image(s), ")
+                .append(count(report.timelineFindings)).append(" timeline finding(s), ")
+                .append(count(report.microDrift)).append(" statement drift(s).");
+        if (report.caseProfile != null) {
+            sb.append(" Exhibits in case: ").append(report.caseProfile.optLong("exhibits", 0)).append(".");
+        }
+        return sb.toString();
+    }
+
+    private static int count(String[] a) {
+        return a == null ? 0 : a.length;
+    }
+
     private File copyUriToCache(Uri uri) {
         try {
             String name = getFileName(uri);
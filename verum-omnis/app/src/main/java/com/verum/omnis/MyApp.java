@@ -1,15 +1,27 @@
 package com.verum.omnis;
 
 import android.app.Application;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.verum.omnis.core.Metrics;
 import com.verum.omnis.security.ConstitutionGate;
 
 public class MyApp extends Application {
+    private static final int M_ON_CREATE = Metrics.stage("app.on_create");
+
     @Override
     public void onCreate() {
+        long t0 = Metrics.begin();
         super.onCreate();
-        ConstitutionGate.VerificationResult res = ConstitutionGate.verifyAll(this);
-        if (!res.ok) {
-            throw new IllegalStateException("HARD_STOP: INTEGRITY_BREACH => " + res.details.toString());
-        }
+        // Verify off the main thread; AnalysisEngine blocks on the gate before any analysis runs.
+        ConstitutionGate.start(this).thenAccept(res -> {
+            if (!res.ok) {
+                new Handler(Looper.getMainLooper()).post(() -> {
+                    throw new IllegalStateException("HARD_STOP: INTEGRITY_BREACH => " + res.details.toString());
+                });
+            }
+        });
+        Metrics.end(M_ON_CREATE, t0);
     }
 }
\ No newline at end of file
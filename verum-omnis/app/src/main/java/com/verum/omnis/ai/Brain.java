@@ -0,0 +1,45 @@
+package com.verum.omnis.ai;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Brain SPI – one member of the nine-brain consensus (see brains.json)
+ * - Implementations must be thread-safe: brains run concurrently, each on its own worker
+ * - Must respond to interruption; the orchestrator cancels a brain once its budget is spent
+ * - Return {@link Vote#abstain} when the evidence is outside the brain's remit, rather than CLEAR
+ */
+public interface Brain {
+
+    enum Verdict { FLAG, CLEAR, ABSTAIN }
+
+    final class Vote {
+        public final Verdict verdict;
+        public final double score;          // 0..1, how strongly the evidence supports a finding
+        public final List<String> findings;
+
+        private Vote(Verdict verdict, double score, List<String> findings) {
+            this.verdict = verdict;
+            this.score = Math.max(0, Math.min(1, score));
+            this.findings = findings;
+        }
+
+        public static Vote flag(double score, String... findings) {
+            return new Vote(Verdict.FLAG, score, Collections.unmodifiableList(Arrays.asList(findings)));
+        }
+
+        public static Vote clear(double score, String... findings) {
+            return new Vote(Verdict.CLEAR, score, Collections.unmodifiableList(Arrays.asList(findings)));
+        }
+
+        public static Vote abstain(String reason) {
+            return new Vote(Verdict.ABSTAIN, 0, Collections.singletonList(reason));
+        }
+    }
+
+    /** Brain id as used in brains.json ("B1".."B9"). */
+    String id();
+
+    Vote evaluate(Evidence evidence) throws Exception;
+}
@@ -0,0 +1,362 @@
+package com.verum.omnis.ai;
+
+import android.content.Context;
+
+import com.verum.omnis.core.Metrics;
+import com.verum.omnis.core.RulesProvider;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Nine-brain orchestrator
+ * - Brain definitions, quorum_min and tie_breaker come from brains.json; if the asset is
+ *   unusable (missing, TAMPERED, unparseable) the built-in copy of the same table is used
+ *   and the consensus records which source it ran on
+ * - Every registered brain runs concurrently; each has its own budget measured from the
+ *   common start, and one that overruns is cancelled and recorded as TIMEOUT, so a slow
+ *   brain never holds the verdict past its budget
+ * - Brains run on a pool of one thread per configured brain; cancelling one interrupts it,
+ *   and {@link Evidence} never caches an input computed by an interrupted thread
+ * - Verdict: majority of FLAG vs CLEAR among voting brains that answered in time; fewer
+ *   than quorum_min votes, or a tie, resolves to the tie-breaker action
+ */
+public final class BrainOrchestrator {
+
+    public static final long DEFAULT_BUDGET_MS = 3000;
+    public static final String REQUEST_MORE_EVIDENCE = "REQUEST_MORE_EVIDENCE";
+    private static final long IDLE_SECONDS = 30;
+
+    private static final int M_CONSENSUS = Metrics.stage("brains.consensus");
+    private static final int C_TIMEOUTS = Metrics.counter("brains_timeouts");
+
+    public enum Status { OK, TIMEOUT, ERROR, UNAVAILABLE }
+
+    public static class Spec {
+        public String id, name, role;
+        public boolean voting;
+        public String[] functions;
+        public long budgetMs = DEFAULT_BUDGET_MS;
+    }
+
+    public static class Config {
+        public String version;
+        public int quorumMin;
+        public String tieBreaker;       // "<brain>_<ACTION>", e.g. B1_REQUEST_MORE_EVIDENCE
+        public List<Spec> specs = new ArrayList<>();
+        public String source;           // asset | asset_lenient | builtin
+        public String note;
+    }
+
+    public static class BrainResult {
+        public String id, name;
+        public boolean voting;
+        public Status status;
+        public Brain.Verdict verdict = Brain.Verdict.ABSTAIN;
+        public double score;
+        public long latencyMs;
+        public List<String> findings = Collections.emptyList();
+    }
+
+    public static class Consensus {
+        public String verdict;          // FLAG | CLEAR | tie-breaker action
+        public double score;            // mean score of the voting brains that voted
+        public int flags, clears, abstained, timedOut;
+        public int quorumMin;
+        public boolean quorumMet, tieBroken;
+        public String decidedBy;        // "majority" or the tie-breaker brain
+        public String configSource;
+        public long totalMs;
+        public List<BrainResult> results = new ArrayList<>();
+
+        public JSONObject toJson() {
+            JSONObject o = new JSONObject();
+            try {
+                o.put("consensus", verdict);
+                o.put("score", score);
+                o.put("flags", flags);
+                o.put("clears", clears);
+                o.put("abstained", abstained);
+                o.put("timed_out", timedOut);
+                o.put("quorum_min", quorumMin);
+                o.put("quorum_met", quorumMet);
+                o.put("tie_broken", tieBroken);
+                o.put("decided_by", decidedBy);
+                o.put("config_source", configSource);
+                o.put("total_ms", totalMs);
+                JSONArray arr = new JSONArray();
+                for (BrainResult r : results) {
+                    JSONObject b = new JSONObject();
+                    b.put("id", r.id);
+                    b.put("name", r.name);
+                    b.put("voting", r.voting);
+                    b.put("status", r.status.name());
+                    b.put("verdict", r.verdict.name());
+                    b.put("score", r.score);
+                    b.put("latency_ms", r.latencyMs);
+                    JSONArray f = new JSONArray();
+                    for (String s : r.findings) f.put(s);
+                    b.put("findings", f);
+                    arr.put(b);
+                }
+                o.put("brains", arr);
+            } catch (Exception ignored) {
+                // JSONObject.put only throws on non-finite numbers
+            }
+            return o;
+        }
+    }
+
+    private static BrainOrchestrator instance;
+
+    private final Config config;
+    private final Map<String, Brain> brains = new LinkedHashMap<>();
+    private final ExecutorService pool;
+
+    BrainOrchestrator(Config config) {
+        this.config = config;
+        AtomicInteger n = new AtomicInteger();
+        // one thread per configured brain, enough for an evaluation's brains to run at once;
+        // brains that ignore cancellation make later ones queue (and time out), not add threads
+        int threads = Math.max(1, config.specs.size());
+        ThreadPoolExecutor tpe = new ThreadPoolExecutor(threads, threads, IDLE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+                    Thread t = new Thread(r, "verum-brain-" + n.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        tpe.allowCoreThreadTimeOut(true);
+        this.pool = tpe;
+        for (Brain b : CoreBrains.all()) register(b);
+    }
+
+    public static synchronized BrainOrchestrator shared(Context ctx) {
+        if (instance == null) instance = new BrainOrchestrator(loadConfig(ctx));
+        return instance;
+    }
+
+    public Config config() {
+        return config;
+    }
+
+    /** Install or replace the implementation for a brain id. */
+    public synchronized void register(Brain brain) {
+        brains.put(brain.id(), brain);
+    }
+
+    public Consensus evaluate(Evidence ev) {
+        long t0 = Metrics.begin();
+        long start = System.nanoTime();
+        List<Spec> specs = config.specs;
+        List<Future<Brain.Vote>> futures = new ArrayList<>(specs.size());
+        Consensus c = new Consensus();
+        c.quorumMin = config.quorumMin;
+        c.configSource = config.source;
+
+        long[] doneAt = new long[specs.size()];   // written by each task before it returns
+        synchronized (this) {
+            for (int i = 0; i < specs.size(); i++) {
+                Brain b = brains.get(specs.get(i).id);
+                int slot = i;
+                futures.add(b == null ? null : pool.submit(() -> {
+                    try {
+                        return b.evaluate(ev);
+                    } finally {
+                        doneAt[slot] = System.nanoTime();
+                    }
+                }));
+            }
+        }
+
+        double scoreSum = 0;
+        for (int i = 0; i < specs.size(); i++) {
+            Spec s = specs.get(i);
+            Future<Brain.Vote> f = futures.get(i);
+            BrainResult r = new BrainResult();
+            r.id = s.id;
+            r.name = s.name;
+            r.voting = s.voting;
+            if (f == null) {
+                r.status = Status.UNAVAILABLE;
+                r.findings = Collections.singletonList("no implementation registered");
+            } else {
+                long remainingNs = start + TimeUnit.MILLISECONDS.toNanos(s.budgetMs) - System.nanoTime();
+                try {
+                    Brain.Vote v = f.get(Math.max(0, remainingNs), TimeUnit.NANOSECONDS);
+                    r.status = Status.OK;
+                    r.verdict = v.verdict;
+                    r.score = v.score;
+                    r.findings = v.findings;
+                } catch (TimeoutException e) {
+                    f.cancel(true);
+                    r.status = Status.TIMEOUT;
+                    r.findings = Collections.singletonList("exceeded " + s.budgetMs + " ms budget");
+                    Metrics.inc(C_TIMEOUTS);
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    r.status = Status.ERROR;
+                    r.findings = Collections.singletonList(cause.getClass().getSimpleName() + ": " + cause.getMessage());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    f.cancel(true);
+                    r.status = Status.TIMEOUT;
+                    r.findings = Collections.singletonList("interrupted");
+                }
+            }
+            // time to answer, or until we gave up waiting
+            long end = r.status == Status.OK || r.status == Status.ERROR ? doneAt[i] : System.nanoTime();
+            r.latencyMs = f == null ? 0 : TimeUnit.NANOSECONDS.toMillis(end - start);
+            c.results.add(r);
+            if (!s.voting) continue;
+            if (r.status == Status.TIMEOUT) c.timedOut++;
+            if (r.verdict == Brain.Verdict.FLAG) c.flags++;
+            else if (r.verdict == Brain.Verdict.CLEAR) c.clears++;
+            else c.abstained++;
+            if (r.verdict != Brain.Verdict.ABSTAIN) scoreSum += r.score;
+        }
+
+        int votes = c.flags + c.clears;
+        c.score = votes == 0 ? 0 : scoreSum / votes;
+        c.quorumMet = votes >= config.quorumMin;
+        if (c.quorumMet && c.flags != c.clears) {
+            c.verdict = c.flags > c.clears ? Brain.Verdict.FLAG.name() : Brain.Verdict.CLEAR.name();
+            c.decidedBy = "majority";
+        } else {
+            int us = config.tieBreaker.indexOf('_');
+            c.decidedBy = us > 0 ? config.tieBreaker.substring(0, us) : config.tieBreaker;
+            c.verdict = us > 0 ? config.tieBreaker.substring(us + 1) : REQUEST_MORE_EVIDENCE;
+            c.tieBroken = true;
+        }
+        c.totalMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        Metrics.end(M_CONSENSUS, t0);
+        return c;
+    }
+
+    // === Configuration ===
+
+    static Config loadConfig(Context ctx) {
+        String text;
+        try {
+            text = RulesProvider.getBrains(ctx);
+        } catch (Exception e) {
+            Config c = builtin();
+            c.note = "brains.json unusable: " + e.getMessage();
+            return c;
+        }
+        try {
+            Config c = parse(new JSONObject(text));
+            c.source = "asset";
+            return c;
+        } catch (Exception strict) {
+            try {
+                Config c = parse(new JSONObject(stripTrailingCommas(text)));
+                c.source = "asset_lenient";
+                c.note = "brains.json has trailing commas";
+                return c;
+            } catch (Exception e) {
+                Config c = builtin();
+                c.note = "brains.json unparseable: " + e.getMessage();
+                return c;
+            }
+        }
+    }
+
+    static Config parse(JSONObject o) throws Exception {
+        Config c = new Config();
+        c.version = o.optString("version", "");
+        c.quorumMin = Math.max(1, o.optInt("quorum_min", 3));
+        c.tieBreaker = o.optString("tie_breaker", "B1_" + REQUEST_MORE_EVIDENCE);
+        JSONArray arr = o.getJSONArray("brains");
+        for (int i = 0; i < arr.length(); i++) {
+            JSONObject b = arr.getJSONObject(i);
+            Spec s = new Spec();
+            s.id = b.getString("id");
+            s.name = b.optString("name", s.id);
+            s.role = b.optString("role", null);
+            s.voting = b.optBoolean("voting", true);
+            s.budgetMs = b.optLong("budget_ms", DEFAULT_BUDGET_MS);
+            JSONArray fn = b.optJSONArray("functions");
+            s.functions = new String[fn == null ? 0 : fn.length()];
+            for (int k = 0; k < s.functions.length; k++) s.functions[k] = fn.optString(k);
+            c.specs.add(s);
+        }
+        if (c.specs.isEmpty()) throw new IllegalArgumentException("no brains defined");
+        return c;
+    }
+
+    /** The brains.json table as shipped (v1), used when the asset cannot be trusted. */
+    static Config builtin() {
+        Config c = new Config();
+        c.version = "9-brain-logic-v1";
+        c.quorumMin = 3;
+        c.tieBreaker = "B1_" + REQUEST_MORE_EVIDENCE;
+        c.source = "builtin";
+        String[][] table = {
+                {"B1", "Contradiction Engine"}, {"B2", "Document & Image Forensics"},
+                {"B3", "Comms & Channel Integrity"}, {"B4", "Behavioral Linguistics"},
+                {"B5", "Timeline & Geolocation"}, {"B6", "Financial Patterns"},
+                {"B7", "Legal & Procedural Compliance"}, {"B8", "Voice/Audio Forensics"},
+                {"B9", "Research & Development"}};
+        for (String[] row : table) {
+            Spec s = new Spec();
+            s.id = row[0];
+            s.name = row[1];
+            s.voting = !"B9".equals(row[0]);
+            s.functions = new String[0];
+            c.specs.add(s);
+        }
+        return c;
+    }
+
+    /** Drop commas that directly precede '}' or ']' outside string literals. */
+    static String stripTrailingCommas(String s) {
+        StringBuilder out = new StringBuilder(s.length());
+        boolean inString = false;
+        int pendingComma = -1;
+        for (int i = 0; i < s.length(); i++) {
+            char ch = s.charAt(i);
+            if (inString) {
+                out.append(ch);
+                if (ch == '\\' && i + 1 < s.length()) out.append(s.charAt(++i));
+                else if (ch == '"') inString = false;
+                continue;
+            }
+            if (ch == ',') {
+                if (pendingComma >= 0) out.insert(pendingComma, ',');   // ",," is not ours to fix
+                pendingComma = out.length();
+                continue;
+            }
+            if ((ch == '}' || ch == ']') && pendingComma >= 0) {
+                pendingComma = -1;
+            } else if (!Character.isWhitespace(ch) && pendingComma >= 0) {
+                out.insert(pendingComma, ',');
+                pendingComma = -1;
+            }
+            if (ch == '"') inString = true;
+            out.append(ch);
+        }
+        if (pendingComma >= 0) out.insert(pendingComma, ',');
+        return out.toString();
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "BrainOrchestrator[%s %s, %d brains, quorum %d]",
+                config.source, config.version, config.specs.size(), config.quorumMin);
+    }
+}
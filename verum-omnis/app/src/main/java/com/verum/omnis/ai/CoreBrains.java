@@ -0,0 +1,249 @@
+package com.verum.omnis.ai;
+
+import com.verum.omnis.core.BehavioralAnalyzer;
+import com.verum.omnis.core.FileSniffer;
+import com.verum.omnis.core.JpegRecompression;
+import com.verum.omnis.core.TimelineEngine;
+
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Built-in implementations of the brains defined in brains.json
+ * - Each brain votes only on evidence within its remit and abstains otherwise
+ * - Thresholds come from detection_rules.json where the rule pack defines them
+ * - Brains without a detector yet (legal) abstain, which counts
+ *   against quorum instead of diluting it with a meaningless CLEAR
+ */
+public final class CoreBrains {
+
+    private CoreBrains() {}
+
+    public static List<Brain> all() {
+        return Arrays.asList(
+                new Contradiction(), new DocumentForensics(), new Communications(),
+                new Linguistics(), new Timeline(), new Financial(),
+                new Pending("B7", "jurisdiction pack matching"), new AudioIntegrity(), new Research());
+    }
+
+    /** B1 – contradiction and evasion markers, over-specific denials and micro-drift between restatements. */
+    static final class Contradiction implements Brain {
+        public String id() { return "B1"; }
+
+        public Vote evaluate(Evidence ev) {
+            if (ev.text().isEmpty()) return Vote.abstain("no text");
+            JSONObject d = ev.scan().diagnostics;
+            int con = d.optInt("contradictions"), evade = d.optInt("evasion");
+            int drift = MicroDriftIndex.fromRules(ev.rules()).add(ev.file.getName(), 0, ev.text()).size();
+            List<DenialMatcher.Hit> denials = DenialMatcher.fromRules(ev.rules()).scan(ev.text());
+            double score = Math.min(1, con * 0.2 + evade * 0.1 + drift * 0.1 + denials.size() * 0.15);
+            List<String> f = new ArrayList<>();
+            f.add(con + " contradiction marker(s), " + evade + " evasion marker(s), "
+                    + drift + " micro-drift restatement(s)");
+            for (int i = 0; i < Math.min(denials.size(), 5); i++) {
+                DenialMatcher.Hit h = denials.get(i);
+                f.add("over_specific_denial \"" + h.text + "\" " + h.slots);
+            }
+            String[] fs = f.toArray(new String[0]);
+            return con >= 2 || drift >= 3 || denials.size() >= 2 ? Vote.flag(score, fs) : Vote.clear(score, fs);
+        }
+    }
+
+    /** B2 – recompression, steganography, signature and container anomalies. */
+    static final class DocumentForensics implements Brain {
+        public String id() { return "B2"; }
+
+        public Vote evaluate(Evidence ev) {
+            FileSniffer.Kind k = ev.type.kind;
+            if (k != FileSniffer.Kind.IMAGE && k != FileSniffer.Kind.VIDEO && k != FileSniffer.Kind.DOCUMENT) {
+                return Vote.abstain("not an image or document");
+            }
+            Map<String, String> m = ev.media();
+            List<String> f = new ArrayList<>();
+            double score = 0;
+            double recompression = num(m.get("RecompressionScore"));
+            if (recompression >= JpegRecompression.threshold(ev.rules())) {
+                score = Math.max(score, recompression);
+                f.add(String.format(Locale.US, "recompression_artifacts %.2f", recompression));
+            }
+            if (m.containsKey("SteganographySuspected")) {
+                score = Math.max(score, num(m.get("StegoScore")));
+                f.add("steganography_hint lsb_rate=" + m.get("StegoLsbRate"));
+            }
+            if (m.containsKey("PdfEditedAfterSigning")) {
+                score = Math.max(score, 0.9);
+                f.add("signature_anomaly edited after signing");
+            }
+            if (m.containsKey("ExtensionMismatch")) {
+                score = Math.max(score, 0.5);
+                f.add("metadata_diff extension does not match content " + ev.type.name());
+            }
+            if (f.isEmpty()) return Vote.clear(0, "no forensic anomaly");
+            return score >= 0.5 ? Vote.flag(score, f.toArray(new String[0]))
+                                : Vote.clear(score, f.toArray(new String[0]));
+        }
+    }
+
+    /** B3 – per-speaker rule hits, omission gaps and same-speaker semantic drift in chats and mailboxes. */
+    static final class Communications implements Brain {
+        static final double STRONG_GAP_Z = 5;
+
+        public String id() { return "B3"; }
+
+        public Vote evaluate(Evidence ev) {
+            JSONObject d = ev.scan().diagnostics;
+            if (!d.has("messages")) return Vote.abstain("not a chat export or mailbox");
+            List<String> f = new ArrayList<>();
+            f.add(d.optInt("messages") + " message(s) from " + d.optInt("speaker_count") + " speaker(s) over "
+                    + d.optInt("active_days") + " day(s)");
+            double score = 0;
+            boolean flag = false;
+            JSONObject speakers = d.optJSONObject("speakers");
+            if (speakers != null) {
+                for (Iterator<String> it = speakers.keys(); it.hasNext(); ) {
+                    String who = it.next();
+                    JSONObject s = speakers.optJSONObject(who);
+                    if (s == null) continue;
+                    int conceal = s.optInt("concealment"), con = s.optInt("contradictions"), evade = s.optInt("evasion");
+                    if (conceal < 1 && con + evade < 3) continue;
+                    flag = true;
+                    score = Math.max(score, Math.min(1, conceal * 0.3 + (con + evade) * 0.1));
+                    f.add(who + ": " + conceal + " concealment, " + con + " contradiction, " + evade + " evasion marker(s)");
+                }
+            }
+            GapDetector gaps = ev.gaps();
+            if (gaps.gaps() + gaps.silences() > 0) {
+                score = Math.max(score, Math.min(1, gaps.gaps() * 0.15 + gaps.silences() * 0.05));
+                f.add("selective_omission " + gaps.gaps() + " gap(s) in rapid exchanges, "
+                        + gaps.silences() + " abnormal silence(s)");
+                List<GapDetector.Finding> found = gaps.findings();
+                for (int i = 0; i < Math.min(3, found.size()); i++) f.add(found.get(i).toString());
+                // a z of 3.5 is still within the tail of busy chats; only clear holes flag
+                int strong = 0;
+                for (GapDetector.Finding g : found) if (g.type == GapDetector.Type.GAP && g.z >= STRONG_GAP_Z) strong++;
+                if (strong >= 2) flag = true;
+            }
+            List<SemanticDriftIndex.Drift> drifts = ev.semanticDrifts();
+            if (!drifts.isEmpty()) {
+                SemanticDriftIndex.Drift top = drifts.get(0);
+                score = Math.max(score, 0.3);
+                f.add(String.format(Locale.US, "%d same-speaker semantic drift(s); e.g. %s, delta %.2f",
+                        drifts.size(), top.speaker, top.delta));
+            }
+            String[] fs = f.toArray(new String[0]);
+            return flag ? Vote.flag(score, fs) : Vote.clear(score, fs);
+        }
+    }
+
+    /** B4 – per-speaker hedging density, aggression and response shift under pressure. */
+    static final class Linguistics implements Brain {
+        public String id() { return "B4"; }
+
+        public Vote evaluate(Evidence ev) {
+            BehavioralAnalyzer p = ev.behavior();
+            if (p.speakers() == 0) return Vote.abstain("no text");
+            JSONObject o = p.toJson();
+            double density = o.optDouble("hedging_density", 0);
+            int aggression = o.optInt("aggression", 0);
+            List<String> flagged = p.flagged();
+            double score = Math.min(1, density / (2 * p.hedgingWarn) + aggression * 0.05 + flagged.size() * 0.2);
+            List<String> f = new ArrayList<>();
+            f.add(String.format(Locale.US, "hedging_density %.3f over %d speaker(s), %d aggression marker(s)",
+                    density, p.speakers(), aggression));
+            for (int i = 0; i < Math.min(5, flagged.size()); i++) f.add(flagged.get(i));
+            String[] fs = f.toArray(new String[0]);
+            return flagged.isEmpty() ? Vote.clear(score, fs) : Vote.flag(score, fs);
+        }
+    }
+
+    /** B5 – clock, geotag, send/delivery and latency consistency of the evidence's own timestamps. */
+    static final class Timeline implements Brain {
+        public String id() { return "B5"; }
+
+        public Vote evaluate(Evidence ev) {
+            // one file on its own has no case to surface in, so no why-now latency here
+            TimelineEngine t = new TimelineEngine();
+            if (t.addMetadata(ev.file.getName(), ev.media(), ev.messageTimes(), 0) == 0) {
+                return Vote.abstain("no timestamps");
+            }
+            TimelineEngine.Sweep s = t.sweep(TimelineEngine.Thresholds.from(ev.rules()));
+            String[] f = new String[s.findings.size()];
+            for (int i = 0; i < f.length; i++) {
+                TimelineEngine.Finding x = s.findings.get(i);
+                f[i] = x.type.name().toLowerCase(Locale.ROOT) + ": " + x.detail;
+            }
+            if (s.total() > 0) return Vote.flag(0.8, f);
+            return Vote.clear(0, "timestamps consistent");
+        }
+    }
+
+    /** B6 – financial irregularity markers. */
+    static final class Financial implements Brain {
+        public String id() { return "B6"; }
+
+        public Vote evaluate(Evidence ev) {
+            if (ev.text().isEmpty()) return Vote.abstain("no text");
+            JSONObject d = ev.scan().diagnostics;
+            int fin = d.optInt("financial"), conceal = d.optInt("concealment");
+            double score = Math.min(1, fin * 0.1 + conceal * 0.25);
+            String f = fin + " financial marker(s), " + conceal + " concealment marker(s)";
+            return fin >= 2 || conceal >= 1 ? Vote.flag(score, f) : Vote.clear(score, f);
+        }
+    }
+
+    /** B8 – splice/discontinuity screen for audio. */
+    static final class AudioIntegrity implements Brain {
+        public String id() { return "B8"; }
+
+        public Vote evaluate(Evidence ev) {
+            if (ev.type.kind != FileSniffer.Kind.AUDIO) return Vote.abstain("not audio");
+            String s = ev.media().get("AudioSpliceScore");
+            if (s == null) return Vote.abstain("no PCM analysis for " + ev.type.name());
+            double score = num(s);
+            String f = "tamper_region splice score " + s + ", discontinuities "
+                    + ev.media().get("AudioDiscontinuities");
+            return score >= 0.5 ? Vote.flag(score, f) : Vote.clear(score, f);
+        }
+    }
+
+    /** B9 – advisory only: lists which checks had nothing to work with. */
+    static final class Research implements Brain {
+        public String id() { return "B9"; }
+
+        public Vote evaluate(Evidence ev) {
+            return Vote.abstain("checklist: corroborate " + ev.type.name().toLowerCase(Locale.ROOT)
+                    + " evidence with an independent source");
+        }
+    }
+
+    /** A brain whose detector has not landed yet. */
+    static final class Pending implements Brain {
+        private final String id, missing;
+
+        Pending(String id, String missing) {
+            this.id = id;
+            this.missing = missing;
+        }
+
+        public String id() { return id; }
+
+        public Vote evaluate(Evidence ev) {
+            return Vote.abstain("no " + missing + " yet");
+        }
+    }
+
+    static double num(String s) {
+        if (s == null) return 0;
+        try {
+            return Double.parseDouble(s);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
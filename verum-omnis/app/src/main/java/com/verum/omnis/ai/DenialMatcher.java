@@ -0,0 +1,492 @@
+package com.verum.omnis.ai;
+
+import com.verum.omnis.core.Metrics;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compiled matcher for contradictions.over_specific_denial
+ * - Templates ("I did not email &lt;person&gt; at &lt;time&gt;") are compiled into one token trie;
+ *   literal words are hash-mapped edges, &lt;slot&gt;s are typed extractor edges.  Templates
+ *   sharing a prefix share its nodes, so adding templates adds edges, not passes
+ * - The text is tokenized once and run through the trie as an NFA: one new path starts
+ *   at every token, paths are deduplicated per (node, token) and die at sentence ends,
+ *   so the scan is linear in the text
+ * - Up to MAX_GAP unrelated words may sit between template elements, which is how
+ *   "I never on &lt;exact_date&gt;" matches "I never met him on 12 March 2021"
+ * - Slots: exact_date/date, time, person; any other slot name takes 1-4 words
+ */
+public final class DenialMatcher {
+
+    private static final int M_SCAN = Metrics.stage("denial.scan");
+    private static final int C_HITS = Metrics.counter("denial_hits");
+
+    static final int MAX_GAP = 4;
+    /** Longest slot, in tokens; sizes the ring of pending paths. */
+    static final int MAX_SLOT = 6;
+
+    public enum SlotType { DATE, TIME, PERSON, ANY }
+
+    public static class Hit {
+        public String template;
+        public int start, end;                 // character offsets in the scanned text
+        public String text;
+        public Map<String, String> slots = new LinkedHashMap<>();
+    }
+
+    private static final class Node {
+        final Map<String, Node> words = new HashMap<>();
+        final List<SlotEdge> slots = new ArrayList<>();
+        final List<Integer> accepts = new ArrayList<>();
+        final int id;
+
+        Node(int id) {
+            this.id = id;
+        }
+    }
+
+    private static final class SlotEdge {
+        final SlotType type;
+        final String name;
+        final Node to;
+
+        SlotEdge(SlotType type, String name, Node to) {
+            this.type = type;
+            this.name = name;
+            this.to = to;
+        }
+    }
+
+    /** A live path: immutable, captures chained back to the path's first slot. */
+    private static final class Path {
+        final Node node;
+        final int startToken, gapLeft;
+        final Capture captures;
+
+        Path(Node node, int startToken, int gapLeft, Capture captures) {
+            this.node = node;
+            this.startToken = startToken;
+            this.gapLeft = gapLeft;
+            this.captures = captures;
+        }
+    }
+
+    private static final class Capture {
+        final String name;
+        final int fromToken, toToken;
+        final Capture prev;
+
+        Capture(String name, int fromToken, int toToken, Capture prev) {
+            this.name = name;
+            this.fromToken = fromToken;
+            this.toToken = toToken;
+            this.prev = prev;
+        }
+    }
+
+    private final Node root;
+    private final List<String> templates = new ArrayList<>();
+    private int nodes;
+
+    private DenialMatcher() {
+        root = new Node(nodes++);
+    }
+
+    public static DenialMatcher fromRules(JSONObject rules) {
+        JSONObject c = rules == null ? null : rules.optJSONObject("contradictions");
+        JSONObject osd = c == null ? null : c.optJSONObject("over_specific_denial");
+        return compile(osd == null ? null : osd.optJSONArray("patterns"));
+    }
+
+    public static DenialMatcher compile(JSONArray patterns) {
+        DenialMatcher m = new DenialMatcher();
+        if (patterns == null) return m;
+        for (int i = 0; i < patterns.length(); i++) {
+            String p = patterns.optString(i, "").trim();
+            if (!p.isEmpty()) m.add(p);
+        }
+        return m;
+    }
+
+    public int templates() {
+        return templates.size();
+    }
+
+    private void add(String template) {
+        Node n = root;
+        int at = 0, len = template.length();
+        boolean any = false;
+        while (at < len) {
+            char ch = template.charAt(at);
+            if (ch == '<') {
+                int close = template.indexOf('>', at);
+                if (close < 0) close = len;
+                String name = template.substring(at + 1, close).trim().toLowerCase(Locale.ROOT);
+                SlotType type = slotType(name);
+                Node next = null;
+                for (SlotEdge e : n.slots) {
+                    if (e.type == type && e.name.equals(name)) next = e.to;
+                }
+                if (next == null) {
+                    next = new Node(nodes++);
+                    n.slots.add(new SlotEdge(type, name, next));
+                }
+                n = next;
+                any = true;
+                at = close + 1;
+            } else if (isWordChar(ch)) {
+                int end = at;
+                while (end < len && isWordChar(template.charAt(end))) end++;
+                for (String w : words(template.substring(at, end).toLowerCase(Locale.ROOT))) {
+                    Node next = n.words.get(w);
+                    if (next == null) {
+                        next = new Node(nodes++);
+                        n.words.put(w, next);
+                    }
+                    n = next;
+                    any = true;
+                }
+                at = end;
+            } else {
+                at++;
+            }
+        }
+        if (!any) return;
+        n.accepts.add(templates.size());
+        templates.add(template);
+    }
+
+    static SlotType slotType(String name) {
+        if (name.contains("date") || name.equals("day")) return SlotType.DATE;
+        if (name.contains("time") || name.equals("hour")) return SlotType.TIME;
+        if (name.contains("person") || name.contains("name") || name.equals("who")) return SlotType.PERSON;
+        return SlotType.ANY;
+    }
+
+    // ------------------------------------------------------------ scan
+
+    public List<Hit> scan(String text) {
+        List<Hit> hits = new ArrayList<>();
+        if (templates.isEmpty()) return hits;
+        long t0 = Metrics.begin();
+        Tokens tk = Tokens.of(text);
+        boolean cased = !text.equals(text.toLowerCase(Locale.ROOT));
+
+        // ring of pending paths by the token they resume at; slots jump ahead by up to MAX_SLOT
+        int ringSize = MAX_SLOT + 1;
+        List<List<Path>> ring = new ArrayList<>();
+        for (int i = 0; i < ringSize; i++) ring.add(new ArrayList<>());
+        int[] bestGap = new int[nodes];
+        int[] bestStamp = new int[nodes];
+        Set<Long> emitted = new HashSet<>();
+
+        for (int i = 0; i <= tk.n; i++) {
+            List<Path> here = ring.get(i % ringSize);
+            if (i == tk.n || tk.sentenceStart[i]) {
+                // sentence end: nothing carries over
+                for (List<Path> l : ring) if (l != here) l.clear();
+                here.clear();
+                if (i == tk.n) break;
+            }
+            here.add(new Path(root, i, 0, null));
+            int stamp = i + 1;
+            for (int p = 0; p < here.size(); p++) {
+                Path path = here.get(p);
+                Node node = path.node;
+                // one path per (node, token): the one with the most gap left wins
+                if (bestStamp[node.id] == stamp && bestGap[node.id] >= path.gapLeft) continue;
+                bestStamp[node.id] = stamp;
+                bestGap[node.id] = path.gapLeft;
+
+                Node next = node.words.get(tk.word[i]);
+                if (next != null) advance(next, path, i + 1, path.captures, tk, hits, emitted, ring, ringSize, text);
+                for (SlotEdge e : node.slots) {
+                    int take = extract(e.type, tk, i, cased, e.to);
+                    if (take > 0) {
+                        Capture c = new Capture(e.name, i, i + take, path.captures);
+                        advance(e.to, path, i + take, c, tk, hits, emitted, ring, ringSize, text);
+                    }
+                }
+                if (node != root && path.gapLeft > 0 && i + 1 < tk.n && !tk.sentenceStart[i + 1]) {
+                    ring.get((i + 1) % ringSize).add(new Path(node, path.startToken, path.gapLeft - 1, path.captures));
+                }
+            }
+            here.clear();
+        }
+        Metrics.add(C_HITS, hits.size());
+        Metrics.end(M_SCAN, t0);
+        return hits;
+    }
+
+    private void advance(Node to, Path from, int at, Capture captures, Tokens tk, List<Hit> hits,
+                         Set<Long> emitted, List<List<Path>> ring, int ringSize, String text) {
+        for (int t : to.accepts) {
+            if (!emitted.add(((long) t << 32) | from.startToken)) continue;
+            Hit h = new Hit();
+            h.template = templates.get(t);
+            h.start = tk.start[from.startToken];
+            h.end = tk.end[at - 1];
+            h.text = text.substring(h.start, h.end);
+            List<Capture> order = new ArrayList<>();
+            for (Capture c = captures; c != null; c = c.prev) order.add(0, c);
+            for (Capture c : order) {
+                h.slots.put(c.name, text.substring(tk.start[c.fromToken], tk.end[c.toToken - 1]));
+            }
+            hits.add(h);
+        }
+        if (at < tk.n && !tk.sentenceStart[at] && (!to.words.isEmpty() || !to.slots.isEmpty())) {
+            ring.get(at % ringSize).add(new Path(to, from.startToken, MAX_GAP, captures));
+        }
+    }
+
+    // ------------------------------------------------------------ slot extractors
+
+    private static final Set<String> MONTHS = new HashSet<>(Arrays.asList(
+            "january", "february", "march", "april", "may", "june", "july", "august", "september",
+            "october", "november", "december", "jan", "feb", "mar", "apr", "jun", "jul", "aug",
+            "sep", "sept", "oct", "nov", "dec"));
+    private static final Set<String> WEEKDAYS = new HashSet<>(Arrays.asList(
+            "monday", "tuesday", "wednesday", "thursday", "friday", "saturday", "sunday"));
+    private static final Set<String> PRONOUNS = new HashSet<>(Arrays.asList(
+            "him", "her", "them", "anyone", "anybody", "nobody", "he", "she", "they"));
+    private static final Set<String> TITLES = new HashSet<>(Arrays.asList(
+            "mr", "mrs", "ms", "dr", "prof", "adv", "sir", "madam"));
+    private static final Set<String> FUNCTION = new HashSet<>(Arrays.asList(
+            "a", "an", "the", "at", "on", "in", "to", "of", "for", "by", "with", "about", "from",
+            "and", "or", "but", "i", "me", "my", "we", "us", "you", "it", "that", "this", "not",
+            "never", "did", "do", "was", "were", "is", "am", "are", "be", "been", "have", "had",
+            "has", "no", "any", "before", "after", "during", "around", "until"));
+
+    /** Tokens consumed by a slot of {@code type} at token i; 0 when it does not match. */
+    private static int extract(SlotType type, Tokens tk, int i, boolean cased, Node after) {
+        switch (type) {
+            case DATE: return date(tk, i);
+            case TIME: return time(tk, i);
+            case PERSON: return person(tk, i, cased, after);
+            default: {
+                // generic: shortest run of 1-4 words that lets the template continue
+                int limit = Math.min(4, remainingInSentence(tk, i));
+                for (int k = 1; k <= limit; k++) {
+                    if (i + k >= tk.n || after.words.isEmpty() || after.words.containsKey(tk.word[i + k])) return k;
+                }
+                return limit > 0 ? 1 : 0;
+            }
+        }
+    }
+
+    /** 12 March 2021, 12th of March, March 12 2021, 2021-03-12, 12/03/2021, Monday the 3rd. */
+    static int date(Tokens tk, int i) {
+        String w = tk.word[i];
+        if (isNumericDate(w)) return 1;
+        int k = i;
+        if (WEEKDAYS.contains(w)) {
+            k++;
+            if (k < tk.n && tk.word[k].equals("the")) k++;
+            if (k >= tk.n || (dayOfMonth(tk.word[k]) == 0 && !MONTHS.contains(tk.word[k]))) return 1;
+            w = tk.word[k];
+        }
+        if (dayOfMonth(w) > 0) {
+            int j = k + 1;
+            if (j < tk.n && tk.word[j].equals("of")) j++;
+            if (j < tk.n && MONTHS.contains(tk.word[j])) return withYear(tk, j + 1) - i;
+            return 0;
+        }
+        if (MONTHS.contains(w)) {
+            int j = k + 1;
+            if (j < tk.n && tk.word[j].equals("the")) j++;
+            if (j < tk.n && dayOfMonth(tk.word[j]) > 0) return withYear(tk, j + 1) - i;
+            return 0; // a bare month is not an exact date
+        }
+        return k > i ? k - i : 0;
+    }
+
+    private static int withYear(Tokens tk, int j) {
+        return j < tk.n && tk.word[j].length() == 4 && isDigits(tk.word[j]) ? j + 1 : j;
+    }
+
+    /** 15:30, 3pm, 3 pm, 3:30 p.m., 0930h, noon, midnight. */
+    static int time(Tokens tk, int i) {
+        String w = tk.word[i];
+        if (w.equals("noon") || w.equals("midnight")) return 1;
+        int colon = w.indexOf(':');
+        if (colon > 0 && colon <= 2 && isDigits(w.substring(0, colon)) && isDigits(w.substring(colon + 1))
+                && w.length() - colon - 1 == 2) {
+            return 1 + (i + 1 < tk.n && meridiem(tk.word[i + 1]) ? 1 : 0);
+        }
+        if (w.endsWith("am") || w.endsWith("pm")) {
+            String h = w.substring(0, w.length() - 2);
+            if (!h.isEmpty() && h.length() <= 2 && isDigits(h)) return 1;
+        }
+        if (w.endsWith("h") && w.length() == 5 && isDigits(w.substring(0, 4))) return 1;
+        if (w.length() <= 2 && isDigits(w) && i + 1 < tk.n && meridiem(tk.word[i + 1])) return 2;
+        return 0;
+    }
+
+    /**
+     * A pronoun, or up to three name words.  In cased text names must be capitalized;
+     * in lower-cased text any non-function word qualifies, stopping where the template
+     * continues.
+     */
+    static int person(Tokens tk, int i, boolean cased, Node after) {
+        String w = tk.word[i];
+        if (PRONOUNS.contains(w)) return 1;
+        int k = i;
+        if (TITLES.contains(w)) k++;
+        int limit = Math.min(k + 3, tk.n);
+        int j = k;
+        for (; j < limit; j++) {
+            String x = tk.word[j];
+            if (j > i && (tk.sentenceStart[j] || after.words.containsKey(x))) break;
+            if (FUNCTION.contains(x) || !isAlpha(x)) break;
+            if (cased && !tk.capitalized[j]) break;
+        }
+        return j > k ? j - i : 0;
+    }
+
+    private static boolean meridiem(String w) {
+        return w.equals("am") || w.equals("pm") || w.equals("a.m") || w.equals("p.m");
+    }
+
+    private static int dayOfMonth(String w) {
+        String d = w;
+        if (d.endsWith("st") || d.endsWith("nd") || d.endsWith("rd") || d.endsWith("th")) d = d.substring(0, d.length() - 2);
+        if (d.isEmpty() || d.length() > 2 || !isDigits(d)) return 0;
+        int v = Integer.parseInt(d);
+        return v >= 1 && v <= 31 ? v : 0;
+    }
+
+    private static boolean isNumericDate(String w) {
+        int seps = 0, digits = 0;
+        for (int k = 0; k < w.length(); k++) {
+            char c = w.charAt(k);
+            if (c == '/' || c == '-' || c == '.') seps++;
+            else if (c >= '0' && c <= '9') digits++;
+            else return false;
+        }
+        return seps == 2 && digits >= 4 && digits <= 8;
+    }
+
+    private static boolean isDigits(String s) {
+        if (s.isEmpty()) return false;
+        for (int k = 0; k < s.length(); k++) if (s.charAt(k) < '0' || s.charAt(k) > '9') return false;
+        return true;
+    }
+
+    private static boolean isAlpha(String s) {
+        for (int k = 0; k < s.length(); k++) {
+            char c = s.charAt(k);
+            if (!Character.isLetter(c) && c != '\'' && c != '-') return false;
+        }
+        return true;
+    }
+
+    private static int remainingInSentence(Tokens tk, int i) {
+        int j = i + 1;
+        while (j < tk.n && !tk.sentenceStart[j]) j++;
+        return j - i;
+    }
+
+    // ------------------------------------------------------------ tokens
+
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '\'' || c == '’';
+    }
+
+    /** Template words, with the same contraction handling as the scanned text. */
+    private static List<String> words(String w) {
+        List<String> out = new ArrayList<>(2);
+        w = w.replace('’', '\'');
+        if (w.endsWith("n't") && w.length() > 3) {
+            String base = w.substring(0, w.length() - 3);
+            out.add(base.equals("ca") ? "can" : base.equals("wo") ? "will" : base);
+            out.add("not");
+        } else {
+            out.add(w);
+        }
+        return out;
+    }
+
+    /**
+     * Lower-cased words with character offsets.  Digits keep internal ':' '/' '-' '.'
+     * (times and dates stay whole); "didn't" becomes "did" "not".
+     */
+    static final class Tokens {
+        int n;
+        String[] word = new String[64];
+        int[] start = new int[64], end = new int[64];
+        boolean[] sentenceStart = new boolean[64], capitalized = new boolean[64];
+
+        static Tokens of(String text) {
+            Tokens t = new Tokens();
+            int len = text.length();
+            boolean newSentence = true;
+            for (int i = 0; i < len; ) {
+                char c = text.charAt(i);
+                if (!Character.isLetterOrDigit(c)) {
+                    if (c == '.' || c == '!' || c == '?' || c == ';' || c == '\n') {
+                        // "p.m." and "a.m." are not sentence ends
+                        boolean abbrev = c == '.' && i >= 1 && Character.isLetter(text.charAt(i - 1))
+                                && (i < 2 || text.charAt(i - 2) == '.');
+                        // nor is the dot in "Mr. Smith"
+                        if (c == '.' && t.n > 0 && t.end[t.n - 1] == i && TITLES.contains(t.word[t.n - 1])) abbrev = true;
+                        if (!abbrev) newSentence = true;
+                    }
+                    i++;
+                    continue;
+                }
+                int s = i;
+                while (i < len) {
+                    char x = text.charAt(i);
+                    if (Character.isLetterOrDigit(x)) {
+                        i++;
+                    } else if ((x == ':' || x == '/' || x == '-' || x == '.') && i + 1 < len
+                            && Character.isDigit(text.charAt(i - 1)) && Character.isDigit(text.charAt(i + 1))) {
+                        i++;
+                    } else if ((x == '\'' || x == '’') && i + 1 < len && Character.isLetter(text.charAt(i + 1))) {
+                        i++;
+                    } else if (x == '.' && i + 1 < len && Character.isLetter(text.charAt(i + 1))
+                            && i - s == 1 && (i + 2 >= len || !Character.isLetter(text.charAt(i + 2)))) {
+                        i++; // a.m / p.m
+                    } else {
+                        break;
+                    }
+                }
+                String w = text.substring(s, i).toLowerCase(Locale.ROOT);
+                boolean cap = Character.isUpperCase(text.charAt(s));
+                List<String> parts = words(w);
+                for (int k = 0; k < parts.size(); k++) {
+                    t.push(parts.get(k), s, i, newSentence && k == 0, cap && k == 0);
+                }
+                newSentence = false;
+            }
+            return t;
+        }
+
+        private void push(String w, int s, int e, boolean sentence, boolean cap) {
+            if (n == word.length) {
+                int cap2 = n * 2;
+                word = Arrays.copyOf(word, cap2);
+                start = Arrays.copyOf(start, cap2);
+                end = Arrays.copyOf(end, cap2);
+                sentenceStart = Arrays.copyOf(sentenceStart, cap2);
+                capitalized = Arrays.copyOf(capitalized, cap2);
+            }
+            word[n] = w;
+            start[n] = s;
+            end[n] = e;
+            sentenceStart[n] = sentence;
+            capitalized[n++] = cap;
+        }
+    }
+}
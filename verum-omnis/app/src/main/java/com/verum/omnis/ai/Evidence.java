@@ -0,0 +1,206 @@
+package com.verum.omnis.ai;
+
+import android.content.Context;
+
+import com.verum.omnis.core.BehavioralAnalyzer;
+import com.verum.omnis.core.FileSniffer;
+import com.verum.omnis.core.MediaForensics;
+import com.verum.omnis.core.MessageStream;
+import com.verum.omnis.core.RulesProvider;
+import com.verum.omnis.core.TimelineEngine;
+
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * One evidence file as seen by the brains
+ * - Expensive inputs (decoded text, media inspection, rule scan, rule pack) are computed
+ *   lazily and at most once, then shared by every brain that asks for them
+ * - Thread-safe; each input has its own lock so a slow media inspection never
+ *   holds up a brain that only needs the text
+ * - A brain that overruns its budget is interrupted, which closes any FileChannel it is
+ *   reading and leaves a partial result.  Whatever a thread computes while interrupted is
+ *   returned to it but never cached; the next caller computes the input afresh
+ */
+public final class Evidence {
+
+    /** Text-bearing evidence is read up to this many bytes. */
+    static final int MAX_TEXT_BYTES = 8 * 1024 * 1024;
+    /** Messages fed to the semantic-drift index; bounds its all-pairs search. */
+    static final int MAX_DRIFT_MESSAGES = 20_000;
+    /** Shorter messages ("ok", "thanks") carry no statement worth comparing. */
+    static final int MIN_DRIFT_CHARS = 20;
+
+    public final Context context;
+    public final File file;
+    public final FileSniffer.Type type;
+
+    private final Object rulesLock = new Object(), textLock = new Object();
+    private final Object mediaLock = new Object(), scanLock = new Object();
+    private JSONObject rules;
+    private String text;
+    private Map<String, String> media;
+    private Scan scan;
+
+    /** One pass over the messages: the rule scan and everything filled alongside it. */
+    private static final class Scan {
+        RulesEngine.Result result;
+        SemanticDriftIndex semantic;
+        GapDetector gaps;
+        BehavioralAnalyzer behavior;
+        TimelineEngine.Messages times;
+        boolean behaviorDone;
+        List<SemanticDriftIndex.Drift> drifts;
+    }
+
+    public Evidence(Context context, File file) {
+        this.context = context;
+        this.file = file;
+        FileSniffer.Type t;
+        try {
+            t = FileSniffer.sniff(file).type;
+        } catch (IOException e) {
+            t = FileSniffer.Type.UNKNOWN;
+        }
+        this.type = t;
+    }
+
+    public boolean isText() {
+        return type.kind == FileSniffer.Kind.TEXT || type.kind == FileSniffer.Kind.MAILBOX
+                || type == FileSniffer.Type.UNKNOWN;
+    }
+
+    /** detection_rules.json, or an empty object when unavailable. */
+    public JSONObject rules() {
+        synchronized (rulesLock) {
+            if (rules == null) {
+                JSONObject r;
+                try {
+                    r = new JSONObject(RulesProvider.getDetectionRules(context));
+                } catch (Exception e) {
+                    r = new JSONObject();
+                }
+                if (interrupted()) return r;
+                rules = r;
+            }
+            return rules;
+        }
+    }
+
+    /** Lower-cased text for text-bearing evidence, "" otherwise. */
+    public String text() {
+        synchronized (textLock) {
+            if (text == null) {
+                String t = "";
+                if (isText()) {
+                    try (FileInputStream in = new FileInputStream(file)) {
+                        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                        byte[] buf = new byte[8192];
+                        int n;
+                        while (bos.size() < MAX_TEXT_BYTES && (n = in.read(buf)) != -1) bos.write(buf, 0, n);
+                        t = new String(bos.toByteArray(), StandardCharsets.UTF_8).toLowerCase(Locale.ROOT);
+                    } catch (IOException ignored) {
+                        // unreadable: brains see no text and abstain
+                    }
+                }
+                if (interrupted()) return t;
+                text = t;
+            }
+            return text;
+        }
+    }
+
+    /** {@link MediaForensics#inspectFile} keys. */
+    public Map<String, String> media() {
+        synchronized (mediaLock) {
+            if (media == null) {
+                Map<String, String> m = Collections.unmodifiableMap(MediaForensics.inspectFile(file, rules()));
+                if (interrupted()) return m;
+                media = m;
+            }
+            return media;
+        }
+    }
+
+    /**
+     * Keyword rule scan, shared with the report's liability list.  For chat exports and
+     * mailboxes the same pass over the messages also fills the semantic-drift index, the
+     * gap detector, the behavioral profile and the message times.
+     */
+    public RulesEngine.Result scan() {
+        return scanned().result;
+    }
+
+    private Scan scanned() {
+        synchronized (scanLock) {
+            if (scan == null) {
+                Scan s = new Scan();
+                SemanticDriftIndex idx = SemanticDriftIndex.fromRules(rules());
+                s.semantic = idx;
+                s.gaps = GapDetector.fromRules(rules());
+                s.behavior = BehavioralAnalyzer.fromRules(rules());
+                s.times = new TimelineEngine.Messages();
+                s.result = RulesEngine.analyzeFile(context, file, m -> {
+                    if (!m.sender.isEmpty() && m.body.length() >= MIN_DRIFT_CHARS
+                            && idx.size() < MAX_DRIFT_MESSAGES) {
+                        idx.add(m.sender, m.timeMs, m.body);
+                    }
+                }, s.gaps, s.behavior, s.times);
+                if (interrupted()) return s;
+                scan = s;
+            }
+            return scan;
+        }
+    }
+
+    /** Gaps and abnormal silences in the message stream; empty for anything but chats and mail. */
+    public GapDetector gaps() {
+        return scanned().gaps;
+    }
+
+    /** Send and delivery times of the messages in a chat export or mailbox; null for other evidence. */
+    public TimelineEngine.Messages messageTimes() {
+        return isText() ? scanned().times : null;
+    }
+
+    /** Same-speaker semantic drifts between messages; empty for anything but chats and mail. */
+    public List<SemanticDriftIndex.Drift> semanticDrifts() {
+        Scan s = scanned();
+        synchronized (scanLock) {
+            if (s.drifts == null) s.drifts = s.semantic.drifts();
+            return s.drifts;
+        }
+    }
+
+    /**
+     * Per-speaker behavioral profile.  Chats and mail are profiled message by message during
+     * {@link #scan()}; other text-bearing evidence is profiled as one speaker, without pressure.
+     */
+    public BehavioralAnalyzer behavior() {
+        Scan s = scanned();
+        String body = text();
+        synchronized (scanLock) {
+            if (!s.behaviorDone) {
+                s.behaviorDone = true;
+                if (s.behavior.messages() == 0 && !body.isEmpty()) {
+                    s.behavior.observe(null, file.getName(), MessageStream.NO_TIME, body);
+                }
+            }
+            return s.behavior;
+        }
+    }
+
+    /** The current thread was cancelled (a brain past its budget); its results are partial. */
+    private static boolean interrupted() {
+        return Thread.currentThread().isInterrupted();
+    }
+}
@@ -0,0 +1,230 @@
+package com.verum.omnis.ai;
+
+import com.verum.omnis.core.MessageStream;
+import com.verum.omnis.core.Metrics;
+
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Selective-omission detector for contradictions.selective_omission
+ * - Single pass over timestamped records (messages, events) as they arrive
+ * - Every channel, and every participant within a channel, keeps its last timestamp and two
+ *   rings of its last WINDOW pauses (as log seconds) in shared primitive arrays, with running
+ *   sums for mean and spread: pauses inside a session, and breaks between sessions (longer
+ *   than the session timeout).  Slots of keys idle past IDLE_EVICT_MS are recycled, so memory
+ *   follows the number of active keys, not the number of records
+ * - GAP: a pause of at least evidence_gap_secs inside a session that sits Z_MIN standard
+ *   deviations above the key's in-session cadence; artifacts expected there are missing
+ * - SILENCE: a break between sessions Z_MIN deviations longer than the key's usual breaks
+ * - Out-of-order records are counted and otherwise ignored
+ */
+public final class GapDetector implements MessageStream.Sink {
+
+    private static final int M_OBSERVE = Metrics.stage("gaps.observe");
+    private static final int C_FINDINGS = Metrics.counter("gaps_found");
+
+    static final int WINDOW = 32;
+    /** Pauses a track needs before its cadence is trusted. */
+    static final int MIN_SAMPLES = 8, MIN_BREAKS = 5;
+    /** A pause this long (or 10 x evidence_gap_secs, if longer) ends a session. */
+    static final long SESSION_MIN_MS = 30 * 60_000L;
+    private static final int IN_SESSION = 0, BETWEEN = 1;
+    static final double Z_MIN = 3.5;
+    static final long IDLE_EVICT_MS = 365L * 86_400_000L;
+    static final int EVICT_EVERY = 4096;
+    public static final int MAX_FINDINGS = 1000;
+
+    public enum Type { GAP, SILENCE }
+
+    public static class Finding {
+        public Type type;
+        public String channel;
+        public String participant;     // null for channel-wide pauses
+        public long fromMs, toMs;
+        public double gapSecs, typicalSecs, z;
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%s %s%s: %.0fs silent from %d (typical %.0fs, z=%.1f)",
+                    type, channel, participant == null ? "" : " / " + participant, gapSecs, fromMs, typicalSecs, z);
+        }
+    }
+
+    public final long gapMs, sessionMs;
+
+    private final Map<String, Integer> slots = new HashMap<>();
+    private String[] keyChannel = new String[64], keyParticipant = new String[64];
+    private long[] last = new long[64];
+    // two tracks per slot (IN_SESSION, BETWEEN), track = slot * 2 + kind
+    private int[] samples = new int[128], ringPos = new int[128];
+    private float[] ring = new float[128 * WINDOW];
+    private double[] sum = new double[128], sumSq = new double[128];
+    private int[] free = new int[64];
+    private int freeCount, used;
+
+    private final List<Finding> findings = new ArrayList<>();
+    private long records, outOfOrder;
+    private int gaps, silences;
+
+    public GapDetector(long gapSecs) {
+        this.gapMs = Math.max(1, gapSecs) * 1000L;
+        this.sessionMs = Math.max(SESSION_MIN_MS, 10 * gapMs);
+    }
+
+    public static GapDetector fromRules(JSONObject rules) {
+        JSONObject c = rules == null ? null : rules.optJSONObject("contradictions");
+        JSONObject so = c == null ? null : c.optJSONObject("selective_omission");
+        return new GapDetector(so == null ? 60 : so.optLong("evidence_gap_secs", 60));
+    }
+
+    @Override
+    public void accept(MessageStream.Message m) {
+        if (m.sender.isEmpty() || m.timeMs == MessageStream.NO_TIME) return; // system lines are not artifacts
+        observe(m.channel, m.sender, m.timeMs);
+    }
+
+    /** Feed one record; channel-wide and per-participant cadences are both updated. */
+    public synchronized void observe(String channel, String participant, long timeMs) {
+        long t0 = Metrics.begin();
+        records++;
+        step(channel, null, timeMs);
+        if (participant != null) step(channel, participant, timeMs);
+        if (records % EVICT_EVERY == 0) evictIdle(timeMs);
+        Metrics.end(M_OBSERVE, t0);
+    }
+
+    private void step(String channel, String participant, long t) {
+        String key = participant == null ? channel : channel + '\u0000' + participant;
+        Integer boxed = slots.get(key);
+        int s;
+        if (boxed == null) {
+            s = allocate(channel, participant);
+            slots.put(key, s);
+            last[s] = t;
+            return;
+        }
+        s = boxed;
+        long gap = t - last[s];
+        if (gap < 0) {
+            outOfOrder++;
+            return;
+        }
+        // log seconds, +1 s so same-minute exports (gap 0) stay finite
+        float lg = (float) Math.log(gap / 1000.0 + 1);
+        boolean brk = gap >= sessionMs;
+        int tr = s * 2 + (brk ? BETWEEN : IN_SESSION);
+        int n = samples[tr];
+        if (n >= (brk ? MIN_BREAKS : MIN_SAMPLES) && gap >= gapMs) {
+            double mean = sum[tr] / n;
+            double sd = Math.sqrt(Math.max(1e-6, sumSq[tr] / n - mean * mean));
+            double z = (lg - mean) / sd;
+            if (z >= Z_MIN) report(brk ? Type.SILENCE : Type.GAP, s, last[s], t, gap, Math.exp(mean) - 1, z);
+        }
+        // slide the track's window
+        int at = tr * WINDOW + ringPos[tr];
+        if (n == WINDOW) {
+            float old = ring[at];
+            sum[tr] -= old;
+            sumSq[tr] -= (double) old * old;
+        } else {
+            samples[tr] = n + 1;
+        }
+        ring[at] = lg;
+        ringPos[tr] = (ringPos[tr] + 1) % WINDOW;
+        sum[tr] += lg;
+        sumSq[tr] += (double) lg * lg;
+        last[s] = t;
+    }
+
+    private void report(Type type, int s, long from, long to, long gap, double typicalSecs, double z) {
+        if (type == Type.GAP) gaps++;
+        else silences++;
+        Metrics.inc(C_FINDINGS);
+        if (findings.size() >= MAX_FINDINGS) return;
+        Finding f = new Finding();
+        f.type = type;
+        f.channel = keyChannel[s];
+        f.participant = keyParticipant[s];
+        f.fromMs = from;
+        f.toMs = to;
+        f.gapSecs = gap / 1000.0;
+        f.typicalSecs = typicalSecs;
+        f.z = z;
+        findings.add(f);
+    }
+
+    private int allocate(String channel, String participant) {
+        int s;
+        if (freeCount > 0) {
+            s = free[--freeCount];
+        } else {
+            if (used == last.length) grow();
+            s = used++;
+        }
+        keyChannel[s] = channel;
+        keyParticipant[s] = participant;
+        for (int tr = s * 2; tr < s * 2 + 2; tr++) {
+            samples[tr] = 0;
+            ringPos[tr] = 0;
+            sum[tr] = 0;
+            sumSq[tr] = 0;
+        }
+        return s;
+    }
+
+    private void grow() {
+        int cap = last.length * 2;
+        keyChannel = Arrays.copyOf(keyChannel, cap);
+        keyParticipant = Arrays.copyOf(keyParticipant, cap);
+        last = Arrays.copyOf(last, cap);
+        samples = Arrays.copyOf(samples, cap * 2);
+        ringPos = Arrays.copyOf(ringPos, cap * 2);
+        ring = Arrays.copyOf(ring, cap * 2 * WINDOW);
+        sum = Arrays.copyOf(sum, cap * 2);
+        sumSq = Arrays.copyOf(sumSq, cap * 2);
+        free = Arrays.copyOf(free, cap);
+    }
+
+    private void evictIdle(long now) {
+        for (Iterator<Map.Entry<String, Integer>> it = slots.entrySet().iterator(); it.hasNext(); ) {
+            int s = it.next().getValue();
+            if (now - last[s] <= IDLE_EVICT_MS) continue;
+            it.remove();
+            keyChannel[s] = null;
+            keyParticipant[s] = null;
+            free[freeCount++] = s;
+        }
+    }
+
+    // ------------------------------------------------------------ results
+
+    /** Findings so far, in arrival order (at most MAX_FINDINGS). */
+    public synchronized List<Finding> findings() {
+        return new ArrayList<>(findings);
+    }
+
+    public synchronized int gaps() {
+        return gaps;
+    }
+
+    public synchronized int silences() {
+        return silences;
+    }
+
+    public synchronized long outOfOrder() {
+        return outOfOrder;
+    }
+
+    /** Keys currently holding a slot. */
+    public synchronized int activeKeys() {
+        return slots.size();
+    }
+}
@@ -0,0 +1,208 @@
+package com.verum.omnis.ai;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Order-independent fold of many mesh packets
+ * - Every field is a counter (sum), a max register or an OR register, so folding packets in
+ *   any order, on any number of threads, ends in the same state
+ * - Packets are identified by their verified canonical SHA-512; folding one twice is a no-op
+ * - Directives: booleans are OR registers with a count of packets that set them, numbers are
+ *   max registers; any key is accepted, not only the ones this build knows about
+ * - Stats: every number is summed and max'ed.  Sums are kept in fixed point (micro-units) so
+ *   the totals are exact and do not depend on the order floating-point additions ran in
+ * - merge() joins two aggregates: registers and the packet set are joins, counters add, so the
+ *   two sides must have folded disjoint packets (the bulk importer claims each packet once)
+ */
+public final class MeshAggregate {
+
+    private static final double FIXED = 1_000_000.0;
+
+    private static final class Directive {
+        boolean or;
+        long trueCount;
+        boolean numeric;
+        double max = Double.NEGATIVE_INFINITY;
+    }
+
+    private static final class Stat {
+        long sumMicros;
+        double max = Double.NEGATIVE_INFINITY;
+        long count;
+    }
+
+    private final Set<String> packets = new HashSet<>();
+    private final Map<String, Directive> directives = new TreeMap<>();
+    private final Map<String, Stat> stats = new TreeMap<>();
+    private String firstUtc, lastUtc;
+    private long ignoredDirectives;
+
+    /**
+     * Fold one verified packet.  Returns false (and changes nothing) if a packet with the same
+     * id was already folded.
+     */
+    public synchronized boolean add(String packetId, JSONObject dir, JSONObject st, String timestampUtc) {
+        if (!packets.add(packetId)) return false;
+        if (dir != null) {
+            for (Iterator<String> it = dir.keys(); it.hasNext(); ) {
+                String k = it.next();
+                Object v = dir.opt(k);
+                if (v instanceof Boolean) {
+                    Directive d = directive(k);
+                    if ((Boolean) v) {
+                        d.or = true;
+                        d.trueCount++;
+                    }
+                } else if (v instanceof Number && isFinite((Number) v)) {
+                    Directive d = directive(k);
+                    d.numeric = true;
+                    d.max = Math.max(d.max, ((Number) v).doubleValue());
+                } else {
+                    ignoredDirectives++;
+                }
+            }
+        }
+        if (st != null) {
+            for (Iterator<String> it = st.keys(); it.hasNext(); ) {
+                String k = it.next();
+                Object v = st.opt(k);
+                if (!(v instanceof Number) || !isFinite((Number) v)) continue;
+                double x = ((Number) v).doubleValue();
+                Stat s = stats.get(k);
+                if (s == null) stats.put(k, s = new Stat());
+                s.sumMicros += Math.round(x * FIXED);
+                s.max = Math.max(s.max, x);
+                s.count++;
+            }
+        }
+        if (timestampUtc != null && !timestampUtc.isEmpty()) {
+            // ISO-8601 UTC strings order lexicographically
+            if (firstUtc == null || timestampUtc.compareTo(firstUtc) < 0) firstUtc = timestampUtc;
+            if (lastUtc == null || timestampUtc.compareTo(lastUtc) > 0) lastUtc = timestampUtc;
+        }
+        return true;
+    }
+
+    /** Join {@code other} into this aggregate (see the class comment for the disjointness rule). */
+    public void merge(MeshAggregate other) {
+        if (other == this) return;
+        synchronized (other) {
+            synchronized (this) {
+                packets.addAll(other.packets);
+                for (Map.Entry<String, Directive> e : other.directives.entrySet()) {
+                    Directive o = e.getValue(), d = directive(e.getKey());
+                    d.or |= o.or;
+                    d.trueCount += o.trueCount;
+                    d.numeric |= o.numeric;
+                    d.max = Math.max(d.max, o.max);
+                }
+                for (Map.Entry<String, Stat> e : other.stats.entrySet()) {
+                    Stat o = e.getValue(), s = stats.get(e.getKey());
+                    if (s == null) stats.put(e.getKey(), s = new Stat());
+                    s.sumMicros += o.sumMicros;
+                    s.max = Math.max(s.max, o.max);
+                    s.count += o.count;
+                }
+                if (other.firstUtc != null && (firstUtc == null || other.firstUtc.compareTo(firstUtc) < 0)) firstUtc = other.firstUtc;
+                if (other.lastUtc != null && (lastUtc == null || other.lastUtc.compareTo(lastUtc) > 0)) lastUtc = other.lastUtc;
+                ignoredDirectives += other.ignoredDirectives;
+            }
+        }
+    }
+
+    public synchronized int packets() {
+        return packets.size();
+    }
+
+    /** OR register of a boolean directive (false if no packet carried it). */
+    public synchronized boolean flag(String key) {
+        Directive d = directives.get(key);
+        return d != null && d.or;
+    }
+
+    /**
+     * Merge the aggregate's directives into {@code existing}: booleans are OR'ed, numbers
+     * max'ed, and {@code alwaysPresent} booleans are written even if no packet carried them.
+     */
+    public synchronized JSONObject mergeDirectives(JSONObject existing, String[] alwaysPresent) throws JSONException {
+        JSONObject merged = new JSONObject();
+        if (existing != null) {
+            for (Iterator<String> it = existing.keys(); it.hasNext(); ) {
+                String k = it.next();
+                merged.put(k, existing.opt(k));
+            }
+        }
+        if (alwaysPresent != null) {
+            for (String k : alwaysPresent) merged.put(k, merged.optBoolean(k, false) || flag(k));
+        }
+        for (Map.Entry<String, Directive> e : directives.entrySet()) {
+            Directive d = e.getValue();
+            Object cur = merged.opt(e.getKey());
+            if (d.numeric && !d.or && d.trueCount == 0) {
+                double max = cur instanceof Number ? Math.max(((Number) cur).doubleValue(), d.max) : d.max;
+                merged.put(e.getKey(), max);
+            } else {
+                merged.put(e.getKey(), (cur instanceof Boolean && (Boolean) cur) || d.or);
+            }
+        }
+        return merged;
+    }
+
+    /** Summary with keys in sorted order; identical for any folding order. */
+    public synchronized JSONObject toJson() {
+        JSONObject j = new JSONObject();
+        try {
+            long n = packets.size();
+            j.put("packets", n);
+            if (firstUtc != null) {
+                j.put("first_utc", firstUtc);
+                j.put("last_utc", lastUtc);
+            }
+            JSONObject dj = new JSONObject();
+            for (Map.Entry<String, Directive> e : directives.entrySet()) {
+                Directive d = e.getValue();
+                JSONObject o = new JSONObject();
+                if (d.numeric) o.put("max", d.max);
+                if (!d.numeric || d.trueCount > 0) {
+                    o.put("any", d.or);
+                    o.put("packets_true", d.trueCount);
+                }
+                dj.put(e.getKey(), o);
+            }
+            j.put("directives", dj);
+            JSONObject sj = new JSONObject();
+            for (Map.Entry<String, Stat> e : stats.entrySet()) {
+                Stat s = e.getValue();
+                JSONObject o = new JSONObject();
+                o.put("sum", s.sumMicros / FIXED);
+                o.put("mean", s.count == 0 ? 0.0 : s.sumMicros / FIXED / s.count);
+                o.put("max", s.max);
+                o.put("packets", s.count);
+                sj.put(e.getKey(), o);
+            }
+            j.put("stats", sj);
+            if (ignoredDirectives > 0) j.put("ignored_directive_values", ignoredDirectives);
+        } catch (JSONException ignored) {
+            // values are all finite numbers, strings and booleans
+        }
+        return j;
+    }
+
+    private Directive directive(String k) {
+        Directive d = directives.get(k);
+        if (d == null) directives.put(k, d = new Directive());
+        return d;
+    }
+
+    private static boolean isFinite(Number n) {
+        double x = n.doubleValue();
+        return !Double.isNaN(x) && !Double.isInfinite(x);
+    }
+}
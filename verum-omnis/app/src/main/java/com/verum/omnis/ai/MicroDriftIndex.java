@@ -0,0 +1,389 @@
+package com.verum.omnis.ai;
+
+import com.verum.omnis.core.Metrics;
+
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Statement index for contradictions.micro_drift
+ * - Sentences are normalized, de-duplicated exactly, shingled into character 3-grams and
+ *   MinHashed (80 hashes); the signature is cut into 20 bands of 4 and each band, split
+ *   by sentence length, is an LSH bucket, so only sentences sharing a bucket are compared
+ * - Candidates are verified with a banded Levenshtein that gives up as soon as the
+ *   distance must exceed threshold_chars; it reuses two row buffers and allocates nothing
+ * - A drift is a pair of distinct sentences within threshold_chars edits of each other,
+ *   stated no more than window_days apart
+ * - Incremental: every add reports the drifts it introduces against everything indexed so far
+ */
+public final class MicroDriftIndex {
+
+    private static final int M_SIGN = Metrics.stage("drift.minhash");
+    private static final int M_MATCH = Metrics.stage("drift.match");
+    private static final int C_CANDIDATES = Metrics.counter("drift_candidates_verified");
+
+    static final int SHINGLE = 3;
+    static final int BANDS = 20;
+    static final int ROWS = 4;
+    static final int HASHES = BANDS * ROWS;
+    /** Shorter sentences carry too little wording to drift meaningfully. */
+    static final int MIN_CHARS = 12;
+    /** Buckets larger than this are boilerplate; their members are not cross-compared. */
+    static final int MAX_BUCKET = 2000;
+
+    private static final long[] MUL = new long[HASHES], ADD = new long[HASHES];
+    static {
+        long x = 0x9E3779B97F4A7C15L;
+        for (int i = 0; i < HASHES; i++) {
+            x = mix(x + i);
+            MUL[i] = x | 1;
+            x = mix(x);
+            ADD[i] = x;
+        }
+    }
+
+    public static class Statement {
+        public final String source;
+        public final long timeMs;
+        public final String text;
+
+        public Statement(String source, long timeMs, String text) {
+            this.source = source;
+            this.timeMs = timeMs;
+            this.text = text;
+        }
+    }
+
+    public static class Drift {
+        public String textA, textB, sourceA, sourceB;
+        public long timeA, timeB;
+        public int distance;
+    }
+
+    private static final Map<String, MicroDriftIndex> CASES = new HashMap<>();
+
+    public final int thresholdChars;
+    public final long windowMs;
+
+    private String[] texts = new String[256];
+    private long[] times = new long[256];
+    private int[] sources = new int[256];
+    private int size;
+    private final Map<String, Integer> exact = new HashMap<>();
+    private final Map<String, Integer> sourceIds = new HashMap<>();
+    private final List<String> sourceNames = new ArrayList<>();
+
+    // LSH buckets: open-addressing map (band, length bin, band hash) -> head entry; entries
+    // chain by sentence.  Keys are 32-bit: a collision only costs one extra verification.
+    private int[] bucketKey = new int[1 << 12];
+    private int[] bucketHead = new int[1 << 12];
+    private int[] bucketSize = new int[1 << 12];
+    private int buckets;
+    private int[] entrySentence = new int[1024], entryNext = new int[1024];
+    private int entries;
+
+    private int[] seen = new int[256];
+    private int stamp;
+    private int[] rowA = new int[64], rowB = new int[64];
+
+    public MicroDriftIndex(int thresholdChars, long windowMs) {
+        this.thresholdChars = Math.max(1, thresholdChars);
+        this.windowMs = windowMs;
+        Arrays.fill(bucketHead, -1);
+    }
+
+    public static MicroDriftIndex fromRules(JSONObject rules) {
+        JSONObject c = rules == null ? null : rules.optJSONObject("contradictions");
+        JSONObject md = c == null ? null : c.optJSONObject("micro_drift");
+        int chars = md == null ? 2 : md.optInt("threshold_chars", 2);
+        double days = md == null ? 3650 : md.optDouble("window_days", 3650);
+        return new MicroDriftIndex(chars, (long) (days * 86_400_000L));
+    }
+
+    /** The shared in-memory index for a case. */
+    public static MicroDriftIndex forCase(String caseId, JSONObject rules) {
+        synchronized (CASES) {
+            MicroDriftIndex idx = CASES.get(caseId);
+            if (idx == null) {
+                idx = fromRules(rules);
+                CASES.put(caseId, idx);
+            }
+            return idx;
+        }
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /** Index every sentence of {@code text}; returns the drifts they introduce. */
+    public List<Drift> add(String source, long timeMs, String text) {
+        List<Statement> one = new ArrayList<>();
+        for (String s : sentences(text)) one.add(new Statement(source, timeMs, s));
+        return addAll(one);
+    }
+
+    /**
+     * Bulk add.  Signatures are computed in parallel (the expensive part); bucket
+     * insertion and verification then run in input order.
+     */
+    public List<Drift> addAll(List<Statement> batch) {
+        long t0 = Metrics.begin();
+        String[] norm = new String[batch.size()];
+        long[][] sigs = new long[batch.size()][];
+        IntStream.range(0, batch.size()).parallel().forEach(i -> {
+            String n = normalize(batch.get(i).text);
+            if (n.length() < MIN_CHARS) return;
+            norm[i] = n;
+            sigs[i] = bandKeys(n);
+        });
+        Metrics.end(M_SIGN, t0);
+
+        t0 = Metrics.begin();
+        List<Drift> out = new ArrayList<>();
+        synchronized (this) {
+            for (int i = 0; i < norm.length; i++) {
+                if (norm[i] == null || exact.containsKey(norm[i])) continue;
+                Statement st = batch.get(i);
+                int id = insertSentence(norm[i], st.source, st.timeMs);
+                match(id, sigs[i], out);
+                link(id, sigs[i]);
+            }
+        }
+        Metrics.end(M_MATCH, t0);
+        return out;
+    }
+
+    private void match(int id, long[] keys, List<Drift> out) {
+        if (++stamp == 0) {
+            Arrays.fill(seen, 0);
+            stamp = 1;
+        }
+        String a = texts[id];
+        int w = binWidth(), lo = (a.length() - thresholdChars) / w, hi = (a.length() + thresholdChars) / w;
+        for (long key : keys) {
+          for (int bin = Math.max(0, lo); bin <= hi; bin++) {
+            int slot = find(binned(key, bin));
+            if (slot < 0 || bucketSize[slot] > MAX_BUCKET) continue;
+            for (int e = bucketHead[slot]; e >= 0; e = entryNext[e]) {
+                int other = entrySentence[e];
+                if (seen[other] == stamp) continue;
+                seen[other] = stamp;
+                if (Math.abs(times[other] - times[id]) > windowMs) continue;
+                String b = texts[other];
+                if (Math.abs(a.length() - b.length()) > thresholdChars) continue;
+                Metrics.inc(C_CANDIDATES);
+                int d = levenshteinWithin(a, b, thresholdChars);
+                if (d < 1 || d > thresholdChars) continue;
+                Drift dr = new Drift();
+                dr.textA = b;
+                dr.sourceA = sourceNames.get(sources[other]);
+                dr.timeA = times[other];
+                dr.textB = a;
+                dr.sourceB = sourceNames.get(sources[id]);
+                dr.timeB = times[id];
+                dr.distance = d;
+                out.add(dr);
+            }
+          }
+        }
+    }
+
+    private int insertSentence(String n, String source, long timeMs) {
+        if (size == texts.length) {
+            int cap = size * 2;
+            texts = Arrays.copyOf(texts, cap);
+            times = Arrays.copyOf(times, cap);
+            sources = Arrays.copyOf(sources, cap);
+            seen = Arrays.copyOf(seen, cap);
+        }
+        int id = size++;
+        texts[id] = n;
+        times[id] = timeMs;
+        Integer s = sourceIds.get(source);
+        if (s == null) {
+            s = sourceNames.size();
+            sourceIds.put(source, s);
+            sourceNames.add(source);
+        }
+        sources[id] = s;
+        exact.put(n, id);
+        return id;
+    }
+
+    private void link(int id, long[] keys) {
+        int bin = texts[id].length() / binWidth();
+        for (long key : keys) {
+            if ((buckets + 1) * 4 > bucketKey.length * 3) rehash();
+            int slot = findOrCreate(binned(key, bin));
+            if (entries == entrySentence.length) {
+                entrySentence = Arrays.copyOf(entrySentence, entries * 2);
+                entryNext = Arrays.copyOf(entryNext, entries * 2);
+            }
+            entrySentence[entries] = id;
+            entryNext[entries] = bucketHead[slot];
+            bucketHead[slot] = entries++;
+            bucketSize[slot]++;
+        }
+    }
+
+    // ------------------------------------------------------------ bucket table
+
+    /**
+     * Buckets are also split by sentence length: a match is at most thresholdChars
+     * longer or shorter, so a query only needs the one or two bins its length range
+     * touches.  Wider bins than 2 * threshold + 1 would just add unreachable members.
+     */
+    private int binWidth() {
+        return 2 * thresholdChars + 1;
+    }
+
+    private static int binned(long bandKey, int bin) {
+        return (int) (mix(bandKey + bin * 0x9E3779B97F4A7C15L) >>> 32);
+    }
+
+    private int find(int key) {
+        int mask = bucketKey.length - 1;
+        for (int i = key & mask; ; i = (i + 1) & mask) {
+            if (bucketHead[i] < 0) return -1;
+            if (bucketKey[i] == key) return i;
+        }
+    }
+
+    private int findOrCreate(int key) {
+        int mask = bucketKey.length - 1;
+        int i = key & mask;
+        while (bucketHead[i] >= 0) {
+            if (bucketKey[i] == key) return i;
+            i = (i + 1) & mask;
+        }
+        bucketKey[i] = key;
+        buckets++;
+        return i;
+    }
+
+    private void rehash() {
+        int[] k = bucketKey, h = bucketHead, n = bucketSize;
+        bucketKey = new int[k.length * 2];
+        bucketHead = new int[k.length * 2];
+        bucketSize = new int[k.length * 2];
+        Arrays.fill(bucketHead, -1);
+        int mask = bucketKey.length - 1;
+        for (int j = 0; j < k.length; j++) {
+            if (h[j] < 0) continue;
+            int i = k[j] & mask;
+            while (bucketHead[i] >= 0) i = (i + 1) & mask;
+            bucketKey[i] = k[j];
+            bucketHead[i] = h[j];
+            bucketSize[i] = n[j];
+        }
+    }
+
+    // ------------------------------------------------------------ MinHash
+
+    /** One LSH key per band: band index in the top bits, hash of its ROWS minima below. */
+    static long[] bandKeys(String s) {
+        long[] min = new long[HASHES];
+        Arrays.fill(min, Long.MAX_VALUE);
+        int n = s.length();
+        for (int i = 0; i + SHINGLE <= n; i++) {
+            long sh = 0;
+            for (int k = 0; k < SHINGLE; k++) sh = sh * 0x100000001B3L + s.charAt(i + k);
+            sh = mix(sh);
+            for (int h = 0; h < HASHES; h++) {
+                long v = sh * MUL[h] + ADD[h];
+                if (v < min[h]) min[h] = v;
+            }
+        }
+        long[] keys = new long[BANDS];
+        for (int b = 0; b < BANDS; b++) {
+            long acc = b;
+            for (int r = 0; r < ROWS; r++) acc = mix(acc ^ min[b * ROWS + r]);
+            keys[b] = ((long) b << 56) | (acc >>> 8);
+        }
+        return keys;
+    }
+
+    static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    // ------------------------------------------------------------ verification
+
+    /**
+     * Levenshtein distance if it is at most {@code max}, otherwise {@code max + 1}.
+     * Only the diagonal band |i - j| &lt;= max is evaluated; rows are reused.
+     */
+    int levenshteinWithin(String a, String b, int max) {
+        int la = a.length(), lb = b.length();
+        if (Math.abs(la - lb) > max) return max + 1;
+        if (rowA.length < lb + 1) {
+            rowA = new int[lb + 1];
+            rowB = new int[lb + 1];
+        }
+        int[] prev = rowA, cur = rowB;
+        int inf = max + 1;
+        for (int j = 0; j <= lb; j++) prev[j] = j <= max ? j : inf;
+        for (int i = 1; i <= la; i++) {
+            int from = Math.max(1, i - max), to = Math.min(lb, i + max);
+            cur[from - 1] = from == 1 && i <= max ? i : inf;
+            int rowMin = cur[from - 1];
+            char ca = a.charAt(i - 1);
+            for (int j = from; j <= to; j++) {
+                int v = prev[j - 1] + (ca == b.charAt(j - 1) ? 0 : 1);
+                if (prev[j] + 1 < v) v = prev[j] + 1;
+                if (cur[j - 1] + 1 < v) v = cur[j - 1] + 1;
+                cur[j] = v > inf ? inf : v;
+                if (cur[j] < rowMin) rowMin = cur[j];
+            }
+            if (to < lb) cur[to + 1] = inf;
+            if (rowMin > max) return inf;
+            int[] t = prev; prev = cur; cur = t;
+        }
+        return Math.min(prev[lb], inf);
+    }
+
+    // ------------------------------------------------------------ text
+
+    static String normalize(String s) {
+        StringBuilder sb = new StringBuilder(s.length());
+        boolean space = false;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (Character.isWhitespace(c)) {
+                space = sb.length() > 0;
+                continue;
+            }
+            if (space) sb.append(' ');
+            space = false;
+            sb.append(Character.toLowerCase(c));
+        }
+        return sb.toString();
+    }
+
+    /** Split on sentence punctuation and line breaks. */
+    public static List<String> sentences(String text) {
+        List<String> out = new ArrayList<>();
+        int start = 0, n = text.length();
+        for (int i = 0; i < n; i++) {
+            char c = text.charAt(i);
+            boolean end = c == '\n' || c == '\r'
+                    || ((c == '.' || c == '!' || c == '?') && (i + 1 == n || Character.isWhitespace(text.charAt(i + 1))));
+            if (!end) continue;
+            String s = text.substring(start, c == '\n' || c == '\r' ? i : i + 1).trim();
+            if (!s.isEmpty()) out.add(s);
+            start = i + 1;
+        }
+        String tail = text.substring(start).trim();
+        if (!tail.isEmpty()) out.add(tail);
+        return out;
+    }
+}
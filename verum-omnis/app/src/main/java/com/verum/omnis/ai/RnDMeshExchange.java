@@ -3,36 +3,86 @@ package com.verum.omnis.ai;
 import android.content.Context;
 import android.os.Build;
 
+import com.verum.omnis.core.CanonicalJson;
+import com.verum.omnis.core.Metrics;
 import com.verum.omnis.core.ReportMailer;
 
+import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.security.MessageDigest;
 import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Locale;
+import java.util.Set;
 import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 
 /**
  * Stateless Mesh Exchange
  * - Exports/Imports **training directives** only (no case data)
  * - Supports both file-based export and email-based export
  * - Includes integrity fields (sha512 over payload)
+ * - v2 packets are signed over their canonical JSON (sorted keys, fixed numbers), so the
+ *   signature survives any re-serialization; v1 packets are still checked the old way
+ * - Bulk import (directory or .zip) verifies packets in parallel and folds them into one
+ *   order-independent {@link MeshAggregate}
  */
 public class RnDMeshExchange {
 
+    private static final int M_IMPORT_ALL = Metrics.stage("mesh.import_all");
+    private static final int C_APPLIED = Metrics.counter("mesh_packets_applied");
+    private static final int C_REJECTED = Metrics.counter("mesh_packets_rejected");
+
+    public static final String SCHEMA = "verum.mesh.v2";
+    private static final String SCHEMA_V1 = "verum.mesh.v1";
+    /** Directives written on every apply, false unless some packet set them. */
+    public static final String[] KNOWN_DIRECTIVES = {
+            "prioritize_contradictions", "prioritize_concealment",
+            "tighten_evasion_threshold", "reinforce_financial_flags",
+            "min_keywords_entities"
+    };
+    /** Bulk import: packets larger than this are skipped as malformed. */
+    public static final int MAX_PACKET_BYTES = 16 * 1024 * 1024;
+    /**
+     * Bulk import: estimated memory of the packets queued or being verified at once.  A
+     * packet is counted at {@link #PACKET_FOOTPRINT} times its size (raw bytes, decoded
+     * String, canonical buffer and member values); a single packet above the budget still
+     * runs, alone.
+     */
+    static final long MAX_IN_FLIGHT_BYTES = 64L * 1024 * 1024;
+    static final int PACKET_FOOTPRINT = 4;
+    public static final int MAX_FAILURES = 100;
+
     public static class MeshPacket {
-        public String schema = "verum.mesh.v1";
+        public String schema = SCHEMA;
         public String templateVersion = "5.1.1";
         public String appVersion = "5.2.6";
         public String timestampUtc;   // ISO8601
         public JSONObject directives; // from RnDController.Feedback.report.directive
         public JSONObject stats;      // counts & risk
-        public String sha512;         // over {schema,templateVersion,appVersion,timestampUtc,directives,stats}
+        public String sha512;         // over canonical {schema,templateVersion,appVersion,timestampUtc,directives,stats}
     }
 
     /**
@@ -49,11 +99,8 @@ public class RnDMeshExchange {
         payload.put("directives", pkt.directives);
         payload.put("stats", pkt.stats);
 
-        String body = payload.toString();
-        pkt.sha512 = sha512(body.getBytes(StandardCharsets.UTF_8));
-
-        JSONObject out = new JSONObject(body);
-        out.put("sha512", pkt.sha512);
+        pkt.sha512 = CanonicalJson.sha512(payload, null);
+        payload.put("sha512", pkt.sha512);
 
         // write to app external files if available, else cache
         File dir;
@@ -64,14 +111,11 @@ public class RnDMeshExchange {
         }
         File f = new File(dir, "verum_mesh_" + pkt.timestampUtc.replaceAll("[:\\-T]", "") + ".json");
         try (FileOutputStream fos = new FileOutputStream(f)) {
-            fos.write(out.toString(2).getBytes(StandardCharsets.UTF_8));
+            new CanonicalJson.Writer(fos, null).object(payload, null).flush();
         }
         return f;
     }
 
-    /**
-     * Export packet by email (signed/timestamped JSON attachment).
-     */
     /**
      * Export packet by email (signed/timestamped JSON attachment).
      */
@@ -122,8 +166,7 @@ public class RnDMeshExchange {
         }
 
         // Sign payload
-        String body = payload.toString();
-        pkt.sha512 = sha512(body.getBytes(StandardCharsets.UTF_8));
+        pkt.sha512 = CanonicalJson.sha512(payload, null);
         payload.put("sha512", pkt.sha512);
 
         // Send via mailer
@@ -131,35 +174,20 @@ public class RnDMeshExchange {
     }
 
     /**
-     * Import and apply a mesh packet from JSON string.
+     * Import and apply a mesh packet from JSON string.  The packet is canonicalized and
+     * hashed in one pass; only its directives are parsed into an object afterwards.
      */
     public static boolean importAndApply(Context ctx, String jsonString, RnDController.Feedback sink) {
         try {
-            JSONObject obj = new JSONObject(jsonString);
-            String sha = obj.optString("sha512", "");
-            JSONObject copy = new JSONObject(obj.toString());
-            copy.remove("sha512");
-            String recomputed = sha512(copy.toString().getBytes(StandardCharsets.UTF_8));
-            if (!sha.equalsIgnoreCase(recomputed)) return false; // integrity fail
-
-            // merge directives: logical OR with existing directive if present
-            JSONObject dir = obj.optJSONObject("directives");
-            if (dir != null && sink != null && sink.report != null) {
-                JSONObject existing = sink.report.optJSONObject("directive");
-                if (existing == null) existing = new JSONObject();
-                JSONObject merged = new JSONObject();
-                // keys we know
-                String[] keys = new String[]{
-                        "prioritize_contradictions","prioritize_concealment",
-                        "tighten_evasion_threshold","reinforce_financial_flags",
-                        "min_keywords_entities"
-                };
-                for (String k : keys) {
-                    boolean a = existing.optBoolean(k, false);
-                    boolean b = dir.optBoolean(k, false);
-                    merged.put(k, a || b);
-                }
-                sink.report.put("directive", merged);
+            Verified v = verify(jsonString);
+            if (v == null) return false; // integrity fail
+
+            // merge directives: OR / max with existing directive if present
+            String d = v.canonical.members.get("directives");
+            if (d != null && d.startsWith("{") && sink != null && sink.report != null) {
+                MeshAggregate agg = new MeshAggregate();
+                fold(agg, v);
+                sink.report.put("directive", agg.mergeDirectives(sink.report.optJSONObject("directive"), KNOWN_DIRECTIVES));
             }
             return true;
         } catch (Exception e) {
@@ -167,6 +195,92 @@ public class RnDMeshExchange {
         }
     }
 
+    /** Outcome of {@link #importAll}. */
+    public static class BulkImport {
+        public int packets;          // files / archive entries read
+        public int applied;          // verified and folded into the aggregate
+        public int duplicates;       // verified, but the same packet was already folded
+        public int rejected;         // signature mismatch
+        public int malformed;        // unreadable, too large or not JSON
+        public long bytes;
+        public long elapsedMs;
+        public List<String> failures = new ArrayList<>(); // first MAX_FAILURES, "name: reason"
+        public MeshAggregate aggregate;
+    }
+
+    public static BulkImport importAll(File source, RnDController.Feedback sink) throws IOException {
+        return importAll(source, sink, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Import every packet under {@code source}: a directory (walked recursively, symbolic
+     * links not followed) or a .zip
+     * archive of *.json packets, or a single packet file.  Packets are read on the calling
+     * thread and verified on {@code parallelism} workers; each verified packet is claimed
+     * once by its canonical hash and folded into a worker-local {@link MeshAggregate}, and the
+     * partials are joined at the end, so the result does not depend on file or thread order.
+     * The merged directives and the aggregate summary ("mesh_import") go into {@code sink}.
+     */
+    public static BulkImport importAll(File source, RnDController.Feedback sink, int parallelism) throws IOException {
+        long t0 = Metrics.begin();
+        long start = System.nanoTime();
+        Bulk bulk = new Bulk(Math.max(1, parallelism));
+        try {
+            if (source.isDirectory()) {
+                // links are skipped and every directory is entered once, so the walk ends
+                ArrayDeque<File> dirs = new ArrayDeque<>();
+                Set<String> visited = new HashSet<>();
+                dirs.push(source);
+                while (!dirs.isEmpty()) {
+                    File dir = dirs.pop();
+                    if (!visited.add(dir.getCanonicalPath())) continue;
+                    File[] list = dir.listFiles();
+                    if (list == null) continue;
+                    for (File f : list) {
+                        if (Files.isSymbolicLink(f.toPath())) continue;
+                        if (f.isDirectory()) dirs.push(f);
+                        else if (isPacketName(f.getName())) bulk.submit(f.getPath(), f, null);
+                    }
+                }
+            } else if (source.getName().toLowerCase(Locale.ROOT).endsWith(".zip")) {
+                try (ZipInputStream zin = new ZipInputStream(new BufferedInputStream(new FileInputStream(source)))) {
+                    ZipEntry e;
+                    while ((e = zin.getNextEntry()) != null) {
+                        if (e.isDirectory() || !isPacketName(e.getName())) continue;
+                        String name = source.getName() + "!" + e.getName();
+                        byte[] b = readLimited(zin);
+                        if (b == null) bulk.oversize(name);
+                        else bulk.submit(name, null, b);
+                    }
+                }
+            } else if (source.isFile()) {
+                bulk.submit(source.getPath(), source, null);
+            } else {
+                throw new FileNotFoundException(source.getPath());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            bulk.finish();
+        }
+
+        MeshAggregate total = new MeshAggregate();
+        for (MeshAggregate p : bulk.partials) total.merge(p);
+        BulkImport out = bulk.result;
+        out.aggregate = total;
+        out.elapsedMs = (System.nanoTime() - start) / 1_000_000L;
+        if (out.applied > 0 && sink != null && sink.report != null) {
+            try {
+                sink.report.put("directive", total.mergeDirectives(sink.report.optJSONObject("directive"), KNOWN_DIRECTIVES));
+                sink.report.put("mesh_import", total.toJson());
+            } catch (JSONException ignored) {
+                // sink keeps its previous directive
+            }
+        }
+        Metrics.end(M_IMPORT_ALL, t0);
+        return out;
+    }
+
     public static String readFile(File f) throws Exception {
         byte[] bytes;
         try (FileInputStream fis = new FileInputStream(f)) {
@@ -183,6 +297,183 @@ public class RnDMeshExchange {
 
     // === Helpers ===
 
+    /** A packet whose signature checked out; {@code id} is its lower-case hex SHA-512. */
+    static final class Verified {
+        String id;
+        CanonicalJson.Canonical canonical;
+    }
+
+    /** Canonicalize and check one packet; null if its signature does not match. */
+    static Verified verify(String json) throws Exception {
+        MessageDigest md = CanonicalJson.sha512();
+        CanonicalJson.Canonical c = CanonicalJson.canonicalize(json, "sha512", md);
+        String sha = c.heldOut == null ? "" : c.heldOut.toLowerCase(Locale.ROOT);
+        String recomputed = CanonicalJson.hex(md.digest());
+        boolean intact = sha.equals(recomputed);
+        if (!intact && ("\"" + SCHEMA_V1 + "\"").equals(c.members.get("schema"))) {
+            intact = legacyIntact(json, sha);
+        }
+        if (!intact) return null;
+        Verified v = new Verified();
+        v.id = sha;
+        v.canonical = c;
+        return v;
+    }
+
+    static boolean fold(MeshAggregate agg, Verified v) throws JSONException {
+        String d = v.canonical.members.get("directives");
+        String st = v.canonical.members.get("stats");
+        String ts = v.canonical.members.get("timestampUtc");
+        return agg.add(v.id,
+                d != null && d.startsWith("{") ? new JSONObject(d) : null,
+                st != null && st.startsWith("{") ? new JSONObject(st) : null,
+                ts != null && ts.length() >= 2 && ts.startsWith("\"") ? ts.substring(1, ts.length() - 1) : null);
+    }
+
+    /**
+     * Work queue of one {@link #importAll} run: bounded in-flight packets and bytes, shared
+     * claim set.
+     */
+    private static final class Bulk {
+        static final int KB = 1024;
+        final ForkJoinPool pool;
+        final Semaphore inFlight;
+        final Semaphore inFlightKb = new Semaphore((int) (MAX_IN_FLIGHT_BYTES / KB));
+        final Set<String> claimed = ConcurrentHashMap.newKeySet();
+        final ConcurrentLinkedQueue<MeshAggregate> idle = new ConcurrentLinkedQueue<>();
+        final List<MeshAggregate> partials = new CopyOnWriteArrayList<>();
+        final BulkImport result = new BulkImport();
+
+        Bulk(int parallelism) {
+            pool = new ForkJoinPool(parallelism);
+            inFlight = new Semaphore(parallelism * 4);
+        }
+
+        /** Queue one packet; {@code file} is read by the worker, else {@code bytes} is used. */
+        void submit(final String name, final File file, final byte[] bytes) throws InterruptedException {
+            long size = Math.min(bytes != null ? bytes.length : file.length(), MAX_PACKET_BYTES);
+            // a packet over the whole budget takes all of it and so runs alone
+            final int kb = (int) (Math.min(MAX_IN_FLIGHT_BYTES, size * PACKET_FOOTPRINT) / KB);
+            inFlight.acquire();
+            try {
+                inFlightKb.acquire(kb);
+            } catch (InterruptedException e) {
+                inFlight.release();
+                throw e;
+            }
+            synchronized (result) {
+                result.packets++;
+            }
+            pool.execute(() -> {
+                try {
+                    process(name, file, bytes);
+                } finally {
+                    inFlightKb.release(kb);
+                    inFlight.release();
+                }
+            });
+        }
+
+        /** An archive entry too large to read: counted as a packet, and as malformed. */
+        void oversize(String name) {
+            synchronized (result) {
+                result.packets++;
+            }
+            fail(name, "larger than " + MAX_PACKET_BYTES + " bytes");
+        }
+
+        private void process(String name, File file, byte[] bytes) {
+            try {
+                byte[] b = bytes;
+                if (b == null) {
+                    try (InputStream in = new FileInputStream(file)) {
+                        b = readLimited(in);
+                    }
+                    if (b == null) {
+                        fail(name, "larger than " + MAX_PACKET_BYTES + " bytes");
+                        return;
+                    }
+                }
+                synchronized (result) {
+                    result.bytes += b.length;
+                }
+                Verified v = verify(new String(b, StandardCharsets.UTF_8));
+                if (v == null) {
+                    Metrics.inc(C_REJECTED);
+                    synchronized (result) {
+                        result.rejected++;
+                        note(name, "signature mismatch");
+                    }
+                    return;
+                }
+                if (!claimed.add(v.id)) {
+                    synchronized (result) {
+                        result.duplicates++;
+                    }
+                    return;
+                }
+                MeshAggregate p = idle.poll();
+                if (p == null) {
+                    p = new MeshAggregate();
+                    partials.add(p);
+                }
+                try {
+                    fold(p, v);
+                } finally {
+                    idle.offer(p);
+                }
+                Metrics.inc(C_APPLIED);
+                synchronized (result) {
+                    result.applied++;
+                }
+            } catch (Exception e) {
+                fail(name, e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage());
+            }
+        }
+
+        void fail(String name, String why) {
+            synchronized (result) {
+                result.malformed++;
+                note(name, why);
+            }
+        }
+
+        private void note(String name, String why) {
+            if (result.failures.size() < MAX_FAILURES) result.failures.add(name + ": " + why);
+        }
+
+        void finish() {
+            pool.shutdown();
+            try {
+                pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                pool.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static boolean isPacketName(String name) {
+        return name.toLowerCase(Locale.ROOT).endsWith(".json");
+    }
+
+    /** Read {@code in} to the end; null if it is longer than MAX_PACKET_BYTES. */
+    private static byte[] readLimited(InputStream in) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int len;
+        while ((len = in.read(buffer)) != -1) {
+            if (bos.size() + len > MAX_PACKET_BYTES) {
+                while (in.read(buffer) != -1) {
+                    // drain the entry so the archive can move on
+                }
+                return null;
+            }
+            bos.write(buffer, 0, len);
+        }
+        return bos.toByteArray();
+    }
+
     private static MeshPacket buildPacket(RnDController.Feedback fb) throws Exception {
         MeshPacket pkt = new MeshPacket();
         pkt.timestampUtc = isoNow();
@@ -199,6 +490,13 @@ public class RnDMeshExchange {
         return pkt;
     }
 
+    /** v1 packets were signed over org.json's toString(), whatever its key order was. */
+    private static boolean legacyIntact(String jsonString, String sha) throws Exception {
+        JSONObject copy = new JSONObject(jsonString);
+        copy.remove("sha512");
+        return sha.equalsIgnoreCase(sha512(copy.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
     private static String sha512(byte[] b) throws Exception {
         MessageDigest md = MessageDigest.getInstance("SHA-512");
         md.update(b);
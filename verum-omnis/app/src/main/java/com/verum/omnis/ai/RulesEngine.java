@@ -2,6 +2,8 @@ package com.verum.omnis.ai;
 
 import android.content.Context;
 
+import com.verum.omnis.core.MessageStream;
+import com.verum.omnis.core.Metrics;
 import com.verum.omnis.core.RulesProvider;
 
 import org.json.JSONArray;
@@ -13,8 +15,10 @@ import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 
 /**
  * Verum Omnis Rules-Only Engine (v5.1.1-derived)
@@ -27,6 +31,14 @@ import java.util.Locale;
  *
  * Rule lists are loaded from assets via RulesProvider if available;
  * otherwise fall back to hardcoded defaults.
+ *
+ * Chat exports and mailboxes are scanned message by message (see MessageStream),
+ * with per-speaker and per-day aggregates in the diagnostics.
+ *
+ * Scoring follows the rule pack's scoring.weights: each category feeds one domain,
+ * a domain's score saturates with its hit count, and the result is the weighted mean
+ * over the domains the text scan covers.  Every hit is kept (category, rule, byte
+ * offset) in {@link Hits}, so reports can point at and explain each contribution.
  */
 public class RulesEngine {
 
@@ -34,6 +46,147 @@ public class RulesEngine {
         public double riskScore;
         public String[] topLiabilities;
         public JSONObject diagnostics;
+        public Hits hits;                    // every hit, in scan order
+    }
+
+    /**
+     * Rule hits of one scan in parallel primitive arrays, 8 bytes per hit: category and
+     * rule index within the category's list packed in one int, and the UTF-8 byte offset
+     * within the scanned text.  Each text (the file, or one message of a chat export or
+     * mailbox) is a segment with its own file offset, so {@link #offset} is the segment's
+     * offset plus the hit's.  Bodies stored verbatim (WhatsApp) are located exactly;
+     * decoded ones (mail, Telegram JSON) are anchored at the start of their message.
+     * Arrays are filled in fixed-size chunks and never copied.
+     */
+    public static final class Hits {
+        /** Hits recorded per scan; counts and scores keep going past it. */
+        public static final int MAX = 4_000_000;
+        private static final int CHUNK_BITS = 16, CHUNK = 1 << CHUNK_BITS, MASK = CHUNK - 1;
+
+        private int size;
+        private boolean truncated;
+        private int[][] keys = new int[4][];      // category << 24 | rule
+        private int[][] offsets = new int[4][];   // char offset while scanning, then byte offset
+        private int[] segStart = new int[16];     // first hit of each segment
+        private long[] segBase = new long[16];
+        private int segments;
+        /** Score contributed by one hit of each category. */
+        final double[] perHit = new double[CATEGORIES.length];
+        private final String[][] rules;
+
+        Hits(String[][] rules) {
+            this.rules = rules;
+        }
+
+        void add(int c, int r, int off) {
+            int at = size & MASK;
+            if (at == 0 && !newChunk()) return;
+            keys[size >>> CHUNK_BITS][at] = c << 24 | r;
+            offsets[size >>> CHUNK_BITS][at] = off;
+            size++;
+        }
+
+        private boolean newChunk() {
+            if (size >= MAX) {
+                truncated = true;
+                return false;
+            }
+            int ch = size >>> CHUNK_BITS;
+            if (ch == keys.length) {
+                keys = Arrays.copyOf(keys, ch * 2);
+                offsets = Arrays.copyOf(offsets, ch * 2);
+            }
+            keys[ch] = new int[CHUNK];
+            offsets[ch] = new int[CHUNK];
+            return true;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        /** More than MAX hits: the rest were counted and scored but not recorded. */
+        public boolean truncated() {
+            return truncated;
+        }
+
+        /** Index into {@link RulesEngine#CATEGORIES}. */
+        public int category(int i) {
+            return keys[i >>> CHUNK_BITS][i & MASK] >>> 24;
+        }
+
+        /** Index of the rule within its category's list. */
+        public int rule(int i) {
+            return keys[i >>> CHUNK_BITS][i & MASK] & 0xFFFFFF;
+        }
+
+        /** Byte offset of hit {@code i} in the file. */
+        public long offset(int i) {
+            int lo = 0, hi = segments - 1;
+            while (lo < hi) {
+                int mid = (lo + hi + 1) >>> 1;
+                if (segStart[mid] <= i) lo = mid;
+                else hi = mid - 1;
+            }
+            return segBase[lo] + offsets[i >>> CHUNK_BITS][i & MASK];
+        }
+
+        /**
+         * Close the segment of hits [from, size) found in {@code s}, which starts at file
+         * offset {@code base}: their char offsets become UTF-8 byte offsets.  Non-ASCII text
+         * gets one pass up to the last hit; every 16-char block records its extra bytes so
+         * far plus masks of its 2- and 3-byte chars, so each hit converts in constant time.
+         */
+        void endSegment(int from, String s, long base) {
+            if (from == size) return;
+            if (segments == segStart.length) {
+                segStart = Arrays.copyOf(segStart, segments * 2);
+                segBase = Arrays.copyOf(segBase, segments * 2);
+            }
+            segStart[segments] = from;
+            segBase[segments++] = base;
+            int maxOff = -1;
+            for (int i = from; i < size; i++) maxOff = Math.max(maxOff, offsets[i >>> CHUNK_BITS][i & MASK]);
+            int ascii = 0;
+            while (ascii < maxOff && s.charAt(ascii) < 0x80) ascii++;
+            if (ascii >= maxOff) return;
+            // per block: extra bytes before it << 32 | 3-byte-char mask << 16 | non-ASCII mask
+            long[] blocks = new long[(maxOff >> 4) + 1];
+            long e = 0;
+            for (int blk = ascii >> 4; blk < blocks.length; blk++) {
+                int wide = 0, wider = 0;
+                for (int k = blk << 4, end = Math.min(k + 16, maxOff); k < end; k++) {
+                    char ch = s.charAt(k);
+                    if (ch < 0x80) continue;
+                    wide |= 1 << (k & 15);
+                    if (ch >= 0x800 && !Character.isSurrogate(ch)) wider |= 1 << (k & 15);   // a pair is 2 + 2
+                }
+                blocks[blk] = e << 32 | (long) wider << 16 | wide;
+                e += Integer.bitCount(wide) + Integer.bitCount(wider);
+            }
+            for (int i = from; i < size; i++) {
+                int[] o = offsets[i >>> CHUNK_BITS];
+                int off = o[i & MASK];
+                long blk = blocks[off >> 4];
+                int below = (1 << (off & 15)) - 1;
+                o[i & MASK] = off + (int) (blk >>> 32) + Integer.bitCount((int) blk & below)
+                        + Integer.bitCount((int) (blk >>> 16) & below);
+            }
+        }
+
+        /** e.g. "evasion/3". */
+        public String ruleId(int i) {
+            return CATEGORIES[category(i)] + "/" + rule(i);
+        }
+
+        /** The (lower-cased) rule text that matched. */
+        public String ruleText(int i) {
+            return rules[category(i)][rule(i)];
+        }
+
+        public double contribution(int i) {
+            return perHit[category(i)];
+        }
     }
 
     // Hardcoded fallback lists
@@ -57,21 +210,47 @@ public class RulesEngine {
             "invoice","wire","transfer","swift","bank","cash","under the table","kickback"
     );
 
-    // Dynamic lists (overwritten if JSON asset loads)
-    private static List<String> KEYWORDS = new ArrayList<>(KEYWORDS_FALLBACK);
-    private static List<String> ENTITIES = new ArrayList<>(ENTITIES_FALLBACK);
-    private static List<String> EVASION = new ArrayList<>(EVASION_FALLBACK);
-    private static List<String> CONTRADICT = new ArrayList<>(CONTRADICT_FALLBACK);
-    private static List<String> CONCEAL = new ArrayList<>(CONCEAL_FALLBACK);
-    private static List<String> FINANCIAL = new ArrayList<>(FINANCIAL_FALLBACK);
+    // Dynamic lists (overwritten if JSON asset loads); held lower-cased, as is scanned text
+    private static List<String> KEYWORDS = lower(KEYWORDS_FALLBACK);
+    private static List<String> ENTITIES = lower(ENTITIES_FALLBACK);
+    private static List<String> EVASION = lower(EVASION_FALLBACK);
+    private static List<String> CONTRADICT = lower(CONTRADICT_FALLBACK);
+    private static List<String> CONCEAL = lower(CONCEAL_FALLBACK);
+    private static List<String> FINANCIAL = lower(FINANCIAL_FALLBACK);
+
+    /** Order of the per-category counters; also the diagnostics keys. */
+    public static final String[] CATEGORIES = {"keywords", "entities", "evasion", "contradictions", "concealment", "financial"};
+    static final int KW = 0, ENT = 1, EV = 2, CON = 3, HID = 4, FIN = 5;
+    /** scoring.weights domains the text scan covers, and the domain each category feeds. */
+    static final String[] DOMAINS = {"contradictions", "behavioral", "finance", "legal"};
+    private static final int[] DOMAIN_OF = {3, 3, 1, 0, 0, 2};
+    private static final double[] WEIGHTS_FALLBACK = {0.4, 0.15, 0.1, 0.05};
+    /** Hits at which a domain's score reaches one half. */
+    static final double HALF_SATURATION = 3;
+    static final int MAX_HIGHLIGHTS = 25;
+
+    private static double[] WEIGHTS = WEIGHTS_FALLBACK.clone();
+    private static double DISHONESTY_PERCENT = 20;
+    private static boolean HIGHLIGHT_MINOR = true;
+    /** Per-time-window aggregates are calendar days (UTC). */
+    static final long WINDOW_MS = 86_400_000L;
+    /** Distinct speakers tracked before the rest are pooled as "(other)". */
+    static final int MAX_SPEAKERS = 10_000;
+    static final int REPORT_SPEAKERS = 50, REPORT_WINDOWS = 366;
 
     private static boolean loadedFromAssets = false;
 
+    private static final int M_LOAD = Metrics.stage("rules.ensure_loaded");
+    private static final int M_SCAN = Metrics.stage("rules.scan");
+    private static final int C_BYTES = Metrics.counter("rules_bytes_scanned");
+    private static final int C_HITS = Metrics.counter("rules_hits");
+
     /**
      * Attempt to load detection rules JSON from assets (once per process).
      */
     private static void ensureRulesLoaded(Context ctx) {
         if (loadedFromAssets) return;
+        long t0 = Metrics.begin();
         try {
             String jsonText = RulesProvider.getDetectionRules(ctx);
             JSONObject obj = new JSONObject(jsonText);
@@ -83,31 +262,64 @@ public class RulesEngine {
             CONCEAL = toList(obj.optJSONArray("concealment"), CONCEAL_FALLBACK);
             FINANCIAL = toList(obj.optJSONArray("financial"), FINANCIAL_FALLBACK);
 
+            JSONObject scoring = obj.optJSONObject("scoring");
+            JSONObject w = scoring == null ? null : scoring.optJSONObject("weights");
+            double[] weights = new double[DOMAINS.length];
+            for (int i = 0; i < DOMAINS.length; i++) {
+                weights[i] = Math.max(0, w == null ? WEIGHTS_FALLBACK[i] : w.optDouble(DOMAINS[i], 0));
+            }
+            WEIGHTS = weights;
+            if (scoring != null) DISHONESTY_PERCENT = scoring.optDouble("dishonesty_threshold_percent", 20);
+            JSONObject enforcement = obj.optJSONObject("enforcement");
+            if (enforcement != null) HIGHLIGHT_MINOR = enforcement.optBoolean("highlight_minor_anomalies", true);
+
             loadedFromAssets = true;
             System.out.println("RulesEngine: Loaded detection rules from assets.");
         } catch (Exception e) {
             // fallback silently
             loadedFromAssets = true;
             System.out.println("RulesEngine: Using fallback hardcoded rules.");
+        } finally {
+            Metrics.end(M_LOAD, t0);
         }
     }
 
     public static Result analyzeFile(Context ctx, File file) {
+        return analyzeFile(ctx, file, new MessageStream.Sink[0]);
+    }
+
+    /**
+     * Scan {@code file}.  Chat exports and mailboxes are streamed message by message and
+     * every message is also handed to {@code also}, so other per-message consumers share
+     * the single pass over the file; other files are scanned as one text.
+     */
+    public static Result analyzeFile(Context ctx, File file, MessageStream.Sink... also) {
         ensureRulesLoaded(ctx);
         Result r = new Result();
+        long t0 = Metrics.begin();
         try {
-            String text = readAll(file).toLowerCase(Locale.ROOT);
-
-            int kw = countMatches(text, KEYWORDS);
-            int ent = countMatches(text, ENTITIES);
-            int ev = countMatches(text, EVASION);
-            int con = countMatches(text, CONTRADICT);
-            int hid = countMatches(text, CONCEAL);
-            int fin = countMatches(text, FINANCIAL);
+            int[] c = new int[CATEGORIES.length];
+            JSONObject d = new JSONObject();
+            List<List<String>> lists = lists();
+            Hits hits = new Hits(toArrays(lists));
+            if (MessageStream.detect(file) != MessageStream.Format.NONE) {
+                MessageScan scan = new MessageScan(lists, hits);
+                MessageStream.Stats st = MessageStream.parse(file, m -> {
+                    scan.accept(m);
+                    for (MessageStream.Sink s : also) s.accept(m);
+                });
+                Metrics.add(C_BYTES, st.bytes);
+                System.arraycopy(scan.totals, 0, c, 0, c.length);
+                scan.describe(d, st);
+            } else {
+                String raw = readAll(file);
+                Metrics.add(C_BYTES, file.length());
+                count(lists, raw.toLowerCase(Locale.ROOT), raw, c, hits, 0);
+            }
+            int kw = c[KW], ent = c[ENT], ev = c[EV], con = c[CON], hid = c[HID], fin = c[FIN];
+            Metrics.add(C_HITS, kw + ent + ev + con + hid + fin);
 
-            // Heuristic scoring
-            double score = (kw*0.05 + ent*0.04 + ev*0.08 + con*0.1 + hid*0.12 + fin*0.06);
-            score = Math.min(1.0, score);
+            double score = score(c, hits, d);
 
             List<String> liab = new ArrayList<>();
             if (con >= 2) liab.add("Contradictions in statements");
@@ -115,20 +327,19 @@ public class RulesEngine {
             if (ev  >= 2) liab.add("Evasion/Gaslighting indicators");
             if (fin >= 2) liab.add("Financial irregularity signals");
             if (kw  >= 3 && ent >= 1) liab.add("Legal subject flags present");
+            if (score * 100 >= DISHONESTY_PERCENT) {
+                liab.add(String.format(Locale.US, "Weighted score %.0f%% at or above dishonesty threshold (%.0f%%)",
+                        score * 100, DISHONESTY_PERCENT));
+            }
 
             if (liab.isEmpty()) liab.add("General risk");
 
             r.riskScore = score;
             r.topLiabilities = liab.toArray(new String[0]);
 
-            JSONObject d = new JSONObject();
-            d.put("keywords", kw);
-            d.put("entities", ent);
-            d.put("evasion", ev);
-            d.put("contradictions", con);
-            d.put("concealment", hid);
-            d.put("financial", fin);
+            for (int i = 0; i < CATEGORIES.length; i++) d.put(CATEGORIES[i], c[i]);
             r.diagnostics = d;
+            r.hits = hits;
 
             return r;
         } catch (Exception e) {
@@ -136,22 +347,221 @@ public class RulesEngine {
             r.topLiabilities = new String[]{"Rules engine error: " + e.getMessage()};
             r.diagnostics = new JSONObject();
             return r;
+        } finally {
+            Metrics.end(M_SCAN, t0);
+        }
+    }
+
+    /** Add per-category hits in lower-cased {@code text} to {@code into}. */
+    static void count(String text, int[] into) {
+        count(lists(), text, null, into, null, 0);
+    }
+
+    /**
+     * Add per-category hits in lower-cased {@code text} to {@code into}, recording each in
+     * {@code hits} (if any) at {@code base} plus its UTF-8 offset in {@code original}.
+     */
+    static void count(List<List<String>> lists, String text, String original, int[] into, Hits hits, long base) {
+        int from = hits == null ? 0 : hits.size();
+        for (int c = 0; c < CATEGORIES.length; c++) {
+            into[c] += countMatches(text, lists.get(c), c, hits);
+        }
+        if (hits != null) {
+            hits.endSegment(from, original != null && original.length() == text.length() ? original : text, base);
         }
     }
 
-    private static int countMatches(String text, List<String> needles) {
+    private static int countMatches(String text, List<String> needles, int c, Hits hits) {
         int total = 0;
-        for (String n : needles) {
+        for (int r = 0; r < needles.size(); r++) {
+            String n = needles.get(r);
+            if (n.isEmpty()) continue;
             int idx = 0;
             while (true) {
-                idx = text.indexOf(n.toLowerCase(Locale.ROOT), idx);
+                idx = text.indexOf(n, idx);
                 if (idx == -1) break;
-                total++; idx += n.length();
+                total++;
+                if (hits != null) hits.add(c, r, idx);
+                idx += n.length();
             }
         }
         return total;
     }
 
+    /** Rule lists in CATEGORIES order, as loaded when the scan starts. */
+    private static List<List<String>> lists() {
+        return Arrays.asList(KEYWORDS, ENTITIES, EVASION, CONTRADICT, CONCEAL, FINANCIAL);
+    }
+
+    private static String[][] toArrays(List<List<String>> lists) {
+        String[][] out = new String[lists.size()][];
+        for (int i = 0; i < out.length; i++) out[i] = lists.get(i).toArray(new String[0]);
+        return out;
+    }
+
+    /**
+     * Weighted score from the category counts.  Each domain scores n / (n + HALF_SATURATION)
+     * over its hits; the result is the weight-normalised sum.  Fills the per-hit
+     * contributions of {@code hits} and adds "scoring" and "highlights" to {@code d}.
+     */
+    static double score(int[] c, Hits hits, JSONObject d) throws Exception {
+        double[] w = WEIGHTS;
+        int[] n = new int[DOMAINS.length];
+        for (int i = 0; i < c.length; i++) n[DOMAIN_OF[i]] += c[i];
+        double wsum = 0;
+        for (double x : w) wsum += x;
+        if (wsum <= 0) {
+            w = new double[DOMAINS.length];
+            Arrays.fill(w, 1);
+            wsum = DOMAINS.length;
+        }
+        double score = 0;
+        double[] part = new double[DOMAINS.length];
+        JSONObject domains = new JSONObject();
+        for (int k = 0; k < DOMAINS.length; k++) {
+            double s = n[k] / (n[k] + HALF_SATURATION);
+            part[k] = w[k] / wsum * s;
+            score += part[k];
+            JSONObject o = new JSONObject();
+            o.put("weight", w[k]);
+            o.put("hits", n[k]);
+            o.put("score", s);
+            o.put("contribution", part[k]);
+            domains.put(DOMAINS[k], o);
+        }
+        for (int i = 0; i < c.length; i++) {
+            int k = DOMAIN_OF[i];
+            hits.perHit[i] = n[k] == 0 ? 0 : part[k] / n[k];
+        }
+        JSONObject sc = new JSONObject();
+        sc.put("domains", domains);
+        sc.put("dishonesty_threshold_percent", DISHONESTY_PERCENT);
+        sc.put("hits_recorded", hits.size());
+        sc.put("hits_truncated", hits.truncated());
+        d.put("scoring", sc);
+        d.put("highlights", highlights(hits));
+        return Math.min(1.0, score);
+    }
+
+    /**
+     * Rules ranked by what they contributed, each with its first offset.  Without
+     * highlight_minor_anomalies, rules that matched only once are left out.
+     */
+    private static JSONArray highlights(Hits hits) throws Exception {
+        int[] base = new int[CATEGORIES.length + 1];
+        for (int c = 0; c < CATEGORIES.length; c++) base[c + 1] = base[c] + hits.rules[c].length;
+        int[] count = new int[base[CATEGORIES.length]];
+        long[] first = new long[count.length];
+        for (int i = 0; i < hits.size(); i++) {
+            int k = base[hits.category(i)] + hits.rule(i);
+            if (count[k]++ == 0) first[k] = hits.offset(i);
+        }
+        List<int[]> ranked = new ArrayList<>(); // {category, rule, slot}
+        for (int c = 0; c < CATEGORIES.length; c++) {
+            for (int r = 0; r < hits.rules[c].length; r++) {
+                int k = base[c] + r;
+                if (count[k] == 0 || (!HIGHLIGHT_MINOR && count[k] < 2)) continue;
+                ranked.add(new int[]{c, r, k});
+            }
+        }
+        ranked.sort((a, b) -> Double.compare(count[b[2]] * hits.perHit[b[0]], count[a[2]] * hits.perHit[a[0]]));
+        JSONArray out = new JSONArray();
+        for (int i = 0; i < Math.min(MAX_HIGHLIGHTS, ranked.size()); i++) {
+            int[] x = ranked.get(i);
+            JSONObject o = new JSONObject();
+            o.put("rule", CATEGORIES[x[0]] + "/" + x[1]);
+            o.put("text", hits.rules[x[0]][x[1]]);
+            o.put("domain", DOMAINS[DOMAIN_OF[x[0]]]);
+            o.put("hits", count[x[2]]);
+            o.put("first_offset", first[x[2]]);
+            o.put("contribution", count[x[2]] * hits.perHit[x[0]]);
+            out.put(o);
+        }
+        return out;
+    }
+
+    /** Per-message rule counts with per-speaker and per-day aggregates. */
+    static final class MessageScan implements MessageStream.Sink {
+        final int[] totals = new int[CATEGORIES.length];
+        // per speaker: messages, then one counter per category
+        final Map<String, int[]> speakers = new HashMap<>();
+        // per day: messages, hits
+        final Map<Long, int[]> windows = new HashMap<>();
+        private final int[] scratch = new int[CATEGORIES.length];
+        private final List<List<String>> lists;
+        private final Hits hits;
+
+        MessageScan(List<List<String>> lists, Hits hits) {
+            this.lists = lists;
+            this.hits = hits;
+        }
+
+        @Override
+        public void accept(MessageStream.Message m) {
+            Arrays.fill(scratch, 0);
+            count(lists, m.body.toLowerCase(Locale.ROOT), m.body, scratch, hits,
+                    m.bodyOffset >= 0 ? m.bodyOffset : m.offset);
+            int found = 0;
+            for (int i = 0; i < scratch.length; i++) {
+                totals[i] += scratch[i];
+                found += scratch[i];
+            }
+            String who = m.sender.isEmpty() ? "(system)" : m.sender;
+            int[] sp = speakers.get(who);
+            if (sp == null) {
+                if (speakers.size() >= MAX_SPEAKERS) who = "(other)";
+                sp = speakers.get(who);
+                if (sp == null) {
+                    sp = new int[1 + CATEGORIES.length];
+                    speakers.put(who, sp);
+                }
+            }
+            sp[0]++;
+            for (int i = 0; i < scratch.length; i++) sp[1 + i] += scratch[i];
+            if (m.timeMs != MessageStream.NO_TIME) {
+                long day = Math.floorDiv(m.timeMs, WINDOW_MS);
+                int[] w = windows.get(day);
+                if (w == null) windows.put(day, w = new int[2]);
+                w[0]++;
+                w[1] += found;
+            }
+        }
+
+        /** Adds format, message count, the busiest speakers and the days with most hits. */
+        void describe(JSONObject d, MessageStream.Stats st) throws Exception {
+            d.put("format", st.format.name());
+            d.put("messages", st.messages);
+            d.put("speaker_count", speakers.size());
+
+            List<Map.Entry<String, int[]>> sp = new ArrayList<>(speakers.entrySet());
+            sp.sort((a, b) -> a.getValue()[0] != b.getValue()[0]
+                    ? Integer.compare(b.getValue()[0], a.getValue()[0]) : a.getKey().compareTo(b.getKey()));
+            JSONObject speakersOut = new JSONObject();
+            for (int k = 0; k < Math.min(REPORT_SPEAKERS, sp.size()); k++) {
+                int[] v = sp.get(k).getValue();
+                JSONObject o = new JSONObject();
+                o.put("messages", v[0]);
+                for (int i = 0; i < CATEGORIES.length; i++) if (v[1 + i] > 0) o.put(CATEGORIES[i], v[1 + i]);
+                speakersOut.put(sp.get(k).getKey(), o);
+            }
+            d.put("speakers", speakersOut);
+
+            List<Map.Entry<Long, int[]>> w = new ArrayList<>(windows.entrySet());
+            w.sort((a, b) -> a.getValue()[1] != b.getValue()[1]
+                    ? Integer.compare(b.getValue()[1], a.getValue()[1]) : Long.compare(a.getKey(), b.getKey()));
+            JSONArray windowsOut = new JSONArray();
+            for (int k = 0; k < Math.min(REPORT_WINDOWS, w.size()) && w.get(k).getValue()[1] > 0; k++) {
+                JSONObject o = new JSONObject();
+                o.put("day_start_ms", w.get(k).getKey() * WINDOW_MS);
+                o.put("messages", w.get(k).getValue()[0]);
+                o.put("hits", w.get(k).getValue()[1]);
+                windowsOut.put(o);
+            }
+            d.put("windows", windowsOut);
+            d.put("active_days", windows.size());
+        }
+    }
+
     private static String readAll(File f) throws Exception {
         byte[] bytes;
         try (FileInputStream fis = new FileInputStream(f)) {
@@ -167,11 +577,17 @@ public class RulesEngine {
     }
 
     private static List<String> toList(JSONArray arr, List<String> fallback) {
-        if (arr == null) return fallback;
+        if (arr == null) return lower(fallback);
         List<String> list = new ArrayList<>();
         for (int i = 0; i < arr.length(); i++) {
-            list.add(arr.optString(i));
+            list.add(arr.optString(i).toLowerCase(Locale.ROOT));
         }
-        return list.isEmpty() ? fallback : list;
+        return list.isEmpty() ? lower(fallback) : list;
+    }
+
+    private static List<String> lower(List<String> l) {
+        List<String> out = new ArrayList<>(l.size());
+        for (String s : l) out.add(s.toLowerCase(Locale.ROOT));
+        return out;
     }
 }
@@ -0,0 +1,366 @@
+package com.verum.omnis.ai;
+
+import com.verum.omnis.core.Metrics;
+
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Model-free semantic representation for contradictions.semantic_drift
+ * - Each statement becomes a sparse vector of hashed word unigrams, word bigrams and
+ *   character 4-grams (2^18 buckets), weighted by sublinear TF times corpus IDF and
+ *   L2-normalized; deterministic and CPU-only, so no ONNX model is needed
+ * - Vectors live in CSR primitive arrays (row offsets, bucket ids, weights)
+ * - Drift search is per speaker: a sparse all-pairs cosine over an inverted index, cut
+ *   into row blocks that run on every core.  Very common buckets are left out of the
+ *   index and bounded instead (Cauchy-Schwarz on the left-out part of each row); rows
+ *   made mostly of common buckets are compared exactly, so no pair above the floor is missed
+ * - A drift is two statements by the same speaker that are about the same thing
+ *   (cosine &gt;= TOPIC_MIN) yet differ by at least embedding_delta_min (1 - cosine)
+ */
+public final class SemanticDriftIndex {
+
+    private static final int M_VECTORIZE = Metrics.stage("semantic.vectorize");
+    private static final int M_SEARCH = Metrics.stage("semantic.search");
+    private static final int C_PAIRS = Metrics.counter("semantic_pairs_scored");
+
+    static final int DIM_BITS = 18;
+    static final int DIM = 1 << DIM_BITS;
+    /** Below this cosine two statements are taken to be about different things. */
+    public static final double TOPIC_MIN = 0.45;
+    /** Buckets in more than this fraction of statements are bounded rather than indexed. */
+    static final double COMMON_DF = 0.05;
+    static final int BLOCK = 128;
+    public static final int MAX_RESULTS = 10_000;
+
+    public static class Drift {
+        public String speaker, textA, textB;
+        public long timeA, timeB;
+        public double similarity, delta;
+    }
+
+    public final double deltaMin;
+
+    private String[] texts = new String[256];
+    private long[] times = new long[256];
+    private int[] speakers = new int[256];
+    private final List<String> speakerNames = new ArrayList<>();
+    private final Map<String, Integer> speakerIds = new HashMap<>();
+    private int size;
+
+    // raw term frequencies, CSR
+    private int[] rowStart = new int[257];
+    private int[] dims = new int[4096];
+    private float[] tf = new float[4096];
+    private final int[] df = new int[DIM];
+
+    public SemanticDriftIndex(double deltaMin) {
+        this.deltaMin = deltaMin;
+    }
+
+    public static SemanticDriftIndex fromRules(JSONObject rules) {
+        JSONObject c = rules == null ? null : rules.optJSONObject("contradictions");
+        JSONObject sd = c == null ? null : c.optJSONObject("semantic_drift");
+        return new SemanticDriftIndex(sd == null ? 0.12 : sd.optDouble("embedding_delta_min", 0.12));
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /** Vectorize and store one statement; returns its id. */
+    public int add(String speaker, long timeMs, String text) {
+        long t0 = Metrics.begin();
+        Features f = features(text);
+        synchronized (this) {
+            if (size == texts.length) {
+                int cap = size * 2;
+                texts = Arrays.copyOf(texts, cap);
+                times = Arrays.copyOf(times, cap);
+                speakers = Arrays.copyOf(speakers, cap);
+                rowStart = Arrays.copyOf(rowStart, cap + 1);
+            }
+            int at = rowStart[size];
+            if (at + f.n > dims.length) {
+                int cap = Math.max(dims.length * 2, at + f.n);
+                dims = Arrays.copyOf(dims, cap);
+                tf = Arrays.copyOf(tf, cap);
+            }
+            System.arraycopy(f.dims, 0, dims, at, f.n);
+            System.arraycopy(f.tf, 0, tf, at, f.n);
+            for (int i = 0; i < f.n; i++) df[f.dims[i]]++;
+            Integer s = speakerIds.get(speaker);
+            if (s == null) {
+                s = speakerNames.size();
+                speakerIds.put(speaker, s);
+                speakerNames.add(speaker);
+            }
+            int id = size++;
+            texts[id] = text;
+            times[id] = timeMs;
+            speakers[id] = s;
+            rowStart[size] = at + f.n;
+            Metrics.end(M_VECTORIZE, t0);
+            return id;
+        }
+    }
+
+    /** Cosine similarity of two stored statements under the current IDF. */
+    public synchronized double similarity(int a, int b) {
+        float[] w = weights();
+        return dot(a, b, w);
+    }
+
+    /**
+     * Every same-speaker drift in the corpus, most similar (i.e. most clearly the
+     * same subject) first, capped at MAX_RESULTS.
+     */
+    public synchronized List<Drift> drifts() {
+        List<Drift> out = new ArrayList<>();
+        if (size < 2) return out;
+        long t0 = Metrics.begin();
+        float[] w = weights();
+
+        // bucket-frequency cut: common buckets are bounded per row instead of indexed
+        int commonDf = Math.max(8, (int) (size * COMMON_DF));
+        float[] residual = new float[size];
+        for (int r = 0; r < size; r++) {
+            double s = 0;
+            for (int k = rowStart[r]; k < rowStart[r + 1]; k++) {
+                if (df[dims[k]] > commonDf) s += (double) w[k] * w[k];
+            }
+            residual[r] = (float) Math.sqrt(s);
+        }
+
+        // rows grouped by speaker (counting sort keeps id order inside a group)
+        int speakersN = speakerNames.size();
+        int[] groupStart = new int[speakersN + 1];
+        for (int r = 0; r < size; r++) groupStart[speakers[r] + 1]++;
+        for (int s = 0; s < speakersN; s++) groupStart[s + 1] += groupStart[s];
+        int[] order = new int[size];
+        int[] fill = Arrays.copyOf(groupStart, speakersN);
+        for (int r = 0; r < size; r++) order[fill[speakers[r]]++] = r;
+
+        double upper = 1 - deltaMin;
+        for (int s = 0; s < speakersN; s++) {
+            int from = groupStart[s], to = groupStart[s + 1];
+            if (to - from < 2) continue;
+            searchGroup(order, from, to, w, residual, commonDf, upper, out);
+        }
+        Collections.sort(out, (a, b) -> Double.compare(b.similarity, a.similarity));
+        if (out.size() > MAX_RESULTS) out = new ArrayList<>(out.subList(0, MAX_RESULTS));
+        Metrics.end(M_SEARCH, t0);
+        return out;
+    }
+
+    /** Blocked sparse self-join of one speaker's rows. */
+    private void searchGroup(int[] order, int from, int to, float[] w, float[] residual,
+                             int commonDf, double upper, List<Drift> out) {
+        final int m = to - from;
+        // inverted index over the group: bucket -> (local row, weight), ascending local row
+        int[] postCount = new int[DIM + 1];
+        for (int i = 0; i < m; i++) {
+            int r = order[from + i];
+            for (int k = rowStart[r]; k < rowStart[r + 1]; k++) {
+                if (df[dims[k]] <= commonDf) postCount[dims[k] + 1]++;
+            }
+        }
+        for (int d = 0; d < DIM; d++) postCount[d + 1] += postCount[d];
+        int[] postRow = new int[postCount[DIM]];
+        float[] postW = new float[postCount[DIM]];
+        int[] cursor = Arrays.copyOf(postCount, DIM);
+        for (int i = 0; i < m; i++) {
+            int r = order[from + i];
+            for (int k = rowStart[r]; k < rowStart[r + 1]; k++) {
+                int d = dims[k];
+                if (df[d] > commonDf) continue;
+                postRow[cursor[d]] = i;
+                postW[cursor[d]++] = w[k];
+            }
+        }
+
+        // each block allocates an m-wide accumulator, so huge groups get fewer, larger blocks
+        int rowsPerBlock = Math.max(BLOCK, m / (Runtime.getRuntime().availableProcessors() * 8));
+        int blocks = (m + rowsPerBlock - 1) / rowsPerBlock;
+        List<List<Drift>> perBlock = new ArrayList<>(Collections.nCopies(blocks, (List<Drift>) null));
+        IntStream.range(0, blocks).parallel().forEach(b -> {
+            float[] acc = new float[m];
+            int[] touched = new int[m];
+            List<Drift> found = new ArrayList<>();
+            long scored = 0;
+            for (int i = b * rowsPerBlock, end = Math.min(m, i + rowsPerBlock); i < end; i++) {
+                int r = order[from + i], nt = 0;
+                for (int k = rowStart[r]; k < rowStart[r + 1]; k++) {
+                    int d = dims[k];
+                    if (df[d] > commonDf) continue;
+                    float wk = w[k];
+                    // postings ascend by local row: find the first row after i
+                    int p = firstAfter(postRow, postCount[d], postCount[d + 1], i);
+                    for (int e = postCount[d + 1]; p < e; p++) {
+                        int j = postRow[p];
+                        if (acc[j] == 0) touched[nt++] = j;
+                        acc[j] += wk * postW[p];
+                    }
+                }
+                float ri = residual[r];
+                for (int t = 0; t < nt; t++) {
+                    int j = touched[t];
+                    float partial = acc[j];
+                    acc[j] = 0;
+                    int rj = order[from + j];
+                    if (ri >= TOPIC_MIN && residual[rj] >= TOPIC_MIN) continue; // heavy pair, below
+                    if (partial + ri * residual[rj] < TOPIC_MIN) continue;
+                    scored++;
+                    double sim = ri == 0 || residual[rj] == 0 ? partial : dot(r, rj, w);
+                    if (sim < TOPIC_MIN || sim > upper) continue;
+                    found.add(drift(r, rj, sim));
+                }
+            }
+            Metrics.add(C_PAIRS, scored);
+            perBlock.set(b, found);
+        });
+        for (List<Drift> l : perBlock) out.addAll(l);
+
+        // Heavy rows can reach the floor on common buckets alone, which the index never
+        // sees; compare them pairwise.  They are few: common buckets carry little IDF.
+        int[] heavy = new int[m];
+        int nh = 0;
+        for (int i = 0; i < m; i++) if (residual[order[from + i]] >= TOPIC_MIN) heavy[nh++] = order[from + i];
+        final int heavyN = nh;
+        List<List<Drift>> perHeavy = new ArrayList<>(Collections.nCopies(heavyN, (List<Drift>) null));
+        IntStream.range(0, heavyN).parallel().forEach(a -> {
+            List<Drift> found = new ArrayList<>();
+            for (int b = a + 1; b < heavyN; b++) {
+                double sim = dot(heavy[a], heavy[b], w);
+                if (sim >= TOPIC_MIN && sim <= upper) found.add(drift(heavy[a], heavy[b], sim));
+            }
+            Metrics.add(C_PAIRS, heavyN - a - 1);
+            perHeavy.set(a, found);
+        });
+        for (List<Drift> l : perHeavy) out.addAll(l);
+    }
+
+    private static int firstAfter(int[] rows, int lo, int hi, int i) {
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (rows[mid] <= i) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private Drift drift(int a, int b, double sim) {
+        if (times[b] < times[a]) {
+            int t = a; a = b; b = t;
+        }
+        Drift d = new Drift();
+        d.speaker = speakerNames.get(speakers[a]);
+        d.textA = texts[a];
+        d.textB = texts[b];
+        d.timeA = times[a];
+        d.timeB = times[b];
+        d.similarity = sim;
+        d.delta = 1 - sim;
+        return d;
+    }
+
+    /** Exact sparse dot product; rows keep their buckets sorted. */
+    private double dot(int a, int b, float[] w) {
+        int i = rowStart[a], ie = rowStart[a + 1], j = rowStart[b], je = rowStart[b + 1];
+        double s = 0;
+        while (i < ie && j < je) {
+            int da = dims[i], db = dims[j];
+            if (da == db) s += (double) w[i++] * w[j++];
+            else if (da < db) i++;
+            else j++;
+        }
+        return s;
+    }
+
+    /** (1 + ln tf) * idf, L2-normalized per row, parallel to {@code tf}. */
+    private float[] weights() {
+        int nnz = rowStart[size];
+        float[] w = new float[nnz];
+        float[] idf = new float[DIM];
+        for (int d = 0; d < DIM; d++) {
+            if (df[d] > 0) idf[d] = (float) (Math.log((1.0 + size) / (1.0 + df[d])) + 1);
+        }
+        IntStream.range(0, size).parallel().forEach(r -> {
+            double norm = 0;
+            for (int k = rowStart[r]; k < rowStart[r + 1]; k++) {
+                float v = (float) (1 + Math.log(tf[k])) * idf[dims[k]];
+                w[k] = v;
+                norm += (double) v * v;
+            }
+            if (norm == 0) return;
+            float inv = (float) (1 / Math.sqrt(norm));
+            for (int k = rowStart[r]; k < rowStart[r + 1]; k++) w[k] *= inv;
+        });
+        return w;
+    }
+
+    // ------------------------------------------------------------ features
+
+    static final class Features {
+        int[] dims;
+        float[] tf;
+        int n;
+    }
+
+    /** Hashed word unigrams, bigrams and padded character 4-grams, sorted and merged. */
+    static Features features(String text) {
+        String s = text.toLowerCase(Locale.ROOT);
+        int[] raw = new int[16];
+        int n = 0;
+        long prevWord = 0;
+        int len = s.length();
+        for (int i = 0; i < len; ) {
+            while (i < len && !Character.isLetterOrDigit(s.charAt(i))) i++;
+            if (i >= len) break;
+            int start = i;
+            while (i < len && Character.isLetterOrDigit(s.charAt(i))) i++;
+            long word = 0x84222325CBF29CE4L;
+            for (int k = start; k < i; k++) word = (word ^ s.charAt(k)) * 0x100000001B3L;
+            if (n + (i - start) + 8 > raw.length) raw = Arrays.copyOf(raw, raw.length * 2 + i - start + 8);
+            raw[n++] = bucket(word, 1);
+            if (prevWord != 0) raw[n++] = bucket(prevWord * 31 + word, 2);
+            prevWord = word;
+            // character 4-grams over " word "
+            int wl = i - start + 2;
+            for (int k = 0; k + 4 <= wl; k++) {
+                long g = 0;
+                for (int c = k; c < k + 4; c++) {
+                    char ch = c == 0 || c == wl - 1 ? ' ' : s.charAt(start + c - 1);
+                    g = g * 0x100000001B3L + ch;
+                }
+                raw[n++] = bucket(g, 3);
+            }
+        }
+        Arrays.sort(raw, 0, n);
+        Features f = new Features();
+        f.dims = new int[n];
+        f.tf = new float[n];
+        for (int i = 0; i < n; i++) {
+            if (f.n > 0 && f.dims[f.n - 1] == raw[i]) {
+                f.tf[f.n - 1]++;
+            } else {
+                f.dims[f.n] = raw[i];
+                f.tf[f.n++] = 1;
+            }
+        }
+        return f;
+    }
+
+    private static int bucket(long h, int kind) {
+        h = MicroDriftIndex.mix(h * 0x9E3779B97F4A7C15L + kind);
+        return (int) (h >>> (64 - DIM_BITS));
+    }
+}
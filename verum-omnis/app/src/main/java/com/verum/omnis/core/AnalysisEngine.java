@@ -1,18 +1,41 @@
 package com.verum.omnis.core;
 
 import android.content.Context;
+import android.util.Log;
 
+import com.verum.omnis.ai.BrainOrchestrator;
+import com.verum.omnis.ai.Evidence;
+import com.verum.omnis.ai.MicroDriftIndex;
 import com.verum.omnis.ai.RulesEngine;
 import com.verum.omnis.ai.RnDController;
 import com.verum.omnis.ai.BusinessFraudExtractor;
 import com.verum.omnis.forensic.RecoveryLedger;
+import com.verum.omnis.security.ConstitutionGate;
 
+import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.List;
 
 public class AnalysisEngine {
 
+    private static final String TAG = "AnalysisEngine";
+    private static final int M_TOTAL = Metrics.stage("analysis.total");
+    private static final int M_GATE = Metrics.stage("analysis.gate_wait");
+    private static final int M_HASH = Metrics.stage("analysis.hash");
+    private static final int M_BEHAVIORAL = Metrics.stage("analysis.brains");
+    private static final int M_ANCHOR = Metrics.stage("analysis.jurisdiction_anchor");
+    private static final int M_RULES = Metrics.stage("analysis.rules");
+    private static final int M_LEDGER = Metrics.stage("analysis.fraud_ledger");
+    private static final int M_PHASH = Metrics.stage("analysis.near_duplicates");
+    private static final int M_TIMELINE = Metrics.stage("analysis.timeline");
+    private static final int M_DRIFT = Metrics.stage("analysis.micro_drift");
+    private static final int M_CASE = Metrics.stage("analysis.case_history");
+    private static final int C_FILES = Metrics.counter("analysis_files");
+    private static final int C_BYTES = Metrics.counter("analysis_bytes");
+
     public static class ForensicReport {
         public String evidenceHash;
         public double riskScore;
@@ -21,37 +44,145 @@ public class AnalysisEngine {
         public String blockchainAnchor;
         public JSONObject behavioralProfile;
         public RecoveryLedger.Entry ledgerEntry; // optional
+        public String[] nearDuplicates;          // images only, needs a caseId
+        public BrainOrchestrator.Consensus consensus;
+        public String[] timelineFindings;        // case-wide, needs a caseId
+        public String[] microDrift;              // text only, needs a caseId
+        public JSONObject caseProfile;           // cumulative case history, needs a caseId
     }
 
     public static ForensicReport analyze(Context context, File file) {
+        return analyze(context, file, null);
+    }
+
+    /**
+     * Analyze one file as part of {@code caseId} (null analyzes it on its own).
+     * With a case, the file is also checked against everything already seen in it:
+     * images for near-duplicates, timestamps for timeline conflicts, and statements
+     * for micro-drift.  The exhibit is folded into the case history, whose running
+     * summary is returned in {@link ForensicReport#caseProfile}.
+     */
+    public static ForensicReport analyze(Context context, File file, String caseId) {
+        long tTotal = Metrics.begin();
+        long t = tTotal;
+
+        // 0. Hard stop until the constitution gate has passed (throws on breach)
+        ConstitutionGate.awaitVerified(context);
+        Metrics.end(M_GATE, t);
+
         ForensicReport report = new ForensicReport();
+        Metrics.inc(C_FILES);
+        Metrics.add(C_BYTES, file.length());
 
         // 1. Hash
+        t = Metrics.begin();
         try {
             report.evidenceHash = HashUtil.sha512File(file);
         } catch (Exception e) {
             report.evidenceHash = "HASH_ERROR";
         }
+        Metrics.end(M_HASH, t);
 
-        // 2. Behavioral heuristics (quick stub + mock profile)
-        report.riskScore = BehavioralAnalyzer.quickScore(file.getName());
-        report.behavioralProfile = BehavioralAnalyzer.mockProfile();
+        // 1b. Near-duplicate images within the case
+        if (caseId != null) {
+            t = Metrics.begin();
+            report.nearDuplicates = nearDuplicates(context, caseId, file, report.evidenceHash);
+            Metrics.end(M_PHASH, t);
+        }
+
+        // 2. Nine-brain consensus (brains run concurrently, each within its budget)
+        t = Metrics.begin();
+        Evidence evidence = new Evidence(context, file);
+        report.consensus = BrainOrchestrator.shared(context).evaluate(evidence);
+        report.riskScore = report.consensus.score;
+        report.behavioralProfile = evidence.behavior().toJson();
+        try {
+            report.behavioralProfile.put("consensus", report.consensus.toJson());
+        } catch (JSONException ignored) {
+            // the profile stands on its own
+        }
+        Metrics.end(M_BEHAVIORAL, t);
+
+        // 2b. Case timeline: add this file's timestamps and re-sweep the whole case.  It
+        //     surfaces in the case now, at ingestion; re-analysing it keeps the first time
+        if (caseId != null) {
+            t = Metrics.begin();
+            try {
+                TimelineEngine timeline = TimelineEngine.forCase(context, caseId);
+                timeline.addMetadata(file.getName(), evidence.media(), evidence.messageTimes(),
+                        System.currentTimeMillis());
+                TimelineEngine.Sweep sweep = timeline.sweep(TimelineEngine.Thresholds.from(evidence.rules()));
+                report.timelineFindings = new String[sweep.findings.size()];
+                for (int i = 0; i < report.timelineFindings.length; i++) {
+                    TimelineEngine.Finding f = sweep.findings.get(i);
+                    report.timelineFindings[i] = f.type + " " + f.source + ": " + f.detail;
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "Case timeline unavailable: " + e.getMessage());
+            }
+            Metrics.end(M_TIMELINE, t);
+        }
+
+        // 2c. Case history: fold this exhibit into the case's running counters; its
+        //     statements are checked for micro-drift against everything said earlier
+        if (caseId != null) {
+            List<MicroDriftIndex.Drift> drifts = null;
+            if (CaseStore.enabled(evidence.rules()) && !"HASH_ERROR".equals(report.evidenceHash)) {
+                t = Metrics.begin();
+                try {
+                    RulesEngine.Result rr = evidence.scan();
+                    CaseStore.Exhibit ex = new CaseStore.Exhibit();
+                    ex.hash = report.evidenceHash;
+                    ex.name = file.getName();
+                    ex.bytes = file.length();
+                    ex.timeMs = file.lastModified();
+                    ex.risk = Math.max(report.riskScore, rr.riskScore);
+                    ex.consensus = report.consensus;
+                    ex.diagnostics = rr.diagnostics;
+                    // single documents profile under the file name, not a subject of the case
+                    if (rr.diagnostics != null && rr.diagnostics.has("format")) ex.subjects = evidence.behavior();
+                    if (evidence.isText()) ex.text = evidence.text();
+                    CaseStore.Update u = CaseStore.forCase(context, caseId, evidence.rules()).add(ex);
+                    report.caseProfile = u.summary;
+                    drifts = u.drifts;
+                } catch (IOException e) {
+                    report.caseProfile = null;
+                }
+                Metrics.end(M_CASE, t);
+            } else if (evidence.isText() && !evidence.text().isEmpty()) {
+                t = Metrics.begin();
+                drifts = MicroDriftIndex.forCase(caseId, evidence.rules())
+                        .add(file.getName(), file.lastModified(), evidence.text());
+                Metrics.end(M_DRIFT, t);
+            }
+            if (drifts != null) {
+                report.microDrift = new String[drifts.size()];
+                for (int i = 0; i < report.microDrift.length; i++) {
+                    MicroDriftIndex.Drift d = drifts.get(i);
+                    report.microDrift[i] = d.sourceA + " \"" + d.textA + "\" -> " + d.sourceB + " \"" + d.textB
+                            + "\" (" + d.distance + " char(s))";
+                }
+            }
+        }
 
         // 3. Jurisdiction
+        t = Metrics.begin();
         report.jurisdiction = JurisdictionManager.getCurrentJurisdictionCode();
 
         // 4. Blockchain anchor (stubbed eth:// URI)
         report.blockchainAnchor = BlockchainService.anchor(report.evidenceHash);
+        Metrics.end(M_ANCHOR, t);
 
 // 5. Rules engine + R&D feedback
+        t = Metrics.begin();
         try {
-            RulesEngine.Result rr = RulesEngine.analyzeFile(context, file);
-            report.riskScore = rr.riskScore;
+            RulesEngine.Result rr = evidence.scan();
+            report.riskScore = Math.max(report.riskScore, rr.riskScore);
             report.topLiabilities = rr.topLiabilities;
 
             // R&D experimental layer: weight boost and JSON diagnostics
             RnDController.Feedback fb = RnDController.synthesize(context, rr);
-            report.riskScore = Math.min(1.0, rr.riskScore + fb.suggestedRiskWeightBoost);
+            report.riskScore = Math.min(1.0, report.riskScore + fb.suggestedRiskWeightBoost);
 
             // Merge diagnostics into behavioralProfile if none set yet
             if (report.behavioralProfile == null || report.behavioralProfile.length() == 0) {
@@ -61,8 +192,10 @@ public class AnalysisEngine {
         } catch (Exception e) {
             report.topLiabilities = new String[]{"Rules engine failed: " + e.getMessage()};
         }
+        Metrics.end(M_RULES, t);
 
 // 6. Fraud extraction + recovery ledger
+        t = Metrics.begin();
         try {
             BusinessFraudExtractor.Extraction ex = BusinessFraudExtractor.parse(file);
             if (ex != null && ex.isBusiness) {
@@ -70,7 +203,7 @@ public class AnalysisEngine {
 
                 report.ledgerEntry = RecoveryLedger.create(
                         context,
-                        "CASE-" + System.currentTimeMillis(), // simple caseId
+                        caseId != null ? caseId : "CASE-" + System.currentTimeMillis(),
                         ex.amount,            // original amount
                         amountUsd,            // normalized USD amount
                         ex.currency,
@@ -83,11 +216,33 @@ public class AnalysisEngine {
         } catch (Exception e) {
             e.printStackTrace();
         }
-
+        Metrics.end(M_LEDGER, t);
 
         // 7. R&D (reserved for future)
         // TODO: RnDController.runExperimental(file)
 
+        Metrics.end(M_TOTAL, tTotal);
         return report;
     }
+
+    private static String[] nearDuplicates(Context context, String caseId, File file, String evidenceHash) {
+        try {
+            if (FileSniffer.sniff(file).type.kind != FileSniffer.Kind.IMAGE) return null;
+            PerceptualHash.Hashes h = PerceptualHash.compute(file);
+            if (h == null) return null;
+            List<PhashIndex.Match> hits = PhashIndex.forCase(context, caseId)
+                    .addAndQuery(evidenceHash, file.getName(), h, PhashIndex.DEFAULT_RADIUS);
+            String[] out = new String[hits.size()];
+            for (int i = 0; i < out.length; i++) {
+                PhashIndex.Match m = hits.get(i);
+                out[i] = m.label + " (sha512 " + m.id.substring(0, Math.min(16, m.id.length()))
+                        + ", phash d=" + m.pDistance + ", dhash d=" + m.dDistance + ")";
+            }
+            return out;
+        } catch (Exception e) {
+            // the report goes out without the cross-check rather than failing
+            Log.e(TAG, "Near-duplicate check failed for " + file.getName() + ": " + e);
+            return null;
+        }
+    }
 }
@@ -1,26 +1,398 @@
 package com.verum.omnis.core;
 
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-public class BehavioralAnalyzer {
-    // Placeholder "nine brain" consensus signal
-    public static double quickScore(String hint) {
-        int h = hint.hashCode();
-        return Math.abs((h % 1000) / 10.0);
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Incremental per-speaker behavioral profile (detection_rules "behavioral" section)
+ * - Each message is tokenized once; hedging terms, aggression markers and pressure cues are
+ *   matched as word sequences against one phrase trie during that pass
+ * - Per speaker, primitive counters hold words, hedges, aggression, an exponentially weighted
+ *   recent hedging density, and separate marker/length totals for replies made under pressure
+ *   and for everything else
+ * - A reply is under pressure when another speaker in the same channel pressed (aggression,
+ *   pressure cue or a burst of questions) within PRESSURE_WINDOW_MS; only the first
+ *   PRESSURE_REPLIES replies count
+ * - Response shift = relative change of the speaker's marker rate under pressure versus
+ *   baseline, compared against pressure_response_shift_delta
+ */
+public class BehavioralAnalyzer implements MessageStream.Sink {
+
+    private static final int M_PROFILE = Metrics.stage("behavior.observe");
+
+    static final long PRESSURE_WINDOW_MS = 15 * 60_000L;
+    static final int PRESSURE_REPLIES = 3;
+    /** Minimum evidence before a speaker's densities or shift are judged. */
+    static final int MIN_WORDS = 50, MIN_PRESSURE_REPLIES = 3, MIN_BASELINE = 5;
+    static final double RECENT_ALPHA = 0.1;
+    static final int REPORT_SPEAKERS = 50;
+
+    private static final String[] HEDGING_FALLBACK = {
+            "sort of", "maybe", "kind of", "i think", "as far as i know", "i don't recall"};
+    private static final String[] AGGRESSION_FALLBACK = {
+            "calm down", "stop asking", "leave me alone", "why do you care"};
+    /** Phrases that put the other side on the spot; not part of the rule pack. */
+    private static final String[] PRESSURE_CUES = {
+            "why did you", "explain", "answer me", "answer the question", "you lied", "admit it",
+            "where is the", "where is my", "i need an answer", "tell me the truth", "are you lying"};
+
+    private static final int HEDGE = 0, AGGRESSION = 1, PRESSURE = 2;
+
+    /** Layout of {@link #totals}: raw per-speaker counters, additive across evidence. */
+    public static final int T_MESSAGES = 0, T_WORDS = 1, T_HEDGES = 2, T_AGGRESSION = 3,
+            T_P_REPLIES = 4, T_P_WORDS = 5, T_P_MARKERS = 6, T_B_REPLIES = 7, T_B_WORDS = 8, T_B_MARKERS = 9,
+            TOTALS = 10;
+
+    public final double hedgingWarn, shiftDelta;
+
+    // phrase trie over interned word ids; node 0 is the root
+    private final Map<String, Integer> vocab = new HashMap<>();
+    private final List<Map<Integer, Integer>> trie = new ArrayList<>();
+    private final List<int[]> accepts = new ArrayList<>(); // per node: hits per category
+    private int maxPhrase;
+
+    // per speaker
+    private final Map<String, Integer> speakers = new HashMap<>();
+    private String[] names = new String[16];
+    private int[] messages = new int[16], words = new int[16], hedges = new int[16], aggression = new int[16];
+    private double[] recentHedge = new double[16];
+    private int[] pReplies = new int[16], pWords = new int[16], pMarkers = new int[16];
+    private int[] bReplies = new int[16], bWords = new int[16], bMarkers = new int[16];
+    private int[] answeredSeq = new int[16], answeredCount = new int[16];
+    private int speakerCount;
+
+    // per channel: the last pressing message
+    private final Map<String, long[]> channels = new HashMap<>(); // {time, speaker, seq}
+    private int pressureSeq;
+
+    // tokenization scratch
+    private int[] ids = new int[256];
+
+    public BehavioralAnalyzer(JSONObject behavioral) {
+        JSONObject b = behavioral == null ? new JSONObject() : behavioral;
+        hedgingWarn = b.optDouble("hedging_density_warn", 0.08);
+        shiftDelta = b.optDouble("pressure_response_shift_delta", 0.25);
+        trie.add(new HashMap<>());
+        accepts.add(null);
+        addAll(b.optJSONArray("hedging_terms"), HEDGING_FALLBACK, HEDGE);
+        addAll(b.optJSONArray("aggression_markers"), AGGRESSION_FALLBACK, AGGRESSION);
+        for (String p : PRESSURE_CUES) addPhrase(p, PRESSURE);
+    }
+
+    public static BehavioralAnalyzer fromRules(JSONObject rules) {
+        return new BehavioralAnalyzer(rules == null ? null : rules.optJSONObject("behavioral"));
+    }
+
+    private void addAll(JSONArray terms, String[] fallback, int category) {
+        int added = 0;
+        if (terms != null) {
+            for (int i = 0; i < terms.length(); i++) {
+                if (addPhrase(terms.optString(i), category)) added++;
+            }
+        }
+        if (added == 0) for (String t : fallback) addPhrase(t, category);
+    }
+
+    private boolean addPhrase(String phrase, int category) {
+        List<String> toks = new ArrayList<>();
+        String p = phrase.toLowerCase(Locale.ROOT);
+        int i = 0;
+        while (i < p.length()) {
+            while (i < p.length() && !isWordChar(p.charAt(i))) i++;
+            int s = i;
+            while (i < p.length() && isWordChar(p.charAt(i))) i++;
+            if (i > s) toks.add(p.substring(s, i).replace('’', '\''));
+        }
+        if (toks.isEmpty()) return false;
+        int node = 0;
+        for (String t : toks) {
+            Integer id = vocab.get(t);
+            if (id == null) {
+                id = vocab.size();
+                vocab.put(t, id);
+            }
+            Integer next = trie.get(node).get(id);
+            if (next == null) {
+                next = trie.size();
+                trie.add(new HashMap<>());
+                accepts.add(null);
+                trie.get(node).put(id, next);
+            }
+            node = next;
+        }
+        if (accepts.get(node) == null) accepts.set(node, new int[3]);
+        accepts.get(node)[category]++;
+        maxPhrase = Math.max(maxPhrase, toks.size());
+        return true;
+    }
+
+    @Override
+    public void accept(MessageStream.Message m) {
+        if (m.sender.isEmpty()) return;
+        observe(m.channel, m.sender, m.timeMs, m.body);
+    }
+
+    /** Update {@code speaker}'s profile with one message ({@code timeMs} may be NO_TIME). */
+    public synchronized void observe(String channel, String speaker, long timeMs, String text) {
+        long t0 = Metrics.begin();
+        // 1. tokenize once: word ids (-1 outside the phrase vocabulary), questions
+        int n = 0, questions = 0, len = text.length();
+        StringBuilder w = new StringBuilder(16);
+        for (int i = 0; i <= len; i++) {
+            char c = i < len ? text.charAt(i) : ' ';
+            if (isWordChar(c)) {
+                w.append(Character.toLowerCase(c == '’' ? '\'' : c));
+                continue;
+            }
+            if (c == '?') questions++;
+            if (w.length() == 0) continue;
+            if (n == ids.length) ids = Arrays.copyOf(ids, n * 2);
+            Integer id = vocab.get(w.toString());
+            ids[n++] = id == null ? -1 : id;
+            w.setLength(0);
+        }
+        // 2. phrase hits
+        int[] hits = new int[3];
+        for (int i = 0; i < n; i++) {
+            int node = 0;
+            for (int k = i; k < n && k - i < maxPhrase && ids[k] >= 0; k++) {
+                Integer next = trie.get(node).get(ids[k]);
+                if (next == null) break;
+                node = next;
+                int[] a = accepts.get(node);
+                if (a != null) for (int c = 0; c < 3; c++) hits[c] += a[c];
+            }
+        }
+        // 3. speaker counters
+        int s = slot(speaker);
+        messages[s]++;
+        words[s] += n;
+        hedges[s] += hits[HEDGE];
+        aggression[s] += hits[AGGRESSION];
+        if (n > 0) {
+            double density = (double) hits[HEDGE] / n;
+            recentHedge[s] = messages[s] == 1 ? density : recentHedge[s] + RECENT_ALPHA * (density - recentHedge[s]);
+        }
+        int markers = hits[HEDGE] + hits[AGGRESSION];
+        long[] ch = channel == null ? null : channels.get(channel);
+        boolean pressed = ch != null && timeMs != MessageStream.NO_TIME && ch[1] != s
+                && timeMs - ch[0] <= PRESSURE_WINDOW_MS && timeMs >= ch[0]
+                && (answeredSeq[s] != (int) ch[2] || answeredCount[s] < PRESSURE_REPLIES);
+        if (pressed) {
+            if (answeredSeq[s] != (int) ch[2]) {
+                answeredSeq[s] = (int) ch[2];
+                answeredCount[s] = 0;
+            }
+            answeredCount[s]++;
+            pReplies[s]++;
+            pWords[s] += n;
+            pMarkers[s] += markers;
+        } else {
+            bReplies[s]++;
+            bWords[s] += n;
+            bMarkers[s] += markers;
+        }
+        // 4. does this message press the others?
+        if (channel != null && timeMs != MessageStream.NO_TIME
+                && (hits[AGGRESSION] > 0 || hits[PRESSURE] > 0 || questions >= 2)) {
+            if (ch == null) channels.put(channel, ch = new long[3]);
+            ch[0] = timeMs;
+            ch[1] = s;
+            ch[2] = ++pressureSeq;
+        }
+        Metrics.end(M_PROFILE, t0);
+    }
+
+    private int slot(String speaker) {
+        Integer s = speakers.get(speaker);
+        if (s != null) return s;
+        if (speakerCount == names.length) {
+            int cap = speakerCount * 2;
+            names = Arrays.copyOf(names, cap);
+            messages = Arrays.copyOf(messages, cap);
+            words = Arrays.copyOf(words, cap);
+            hedges = Arrays.copyOf(hedges, cap);
+            aggression = Arrays.copyOf(aggression, cap);
+            recentHedge = Arrays.copyOf(recentHedge, cap);
+            pReplies = Arrays.copyOf(pReplies, cap);
+            pWords = Arrays.copyOf(pWords, cap);
+            pMarkers = Arrays.copyOf(pMarkers, cap);
+            bReplies = Arrays.copyOf(bReplies, cap);
+            bWords = Arrays.copyOf(bWords, cap);
+            bMarkers = Arrays.copyOf(bMarkers, cap);
+            answeredSeq = Arrays.copyOf(answeredSeq, cap);
+            answeredCount = Arrays.copyOf(answeredCount, cap);
+        }
+        names[speakerCount] = speaker;
+        speakers.put(speaker, speakerCount);
+        return speakerCount++;
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '\'' || c == '’';
     }
 
-    public static JSONObject mockProfile() {
+    // ------------------------------------------------------------ results
+
+    public synchronized int speakers() {
+        return speakerCount;
+    }
+
+    public synchronized int messages() {
+        int total = 0;
+        for (int s = 0; s < speakerCount; s++) total += messages[s];
+        return total;
+    }
+
+    public synchronized String[] speakerNames() {
+        return Arrays.copyOf(names, speakerCount);
+    }
+
+    /** Raw counters of {@code speaker} in {@link #T_MESSAGES}.. order, or null if unseen. */
+    public synchronized int[] totals(String speaker) {
+        Integer s = speakers.get(speaker);
+        if (s == null) return null;
+        return new int[]{messages[s], words[s], hedges[s], aggression[s],
+                pReplies[s], pWords[s], pMarkers[s], bReplies[s], bWords[s], bMarkers[s]};
+    }
+
+    /**
+     * Add another profile's raw counters for {@code speaker}, e.g. one exhibit into a case.
+     * The recent-hedging average moves toward the merged exhibit's density.
+     */
+    public synchronized void merge(String speaker, int[] t) {
+        if (t == null || t.length < TOTALS) return;
+        int s = slot(speaker);
+        boolean first = messages[s] == 0;
+        messages[s] += t[T_MESSAGES];
+        words[s] += t[T_WORDS];
+        hedges[s] += t[T_HEDGES];
+        aggression[s] += t[T_AGGRESSION];
+        pReplies[s] += t[T_P_REPLIES];
+        pWords[s] += t[T_P_WORDS];
+        pMarkers[s] += t[T_P_MARKERS];
+        bReplies[s] += t[T_B_REPLIES];
+        bWords[s] += t[T_B_WORDS];
+        bMarkers[s] += t[T_B_MARKERS];
+        if (t[T_WORDS] > 0) {
+            double density = (double) t[T_HEDGES] / t[T_WORDS];
+            recentHedge[s] = first ? density : recentHedge[s] + RECENT_ALPHA * (density - recentHedge[s]);
+        }
+    }
+
+    /** Marker-rate change under pressure relative to baseline; NaN without enough replies. */
+    private double shift(int s) {
+        if (pReplies[s] < MIN_PRESSURE_REPLIES || bReplies[s] < MIN_BASELINE || pWords[s] == 0 || bWords[s] == 0) {
+            return Double.NaN;
+        }
+        double p = (double) pMarkers[s] / pWords[s], b = (double) bMarkers[s] / bWords[s];
+        return (p - b) / Math.max(b, 0.02);
+    }
+
+    /** Speakers whose profile crosses a rule-pack threshold, worst first. */
+    public synchronized List<String> flagged() {
+        List<String> out = new ArrayList<>();
+        for (int s = 0; s < speakerCount; s++) {
+            List<String> why = reasons(s);
+            if (!why.isEmpty()) out.add(names[s] + ": " + String.join(", ", why));
+        }
+        return out;
+    }
+
+    private List<String> reasons(int s) {
+        List<String> why = new ArrayList<>();
+        if (words[s] >= MIN_WORDS && (double) hedges[s] / words[s] >= hedgingWarn) {
+            why.add(String.format(Locale.US, "hedging_density %.3f", (double) hedges[s] / words[s]));
+        }
+        if (aggression[s] >= 2) why.add(aggression[s] + " aggression marker(s)");
+        double sh = shift(s);
+        if (!Double.isNaN(sh) && Math.abs(sh) >= shiftDelta) {
+            why.add(String.format(Locale.US, "pressure_response_shift %+.2f over %d replies", sh, pReplies[s]));
+        }
+        return why;
+    }
+
+    public synchronized JSONObject toJson() {
         JSONObject o = new JSONObject();
+        try {
+            o.put("hedging_density_warn", hedgingWarn);
+            o.put("pressure_response_shift_delta", shiftDelta);
+            int totalWords = 0, totalHedges = 0, totalAggression = 0, nFlagged = 0;
+            Integer[] order = new Integer[speakerCount];
+            for (int s = 0; s < speakerCount; s++) {
+                order[s] = s;
+                totalWords += words[s];
+                totalHedges += hedges[s];
+                totalAggression += aggression[s];
+            }
+            Arrays.sort(order, (a, b) -> Integer.compare(messages[b], messages[a]));
+            JSONObject sp = new JSONObject();
+            for (int k = 0; k < speakerCount; k++) {
+                int s = order[k];
+                List<String> why = reasons(s);
+                if (!why.isEmpty()) nFlagged++;
+                if (k >= REPORT_SPEAKERS) continue;
+                sp.put(names[s], speakerJson(s, why));
+            }
+            o.put("speakers", sp);
+            o.put("hedging_density", totalWords == 0 ? 0 : round((double) totalHedges / totalWords));
+            o.put("aggression", totalAggression);
+            o.put("flagged_speakers", nFlagged);
+        } catch (JSONException e) {
+            throw new RuntimeException(e);
+        }
+        return o;
+    }
 
+    /**
+     * Profiles of the named speakers only (unknown names are skipped), without the
+     * all-speaker totals, so the cost depends on {@code only} and not on how many
+     * speakers have been seen.
+     */
+    public synchronized JSONObject toJson(String[] only) {
+        JSONObject o = new JSONObject();
         try {
-            o.put("languageAnomalies", 0.12);
-            o.put("timelineConflicts", 0.08);
-            o.put("metadataSuspicion", 0.21);
-            o.put("consensus", "triple_ai_pass");
+            o.put("hedging_density_warn", hedgingWarn);
+            o.put("pressure_response_shift_delta", shiftDelta);
+            JSONObject sp = new JSONObject();
+            for (String name : only) {
+                Integer s = speakers.get(name);
+                if (s != null) sp.put(name, speakerJson(s, reasons(s)));
+            }
+            o.put("speakers", sp);
         } catch (JSONException e) {
             throw new RuntimeException(e);
         }
         return o;
     }
-}
\ No newline at end of file
+
+    private JSONObject speakerJson(int s, List<String> why) throws JSONException {
+        JSONObject p = new JSONObject();
+        p.put("messages", messages[s]);
+        p.put("words", words[s]);
+        p.put("hedging_density", words[s] == 0 ? 0 : round((double) hedges[s] / words[s]));
+        p.put("hedging_recent", round(recentHedge[s]));
+        p.put("aggression", aggression[s]);
+        p.put("pressure_replies", pReplies[s]);
+        double sh = shift(s);
+        if (!Double.isNaN(sh)) p.put("pressure_response_shift", round(sh));
+        if (pReplies[s] > 0 && bReplies[s] > 0) {
+            p.put("reply_length_ratio", round(((double) pWords[s] / pReplies[s])
+                    / Math.max(1e-9, (double) bWords[s] / bReplies[s])));
+        }
+        if (!why.isEmpty()) p.put("flags", new JSONArray(why));
+        return p;
+    }
+
+    private static double round(double v) {
+        return Math.round(v * 10000) / 10000.0;
+    }
+}
@@ -0,0 +1,650 @@
+package com.verum.omnis.core;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Canonical JSON for signed packets
+ * - One encoding per value: object keys sorted by UTF-16 code units, no whitespace, strings
+ *   escaped only where JSON requires it (control characters as lower-case hex escapes, the usual
+ *   two-character escapes), everything else written as UTF-8
+ * - Fixed numbers: integers as plain digits, other values as the shortest decimal that reads
+ *   back to the same double, in plain notation for exponents -6..20 and d.ddde+x outside,
+ *   -0 as 0.  NaN and infinities are rejected
+ * - Writer streams the encoding into an OutputStream and/or a MessageDigest as it goes, so
+ *   signing never builds the serialized string
+ * - canonicalize() re-encodes JSON text in one pass without building JSONObject trees: values
+ *   are written straight into a byte buffer and only each object's members are reordered in
+ *   place; one top-level member (the signature) can be held out of the digest
+ */
+public final class CanonicalJson {
+
+    private static final int M_WRITE = Metrics.stage("canonical_json.write");
+    private static final int M_CANONICALIZE = Metrics.stage("canonical_json.canonicalize");
+
+    /** Nesting deeper than this is refused rather than recursed into. */
+    public static final int MAX_DEPTH = 512;
+
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+    private static final byte[] NULL = {'n', 'u', 'l', 'l'};
+    private static final byte[] TRUE = {'t', 'r', 'u', 'e'};
+    private static final byte[] FALSE = {'f', 'a', 'l', 's', 'e'};
+
+    private static final MathContext[] DIGITS = new MathContext[18];
+    private static final MathContext TRUNCATE_18 = new MathContext(18, RoundingMode.DOWN);
+
+    static {
+        for (int p = 1; p < DIGITS.length; p++) DIGITS[p] = new MathContext(p, RoundingMode.HALF_UP);
+    }
+
+    private CanonicalJson() {}
+
+    /** Canonical UTF-8 bytes of {@code value}. */
+    public static byte[] encode(Object value) throws IOException {
+        long t0 = Metrics.begin();
+        Bytes b = new Bytes(256);
+        Writer w = new Writer(b, null);
+        w.value(value);
+        w.flush();
+        Metrics.end(M_WRITE, t0);
+        return b.toArray();
+    }
+
+    /** Lower-case hex SHA-512 of the canonical form of {@code o}, leaving out member {@code skipKey}. */
+    public static String sha512(JSONObject o, String skipKey) throws IOException {
+        long t0 = Metrics.begin();
+        MessageDigest md = sha512();
+        Writer w = new Writer(null, md);
+        w.object(o, skipKey);
+        w.flush();
+        Metrics.end(M_WRITE, t0);
+        return hex(md.digest());
+    }
+
+    // ------------------------------------------------------------ writer
+
+    /**
+     * Streaming canonical encoder.  Bytes are staged in a small buffer and handed to the
+     * stream and the digest together; either may be null.
+     */
+    public static final class Writer {
+        private final OutputStream out;
+        private final MessageDigest md;
+        private final byte[] buf = new byte[8192];
+        private int pos, depth;
+
+        public Writer(OutputStream out, MessageDigest md) {
+            this.out = out;
+            this.md = md;
+        }
+
+        /** Write any org.json value, Map, Collection, array, Number, Boolean, CharSequence or null. */
+        public Writer value(Object v) throws IOException {
+            if (v == null || v == JSONObject.NULL) {
+                raw(NULL);
+            } else if (v instanceof JSONObject) {
+                object((JSONObject) v, null);
+            } else if (v instanceof JSONArray) {
+                JSONArray a = (JSONArray) v;
+                enter();
+                put('[');
+                for (int i = 0; i < a.length(); i++) {
+                    if (i > 0) put(',');
+                    value(a.opt(i));
+                }
+                put(']');
+                depth--;
+            } else if (v instanceof Map) {
+                map((Map<?, ?>) v);
+            } else if (v instanceof Collection) {
+                enter();
+                put('[');
+                boolean first = true;
+                for (Object e : (Collection<?>) v) {
+                    if (!first) put(',');
+                    first = false;
+                    value(e);
+                }
+                put(']');
+                depth--;
+            } else if (v.getClass().isArray()) {
+                enter();
+                put('[');
+                for (int i = 0, n = Array.getLength(v); i < n; i++) {
+                    if (i > 0) put(',');
+                    value(Array.get(v, i));
+                }
+                put(']');
+                depth--;
+            } else if (v instanceof Boolean) {
+                raw((Boolean) v ? TRUE : FALSE);
+            } else if (v instanceof Number) {
+                ascii(number((Number) v));
+            } else {
+                string(v.toString());
+            }
+            return this;
+        }
+
+        /** Write {@code o} with sorted keys, leaving out member {@code skipKey} (may be null). */
+        public Writer object(JSONObject o, String skipKey) throws IOException {
+            String[] keys = new String[o.length()];
+            int n = 0;
+            for (Iterator<String> it = o.keys(); it.hasNext(); ) {
+                String k = it.next();
+                if (!k.equals(skipKey)) keys[n++] = k;
+            }
+            Arrays.sort(keys, 0, n);
+            enter();
+            put('{');
+            for (int i = 0; i < n; i++) {
+                if (i > 0) put(',');
+                string(keys[i]);
+                put(':');
+                value(o.opt(keys[i]));
+            }
+            put('}');
+            depth--;
+            return this;
+        }
+
+        private void map(Map<?, ?> m) throws IOException {
+            int n = m.size();
+            String[] keys = new String[n];
+            Map<String, Object> byKey = new HashMap<>(n * 2);
+            int k = 0;
+            for (Map.Entry<?, ?> e : m.entrySet()) {
+                keys[k] = String.valueOf(e.getKey());
+                byKey.put(keys[k++], e.getValue());
+            }
+            Arrays.sort(keys);
+            enter();
+            put('{');
+            for (int i = 0; i < n; i++) {
+                if (i > 0) put(',');
+                string(keys[i]);
+                put(':');
+                value(byKey.get(keys[i]));
+            }
+            put('}');
+            depth--;
+        }
+
+        /** Write a canonical JSON string literal. */
+        public Writer string(String s) throws IOException {
+            put('"');
+            for (int i = 0, n = s.length(); i < n; i++) {
+                char c = s.charAt(i);
+                if (pos + 6 > buf.length) drain();
+                if (c >= 0x20 && c < 0x80) {
+                    if (c == '"' || c == '\\') buf[pos++] = '\\';
+                    buf[pos++] = (byte) c;
+                } else if (c < 0x20) {
+                    buf[pos++] = '\\';
+                    switch (c) {
+                        case '\b': buf[pos++] = 'b'; break;
+                        case '\f': buf[pos++] = 'f'; break;
+                        case '\n': buf[pos++] = 'n'; break;
+                        case '\r': buf[pos++] = 'r'; break;
+                        case '\t': buf[pos++] = 't'; break;
+                        default:
+                            buf[pos++] = 'u';
+                            buf[pos++] = '0';
+                            buf[pos++] = '0';
+                            buf[pos++] = HEX[c >> 4];
+                            buf[pos++] = HEX[c & 15];
+                    }
+                } else if (c < 0x800) {
+                    buf[pos++] = (byte) (0xC0 | c >> 6);
+                    buf[pos++] = (byte) (0x80 | c & 0x3F);
+                } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, s.charAt(++i));
+                    buf[pos++] = (byte) (0xF0 | cp >> 18);
+                    buf[pos++] = (byte) (0x80 | cp >> 12 & 0x3F);
+                    buf[pos++] = (byte) (0x80 | cp >> 6 & 0x3F);
+                    buf[pos++] = (byte) (0x80 | cp & 0x3F);
+                } else if (Character.isSurrogate(c)) {
+                    buf[pos++] = '?'; // unpaired surrogate, as String.getBytes(UTF_8) does
+                } else {
+                    buf[pos++] = (byte) (0xE0 | c >> 12);
+                    buf[pos++] = (byte) (0x80 | c >> 6 & 0x3F);
+                    buf[pos++] = (byte) (0x80 | c & 0x3F);
+                }
+            }
+            put('"');
+            return this;
+        }
+
+        /** Hand any staged bytes to the stream and digest. */
+        public void flush() throws IOException {
+            drain();
+            if (out != null) out.flush();
+        }
+
+        private void enter() throws IOException {
+            if (++depth > MAX_DEPTH) throw new IOException("JSON nested deeper than " + MAX_DEPTH);
+        }
+
+        private void put(char c) throws IOException {
+            if (pos == buf.length) drain();
+            buf[pos++] = (byte) c;
+        }
+
+        private void raw(byte[] b) throws IOException {
+            if (pos + b.length > buf.length) drain();
+            System.arraycopy(b, 0, buf, pos, b.length);
+            pos += b.length;
+        }
+
+        private void ascii(String s) throws IOException {
+            if (pos + s.length() > buf.length) drain();
+            for (int i = 0; i < s.length(); i++) buf[pos++] = (byte) s.charAt(i);
+        }
+
+        private void drain() throws IOException {
+            if (pos == 0) return;
+            if (md != null) md.update(buf, 0, pos);
+            if (out != null) out.write(buf, 0, pos);
+            pos = 0;
+        }
+    }
+
+    // ------------------------------------------------------------ numbers
+
+    /** Canonical text of a number: integer types as digits, everything else via {@link #number(double)}. */
+    public static String number(Number n) {
+        if (n instanceof Integer || n instanceof Long || n instanceof Short || n instanceof Byte) {
+            return Long.toString(n.longValue());
+        }
+        if (n instanceof BigInteger) return n.toString();
+        return number(n.doubleValue());
+    }
+
+    /** Shortest round-tripping decimal for {@code d}, ECMAScript layout. */
+    public static String number(double d) {
+        if (Double.isNaN(d) || Double.isInfinite(d)) {
+            throw new IllegalArgumentException("JSON has no representation for " + d);
+        }
+        if (d == 0) return "0";
+        if (d == (long) d && Math.abs(d) < 1e15) return Long.toString((long) d);
+        // The double truncated to 18 digits fits a long and rounds (half up) exactly as the
+        // full binary expansion would, so the search below stays in long arithmetic.  17
+        // digits always read back; reading back is monotone in the digit count (bar the odd
+        // power-of-two edge) and the pick is exact arithmetic, so every platform lands on
+        // the same digits
+        BigDecimal t = new BigDecimal(d).round(TRUNCATE_18);
+        BigDecimal r = t.round(DIGITS[17]);
+        int lo = 1, hi = 17;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            BigDecimal c = t.round(DIGITS[mid]);
+            if (c.doubleValue() == d) {
+                hi = mid;
+                r = c;
+            } else {
+                lo = mid + 1;
+            }
+        }
+        r = r.stripTrailingZeros();
+        String digits = r.unscaledValue().abs().toString();
+        int exp = digits.length() - 1 - r.scale(); // power of ten of the leading digit
+        StringBuilder sb = new StringBuilder(digits.length() + 8);
+        if (d < 0) sb.append('-');
+        if (exp >= -6 && exp <= 20) {
+            sb.append(r.abs().toPlainString());
+        } else {
+            sb.append(digits.charAt(0));
+            if (digits.length() > 1) sb.append('.').append(digits, 1, digits.length());
+            sb.append('e').append(exp > 0 ? '+' : '-').append(Math.abs(exp));
+        }
+        return sb.toString();
+    }
+
+    // ------------------------------------------------------------ one-pass canonicalization
+
+    /** Result of {@link #canonicalize}. */
+    public static class Canonical {
+        /** Canonical bytes of the document without the held-out member. */
+        public byte[] bytes;
+        /** The held-out top-level member's string value, or null if absent. */
+        public String heldOut;
+        /** Canonical text of every other top-level member of an object document, by key. */
+        public final Map<String, String> members = new HashMap<>();
+    }
+
+    /**
+     * Re-encode {@code json} canonically in one pass and feed the result to {@code md} (may be
+     * null).  Top-level member {@code holdOut} (may be null) is left out of the encoding and
+     * returned in {@link Canonical#heldOut}.  Malformed JSON, duplicate keys and trailing text
+     * throw JSONException.
+     */
+    public static Canonical canonicalize(String json, String holdOut, MessageDigest md) throws JSONException {
+        long t0 = Metrics.begin();
+        try {
+            Parser p = new Parser(json, holdOut);
+            Canonical c = new Canonical();
+            p.top = c;
+            p.ws();
+            p.value(0);
+            p.ws();
+            if (p.i != json.length()) throw p.error("trailing text");
+            c.bytes = p.b.toArray();
+            if (md != null) md.update(p.b.a, 0, p.b.n);
+            return c;
+        } finally {
+            Metrics.end(M_CANONICALIZE, t0);
+        }
+    }
+
+    private static final class Parser {
+        final String s;
+        final String holdOut;
+        final Bytes b;
+        final Writer w;
+        final StringBuilder sb = new StringBuilder();
+        Canonical top;
+        int i;
+
+        Parser(String s, String holdOut) {
+            this.s = s;
+            this.holdOut = holdOut;
+            this.b = new Bytes(s.length() + 16);
+            this.w = new Writer(b, null);
+        }
+
+        void value(int depth) throws JSONException {
+            if (depth > MAX_DEPTH) throw error("nested deeper than " + MAX_DEPTH);
+            if (i >= s.length()) throw error("unexpected end");
+            char c = s.charAt(i);
+            switch (c) {
+                case '{': object(depth); break;
+                case '[': array(depth); break;
+                case '"': emit(string()); break;
+                case 't': literal("true", TRUE); break;
+                case 'f': literal("false", FALSE); break;
+                case 'n': literal("null", NULL); break;
+                default:
+                    if (c == '-' || (c >= '0' && c <= '9')) number();
+                    else throw error("unexpected '" + c + "'");
+            }
+        }
+
+        private void object(int depth) throws JSONException {
+            i++;
+            int start = b.n;
+            String[] keys = new String[8];
+            int[] from = new int[9];
+            int n = 0;
+            ws();
+            if (peek() == '}') {
+                i++;
+                b.put('{');
+                b.put('}');
+                return;
+            }
+            while (true) {
+                ws();
+                if (peek() != '"') throw error("expected a key");
+                String key = string();
+                ws();
+                if (peek() != ':') throw error("expected ':'");
+                i++;
+                ws();
+                if (depth == 0 && key.equals(holdOut)) {
+                    if (peek() != '"') throw error("'" + holdOut + "' must be a string");
+                    if (top.heldOut != null) throw error("duplicate key '" + key + "'");
+                    top.heldOut = string();
+                } else {
+                    if (n == keys.length) {
+                        keys = Arrays.copyOf(keys, n * 2);
+                        from = Arrays.copyOf(from, n * 2 + 1);
+                    }
+                    keys[n] = key;
+                    from[n] = b.n;
+                    emit(key);
+                    b.put(':');
+                    int v = b.n;
+                    value(depth + 1);
+                    if (depth == 0) top.members.put(key, new String(b.a, v, b.n - v, StandardCharsets.UTF_8));
+                    n++;
+                }
+                ws();
+                char c = peek();
+                i++;
+                if (c == '}') break;
+                if (c != ',') throw error("expected ',' or '}'");
+            }
+            from[n] = b.n;
+            sortMembers(start, keys, from, n);
+        }
+
+        /** Reorder the n members written at [start, b.n) by key and wrap them in braces. */
+        private void sortMembers(int start, String[] keys, int[] from, int n) throws JSONException {
+            Integer[] order = new Integer[n];
+            for (int k = 0; k < n; k++) order[k] = k;
+            final String[] ks = keys;
+            Arrays.sort(order, (x, y) -> ks[x].compareTo(ks[y]));
+            for (int k = 1; k < n; k++) {
+                if (keys[order[k]].equals(keys[order[k - 1]])) throw error("duplicate key '" + keys[order[k]] + "'");
+            }
+            int len = b.n - start;
+            byte[] members = Arrays.copyOfRange(b.a, start, b.n);
+            b.n = start;
+            b.ensure(len + n + 2);
+            b.a[b.n++] = '{';
+            for (int k = 0; k < n; k++) {
+                int m = order[k];
+                if (k > 0) b.a[b.n++] = ',';
+                int off = from[m] - start, mlen = from[m + 1] - from[m];
+                System.arraycopy(members, off, b.a, b.n, mlen);
+                b.n += mlen;
+            }
+            b.a[b.n++] = '}';
+        }
+
+        private void array(int depth) throws JSONException {
+            i++;
+            b.put('[');
+            ws();
+            if (peek() == ']') {
+                i++;
+                b.put(']');
+                return;
+            }
+            while (true) {
+                ws();
+                value(depth + 1);
+                ws();
+                char c = peek();
+                i++;
+                if (c == ']') break;
+                if (c != ',') throw error("expected ',' or ']'");
+                b.put(',');
+            }
+            b.put(']');
+        }
+
+        /** Parse a string literal at i (on the opening quote) into its value. */
+        private String string() throws JSONException {
+            i++;
+            int runStart = i;
+            // fast path: no escapes
+            while (i < s.length()) {
+                char c = s.charAt(i);
+                if (c == '"') return s.substring(runStart, i++);
+                if (c == '\\') break;
+                if (c < 0x20) throw error("control character in string");
+                i++;
+            }
+            sb.setLength(0);
+            sb.append(s, runStart, i);
+            while (i < s.length()) {
+                char c = s.charAt(i++);
+                if (c == '"') return sb.toString();
+                if (c < 0x20) throw error("control character in string");
+                if (c != '\\') {
+                    sb.append(c);
+                    continue;
+                }
+                if (i >= s.length()) break;
+                char e = s.charAt(i++);
+                switch (e) {
+                    case '"': case '\\': case '/': sb.append(e); break;
+                    case 'b': sb.append('\b'); break;
+                    case 'f': sb.append('\f'); break;
+                    case 'n': sb.append('\n'); break;
+                    case 'r': sb.append('\r'); break;
+                    case 't': sb.append('\t'); break;
+                    case 'u':
+                        if (i + 4 > s.length()) throw error("bad \\u escape");
+                        int v = 0;
+                        for (int k = 0; k < 4; k++) {
+                            int h = Character.digit(s.charAt(i++), 16);
+                            if (h < 0) throw error("bad \\u escape");
+                            v = v << 4 | h;
+                        }
+                        sb.append((char) v);
+                        break;
+                    default:
+                        throw error("bad escape '\\" + e + "'");
+                }
+            }
+            throw error("unterminated string");
+        }
+
+        private void number() throws JSONException {
+            int start = i;
+            boolean integral = true;
+            if (peek() == '-') i++;
+            if (peek() == '0') {
+                i++;
+            } else if (digits() == 0) {
+                throw error("bad number");
+            }
+            if (peek() == '.') {
+                i++;
+                integral = false;
+                if (digits() == 0) throw error("bad number");
+            }
+            if (peek() == 'e' || peek() == 'E') {
+                i++;
+                integral = false;
+                if (peek() == '+' || peek() == '-') i++;
+                if (digits() == 0) throw error("bad number");
+            }
+            String lexeme = s.substring(start, i);
+            String canon = integral ? new BigInteger(lexeme).toString() : CanonicalJson.number(Double.parseDouble(lexeme));
+            for (int k = 0; k < canon.length(); k++) b.put(canon.charAt(k));
+        }
+
+        private int digits() {
+            int from = i;
+            while (i < s.length() && s.charAt(i) >= '0' && s.charAt(i) <= '9') i++;
+            return i - from;
+        }
+
+        private void literal(String word, byte[] bytes) throws JSONException {
+            if (!s.startsWith(word, i)) throw error("unexpected literal");
+            i += word.length();
+            b.write(bytes, 0, bytes.length);
+        }
+
+        private void emit(String str) {
+            try {
+                w.string(str);
+                w.flush();
+            } catch (IOException e) {
+                throw new IllegalStateException(e); // Bytes never throws
+            }
+        }
+
+        char peek() {
+            return i < s.length() ? s.charAt(i) : '\0';
+        }
+
+        void ws() {
+            while (i < s.length()) {
+                char c = s.charAt(i);
+                if (c != ' ' && c != '\t' && c != '\n' && c != '\r') return;
+                i++;
+            }
+        }
+
+        JSONException error(String what) {
+            return new JSONException(what + " at character " + i);
+        }
+    }
+
+    /** Growable byte sink; the parser edits its array directly. */
+    private static final class Bytes extends OutputStream {
+        byte[] a;
+        int n;
+
+        Bytes(int cap) {
+            a = new byte[Math.max(16, cap)];
+        }
+
+        void ensure(int more) {
+            if (n + more > a.length) a = Arrays.copyOf(a, Math.max(a.length * 2, n + more));
+        }
+
+        void put(char c) {
+            if (n == a.length) ensure(1);
+            a[n++] = (byte) c;
+        }
+
+        @Override
+        public void write(int x) {
+            if (n == a.length) ensure(1);
+            a[n++] = (byte) x;
+        }
+
+        @Override
+        public void write(byte[] src, int off, int len) {
+            ensure(len);
+            System.arraycopy(src, off, a, n, len);
+            n += len;
+        }
+
+        byte[] toArray() {
+            return Arrays.copyOf(a, n);
+        }
+    }
+
+    // ------------------------------------------------------------ digest helpers
+
+    /** A fresh SHA-512 digest. */
+    public static MessageDigest sha512() {
+        try {
+            return MessageDigest.getInstance("SHA-512");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // every Java platform ships SHA-512
+        }
+    }
+
+    public static String hex(byte[] d) {
+        char[] c = new char[d.length * 2];
+        for (int k = 0; k < d.length; k++) {
+            c[2 * k] = (char) HEX[d[k] >> 4 & 15];
+            c[2 * k + 1] = (char) HEX[d[k] & 15];
+        }
+        return new String(c);
+    }
+}
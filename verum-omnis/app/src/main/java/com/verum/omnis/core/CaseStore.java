@@ -0,0 +1,490 @@
+package com.verum.omnis.core;
+
+import android.content.Context;
+
+import com.verum.omnis.ai.Brain;
+import com.verum.omnis.ai.BrainOrchestrator;
+import com.verum.omnis.ai.MicroDriftIndex;
+import com.verum.omnis.ai.RulesEngine;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * CaseStore – cumulative per-case history (enforcement.cumulative_history).
+ *
+ * <p>Holds what a case has accumulated across its exhibits: the exhibits seen (by
+ * SHA-512), running byte/risk/rule-category counters, per-brain vote and score sums,
+ * per-subject behavioral counters, and the statement index used for micro-drift.
+ * Every piece is additive, so folding in a new exhibit costs time proportional to that
+ * exhibit, and the case summary is read from the counters without revisiting old files.</p>
+ *
+ * <p>Persistence lives in {@code files/cases/<caseId>/}.  Each exhibit is one
+ * length-prefixed, CRC32-checked JSON record appended to {@code case.log}, its
+ * statements one record in {@code statements.log}.  Every SNAPSHOT_EVERY exhibits
+ * the counters are written to {@code case.snap} (temp file, fsync, rename) and the
+ * case log is emptied; records carry a sequence number so a crash between the
+ * rename and the truncation cannot apply an exhibit twice.  Opening loads the
+ * snapshot, replays newer log records, and truncates a torn tail.  Statements are
+ * never compacted and are replayed only for exhibits whose record committed.</p>
+ */
+public final class CaseStore {
+
+    private static final int M_OPEN = Metrics.stage("case.open");
+    private static final int M_ADD = Metrics.stage("case.add");
+    private static final int M_SNAPSHOT = Metrics.stage("case.snapshot");
+    private static final int C_EXHIBITS = Metrics.counter("case_exhibits_added");
+
+    static final String LOG = "case.log", SNAPSHOT = "case.snap", STATEMENTS = "statements.log";
+    static final int SNAPSHOT_EVERY = 256;
+    private static final int MAX_RECORD = 16 * 1024 * 1024;
+
+    private static final Map<String, CaseStore> OPEN = new HashMap<>();
+
+    /** One exhibit's contribution; any part may be null. */
+    public static class Exhibit {
+        public String hash, name;
+        public long bytes, timeMs;
+        public double risk;
+        public BrainOrchestrator.Consensus consensus;
+        public JSONObject diagnostics;        // RulesEngine diagnostics (category counts)
+        public BehavioralAnalyzer subjects;   // per-speaker profile of this exhibit
+        public String text;                   // source of the exhibit's statements
+    }
+
+    public static class Update {
+        public boolean duplicate;             // exhibit already in the case; nothing changed
+        public List<MicroDriftIndex.Drift> drifts = Collections.emptyList();
+        public JSONObject summary;            // case counters; subjects limited to this exhibit's speakers
+    }
+
+    private final File dir, log, snap, statementsLog;
+    private final MicroDriftIndex statements;
+
+    private long seq, snapshotSeq;
+    private final Map<String, String> exhibits = new HashMap<>(); // hash -> name
+    private long bytes;
+    private double riskSum, riskMax;
+    private final long[] categories = new long[RulesEngine.CATEGORIES.length];
+    private final Map<String, Integer> brainSlots = new HashMap<>();
+    private String[] brainIds = new String[16];
+    private int[] brainVotes = new int[16], brainFlags = new int[16], brainClears = new int[16];
+    private double[] brainScoreSum = new double[16];
+    private int brainCount;
+    private final BehavioralAnalyzer subjects;
+    private int statementCount;
+
+    private CaseStore(File dir, JSONObject rules) {
+        this.dir = dir;
+        this.log = new File(dir, LOG);
+        this.snap = new File(dir, SNAPSHOT);
+        this.statementsLog = new File(dir, STATEMENTS);
+        this.statements = MicroDriftIndex.fromRules(rules);
+        this.subjects = BehavioralAnalyzer.fromRules(rules);
+    }
+
+    /** Whether the rule pack asks for cumulative case history (default on). */
+    public static boolean enabled(JSONObject rules) {
+        JSONObject e = rules == null ? null : rules.optJSONObject("enforcement");
+        return e == null || e.optBoolean("cumulative_history", true);
+    }
+
+    /**
+     * The shared store for a case, loaded from disk on first use.
+     * @throws IllegalArgumentException for a case id that names no directory ("", ".", "..")
+     */
+    public static CaseStore forCase(Context ctx, String caseId, JSONObject rules) throws IOException {
+        File dir = PhashIndex.caseDir(ctx, caseId);
+        synchronized (OPEN) {
+            CaseStore s = OPEN.get(dir.getPath());
+            if (s == null) {
+                s = open(dir, rules);
+                OPEN.put(dir.getPath(), s);
+            }
+            return s;
+        }
+    }
+
+    /** Open (or create) a store in {@code dir}. */
+    public static CaseStore open(File dir, JSONObject rules) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("cannot create " + dir);
+        long t0 = Metrics.begin();
+        CaseStore s = new CaseStore(dir, rules);
+        s.load();
+        Metrics.end(M_OPEN, t0);
+        return s;
+    }
+
+    public synchronized int exhibits() {
+        return exhibits.size();
+    }
+
+    public synchronized boolean contains(String hash) {
+        return exhibits.containsKey(hash);
+    }
+
+    /**
+     * Fold one exhibit into the case.  Its statements are checked against everything
+     * the case has said before; re-adding a known exhibit changes nothing.
+     */
+    public synchronized Update add(Exhibit e) throws IOException {
+        long t0 = Metrics.begin();
+        Update u = new Update();
+        String[] touched = e.subjects == null ? new String[0] : e.subjects.speakerNames();
+        if (e.hash == null || exhibits.containsKey(e.hash)) {
+            u.duplicate = true;
+            u.summary = summary(touched);
+            Metrics.end(M_ADD, t0);
+            return u;
+        }
+        String name = e.name == null ? "" : e.name;
+        List<String> texts = e.text == null ? Collections.emptyList() : MicroDriftIndex.sentences(e.text);
+        try {
+            // statements first: they only count once the exhibit record below commits
+            if (!texts.isEmpty()) {
+                JSONObject st = new JSONObject();
+                st.put("hash", e.hash);
+                st.put("source", name);
+                st.put("time", e.timeMs);
+                st.put("texts", new JSONArray(texts));
+                append(statementsLog, st);
+            }
+            JSONObject rec = record(e, name, seq + 1);
+            append(log, rec);
+            apply(rec);
+        } catch (JSONException ex) {
+            throw new IOException(ex);
+        }
+        List<MicroDriftIndex.Statement> batch = new ArrayList<>(texts.size());
+        for (String s : texts) batch.add(new MicroDriftIndex.Statement(name, e.timeMs, s));
+        if (!batch.isEmpty()) u.drifts = statements.addAll(batch);
+        statementCount += batch.size();
+        Metrics.inc(C_EXHIBITS);
+        if (seq - snapshotSeq >= SNAPSHOT_EVERY) snapshot();
+        u.summary = summary(touched);
+        Metrics.end(M_ADD, t0);
+        return u;
+    }
+
+    private JSONObject record(Exhibit e, String name, long recSeq) throws JSONException {
+        JSONObject r = new JSONObject();
+        r.put("seq", recSeq);
+        r.put("hash", e.hash);
+        r.put("name", name);
+        r.put("bytes", e.bytes);
+        r.put("risk", e.risk);
+        if (e.consensus != null) {
+            JSONArray brains = new JSONArray();
+            for (BrainOrchestrator.BrainResult b : e.consensus.results) {
+                if (b.status != BrainOrchestrator.Status.OK) continue;
+                int v = b.verdict == Brain.Verdict.FLAG ? 1 : b.verdict == Brain.Verdict.CLEAR ? -1 : 0;
+                brains.put(new JSONArray().put(b.id).put(v).put(b.score));
+            }
+            r.put("brains", brains);
+        }
+        if (e.diagnostics != null) {
+            JSONArray c = new JSONArray();
+            for (String k : RulesEngine.CATEGORIES) c.put(e.diagnostics.optLong(k, 0));
+            r.put("categories", c);
+        }
+        if (e.subjects != null) {
+            JSONObject sub = new JSONObject();
+            for (String sp : e.subjects.speakerNames()) {
+                int[] t = e.subjects.totals(sp);
+                JSONArray a = new JSONArray();
+                for (int x : t) a.put(x);
+                sub.put(sp, a);
+            }
+            r.put("subjects", sub);
+        }
+        return r;
+    }
+
+    /** Apply one exhibit record to the counters; the only place state changes. */
+    private void apply(JSONObject r) {
+        seq = r.optLong("seq", seq + 1);
+        exhibits.put(r.optString("hash"), r.optString("name"));
+        bytes += r.optLong("bytes", 0);
+        double risk = r.optDouble("risk", 0);
+        riskSum += risk;
+        riskMax = Math.max(riskMax, risk);
+        JSONArray brains = r.optJSONArray("brains");
+        for (int i = 0; brains != null && i < brains.length(); i++) {
+            JSONArray b = brains.optJSONArray(i);
+            if (b == null) continue;
+            int s = brainSlot(b.optString(0));
+            int v = b.optInt(1);
+            brainVotes[s]++;
+            if (v > 0) brainFlags[s]++;
+            else if (v < 0) brainClears[s]++;
+            brainScoreSum[s] += b.optDouble(2, 0);
+        }
+        JSONArray c = r.optJSONArray("categories");
+        for (int i = 0; c != null && i < Math.min(c.length(), categories.length); i++) categories[i] += c.optLong(i);
+        JSONObject sub = r.optJSONObject("subjects");
+        if (sub != null) {
+            for (Iterator<String> it = sub.keys(); it.hasNext(); ) {
+                String sp = it.next();
+                subjects.merge(sp, ints(sub.optJSONArray(sp)));
+            }
+        }
+    }
+
+    private int brainSlot(String id) {
+        Integer s = brainSlots.get(id);
+        if (s != null) return s;
+        if (brainCount == brainIds.length) {
+            int cap = brainCount * 2;
+            brainIds = Arrays.copyOf(brainIds, cap);
+            brainVotes = Arrays.copyOf(brainVotes, cap);
+            brainFlags = Arrays.copyOf(brainFlags, cap);
+            brainClears = Arrays.copyOf(brainClears, cap);
+            brainScoreSum = Arrays.copyOf(brainScoreSum, cap);
+        }
+        brainIds[brainCount] = id;
+        brainSlots.put(id, brainCount);
+        return brainCount++;
+    }
+
+    private static int[] ints(JSONArray a) {
+        if (a == null) return null;
+        int[] out = new int[a.length()];
+        for (int i = 0; i < out.length; i++) out[i] = a.optInt(i);
+        return out;
+    }
+
+    /**
+     * Case-level scores from the running counters.  case_score is the mean of the
+     * brains' mean scores, as a single exhibit's consensus score is the mean of its votes.
+     */
+    public synchronized JSONObject summary() {
+        return summary(null);
+    }
+
+    /**
+     * The summary with {@code subjects} limited to {@code speakers} (all of them when null).
+     * Everything else is a fixed number of counters, so a limited summary costs the same
+     * however many exhibits and speakers the case holds.
+     */
+    private JSONObject summary(String[] speakers) {
+        JSONObject o = new JSONObject();
+        try {
+            int n = exhibits.size();
+            o.put("exhibits", n);
+            o.put("bytes", bytes);
+            o.put("risk_mean", n == 0 ? 0 : riskSum / n);
+            o.put("risk_max", riskMax);
+            JSONObject brains = new JSONObject();
+            double scoreSum = 0;
+            int voted = 0;
+            for (int s = 0; s < brainCount; s++) {
+                if (brainVotes[s] == 0) continue;
+                double mean = brainScoreSum[s] / brainVotes[s];
+                JSONObject b = new JSONObject();
+                b.put("votes", brainVotes[s]);
+                b.put("flags", brainFlags[s]);
+                b.put("clears", brainClears[s]);
+                b.put("mean_score", mean);
+                brains.put(brainIds[s], b);
+                scoreSum += mean;
+                voted++;
+            }
+            o.put("brains", brains);
+            o.put("case_score", voted == 0 ? 0 : scoreSum / voted);
+            JSONObject cat = new JSONObject();
+            for (int i = 0; i < categories.length; i++) cat.put(RulesEngine.CATEGORIES[i], categories[i]);
+            o.put("categories", cat);
+            o.put("subjects", speakers == null ? subjects.toJson() : subjects.toJson(speakers));
+            o.put("statements", statementCount);
+        } catch (JSONException e) {
+            throw new RuntimeException(e);
+        }
+        return o;
+    }
+
+    // ---------------------------------------------------------------- snapshot
+
+    /** Write the counters to case.snap and empty the case log. */
+    public synchronized void snapshot() throws IOException {
+        long t0 = Metrics.begin();
+        JSONObject o = new JSONObject();
+        try {
+            o.put("version", 1);
+            o.put("seq", seq);
+            o.put("exhibits", new JSONObject(exhibits));
+            o.put("bytes", bytes);
+            o.put("risk_sum", riskSum);
+            o.put("risk_max", riskMax);
+            JSONArray c = new JSONArray();
+            for (long x : categories) c.put(x);
+            o.put("categories", c);
+            JSONObject brains = new JSONObject();
+            for (int s = 0; s < brainCount; s++) {
+                brains.put(brainIds[s], new JSONArray().put(brainVotes[s]).put(brainFlags[s])
+                        .put(brainClears[s]).put(brainScoreSum[s]));
+            }
+            o.put("brains", brains);
+            JSONObject sub = new JSONObject();
+            for (String sp : subjects.speakerNames()) {
+                JSONArray a = new JSONArray();
+                for (int x : subjects.totals(sp)) a.put(x);
+                sub.put(sp, a);
+            }
+            o.put("subjects", sub);
+        } catch (JSONException e) {
+            throw new IOException(e);
+        }
+        File tmp = new File(dir, SNAPSHOT + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmp)) {
+            fos.write(o.toString().getBytes(StandardCharsets.UTF_8));
+            fos.getFD().sync();
+        }
+        if (!tmp.renameTo(snap)) {
+            tmp.delete();
+            throw new IOException("Could not replace " + snap.getName());
+        }
+        snapshotSeq = seq;
+        try (RandomAccessFile raf = new RandomAccessFile(log, "rw");
+             FileChannel ch = raf.getChannel()) {
+            ch.truncate(0);
+            ch.force(true);
+        }
+        Metrics.end(M_SNAPSHOT, t0);
+    }
+
+    private void load() throws IOException {
+        if (snap.exists()) {
+            try {
+                byte[] b = new byte[(int) snap.length()];
+                try (RandomAccessFile raf = new RandomAccessFile(snap, "r")) {
+                    raf.readFully(b);
+                }
+                restore(new JSONObject(new String(b, StandardCharsets.UTF_8)));
+            } catch (JSONException e) {
+                throw new IOException("corrupt " + snap.getName(), e);
+            }
+        }
+        for (JSONObject r : readAll(log)) {
+            if (r.optLong("seq") > seq) apply(r);
+        }
+        // statements of committed exhibits, each exhibit once
+        Set<String> replayed = new HashSet<>();
+        List<MicroDriftIndex.Statement> batch = new ArrayList<>();
+        for (JSONObject r : readAll(statementsLog)) {
+            String hash = r.optString("hash");
+            if (!exhibits.containsKey(hash) || !replayed.add(hash)) continue;
+            JSONArray texts = r.optJSONArray("texts");
+            for (int i = 0; texts != null && i < texts.length(); i++) {
+                batch.add(new MicroDriftIndex.Statement(r.optString("source"), r.optLong("time"), texts.optString(i)));
+            }
+        }
+        if (!batch.isEmpty()) statements.addAll(batch);
+        statementCount = batch.size();
+    }
+
+    private void restore(JSONObject o) throws JSONException {
+        seq = snapshotSeq = o.getLong("seq");
+        JSONObject ex = o.optJSONObject("exhibits");
+        if (ex != null) {
+            for (Iterator<String> it = ex.keys(); it.hasNext(); ) {
+                String h = it.next();
+                exhibits.put(h, ex.optString(h));
+            }
+        }
+        bytes = o.optLong("bytes");
+        riskSum = o.optDouble("risk_sum", 0);
+        riskMax = o.optDouble("risk_max", 0);
+        JSONArray c = o.optJSONArray("categories");
+        for (int i = 0; c != null && i < Math.min(c.length(), categories.length); i++) categories[i] = c.optLong(i);
+        JSONObject brains = o.optJSONObject("brains");
+        if (brains != null) {
+            for (Iterator<String> it = brains.keys(); it.hasNext(); ) {
+                String id = it.next();
+                JSONArray a = brains.getJSONArray(id);
+                int s = brainSlot(id);
+                brainVotes[s] = a.optInt(0);
+                brainFlags[s] = a.optInt(1);
+                brainClears[s] = a.optInt(2);
+                brainScoreSum[s] = a.optDouble(3, 0);
+            }
+        }
+        JSONObject sub = o.optJSONObject("subjects");
+        if (sub != null) {
+            for (Iterator<String> it = sub.keys(); it.hasNext(); ) {
+                String sp = it.next();
+                subjects.merge(sp, ints(sub.optJSONArray(sp)));
+            }
+        }
+    }
+
+    // ---------------------------------------------------------------- log
+    // record: int len | UTF-8 JSON | int crc32
+
+    private static void append(File f, JSONObject payload) throws IOException {
+        byte[] p = payload.toString().getBytes(StandardCharsets.UTF_8);
+        if (p.length > MAX_RECORD) throw new IOException("record too large: " + p.length);
+        ByteBuffer b = ByteBuffer.allocate(4 + p.length + 4);
+        b.putInt(p.length).put(p);
+        CRC32 crc = new CRC32();
+        crc.update(p, 0, p.length);
+        b.putInt((int) crc.getValue());
+        b.flip();
+        try (RandomAccessFile raf = new RandomAccessFile(f, "rw");
+             FileChannel ch = raf.getChannel()) {
+            ch.position(ch.size());
+            while (b.hasRemaining()) ch.write(b);
+            ch.force(false);
+        }
+    }
+
+    /** Every intact record of {@code f}; a torn or corrupt tail is truncated away. */
+    private static List<JSONObject> readAll(File f) throws IOException {
+        List<JSONObject> out = new ArrayList<>();
+        if (!f.exists()) return out;
+        try (RandomAccessFile raf = new RandomAccessFile(f, "rw");
+             FileChannel ch = raf.getChannel()) {
+            long total = ch.size(), good = 0;
+            ByteBuffer head = ByteBuffer.allocate(4);
+            CRC32 crc = new CRC32();
+            while (good + 8 <= total) {
+                head.clear();
+                if (ch.read(head, good) < 4) break;
+                int len = head.getInt(0);
+                if (len < 2 || len > MAX_RECORD || good + 8 + len > total) break;
+                ByteBuffer body = ByteBuffer.allocate(len + 4);
+                while (body.hasRemaining() && ch.read(body, good + 4 + body.position()) > 0) { /* fill */ }
+                if (body.hasRemaining()) break;
+                crc.reset();
+                crc.update(body.array(), 0, len);
+                if (body.getInt(len) != (int) crc.getValue()) break;
+                try {
+                    out.add(new JSONObject(new String(body.array(), 0, len, StandardCharsets.UTF_8)));
+                } catch (JSONException e) {
+                    break;
+                }
+                good += 8 + len;
+            }
+            if (good < total) ch.truncate(good);   // torn or corrupt tail
+        }
+        return out;
+    }
+}
@@ -2,31 +2,20 @@
 package com.verum.omnis.core;
 
 import android.content.Context;
+import com.verum.omnis.security.AssetRegistry;
 import org.json.JSONObject;
-import java.io.InputStream;
-import java.nio.charset.StandardCharsets;
 import java.util.Locale;
 
 public class CurrencyConverter {
+    private static final int M_ENSURE = Metrics.stage("fx.ensure");
     private static JSONObject table;
 
     private static void ensure(Context ctx) throws Exception {
         if (table != null) return;
-        InputStream is = ctx.getAssets().open("config/fx_table.json");
-        // Read the stream manually into a byte array.  Avoid InputStream.readAllBytes()
-        // which is unavailable on Android API levels below 26.
-        try {
-            java.io.ByteArrayOutputStream bos = new java.io.ByteArrayOutputStream();
-            byte[] buf = new byte[8192];
-            int len;
-            while ((len = is.read(buf)) != -1) {
-                bos.write(buf, 0, len);
-            }
-            byte[] b = bos.toByteArray();
-            table = new JSONObject(new String(b, StandardCharsets.UTF_8));
-        } finally {
-            is.close();
-        }
+        long t0 = Metrics.begin();
+        // Loaded once per process through the shared registry (read and hashed together).
+        table = new JSONObject(AssetRegistry.get(ctx).text("config/fx_table.json"));
+        Metrics.end(M_ENSURE, t0);
     }
 
     public static double toBase(Context ctx, String currency, double amount) {
@@ -0,0 +1,567 @@
+package com.verum.omnis.core;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Pure-Java metadata parser for JPEG, TIFF and PNG (no Android, no pixel decode).
+ *
+ * <p>Walks the container with positional reads and stops as soon as it
+ * reaches image data (JPEG SOS, PNG IDAT), so only metadata segments are
+ * read – typically a few KB even for very large photos.  Extracts the full
+ * TIFF/EXIF tag set that matters forensically: every timestamp with its
+ * offset and sub-seconds, GPS, software/host, lens and body serials,
+ * thumbnail location, maker-note presence, XMP/ICC/IPTC presence and the
+ * JPEG segment sequence.</p>
+ */
+public final class ExifParser {
+
+    /** Parsed metadata.  Keys in {@link #tags} are stable, human-readable names. */
+    public static class Result {
+        public final Map<String, String> tags = new LinkedHashMap<>();
+        public String format;               // JPEG, TIFF, PNG, UNKNOWN
+        public double gpsLatitude = Double.NaN;
+        public double gpsLongitude = Double.NaN;
+        public long thumbnailOffset = -1;   // absolute file offset of the embedded JPEG thumbnail
+        public long thumbnailLength;
+        public boolean hasMakerNote;
+        public long makerNoteLength;
+        public long imageDataOffset = -1;   // where parsing stopped (SOS payload / first IDAT)
+        public long bytesRead;              // total metadata bytes read from the file
+        public String segments = "";        // JPEG marker sequence up to SOS, e.g. "APP0,APP1,DQT,SOF0,DHT,SOS"
+    }
+
+    // TIFF field types → byte size
+    private static final int[] TYPE_SIZE = {0, 1, 1, 2, 4, 8, 1, 1, 2, 4, 8, 4, 8};
+
+    private static final int TAG_EXIF_IFD = 0x8769;
+    private static final int TAG_GPS_IFD = 0x8825;
+    private static final int TAG_INTEROP_IFD = 0xA005;
+    private static final int TAG_MAKER_NOTE = 0x927C;
+    private static final int TAG_THUMB_OFFSET = 0x0201;
+    private static final int TAG_THUMB_LENGTH = 0x0202;
+
+    private static final Map<Integer, String> TIFF_TAGS = new LinkedHashMap<>();
+    private static final Map<Integer, String> GPS_TAGS = new LinkedHashMap<>();
+    static {
+        TIFF_TAGS.put(0x010E, "ImageDescription");
+        TIFF_TAGS.put(0x010F, "CameraMake");
+        TIFF_TAGS.put(0x0110, "CameraModel");
+        TIFF_TAGS.put(0x0112, "Orientation");
+        TIFF_TAGS.put(0x0131, "Software");
+        TIFF_TAGS.put(0x0132, "DateTime");
+        TIFF_TAGS.put(0x013B, "Artist");
+        TIFF_TAGS.put(0x013C, "HostComputer");
+        TIFF_TAGS.put(0x8298, "Copyright");
+        TIFF_TAGS.put(0x9003, "DateTimeOriginal");
+        TIFF_TAGS.put(0x9004, "DateTimeDigitized");
+        TIFF_TAGS.put(0x9010, "OffsetTime");
+        TIFF_TAGS.put(0x9011, "OffsetTimeOriginal");
+        TIFF_TAGS.put(0x9012, "OffsetTimeDigitized");
+        TIFF_TAGS.put(0x9290, "SubSecTime");
+        TIFF_TAGS.put(0x9291, "SubSecTimeOriginal");
+        TIFF_TAGS.put(0x9292, "SubSecTimeDigitized");
+        TIFF_TAGS.put(0x829A, "ExposureTime");
+        TIFF_TAGS.put(0x829D, "FNumber");
+        TIFF_TAGS.put(0x8827, "ISO");
+        TIFF_TAGS.put(0x920A, "FocalLength");
+        TIFF_TAGS.put(0xA002, "PixelXDimension");
+        TIFF_TAGS.put(0xA003, "PixelYDimension");
+        TIFF_TAGS.put(0xA420, "ImageUniqueID");
+        TIFF_TAGS.put(0xA430, "CameraOwnerName");
+        TIFF_TAGS.put(0xA431, "BodySerialNumber");
+        TIFF_TAGS.put(0xA433, "LensMake");
+        TIFF_TAGS.put(0xA434, "LensModel");
+        TIFF_TAGS.put(0xA435, "LensSerialNumber");
+
+        GPS_TAGS.put(0x0001, "GPSLatitudeRef");
+        GPS_TAGS.put(0x0002, "GPSLatitudeRaw");
+        GPS_TAGS.put(0x0003, "GPSLongitudeRef");
+        GPS_TAGS.put(0x0004, "GPSLongitudeRaw");
+        GPS_TAGS.put(0x0005, "GPSAltitudeRef");
+        GPS_TAGS.put(0x0006, "GPSAltitude");
+        GPS_TAGS.put(0x0007, "GPSTimeStamp");
+        GPS_TAGS.put(0x0010, "GPSImgDirectionRef");
+        GPS_TAGS.put(0x0011, "GPSImgDirection");
+        GPS_TAGS.put(0x0012, "GPSMapDatum");
+        GPS_TAGS.put(0x001B, "GPSProcessingMethod");
+        GPS_TAGS.put(0x001D, "GPSDateStamp");
+    }
+
+    private ExifParser() {}
+
+    /** Formats this parser handles; anything else should go to a platform decoder. */
+    public static boolean supports(FileSniffer.Type type) {
+        return type == FileSniffer.Type.JPEG || type == FileSniffer.Type.TIFF || type == FileSniffer.Type.PNG;
+    }
+
+    public static Result parse(File f) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(f, "r")) {
+            return parse(raf.getChannel());
+        }
+    }
+
+    /** Parse from an open channel using positional reads only (the channel position is untouched). */
+    public static Result parse(FileChannel ch) throws IOException {
+        Source src = new ChannelSource(ch);
+        Result r = new Result();
+        byte[] sig = new byte[8];
+        int n = src.readUpTo(0, sig, 8);
+        try {
+            if (n >= 3 && (sig[0] & 0xFF) == 0xFF && (sig[1] & 0xFF) == 0xD8) {
+                r.format = "JPEG";
+                parseJpeg(src, r);
+            } else if (n >= 8 && (sig[0] & 0xFF) == 0x89 && sig[1] == 'P' && sig[2] == 'N' && sig[3] == 'G') {
+                r.format = "PNG";
+                parsePng(src, r);
+            } else if (n >= 4 && ((sig[0] == 'I' && sig[1] == 'I') || (sig[0] == 'M' && sig[1] == 'M'))) {
+                r.format = "TIFF";
+                parseTiff(src, 0, 0, r);
+            } else {
+                r.format = "UNKNOWN";
+            }
+        } catch (EOFException e) {
+            // truncated file: keep everything parsed before the cut
+            r.tags.put("MetadataTruncated", e.getMessage());
+        }
+        r.bytesRead = src.bytesRead();
+        return r;
+    }
+
+    // === JPEG ===
+
+    private static void parseJpeg(Source src, Result r) throws IOException {
+        StringBuilder seq = new StringBuilder();
+        byte[] hdr = new byte[4];
+        long pos = 2;
+        int dqt = 0;
+        while (true) {
+            if (src.readUpTo(pos, hdr, 4) < 4) break;
+            if ((hdr[0] & 0xFF) != 0xFF) break;         // lost sync: not a well-formed stream
+            int marker = hdr[1] & 0xFF;
+            if (marker == 0xFF) { pos++; continue; }     // fill byte
+            if (marker == 0xD9) { append(seq, "EOI"); break; }
+            if (marker >= 0xD0 && marker <= 0xD7 || marker == 0x01) { pos += 2; continue; }
+            int len = ((hdr[2] & 0xFF) << 8) | (hdr[3] & 0xFF);
+            if (len < 2) break;
+            long payload = pos + 4;
+            int payloadLen = len - 2;
+            append(seq, markerName(marker));
+
+            if (marker == 0xDA) {                        // SOS: image data follows, stop here
+                r.imageDataOffset = payload + payloadLen;
+                break;
+            }
+            if (marker == 0xE1) {
+                byte[] p = src.read(payload, payloadLen);
+                if (startsWith(p, "Exif\u0000\u0000")) {
+                    parseTiff(new ArraySource(p, 6), 0, payload + 6, r);
+                } else if (startsWith(p, "http://ns.adobe.com/xap/1.0/\u0000")) {
+                    r.tags.put("XMP", "present");
+                    xmp(new String(p, 29, p.length - 29, StandardCharsets.UTF_8), r);
+                }
+            } else if (marker == 0xE2) {
+                byte[] p = src.read(payload, Math.min(payloadLen, 14));
+                if (startsWith(p, "ICC_PROFILE")) r.tags.put("ICCProfile", "present");
+            } else if (marker == 0xED) {
+                r.tags.put("IPTC", "present");
+            } else if (marker == 0xEE) {
+                r.tags.put("AdobeAPP14", "present");
+            } else if (marker == 0xFE) {
+                byte[] p = src.read(payload, Math.min(payloadLen, 512));
+                r.tags.put("Comment", new String(p, StandardCharsets.ISO_8859_1).trim());
+            } else if (marker == 0xDB) {
+                dqt++;
+            } else if (isSof(marker)) {
+                byte[] p = src.read(payload, Math.min(payloadLen, 6));
+                if (p.length >= 6) {
+                    r.tags.put("JpegHeight", String.valueOf(((p[1] & 0xFF) << 8) | (p[2] & 0xFF)));
+                    r.tags.put("JpegWidth", String.valueOf(((p[3] & 0xFF) << 8) | (p[4] & 0xFF)));
+                    r.tags.put("JpegComponents", String.valueOf(p[5] & 0xFF));
+                    r.tags.put("JpegProcess", marker == 0xC2 ? "progressive" : marker == 0xC0 ? "baseline" : markerName(marker));
+                }
+            }
+            pos = payload + payloadLen;
+        }
+        if (dqt > 0) r.tags.put("JpegDqtSegments", String.valueOf(dqt));
+        r.segments = seq.toString();
+    }
+
+    private static boolean isSof(int m) {
+        return m >= 0xC0 && m <= 0xCF && m != 0xC4 && m != 0xC8 && m != 0xCC;
+    }
+
+    private static String markerName(int m) {
+        if (m >= 0xE0 && m <= 0xEF) return "APP" + (m - 0xE0);
+        if (isSof(m)) return "SOF" + (m - 0xC0);
+        switch (m) {
+            case 0xDB: return "DQT";
+            case 0xC4: return "DHT";
+            case 0xDA: return "SOS";
+            case 0xDD: return "DRI";
+            case 0xFE: return "COM";
+            default: return String.format(Locale.US, "FF%02X", m);
+        }
+    }
+
+    private static void xmp(String x, Result r) {
+        xmpAttr(x, "xmp:CreateDate", "XmpCreateDate", r);
+        xmpAttr(x, "xmp:ModifyDate", "XmpModifyDate", r);
+        xmpAttr(x, "xmp:MetadataDate", "XmpMetadataDate", r);
+        xmpAttr(x, "xmp:CreatorTool", "XmpCreatorTool", r);
+        xmpAttr(x, "photoshop:DateCreated", "XmpPhotoshopDateCreated", r);
+        if (x.contains("xmpMM:History")) r.tags.put("XmpEditHistory", "present");
+    }
+
+    /** Reads {@code name="value"} or {@code <name>value</name>} without an XML parser. */
+    private static void xmpAttr(String x, String name, String key, Result r) {
+        int i = x.indexOf(name + "=\"");
+        if (i >= 0) {
+            int s = i + name.length() + 2;
+            int e = x.indexOf('"', s);
+            if (e > s) r.tags.put(key, x.substring(s, e));
+            return;
+        }
+        i = x.indexOf("<" + name + ">");
+        if (i >= 0) {
+            int s = i + name.length() + 2;
+            int e = x.indexOf('<', s);
+            if (e > s) r.tags.put(key, x.substring(s, e).trim());
+        }
+    }
+
+    // === PNG ===
+
+    private static void parsePng(Source src, Result r) throws IOException {
+        long pos = 8;
+        byte[] hdr = new byte[8];
+        StringBuilder seq = new StringBuilder();
+        while (src.readUpTo(pos, hdr, 8) == 8) {
+            long len = ((hdr[0] & 0xFFL) << 24) | ((hdr[1] & 0xFFL) << 16) | ((hdr[2] & 0xFFL) << 8) | (hdr[3] & 0xFFL);
+            String type = new String(hdr, 4, 4, StandardCharsets.ISO_8859_1);
+            long data = pos + 8;
+            append(seq, type);
+            if ("IDAT".equals(type) || "IEND".equals(type)) {
+                r.imageDataOffset = data;
+                break;
+            }
+            if ("IHDR".equals(type) && len >= 13) {
+                byte[] p = fixed(src, data, 13, type);
+                r.tags.put("PngWidth", String.valueOf(be32(p, 0)));
+                r.tags.put("PngHeight", String.valueOf(be32(p, 4)));
+                r.tags.put("PngBitDepth", String.valueOf(p[8] & 0xFF));
+                r.tags.put("PngColorType", String.valueOf(p[9] & 0xFF));
+            } else if ("eXIf".equals(type) && len < (1 << 20)) {
+                parseTiff(new ArraySource(src.read(data, (int) len), 0), 0, data, r);
+            } else if ("tIME".equals(type) && len >= 7) {
+                byte[] p = fixed(src, data, 7, type);
+                r.tags.put("PngModified", String.format(Locale.US, "%04d:%02d:%02d %02d:%02d:%02d",
+                        ((p[0] & 0xFF) << 8) | (p[1] & 0xFF), p[2], p[3], p[4], p[5], p[6]));
+            } else if (("tEXt".equals(type) || "iTXt".equals(type)) && len < 65536) {
+                byte[] p = src.read(data, (int) len);
+                int nul = 0;
+                while (nul < p.length && p[nul] != 0) nul++;
+                String keyword = new String(p, 0, nul, StandardCharsets.ISO_8859_1);
+                String text = nul + 1 < p.length ? textValue(type, p, nul + 1) : "";
+                if ("XML:com.adobe.xmp".equals(keyword)) {
+                    r.tags.put("XMP", "present");
+                    xmp(text, r);
+                } else if (!keyword.isEmpty()) {
+                    r.tags.put("PngText:" + keyword, text.length() > 256 ? text.substring(0, 256) : text);
+                }
+            } else if ("iCCP".equals(type)) {
+                r.tags.put("ICCProfile", "present");
+            }
+            pos = data + len + 4; // + CRC
+        }
+        r.segments = seq.toString();
+    }
+
+    /** A fixed-size chunk body; a short read is a truncated file, not a shorter chunk. */
+    private static byte[] fixed(Source src, long pos, int len, String type) throws IOException {
+        byte[] p = src.read(pos, len);
+        if (p.length < len) throw new EOFException("Truncated " + type + " at " + pos);
+        return p;
+    }
+
+    private static String textValue(String type, byte[] p, int from) {
+        if ("tEXt".equals(type)) return new String(p, from, p.length - from, StandardCharsets.ISO_8859_1);
+        // iTXt: compression flag, method, language\0, translated keyword\0, text (uncompressed only)
+        if (from + 2 > p.length || p[from] != 0) return "";
+        int i = from + 2;
+        for (int z = 0; z < 2 && i < p.length; i++) {
+            if (p[i] == 0) z++;
+        }
+        return new String(p, i, p.length - i, StandardCharsets.UTF_8);
+    }
+
+    // === TIFF / EXIF ===
+
+    /**
+     * @param base     offset of the TIFF header inside {@code src}
+     * @param fileBase absolute file offset that TIFF offsets are relative to (for thumbnail location)
+     */
+    private static void parseTiff(Source src, long base, long fileBase, Result r) throws IOException {
+        byte[] h = new byte[8];
+        if (src.readUpTo(base, h, 8) < 8) return;
+        boolean le = h[0] == 'I';
+        if (u16(h, 2, le) != 42) return;
+        long ifd0 = u32(h, 4, le);
+        long ifd1 = readIfd(src, base, fileBase, ifd0, le, TIFF_TAGS, r, 0);
+        if (ifd1 > 0) readIfd(src, base, fileBase, ifd1, le, TIFF_TAGS, r, 1);
+        if (r.tags.containsKey("GPSLatitudeRaw")) {
+            r.gpsLatitude = gpsDecimal(r.tags.get("GPSLatitudeRaw"), r.tags.get("GPSLatitudeRef"));
+            if (!Double.isNaN(r.gpsLatitude)) r.tags.put("GPSLatitude", String.format(Locale.US, "%.6f", r.gpsLatitude));
+        }
+        if (r.tags.containsKey("GPSLongitudeRaw")) {
+            r.gpsLongitude = gpsDecimal(r.tags.get("GPSLongitudeRaw"), r.tags.get("GPSLongitudeRef"));
+            if (!Double.isNaN(r.gpsLongitude)) r.tags.put("GPSLongitude", String.format(Locale.US, "%.6f", r.gpsLongitude));
+        }
+    }
+
+    /**
+     * Reads one IFD; follows EXIF/GPS sub-IFDs.  Returns the next-IFD offset (0 if none).
+     * An offset pointing past the data drops only the entry (or IFD) it belongs to.
+     */
+    private static long readIfd(Source src, long base, long fileBase, long off, boolean le,
+                                Map<Integer, String> names, Result r, int depth) throws IOException {
+        if (off <= 0 || depth > 4) return 0;
+        byte[] cnt = new byte[2];
+        if (src.readUpTo(base + off, cnt, 2) < 2) return 0;
+        int n = u16(cnt, 0, le);
+        if (n <= 0 || n > 1024) return 0;
+        byte[] e;
+        try {
+            e = src.read(base + off + 2, n * 12 + 4);
+        } catch (EOFException bad) {
+            return 0;
+        }
+        if (e.length < n * 12) return 0;
+
+        for (int i = 0; i < n; i++) {
+            int p = i * 12;
+            int tag = u16(e, p, le);
+            int type = u16(e, p + 2, le);
+            long count = u32(e, p + 4, le);
+            if (type <= 0 || type >= TYPE_SIZE.length) continue;
+            long size = count * TYPE_SIZE[type];
+            long valueOff = size <= 4 ? -1 : u32(e, p + 8, le);
+
+            if (tag == TAG_EXIF_IFD || tag == TAG_INTEROP_IFD) {
+                readIfd(src, base, fileBase, u32(e, p + 8, le), le, TIFF_TAGS, r, depth + 1);
+                continue;
+            }
+            if (tag == TAG_GPS_IFD) {
+                readIfd(src, base, fileBase, u32(e, p + 8, le), le, GPS_TAGS, r, depth + 1);
+                continue;
+            }
+            if (tag == TAG_MAKER_NOTE) {
+                r.hasMakerNote = true;
+                r.makerNoteLength = size;
+                r.tags.put("MakerNote", "present (" + size + " bytes)");
+                continue;
+            }
+            if (names == TIFF_TAGS && tag == TAG_THUMB_OFFSET) {
+                // stored relative to the TIFF header; reported as an absolute file offset
+                r.thumbnailOffset = fileBase + u32(e, p + 8, le);
+                r.tags.put("ThumbnailOffset", String.valueOf(r.thumbnailOffset));
+                continue;
+            }
+            if (names == TIFF_TAGS && tag == TAG_THUMB_LENGTH) {
+                r.thumbnailLength = u32(e, p + 8, le);
+                r.tags.put("ThumbnailLength", String.valueOf(r.thumbnailLength));
+                continue;
+            }
+
+            String name = names.get(tag);
+            if (name == null || size > 4096) continue;
+            // IFD1 describes the thumbnail; don't let it overwrite the main image's values.
+            if (depth == 1 && names == TIFF_TAGS && r.tags.containsKey(name)) continue;
+            byte[] v;
+            try {
+                v = valueOff < 0 ? slice(e, p + 8, (int) size) : src.read(base + valueOff, (int) size);
+            } catch (EOFException bad) {
+                continue;
+            }
+            String s = format(v, type, (int) count, le);
+            if (s != null && !s.isEmpty()) r.tags.put(name, s);
+        }
+        return e.length >= n * 12 + 4 ? u32(e, n * 12, le) : 0;
+    }
+
+    private static String format(byte[] v, int type, int count, boolean le) {
+        switch (type) {
+            case 2: { // ASCII
+                int end = 0;
+                while (end < v.length && v[end] != 0) end++;
+                return new String(v, 0, end, StandardCharsets.UTF_8).trim();
+            }
+            case 7: { // UNDEFINED: printable ASCII only (e.g. GPSProcessingMethod)
+                StringBuilder sb = new StringBuilder();
+                for (byte b : v) if (b >= 0x20 && b < 0x7F) sb.append((char) b);
+                return sb.toString().trim();
+            }
+            case 3: case 8: case 4: case 9: case 1: case 6: {
+                StringBuilder sb = new StringBuilder();
+                int sz = TYPE_SIZE[type];
+                for (int i = 0; i < count && (i + 1) * sz <= v.length; i++) {
+                    if (i > 0) sb.append(' ');
+                    long x = sz == 1 ? (v[i] & 0xFF) : sz == 2 ? u16(v, i * 2, le) : u32(v, i * 4, le);
+                    if (type == 8) x = (short) x;
+                    if (type == 9) x = (int) x;
+                    if (type == 6) x = (byte) x;
+                    sb.append(x);
+                }
+                return sb.toString();
+            }
+            case 5: case 10: {
+                StringBuilder sb = new StringBuilder();
+                for (int i = 0; i < count && (i + 1) * 8 <= v.length; i++) {
+                    long num = u32(v, i * 8, le);
+                    long den = u32(v, i * 8 + 4, le);
+                    if (type == 10) { num = (int) num; den = (int) den; }
+                    if (i > 0) sb.append(' ');
+                    sb.append(den == 0 ? "0" : trimDouble((double) num / den));
+                }
+                return sb.toString();
+            }
+            default:
+                return null;
+        }
+    }
+
+    private static double gpsDecimal(String dms, String ref) {
+        if (dms == null) return Double.NaN;
+        String[] parts = dms.trim().split(" ");
+        try {
+            double d = parts.length > 0 ? Double.parseDouble(parts[0]) : 0;
+            double m = parts.length > 1 ? Double.parseDouble(parts[1]) : 0;
+            double s = parts.length > 2 ? Double.parseDouble(parts[2]) : 0;
+            double v = d + m / 60.0 + s / 3600.0;
+            if (ref != null && (ref.startsWith("S") || ref.startsWith("W"))) v = -v;
+            return v;
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    private static String trimDouble(double d) {
+        if (d == Math.rint(d) && Math.abs(d) < 1e15) return String.valueOf((long) d);
+        return String.format(Locale.US, "%.6f", d).replaceAll("0+$", "");
+    }
+
+    // === Byte helpers ===
+
+    private static void append(StringBuilder sb, String s) {
+        if (sb.length() > 0) sb.append(',');
+        sb.append(s);
+    }
+
+    private static boolean startsWith(byte[] p, String ascii) {
+        if (p.length < ascii.length()) return false;
+        for (int i = 0; i < ascii.length(); i++) if (p[i] != (byte) ascii.charAt(i)) return false;
+        return true;
+    }
+
+    private static byte[] slice(byte[] b, int off, int len) {
+        byte[] out = new byte[len];
+        System.arraycopy(b, off, out, 0, len);
+        return out;
+    }
+
+    private static int u16(byte[] b, int o, boolean le) {
+        return le ? (b[o] & 0xFF) | ((b[o + 1] & 0xFF) << 8)
+                  : ((b[o] & 0xFF) << 8) | (b[o + 1] & 0xFF);
+    }
+
+    private static long u32(byte[] b, int o, boolean le) {
+        return le ? (b[o] & 0xFFL) | ((b[o + 1] & 0xFFL) << 8) | ((b[o + 2] & 0xFFL) << 16) | ((b[o + 3] & 0xFFL) << 24)
+                  : ((b[o] & 0xFFL) << 24) | ((b[o + 1] & 0xFFL) << 16) | ((b[o + 2] & 0xFFL) << 8) | (b[o + 3] & 0xFFL);
+    }
+
+    private static long be32(byte[] b, int o) {
+        return u32(b, o, false);
+    }
+
+    // === Sources ===
+
+    /** Positional byte source; counts bytes actually read. */
+    private interface Source {
+        int readUpTo(long pos, byte[] dst, int len) throws IOException;
+        long bytesRead();
+
+        default byte[] read(long pos, int len) throws IOException {
+            if (len < 0) throw new IOException("Negative length");
+            byte[] b = new byte[len];
+            int n = readUpTo(pos, b, len);
+            if (n < len) {
+                if (n <= 0) throw new EOFException("Truncated metadata at " + pos);
+                byte[] t = new byte[n];
+                System.arraycopy(b, 0, t, 0, n);
+                return t;
+            }
+            return b;
+        }
+    }
+
+    private static final class ChannelSource implements Source {
+        private final FileChannel ch;
+        private long read;
+
+        ChannelSource(FileChannel ch) {
+            this.ch = ch;
+        }
+
+        @Override
+        public int readUpTo(long pos, byte[] dst, int len) throws IOException {
+            ByteBuffer bb = ByteBuffer.wrap(dst, 0, len);
+            long p = pos;
+            while (bb.hasRemaining()) {
+                int n = ch.read(bb, p);
+                if (n <= 0) break;
+                p += n;
+            }
+            int got = bb.position();
+            read += got;
+            return got;
+        }
+
+        @Override
+        public long bytesRead() {
+            return read;
+        }
+    }
+
+    /** In-memory segment (e.g. an APP1 payload) with TIFF offsets relative to {@code start}. */
+    private static final class ArraySource implements Source {
+        private final byte[] data;
+        private final int start;
+
+        ArraySource(byte[] data, int start) {
+            this.data = data;
+            this.start = start;
+        }
+
+        @Override
+        public int readUpTo(long pos, byte[] dst, int len) {
+            long from = start + pos;
+            if (pos < 0 || from >= data.length) return 0;
+            int n = (int) Math.min(len, data.length - from);
+            System.arraycopy(data, (int) from, dst, 0, n);
+            return n;
+        }
+
+        @Override
+        public long bytesRead() {
+            return 0; // already counted when the segment was read from the file
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.verum.omnis.core;
+
+/**
+ * Fft – in-place radix-2 FFT over primitive arrays.
+ *
+ * <p>Twiddles and the bit-reversal permutation are computed once per size, so
+ * an instance can be reused for every window of a stream without
+ * allocating.  Instances are immutable and may be shared between threads;
+ * the caller owns the data arrays.</p>
+ */
+public final class Fft {
+
+    public final int n;
+    private final int[] rev;
+    private final double[] cos;
+    private final double[] sin;
+
+    public Fft(int n) {
+        if (n < 2 || Integer.bitCount(n) != 1) throw new IllegalArgumentException("FFT size must be a power of two: " + n);
+        this.n = n;
+        int bits = Integer.numberOfTrailingZeros(n);
+        rev = new int[n];
+        for (int i = 0; i < n; i++) rev[i] = Integer.reverse(i) >>> (32 - bits);
+        cos = new double[n / 2];
+        sin = new double[n / 2];
+        for (int i = 0; i < n / 2; i++) {
+            cos[i] = Math.cos(-2 * Math.PI * i / n);
+            sin[i] = Math.sin(-2 * Math.PI * i / n);
+        }
+    }
+
+    /** Forward transform of (re, im) in place; both arrays must have length {@link #n}. */
+    public void transform(double[] re, double[] im) {
+        for (int i = 0; i < n; i++) {
+            int j = rev[i];
+            if (j > i) {
+                double t = re[i]; re[i] = re[j]; re[j] = t;
+                t = im[i]; im[i] = im[j]; im[j] = t;
+            }
+        }
+        for (int size = 2; size <= n; size <<= 1) {
+            int half = size >> 1, step = n / size;
+            for (int start = 0; start < n; start += size) {
+                for (int k = 0, t = 0; k < half; k++, t += step) {
+                    int a = start + k, b = a + half;
+                    double wr = cos[t], wi = sin[t];
+                    double xr = re[b] * wr - im[b] * wi;
+                    double xi = re[b] * wi + im[b] * wr;
+                    re[b] = re[a] - xr;
+                    im[b] = im[a] - xi;
+                    re[a] += xr;
+                    im[a] += xi;
+                }
+            }
+        }
+    }
+
+    /** Fill {@code w} with a periodic Hann window of length {@link #n}. */
+    public void hann(double[] w) {
+        for (int i = 0; i < n; i++) w[i] = 0.5 - 0.5 * Math.cos(2 * Math.PI * i / n);
+    }
+}
@@ -0,0 +1,377 @@
+package com.verum.omnis.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Content sniffing by magic bytes (extension-independent).
+ *
+ * <p>Identifies a file from one small header block using a signature table
+ * that is compiled once into a first-byte dispatch index, so each sniff only
+ * compares against the handful of signatures that can possibly match.
+ * Container formats (RIFF, ISO-BMFF {@code ftyp}, ZIP) are then refined from
+ * the same header block.  No Android dependencies; cheap enough to run over
+ * whole evidence corpora.</p>
+ */
+public final class FileSniffer {
+
+    /** Bytes read from the start of the file; enough for ZIP entry names and text heuristics. */
+    public static final int HEADER_BYTES = 4096;
+
+    public enum Kind { IMAGE, AUDIO, VIDEO, DOCUMENT, ARCHIVE, MAILBOX, TEXT, DATABASE, EXECUTABLE, UNKNOWN }
+
+    public enum Type {
+        JPEG(Kind.IMAGE, "image/jpeg", "jpg", "jpeg", "jfif"),
+        PNG(Kind.IMAGE, "image/png", "png"),
+        GIF(Kind.IMAGE, "image/gif", "gif"),
+        WEBP(Kind.IMAGE, "image/webp", "webp"),
+        BMP(Kind.IMAGE, "image/bmp", "bmp"),
+        TIFF(Kind.IMAGE, "image/tiff", "tif", "tiff", "dng", "nef", "cr2", "arw"),
+        HEIC(Kind.IMAGE, "image/heic", "heic", "heif"),
+        AVIF(Kind.IMAGE, "image/avif", "avif"),
+        ICO(Kind.IMAGE, "image/x-icon", "ico"),
+        MP4(Kind.VIDEO, "video/mp4", "mp4", "m4v"),
+        MOV(Kind.VIDEO, "video/quicktime", "mov", "qt"),
+        THREE_GP(Kind.VIDEO, "video/3gpp", "3gp", "3g2"),
+        MKV(Kind.VIDEO, "video/x-matroska", "mkv", "webm"),
+        AVI(Kind.VIDEO, "video/x-msvideo", "avi"),
+        M4A(Kind.AUDIO, "audio/mp4", "m4a", "m4b", "aac"),
+        WAV(Kind.AUDIO, "audio/wav", "wav"),
+        MP3(Kind.AUDIO, "audio/mpeg", "mp3"),
+        AAC(Kind.AUDIO, "audio/aac", "aac"),
+        FLAC(Kind.AUDIO, "audio/flac", "flac"),
+        OGG(Kind.AUDIO, "audio/ogg", "ogg", "oga", "opus"),
+        AMR(Kind.AUDIO, "audio/amr", "amr"),
+        PDF(Kind.DOCUMENT, "application/pdf", "pdf"),
+        DOCX(Kind.DOCUMENT, "application/vnd.openxmlformats-officedocument.wordprocessingml.document", "docx"),
+        XLSX(Kind.DOCUMENT, "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet", "xlsx"),
+        PPTX(Kind.DOCUMENT, "application/vnd.openxmlformats-officedocument.presentationml.presentation", "pptx"),
+        ODF(Kind.DOCUMENT, "application/vnd.oasis.opendocument", "odt", "ods", "odp"),
+        EPUB(Kind.DOCUMENT, "application/epub+zip", "epub"),
+        OLE2(Kind.DOCUMENT, "application/x-ole-storage", "doc", "xls", "ppt", "msg"),
+        RTF(Kind.DOCUMENT, "application/rtf", "rtf"),
+        XML(Kind.TEXT, "application/xml", "xml"),
+        HTML(Kind.TEXT, "text/html", "html", "htm"),
+        JSON(Kind.TEXT, "application/json", "json"),
+        EML(Kind.MAILBOX, "message/rfc822", "eml"),
+        MBOX(Kind.MAILBOX, "application/mbox", "mbox", "mbx"),
+        TEXT(Kind.TEXT, "text/plain", "txt", "log", "csv", "md"),
+        ZIP(Kind.ARCHIVE, "application/zip", "zip"),
+        APK(Kind.ARCHIVE, "application/vnd.android.package-archive", "apk", "jar"),
+        GZIP(Kind.ARCHIVE, "application/gzip", "gz", "tgz"),
+        SEVEN_Z(Kind.ARCHIVE, "application/x-7z-compressed", "7z"),
+        RAR(Kind.ARCHIVE, "application/vnd.rar", "rar"),
+        SQLITE(Kind.DATABASE, "application/vnd.sqlite3", "db", "sqlite", "sqlite3"),
+        ELF(Kind.EXECUTABLE, "application/x-elf", "so", "elf"),
+        PE(Kind.EXECUTABLE, "application/vnd.microsoft.portable-executable", "exe", "dll"),
+        UNKNOWN(Kind.UNKNOWN, "application/octet-stream");
+
+        public final Kind kind;
+        public final String mime;
+        private final String[] extensions;
+
+        Type(Kind kind, String mime, String... extensions) {
+            this.kind = kind;
+            this.mime = mime;
+            this.extensions = extensions;
+        }
+
+        /** True if {@code fileName}'s extension is a usual one for this type (or has none we can judge). */
+        public boolean matchesExtension(String fileName) {
+            int dot = fileName == null ? -1 : fileName.lastIndexOf('.');
+            if (dot < 0 || this == UNKNOWN) return true;
+            String ext = fileName.substring(dot + 1).toLowerCase(Locale.ROOT);
+            for (String e : extensions) if (e.equals(ext)) return true;
+            return false;
+        }
+    }
+
+    /** Result of a sniff: the detected type plus the header block it was read from. */
+    public static class Sniff {
+        public final Type type;
+        public final byte[] header;
+        public final int length;
+
+        Sniff(Type type, byte[] header, int length) {
+            this.type = type;
+            this.header = header;
+            this.length = length;
+        }
+    }
+
+    // === Compiled signature table ===
+
+    private static final class Sig {
+        final int offset;
+        final byte[] magic;
+        final Type type;
+
+        Sig(int offset, byte[] magic, Type type) {
+            this.offset = offset;
+            this.magic = magic;
+            this.type = type;
+        }
+    }
+
+    private static final Sig[][] BY_FIRST_BYTE = new Sig[256][];
+    private static final Sig[] AT_OFFSET;
+
+    static {
+        List<Sig> sigs = new ArrayList<>();
+        add(sigs, 0, hex("FFD8FF"), Type.JPEG);
+        add(sigs, 0, hex("89504E470D0A1A0A"), Type.PNG);
+        add(sigs, 0, ascii("GIF87a"), Type.GIF);
+        add(sigs, 0, ascii("GIF89a"), Type.GIF);
+        add(sigs, 0, ascii("BM"), Type.BMP);
+        add(sigs, 0, hex("49492A00"), Type.TIFF);
+        add(sigs, 0, hex("4D4D002A"), Type.TIFF);
+        add(sigs, 0, hex("00000100"), Type.ICO);
+        add(sigs, 0, ascii("RIFF"), Type.WAV);          // refined by RIFF form type
+        add(sigs, 0, hex("1A45DFA3"), Type.MKV);
+        add(sigs, 0, ascii("ID3"), Type.MP3);
+        add(sigs, 0, ascii("fLaC"), Type.FLAC);
+        add(sigs, 0, ascii("OggS"), Type.OGG);
+        add(sigs, 0, ascii("#!AMR"), Type.AMR);
+        add(sigs, 0, ascii("%PDF-"), Type.PDF);
+        add(sigs, 0, hex("504B0304"), Type.ZIP);        // refined by first entry name
+        add(sigs, 0, hex("504B0506"), Type.ZIP);        // empty archive
+        add(sigs, 0, hex("D0CF11E0A1B11AE1"), Type.OLE2);
+        add(sigs, 0, ascii("{\\rtf"), Type.RTF);
+        add(sigs, 0, hex("1F8B"), Type.GZIP);
+        add(sigs, 0, hex("377ABCAF271C"), Type.SEVEN_Z);
+        add(sigs, 0, ascii("Rar!\u001A\u0007"), Type.RAR);
+        add(sigs, 0, ascii("SQLite format 3\u0000"), Type.SQLITE);
+        add(sigs, 0, hex("7F454C46"), Type.ELF);
+        add(sigs, 0, ascii("MZ"), Type.PE);
+        add(sigs, 0, ascii("From "), Type.MBOX);
+        add(sigs, 4, ascii("ftyp"), Type.MP4);          // refined by major brand
+        add(sigs, 4, ascii("moov"), Type.MOV);
+        add(sigs, 4, ascii("mdat"), Type.MOV);
+        add(sigs, 4, ascii("wide"), Type.MOV);
+
+        List<Sig> offset = new ArrayList<>();
+        List<List<Sig>> buckets = new ArrayList<>(256);
+        for (int i = 0; i < 256; i++) buckets.add(null);
+        for (Sig s : sigs) {
+            if (s.offset != 0) {
+                offset.add(s);
+                continue;
+            }
+            int b = s.magic[0] & 0xFF;
+            if (buckets.get(b) == null) buckets.set(b, new ArrayList<>());
+            buckets.get(b).add(s);
+        }
+        for (int i = 0; i < 256; i++) {
+            List<Sig> l = buckets.get(i);
+            // Longer signatures first so "GIF89a" wins over a shorter prefix of the same byte.
+            if (l != null) {
+                l.sort((a, c) -> c.magic.length - a.magic.length);
+                BY_FIRST_BYTE[i] = l.toArray(new Sig[0]);
+            }
+        }
+        AT_OFFSET = offset.toArray(new Sig[0]);
+    }
+
+    private FileSniffer() {}
+
+    /** Read the header block of {@code f} (one positional read) and identify it. */
+    public static Sniff sniff(File f) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(f, "r")) {
+            return sniff(raf.getChannel());
+        }
+    }
+
+    /**
+     * Identify from an already-open channel using a positional read at offset 0;
+     * the channel position is left untouched so the caller can keep using it.
+     */
+    public static Sniff sniff(FileChannel ch) throws IOException {
+        byte[] head = new byte[HEADER_BYTES];
+        ByteBuffer bb = ByteBuffer.wrap(head);
+        long pos = 0;
+        while (bb.hasRemaining()) {
+            int n = ch.read(bb, pos);
+            if (n <= 0) break;
+            pos += n;
+        }
+        int len = bb.position();
+        return new Sniff(identify(head, len), head, len);
+    }
+
+    /** Identify a header block. */
+    public static Type identify(byte[] h, int len) {
+        if (len <= 0) return Type.UNKNOWN;
+
+        Type t = null;
+        Sig[] cands = BY_FIRST_BYTE[h[0] & 0xFF];
+        if (cands != null) {
+            for (Sig s : cands) {
+                if (matches(h, len, s)) {
+                    t = s.type;
+                    break;
+                }
+            }
+        }
+        if (t == null) {
+            for (Sig s : AT_OFFSET) {
+                if (matches(h, len, s)) {
+                    t = s.type;
+                    break;
+                }
+            }
+        }
+
+        if (t == null) return sniffUnsigned(h, len);
+        switch (t) {
+            case WAV: return refineRiff(h, len);
+            case MP4: return refineFtyp(h, len);
+            case ZIP: return refineZip(h, len);
+            case PE:  return isPe(h, len) ? Type.PE : sniffUnsigned(h, len);
+            case BMP: return len >= 14 && u32le(h, 6) == 0 ? Type.BMP : sniffUnsigned(h, len); // reserved fields
+            case ICO: return len >= 6 && (h[4] != 0 || h[5] != 0) ? Type.ICO : sniffUnsigned(h, len);
+            default:  return t;
+        }
+    }
+
+    // === Refinement ===
+
+    private static Type refineRiff(byte[] h, int len) {
+        if (len < 12) return Type.UNKNOWN;
+        if (at(h, len, 8, "WAVE")) return Type.WAV;
+        if (at(h, len, 8, "WEBP")) return Type.WEBP;
+        if (at(h, len, 8, "AVI ")) return Type.AVI;
+        return Type.UNKNOWN;
+    }
+
+    private static Type refineFtyp(byte[] h, int len) {
+        if (len < 12) return Type.MP4;
+        String brand = new String(h, 8, 4, StandardCharsets.ISO_8859_1);
+        switch (brand) {
+            case "heic": case "heix": case "hevc": case "heim": case "heis": case "mif1": case "msf1":
+                return Type.HEIC;
+            case "avif": case "avis":
+                return Type.AVIF;
+            case "qt  ":
+                return Type.MOV;
+            case "M4A ": case "M4B ": case "M4P ":
+                return Type.M4A;
+            default:
+                if (brand.startsWith("3g")) return Type.THREE_GP;
+                return Type.MP4;
+        }
+    }
+
+    /** Look at the first local file entry name (offset 30) to tell OOXML/ODF/EPUB/APK from plain ZIP. */
+    private static Type refineZip(byte[] h, int len) {
+        if (len < 30 || h[2] != 3) return Type.ZIP;
+        int nameLen = u16le(h, 26);
+        int extraLen = u16le(h, 28);
+        if (30 + nameLen > len) return Type.ZIP;
+        String name = new String(h, 30, nameLen, StandardCharsets.ISO_8859_1);
+        if ("mimetype".equals(name)) {
+            int dataAt = 30 + nameLen + extraLen;
+            if (dataAt >= len) return Type.ZIP;
+            String mt = new String(h, dataAt, Math.max(0, Math.min(64, len - dataAt)), StandardCharsets.ISO_8859_1);
+            if (mt.startsWith("application/epub")) return Type.EPUB;
+            if (mt.startsWith("application/vnd.oasis.opendocument")) return Type.ODF;
+        }
+        // Office files normally start with [Content_Types].xml; the part folder follows shortly after.
+        String window = new String(h, 30, len - 30, StandardCharsets.ISO_8859_1);
+        if (name.startsWith("word/") || window.contains("word/")) return Type.DOCX;
+        if (name.startsWith("xl/") || window.contains("xl/")) return Type.XLSX;
+        if (name.startsWith("ppt/") || window.contains("ppt/")) return Type.PPTX;
+        if (name.equals("AndroidManifest.xml") || name.startsWith("META-INF/")
+                || window.contains("AndroidManifest.xml") || window.contains("classes.dex")) return Type.APK;
+        return Type.ZIP;
+    }
+
+    /** Formats without a fixed magic: MP3/AAC frame sync, e-mail headers, markup, JSON, plain text. */
+    private static Type sniffUnsigned(byte[] h, int len) {
+        if (len >= 2 && (h[0] & 0xFF) == 0xFF) {
+            int b1 = h[1] & 0xFF;
+            if ((b1 & 0xF6) == 0xF0) return Type.AAC;          // ADTS
+            if ((b1 & 0xE0) == 0xE0 && (b1 & 0x06) != 0) return Type.MP3; // MPEG audio frame
+        }
+
+        int start = 0;
+        if (len >= 3 && (h[0] & 0xFF) == 0xEF && (h[1] & 0xFF) == 0xBB && (h[2] & 0xFF) == 0xBF) start = 3;
+        if (!looksLikeText(h, start, len)) return Type.UNKNOWN;
+
+        int i = start;
+        while (i < len && (h[i] == ' ' || h[i] == '\t' || h[i] == '\r' || h[i] == '\n')) i++;
+        if (i >= len) return Type.TEXT;
+        String lead = new String(h, i, Math.min(64, len - i), StandardCharsets.ISO_8859_1).toLowerCase(Locale.ROOT);
+        if (lead.startsWith("<?xml")) return Type.XML;
+        if (lead.startsWith("<!doctype html") || lead.startsWith("<html")) return Type.HTML;
+        if (h[i] == '{' || h[i] == '[') return Type.JSON;
+        if (lead.startsWith("return-path:") || lead.startsWith("received:") || lead.startsWith("delivered-to:")
+                || lead.startsWith("message-id:") || lead.startsWith("mime-version:")
+                || (lead.startsWith("x-") && lead.contains(":"))) return Type.EML;
+        return Type.TEXT;
+    }
+
+    /** No NULs and at most ~5% control bytes in the header; UTF-8 multibyte sequences count as text. */
+    private static boolean looksLikeText(byte[] h, int start, int len) {
+        int control = 0;
+        for (int i = start; i < len; i++) {
+            int b = h[i] & 0xFF;
+            if (b == 0) return false;
+            if (b < 0x20 && b != '\n' && b != '\r' && b != '\t' && b != '\f') control++;
+        }
+        return control * 20 <= (len - start);
+    }
+
+    /** "MZ" alone is too weak; require the PE header that e_lfanew points at. */
+    private static boolean isPe(byte[] h, int len) {
+        if (len < 64) return false;
+        long peAt = u32le(h, 0x3C);
+        return peAt + 4 <= len && at(h, len, (int) peAt, "PE\u0000\u0000");
+    }
+
+    // === Helpers ===
+
+    private static boolean matches(byte[] h, int len, Sig s) {
+        if (s.offset + s.magic.length > len) return false;
+        for (int i = 0; i < s.magic.length; i++) {
+            if (h[s.offset + i] != s.magic[i]) return false;
+        }
+        return true;
+    }
+
+    private static boolean at(byte[] h, int len, int off, String ascii) {
+        if (off + ascii.length() > len) return false;
+        for (int i = 0; i < ascii.length(); i++) if (h[off + i] != (byte) ascii.charAt(i)) return false;
+        return true;
+    }
+
+    private static int u16le(byte[] h, int off) {
+        return (h[off] & 0xFF) | ((h[off + 1] & 0xFF) << 8);
+    }
+
+    private static long u32le(byte[] h, int off) {
+        return (h[off] & 0xFFL) | ((h[off + 1] & 0xFFL) << 8) | ((h[off + 2] & 0xFFL) << 16) | ((h[off + 3] & 0xFFL) << 24);
+    }
+
+    private static void add(List<Sig> sigs, int offset, byte[] magic, Type type) {
+        sigs.add(new Sig(offset, magic, type));
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private static byte[] hex(String s) {
+        byte[] out = new byte[s.length() / 2];
+        for (int i = 0; i < out.length; i++) {
+            out[i] = (byte) Integer.parseInt(s.substring(2 * i, 2 * i + 2), 16);
+        }
+        return out;
+    }
+}
@@ -0,0 +1,699 @@
+package com.verum.omnis.core;
+
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * JPEG double-compression screening (B2 Document &amp; Image Forensics).
+ *
+ * <p>Works on the compressed stream only: DQT/DHT/SOF/DRI headers are parsed
+ * and the baseline scan is Huffman-decoded to quantized DCT coefficients –
+ * there is no IDCT, colour conversion or pixel buffer.  For the low-frequency
+ * luma AC positions a histogram of |coefficient| is built; a singly
+ * compressed photo gives a smooth, roughly Laplacian histogram, while
+ * re-quantizing with a different table leaves periodic holes or peaks.  The
+ * score measures that periodic roughness above the sampling noise.</p>
+ *
+ * <p>Restart intervals (DRI/RSTn) are independently decodable, so when the
+ * encoder emitted them the scan is split at the markers and decoded in
+ * parallel on a ForkJoinPool.  Decoding stops after a block budget, which
+ * is plenty for stable histograms and keeps screening cost flat for very
+ * large photos.</p>
+ */
+public final class JpegRecompression {
+
+    /** Default flag threshold when the rule pack does not provide one. */
+    public static final double DEFAULT_SCORE_MIN = 0.6;
+    /** Luma blocks decoded per image before sampling stops. */
+    public static final int DEFAULT_MAX_BLOCKS = 1 << 17;
+    /** A single mapping is int-indexed; larger files are reported, not decoded. */
+    static final long MAX_MAP = Integer.MAX_VALUE;
+
+    private static final int NPOS = 15;    // zig-zag AC positions 1..15
+    private static final int MAXV = 48;    // |coefficient| bins 0..MAXV
+    private static final int BINS = MAXV + 1;
+    private static final int MIN_POS_SAMPLES = 400;
+
+    private static final int[] IJG_LUMA = {   // Annex K.1, natural order
+            16, 11, 10, 16, 24, 40, 51, 61,
+            12, 12, 14, 19, 26, 58, 60, 55,
+            14, 13, 16, 24, 40, 57, 69, 56,
+            14, 17, 22, 29, 51, 87, 80, 62,
+            18, 22, 37, 56, 68, 109, 103, 77,
+            24, 35, 55, 64, 81, 104, 113, 92,
+            49, 64, 78, 87, 103, 121, 120, 101,
+            72, 92, 95, 98, 112, 100, 103, 99};
+    private static final int[] ZIGZAG = {     // zig-zag index -> natural index
+            0, 1, 8, 16, 9, 2, 3, 10, 17, 24, 32, 25, 18, 11, 4, 5,
+            12, 19, 26, 33, 40, 48, 41, 34, 27, 20, 13, 6, 7, 14, 21, 28,
+            35, 42, 49, 56, 57, 50, 43, 36, 29, 22, 15, 23, 30, 37, 44, 51,
+            58, 59, 52, 45, 38, 31, 39, 46, 53, 60, 61, 54, 47, 55, 62, 63};
+    private static final int[] STD_DC_LUMA_BITS = {0, 1, 5, 1, 1, 1, 1, 1, 1, 0, 0, 0, 0, 0, 0, 0};
+    private static final int[] STD_AC_LUMA_BITS = {0, 2, 1, 3, 3, 2, 4, 3, 5, 5, 4, 4, 0, 0, 1, 0x7d};
+
+    private static final int M_ANALYZE = Metrics.stage("jpeg.recompression");
+    private static final int C_BLOCKS = Metrics.counter("jpeg_blocks_decoded");
+
+    public static class Result {
+        public double score;                 // 0..1 double-compression likelihood
+        public boolean flagged;              // score >= threshold
+        public boolean decoded;              // coefficient histograms were available
+        public int estimatedQuality = -1;    // IJG-equivalent quality of the luma table
+        public boolean standardQuantTables;  // luma table is an exact IJG scaling
+        public boolean standardHuffmanTables;// luma DC/AC tables are the Annex K defaults
+        public boolean progressive;
+        public int quantTableDefinitions;    // DQT tables seen (redefinitions included)
+        public int restartIntervals;
+        public long blocksDecoded;
+        public int corruptIntervals;
+        public String note = "";
+    }
+
+    /** 1/8-scale luma image built from the dequantized DC coefficient of every block. */
+    public static class DcImage {
+        public int width, height;
+        public float[] luma;      // row-major, 0..255
+    }
+
+    private JpegRecompression() {}
+
+    /**
+     * Downscaled luma from DC coefficients only (baseline JPEG).  Each 8x8 block
+     * becomes one pixel, which is all a perceptual hash needs; no IDCT is run.
+     * Returns null when the file is not a decodable baseline JPEG.
+     */
+    public static DcImage dcLuma(File f) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(f, "r");
+             FileChannel ch = raf.getChannel()) {
+            if (ch.size() > MAX_MAP) return null;
+            ByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            DcImage img = new DcImage();
+            try {
+                Result r = analyze(buf, Integer.MAX_VALUE, ForkJoinPool.commonPool(), img);
+                return r.decoded && img.luma != null ? img : null;
+            } catch (IndexOutOfBoundsException e) {
+                return null;
+            }
+        }
+    }
+
+    /** Threshold from {@code forensic.recompression_artifact_score_min}, or the default. */
+    public static double threshold(JSONObject rules) {
+        if (rules == null) return DEFAULT_SCORE_MIN;
+        JSONObject forensic = rules.optJSONObject("forensic");
+        return forensic == null ? DEFAULT_SCORE_MIN
+                : forensic.optDouble("recompression_artifact_score_min", DEFAULT_SCORE_MIN);
+    }
+
+    public static Result analyze(File f, double threshold) throws IOException {
+        return analyze(f, threshold, DEFAULT_MAX_BLOCKS, ForkJoinPool.commonPool());
+    }
+
+    public static Result analyze(File f, double threshold, int maxBlocks, ForkJoinPool pool) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(f, "r");
+             FileChannel ch = raf.getChannel()) {
+            return analyze(ch, threshold, maxBlocks, pool);
+        }
+    }
+
+    /** Analyze an already open channel; the caller keeps ownership of it. */
+    public static Result analyze(FileChannel ch, double threshold) throws IOException {
+        return analyze(ch, threshold, DEFAULT_MAX_BLOCKS, ForkJoinPool.commonPool());
+    }
+
+    public static Result analyze(FileChannel ch, double threshold, int maxBlocks, ForkJoinPool pool) throws IOException {
+        long t0 = Metrics.begin();
+        try {
+            Result r;
+            if (ch.size() > MAX_MAP) {
+                r = new Result();
+                r.note = "file too large to map";
+            } else {
+                ByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+                try {
+                    r = analyze(buf, maxBlocks, pool, null);
+                } catch (IndexOutOfBoundsException e) {
+                    r = new Result();
+                    r.note = "truncated or malformed JPEG";
+                }
+            }
+            r.flagged = r.score >= threshold;
+            return r;
+        } finally {
+            Metrics.end(M_ANALYZE, t0);
+        }
+    }
+
+    /**
+     * Screen many files; each file is analyzed on the pool (restart intervals
+     * inside a file are forked onto the same pool).
+     */
+    public static List<Result> analyzeAll(List<File> files, double threshold, int parallelism) {
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, parallelism));
+        try {
+            List<RecursiveTask<Result>> tasks = new ArrayList<>(files.size());
+            for (final File f : files) {
+                RecursiveTask<Result> t = new RecursiveTask<Result>() {
+                    @Override
+                    protected Result compute() {
+                        try {
+                            return analyze(f, threshold, DEFAULT_MAX_BLOCKS, pool);
+                        } catch (Exception e) {
+                            Result r = new Result();
+                            r.note = "error: " + e.getMessage();
+                            return r;
+                        }
+                    }
+                };
+                tasks.add(t);
+                pool.execute(t);
+            }
+            List<Result> out = new ArrayList<>(files.size());
+            for (RecursiveTask<Result> t : tasks) out.add(t.join());
+            return out;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // === Header parsing ===
+
+    private static final class Huff {
+        final int[] maxcode = new int[18];
+        final int[] valptr = new int[17];
+        final int[] mincode = new int[17];
+        final int[] look = new int[256];   // (len << 8) | value for codes up to 8 bits; 0 = miss
+        final int[] bits = new int[16];
+        int[] vals;
+
+        void build() {
+            int code = 0, k = 0;
+            for (int l = 1; l <= 16; l++) {
+                valptr[l] = k;
+                mincode[l] = code;
+                code += bits[l - 1];
+                k += bits[l - 1];
+                maxcode[l] = bits[l - 1] > 0 ? code - 1 : -1;
+                code <<= 1;
+            }
+            maxcode[17] = Integer.MAX_VALUE;
+            for (int l = 1; l <= 8; l++) {
+                for (int c = mincode[l]; c <= maxcode[l]; c++) {
+                    int v = vals[valptr[l] + c - mincode[l]];
+                    int shift = 8 - l;
+                    for (int i = 0; i < (1 << shift); i++) look[(c << shift) | i] = (l << 8) | v;
+                }
+            }
+        }
+    }
+
+    private static final class Frame {
+        int width, height, hmax = 1, vmax = 1;
+        int[] compId, h, v, tq;
+        // scan
+        int ns;
+        int[] scanComp, td, ta;
+        int restart;
+        long scanStart = -1;
+    }
+
+    static Result analyze(ByteBuffer buf, int maxBlocks, ForkJoinPool pool, DcImage sink) {
+        Result r = new Result();
+        int limit = buf.limit();
+        if (limit < 4 || (buf.get(0) & 0xFF) != 0xFF || (buf.get(1) & 0xFF) != 0xD8) {
+            r.note = "not a JPEG";
+            return r;
+        }
+        int[][] quant = new int[4][];
+        int[] lumaQuant = null;
+        Huff[] dc = new Huff[4], ac = new Huff[4];
+        Frame fr = null;
+        boolean sequentialHuffman = false;
+        int restart = 0;
+
+        int pos = 2;
+        while (pos + 4 <= limit) {
+            if ((buf.get(pos) & 0xFF) != 0xFF) { r.note = "marker sync lost"; break; }
+            int m = buf.get(pos + 1) & 0xFF;
+            if (m == 0xFF) { pos++; continue; }
+            if (m == 0xD9) break;
+            int len = ((buf.get(pos + 2) & 0xFF) << 8) | (buf.get(pos + 3) & 0xFF);
+            int p = pos + 4, end = Math.min(limit, pos + 2 + len);
+            if (m == 0xDB) {
+                while (p < end) {
+                    int pq = (buf.get(p) & 0xFF) >> 4, tq = buf.get(p) & 0x0F;
+                    p++;
+                    int[] t = new int[64];
+                    for (int i = 0; i < 64 && p < end; i++) {
+                        t[i] = pq == 0 ? buf.get(p++) & 0xFF : ((buf.get(p++) & 0xFF) << 8) | (buf.get(p++) & 0xFF);
+                    }
+                    quant[tq & 3] = t;
+                    r.quantTableDefinitions++;
+                }
+            } else if (m == 0xC4) {
+                while (p + 17 <= end) {
+                    int tc = (buf.get(p) & 0xFF) >> 4, th = buf.get(p) & 0x03;
+                    Huff hf = new Huff();
+                    int total = 0;
+                    for (int i = 0; i < 16; i++) total += (hf.bits[i] = buf.get(p + 1 + i) & 0xFF);
+                    p += 17;
+                    hf.vals = new int[total];
+                    for (int i = 0; i < total && p < end; i++) hf.vals[i] = buf.get(p++) & 0xFF;
+                    hf.build();
+                    if (tc == 0) dc[th] = hf; else ac[th] = hf;
+                }
+            } else if (m == 0xDD && len >= 4) {
+                restart = ((buf.get(p) & 0xFF) << 8) | (buf.get(p + 1) & 0xFF);
+            } else if (m >= 0xC0 && m <= 0xCF && m != 0xC4 && m != 0xC8 && m != 0xCC) {
+                sequentialHuffman = m == 0xC0 || m == 0xC1;
+                r.progressive = m == 0xC2 || m == 0xC6 || m == 0xCA;
+                fr = new Frame();
+                fr.height = ((buf.get(p + 1) & 0xFF) << 8) | (buf.get(p + 2) & 0xFF);
+                fr.width = ((buf.get(p + 3) & 0xFF) << 8) | (buf.get(p + 4) & 0xFF);
+                int nc = buf.get(p + 5) & 0xFF;
+                fr.compId = new int[nc]; fr.h = new int[nc]; fr.v = new int[nc]; fr.tq = new int[nc];
+                for (int i = 0; i < nc; i++) {
+                    int q = p + 6 + i * 3;
+                    fr.compId[i] = buf.get(q) & 0xFF;
+                    fr.h[i] = Math.max(1, (buf.get(q + 1) & 0xFF) >> 4);
+                    fr.v[i] = Math.max(1, buf.get(q + 1) & 0x0F);
+                    fr.tq[i] = buf.get(q + 2) & 0x03;
+                    fr.hmax = Math.max(fr.hmax, fr.h[i]);
+                    fr.vmax = Math.max(fr.vmax, fr.v[i]);
+                }
+                if (nc > 0) lumaQuant = quant[fr.tq[0]];
+            } else if (m == 0xDA) {
+                if (fr != null) {
+                    fr.ns = buf.get(p) & 0xFF;
+                    fr.scanComp = new int[fr.ns]; fr.td = new int[fr.ns]; fr.ta = new int[fr.ns];
+                    for (int i = 0; i < fr.ns; i++) {
+                        int id = buf.get(p + 1 + i * 2) & 0xFF;
+                        int tables = buf.get(p + 2 + i * 2) & 0xFF;
+                        fr.scanComp[i] = -1;
+                        for (int c = 0; c < fr.compId.length; c++) if (fr.compId[c] == id) fr.scanComp[i] = c;
+                        fr.td[i] = tables >> 4 & 3;
+                        fr.ta[i] = tables & 3;
+                    }
+                    fr.restart = restart;
+                    fr.scanStart = pos + 2 + len;
+                }
+                break;
+            }
+            pos += 2 + len;
+        }
+
+        if (lumaQuant != null) {
+            int[] natural = new int[64];
+            for (int i = 0; i < 64; i++) natural[ZIGZAG[i]] = lumaQuant[i];
+            estimateQuality(natural, r);
+        }
+        Huff dcL = dc[0], acL = ac[0];
+        r.standardHuffmanTables = dcL != null && acL != null
+                && Arrays.equals(dcL.bits, STD_DC_LUMA_BITS) && Arrays.equals(acL.bits, STD_AC_LUMA_BITS);
+
+        if (fr == null || fr.scanStart < 0) {
+            if (r.note.isEmpty()) r.note = "no scan found";
+            return r;
+        }
+        if (!sequentialHuffman) {
+            r.note = r.progressive ? "progressive scan: table features only" : "unsupported coding: table features only";
+            return r;
+        }
+        for (int i = 0; i < fr.ns; i++) {
+            if (fr.scanComp[i] < 0 || dc[fr.td[i]] == null || ac[fr.ta[i]] == null) {
+                r.note = "missing Huffman table";
+                return r;
+            }
+        }
+        decodeScan(buf, fr, dc, ac, maxBlocks, pool, r, sink, lumaQuant == null ? 1 : lumaQuant[0]);
+        return r;
+    }
+
+    private static void estimateQuality(int[] natural, Result r) {
+        long best = Long.MAX_VALUE;
+        for (int q = 1; q <= 100; q++) {
+            int scale = q < 50 ? 5000 / q : 200 - q * 2;
+            long diff = 0;
+            for (int i = 0; i < 64; i++) {
+                int t = Math.max(1, Math.min(255, (IJG_LUMA[i] * scale + 50) / 100));
+                diff += Math.abs(t - natural[i]);
+            }
+            if (diff < best) {
+                best = diff;
+                r.estimatedQuality = q;
+            }
+            if (diff == 0) {
+                r.standardQuantTables = true;
+                break;
+            }
+        }
+    }
+
+    // === Entropy decoding ===
+
+    /** Block layout of the first scan, shared read-only by all decode tasks. */
+    private static final class Layout {
+        int[] mcuComp;          // scan component index per block in an MCU
+        int perMcu;
+        int mcusX;              // MCUs per row
+        int totalMcus, mcusPerInterval, budgetMcus;
+        int[] lumaX, lumaY;     // luma block offset inside the MCU, per block
+        int blocksW, blocksH;   // luma blocks per row / column (padded)
+        float[] dcOut;          // optional DC image sink, blocksW * blocksH
+        float dcScale;
+    }
+
+    private static void decodeScan(ByteBuffer buf, Frame fr, Huff[] dc, Huff[] ac, int maxBlocks,
+                                   ForkJoinPool pool, Result r, DcImage sink, int dcQuant) {
+        Layout lay = new Layout();
+        int h0 = fr.ns == 1 ? 1 : fr.h[0], v0 = fr.ns == 1 ? 1 : fr.v[0];
+        if (fr.ns == 1) {
+            int c = fr.scanComp[0];
+            int cw = (fr.width * fr.h[c] + fr.hmax - 1) / fr.hmax;
+            int chh = (fr.height * fr.v[c] + fr.vmax - 1) / fr.vmax;
+            lay.mcusX = (cw + 7) / 8;
+            lay.totalMcus = lay.mcusX * ((chh + 7) / 8);
+            lay.mcuComp = new int[]{0};
+            lay.blocksW = lay.mcusX;
+            lay.blocksH = (chh + 7) / 8;
+        } else {
+            int mx = (fr.width + 8 * fr.hmax - 1) / (8 * fr.hmax);
+            int my = (fr.height + 8 * fr.vmax - 1) / (8 * fr.vmax);
+            lay.mcusX = mx;
+            lay.totalMcus = mx * my;
+            int n = 0;
+            for (int i = 0; i < fr.ns; i++) n += fr.h[fr.scanComp[i]] * fr.v[fr.scanComp[i]];
+            lay.mcuComp = new int[n];
+            int k = 0;
+            for (int i = 0; i < fr.ns; i++) {
+                int c = fr.scanComp[i];
+                for (int b = 0; b < fr.h[c] * fr.v[c]; b++) lay.mcuComp[k++] = i;
+            }
+            lay.blocksW = mx * h0;
+            lay.blocksH = my * v0;
+        }
+        lay.perMcu = lay.mcuComp.length;
+        lay.lumaX = new int[lay.perMcu];
+        lay.lumaY = new int[lay.perMcu];
+        int lumaPerMcu = 0;
+        for (int b = 0; b < lay.perMcu; b++) {
+            if (fr.scanComp[lay.mcuComp[b]] != 0) continue;
+            lay.lumaX[b] = lumaPerMcu % h0;
+            lay.lumaY[b] = lumaPerMcu / h0;
+            lumaPerMcu++;
+        }
+        if (lumaPerMcu == 0) {
+            r.note = "first scan has no luma component";
+            return;
+        }
+        if (sink != null) {
+            lay.dcOut = new float[lay.blocksW * lay.blocksH];
+            lay.dcScale = dcQuant / 8f;
+        }
+
+        // Split the entropy-coded segment at restart markers
+        long[] starts = new long[16], ends = new long[16];
+        int intervals = 0;
+        int limit = buf.limit();
+        int i = (int) fr.scanStart, segStart = i;
+        int scanEnd = limit;
+        while (i + 1 < limit) {
+            if ((buf.get(i) & 0xFF) != 0xFF) { i++; continue; }
+            int n = buf.get(i + 1) & 0xFF;
+            if (n == 0x00) { i += 2; continue; }
+            if (n == 0xFF) { i++; continue; }
+            if (n >= 0xD0 && n <= 0xD7 && fr.restart > 0) {
+                if (intervals == starts.length) {
+                    starts = Arrays.copyOf(starts, intervals * 2);
+                    ends = Arrays.copyOf(ends, intervals * 2);
+                }
+                starts[intervals] = segStart;
+                ends[intervals++] = i;
+                segStart = i + 2;
+                i += 2;
+                continue;
+            }
+            scanEnd = i;
+            break;
+        }
+        if (intervals == starts.length) {
+            starts = Arrays.copyOf(starts, intervals + 1);
+            ends = Arrays.copyOf(ends, intervals + 1);
+        }
+        starts[intervals] = segStart;
+        ends[intervals++] = scanEnd;
+        r.restartIntervals = fr.restart > 0 ? intervals : 0;
+
+        lay.mcusPerInterval = fr.restart > 0 ? fr.restart : lay.totalMcus;
+        int budgetMcus = Math.max(1, maxBlocks / lumaPerMcu);
+        // Sample whole intervals evenly when the image exceeds the budget
+        int stride = 1;
+        if (fr.restart > 0 && (long) intervals * lay.mcusPerInterval > budgetMcus) {
+            stride = (int) Math.max(1, ((long) intervals * lay.mcusPerInterval) / budgetMcus);
+        }
+        lay.budgetMcus = fr.restart > 0 ? Integer.MAX_VALUE : budgetMcus;
+        int chosen = (intervals + stride - 1) / stride;
+        int[] pick = new int[chosen];
+        for (int k = 0; k < chosen; k++) pick[k] = k * stride;
+
+        DecodeTask root = new DecodeTask(buf, fr, dc, ac, lay, starts, ends, pick, 0, chosen,
+                Math.max(1, chosen / (pool.getParallelism() * 4)));
+        long[] hist = pool.invoke(root);
+
+        r.blocksDecoded = hist[hist.length - 2];
+        r.corruptIntervals = (int) hist[hist.length - 1];
+        Metrics.add(C_BLOCKS, r.blocksDecoded);
+        r.decoded = r.blocksDecoded > 0;
+        r.score = r.decoded ? histogramScore(hist) : 0;
+
+        if (sink != null) {
+            // crop the MCU padding
+            int lw = (fr.width * (fr.ns == 1 ? fr.hmax : fr.h[0]) / fr.hmax + 7) / 8;
+            int lh = (fr.height * (fr.ns == 1 ? fr.vmax : fr.v[0]) / fr.vmax + 7) / 8;
+            lw = Math.max(1, Math.min(lw, lay.blocksW));
+            lh = Math.max(1, Math.min(lh, lay.blocksH));
+            sink.width = lw;
+            sink.height = lh;
+            sink.luma = new float[lw * lh];
+            for (int y = 0; y < lh; y++) System.arraycopy(lay.dcOut, y * lay.blocksW, sink.luma, y * lw, lw);
+        }
+    }
+
+    /** Decodes a range of restart intervals; result is NPOS*BINS luma histogram + [blocks, corrupt]. */
+    private static final class DecodeTask extends RecursiveTask<long[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final ByteBuffer buf;
+        private final Frame fr;
+        private final Huff[] dc, ac;
+        private final Layout lay;
+        private final long[] starts, ends;
+        private final int[] pick;
+        private final int from, to, grain;
+
+        DecodeTask(ByteBuffer buf, Frame fr, Huff[] dc, Huff[] ac, Layout lay,
+                   long[] starts, long[] ends, int[] pick, int from, int to, int grain) {
+            this.buf = buf; this.fr = fr; this.dc = dc; this.ac = ac; this.lay = lay;
+            this.starts = starts; this.ends = ends; this.pick = pick;
+            this.from = from; this.to = to; this.grain = grain;
+        }
+
+        @Override
+        protected long[] compute() {
+            if (to - from > grain) {
+                int mid = (from + to) >>> 1;
+                DecodeTask left = new DecodeTask(buf, fr, dc, ac, lay, starts, ends, pick, from, mid, grain);
+                DecodeTask right = new DecodeTask(buf, fr, dc, ac, lay, starts, ends, pick, mid, to, grain);
+                invokeAll(left, right);
+                long[] a = left.join(), b = right.join();
+                for (int i = 0; i < a.length; i++) a[i] += b[i];
+                return a;
+            }
+            long[] hist = new long[NPOS * BINS + 2];
+            BitReader br = new BitReader(buf.duplicate());
+            int[] coef = new int[64];
+            int[] pred = new int[fr.ns];
+            float[] dcOut = lay.dcOut;
+            int h0 = fr.ns == 1 ? 1 : fr.h[0], v0 = fr.ns == 1 ? 1 : fr.v[0];
+            for (int k = from; k < to; k++) {
+                int iv = pick[k];
+                long firstMcu = (long) iv * lay.mcusPerInterval;
+                int count = (int) Math.min(Math.min(lay.mcusPerInterval, lay.totalMcus - firstMcu), lay.budgetMcus);
+                if (count <= 0) continue;
+                br.reset((int) starts[iv], (int) ends[iv]);
+                Arrays.fill(pred, 0);
+                try {
+                    for (int m = 0; m < count; m++) {
+                        for (int b = 0; b < lay.perMcu; b++) {
+                            int s = lay.mcuComp[b];
+                            decodeBlock(br, dc[fr.td[s]], ac[fr.ta[s]], coef, pred, s);
+                            if (fr.scanComp[s] == 0) {
+                                hist[NPOS * BINS]++;
+                                for (int z = 1; z <= NPOS; z++) {
+                                    int a = Math.abs(coef[z]);
+                                    if (a <= MAXV) hist[(z - 1) * BINS + a]++;
+                                }
+                                if (dcOut != null) {
+                                    long g = firstMcu + m;
+                                    int bx = (int) (g % lay.mcusX) * h0 + lay.lumaX[b];
+                                    int by = (int) (g / lay.mcusX) * v0 + lay.lumaY[b];
+                                    if (bx < lay.blocksW && by < lay.blocksH) {
+                                        dcOut[by * lay.blocksW + bx] = coef[0] * lay.dcScale + 128f;
+                                    }
+                                }
+                            }
+                        }
+                    }
+                } catch (RuntimeException corrupt) {   // bad code or malformed table
+                    hist[NPOS * BINS + 1]++;
+                }
+            }
+            return hist;
+        }
+    }
+
+    private static void decodeBlock(BitReader br, Huff dcT, Huff acT, int[] coef, int[] pred, int s) {
+        Arrays.fill(coef, 0);
+        int t = br.decode(dcT);
+        int diff = t == 0 ? 0 : extend(br.bits(t), t);
+        pred[s] += diff;
+        coef[0] = pred[s];
+        for (int k = 1; k < 64; ) {
+            int rs = br.decode(acT);
+            int run = rs >> 4, size = rs & 15;
+            if (size == 0) {
+                if (run != 15) break;   // EOB
+                k += 16;
+                continue;
+            }
+            k += run;
+            if (k > 63) throw new IllegalStateException("AC overrun");
+            coef[k++] = extend(br.bits(size), size);
+        }
+    }
+
+    private static int extend(int v, int s) {
+        return v < (1 << (s - 1)) ? v - (1 << s) + 1 : v;
+    }
+
+    /** MSB-first reader over one restart interval with 0xFF00 unstuffing. */
+    private static final class BitReader {
+        private final ByteBuffer buf;
+        private int pos, end;
+        private long acc;
+        private int n;
+
+        BitReader(ByteBuffer buf) {
+            this.buf = buf;
+        }
+
+        void reset(int start, int end) {
+            this.pos = start;
+            this.end = end;
+            this.acc = 0;
+            this.n = 0;
+        }
+
+        private void fill() {
+            while (n <= 48) {
+                int b = 0;
+                if (pos < end) {
+                    b = buf.get(pos) & 0xFF;
+                    if (b == 0xFF) {
+                        int nx = pos + 1 < end ? buf.get(pos + 1) & 0xFF : 0;
+                        if (nx == 0x00) pos += 2;
+                        else { b = 0; pos = end; }   // fill bytes / marker: pad with zeros
+                    } else {
+                        pos++;
+                    }
+                }
+                acc = (acc << 8) | b;
+                n += 8;
+            }
+        }
+
+        int peek(int k) {
+            if (n < k) fill();
+            return (int) (acc >>> (n - k)) & ((1 << k) - 1);
+        }
+
+        int bits(int k) {
+            int v = peek(k);
+            n -= k;
+            return v;
+        }
+
+        int decode(Huff h) {
+            int e = h.look[peek(8)];
+            if (e != 0) {
+                n -= e >> 8;
+                return e & 0xFF;
+            }
+            for (int l = 9; l <= 16; l++) {
+                int code = peek(l);
+                if (code <= h.maxcode[l]) {
+                    n -= l;
+                    return h.vals[h.valptr[l] + code - h.mincode[l]];
+                }
+            }
+            throw new IllegalStateException("bad Huffman code");
+        }
+    }
+
+    // === Scoring ===
+
+    /**
+     * Periodic roughness of the |coefficient| histograms.  In the log domain a
+     * Laplacian histogram is close to linear, so the second difference is
+     * near zero; double quantization produces alternating holes/peaks with
+     * large second differences.  The expected Poisson noise of each bin is
+     * subtracted so sparse histograms do not score.
+     */
+    static double histogramScore(long[] hist) {
+        double num = 0, den = 0;
+        for (int z = 0; z < NPOS; z++) {
+            int o = z * BINS;
+            long total = 0;
+            int last = 0;
+            for (int v = 1; v < BINS; v++) {
+                long c = hist[o + v];
+                total += c;
+                if (c >= 8) last = v;
+            }
+            if (total < MIN_POS_SAMPLES || last < 4) continue;
+            double[] d2 = new double[last + 1];
+            double[] noise = new double[last + 1];
+            for (int v = 2; v < last; v++) {
+                double a = hist[o + v - 1] + 1, b = hist[o + v] + 1, c = hist[o + v + 1] + 1;
+                d2[v] = Math.log(b) - 0.5 * (Math.log(a) + Math.log(c));
+                noise[v] = 1.5 / Math.sqrt(Math.min(b, Math.min(a, c)));
+            }
+            double excess = 0, weight = 0;
+            for (int v = 2; v < last; v++) {
+                // remove the smooth curvature trend; what is left is the periodic part
+                double trend = (d2[v - 1] + d2[v + 1]) * 0.5;
+                if (v == 2) trend = d2[3];
+                if (v == last - 1) trend = d2[v - 1];
+                double resid = Math.abs(d2[v] - trend);
+                double w = hist[o + v] + 1;
+                excess += Math.max(0, resid - 2 * noise[v]) * w;
+                weight += w;
+            }
+            if (weight == 0) continue;
+            double posScore = 1 - Math.exp(-2.5 * excess / weight);
+            num += posScore * total;
+            den += total;
+        }
+        return den == 0 ? 0 : num / den;
+    }
+}
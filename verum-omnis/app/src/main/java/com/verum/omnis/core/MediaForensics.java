@@ -6,10 +6,19 @@ import android.util.Log;
 
 import androidx.exifinterface.media.ExifInterface;
 
+import com.verum.omnis.forensic.PdfRevisions;
+
+import org.json.JSONObject;
+
 import java.io.File;
+import java.io.FileDescriptor;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
 import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * MediaForensics – Lightweight EXIF / metadata inspector.
@@ -20,22 +29,30 @@ public class MediaForensics {
     private static final String TAG = "MediaForensics";
 
     /**
-     * Extract metadata from an image file (JPEG/PNG/WebP).
+     * Extract metadata from an image file.  JPEG/TIFF/PNG go through the
+     * pure-Java {@link ExifParser} (full tag set, metadata segments only);
+     * other formats (WebP, HEIC) fall back to ExifInterface.
      */
     public static HashMap<String, String> inspectImage(File file) {
-        HashMap<String, String> map = new HashMap<>();
-        try {
-            ExifInterface exif = new ExifInterface(file);
-            String date = exif.getAttribute(ExifInterface.TAG_DATETIME);
-            String make = exif.getAttribute(ExifInterface.TAG_MAKE);
-            String model = exif.getAttribute(ExifInterface.TAG_MODEL);
-
-            if (date != null) map.put("DateTime", date);
-            if (make != null) map.put("CameraMake", make);
-            if (model != null) map.put("CameraModel", model);
+        try (FileInputStream fis = new FileInputStream(file)) {
+            FileSniffer.Type type = FileSniffer.sniff(fis.getChannel()).type;
+            if (ExifParser.supports(type)) return new HashMap<>(ExifParser.parse(fis.getChannel()).tags);
+            return readExif(new ExifInterface(fis.getFD()));
         } catch (IOException e) {
             Log.e(TAG, "Failed to read EXIF: " + e.getMessage());
+            return new HashMap<>();
         }
+    }
+
+    private static HashMap<String, String> readExif(ExifInterface exif) {
+        HashMap<String, String> map = new HashMap<>();
+        String date = exif.getAttribute(ExifInterface.TAG_DATETIME);
+        String make = exif.getAttribute(ExifInterface.TAG_MAKE);
+        String model = exif.getAttribute(ExifInterface.TAG_MODEL);
+
+        if (date != null) map.put("DateTime", date);
+        if (make != null) map.put("CameraMake", make);
+        if (model != null) map.put("CameraModel", model);
         return map;
     }
 
@@ -43,10 +60,15 @@ public class MediaForensics {
      * Extract metadata from an audio/video file (duration, mime).
      */
     public static HashMap<String, String> inspectMedia(File file) {
+        return inspectMedia(file.getAbsolutePath(), null);
+    }
+
+    private static HashMap<String, String> inspectMedia(String path, FileDescriptor fd) {
         HashMap<String, String> map = new HashMap<>();
         MediaMetadataRetriever mmr = new MediaMetadataRetriever();
         try {
-            mmr.setDataSource(file.getAbsolutePath());
+            if (fd != null) mmr.setDataSource(fd);
+            else mmr.setDataSource(path);
             String duration = mmr.extractMetadata(MediaMetadataRetriever.METADATA_KEY_DURATION);
             String mime = mmr.extractMetadata(MediaMetadataRetriever.METADATA_KEY_MIMETYPE);
 
@@ -64,6 +86,52 @@ public class MediaForensics {
         return map;
     }
 
+    private static boolean isIsoBmff(FileSniffer.Type type) {
+        return type == FileSniffer.Type.MP4 || type == FileSniffer.Type.MOV
+                || type == FileSniffer.Type.THREE_GP || type == FileSniffer.Type.M4A;
+    }
+
+    /** Box-level MP4/MOV metadata from {@link Mp4Parser}; no native decoder involved. */
+    private static HashMap<String, String> readMp4(Mp4Parser.Result mp4, FileSniffer.Type type) {
+        HashMap<String, String> map = new HashMap<>();
+        map.put("DurationMs", String.valueOf(Math.round(mp4.durationSec * 1000)));
+        map.put("MimeType", type.mime);
+        if (!mp4.majorBrand.isEmpty()) map.put("MajorBrand", mp4.majorBrand);
+        if (mp4.created >= 0) map.put("CreationTime", Mp4Parser.iso(mp4.created));
+        if (mp4.modified >= 0) map.put("ModificationTime", Mp4Parser.iso(mp4.modified));
+        for (String k : new String[]{"Encoder", "CreationDate", "Location", "Make", "Model"}) {
+            if (mp4.tags.containsKey(k)) map.put(k, mp4.tags.get(k));
+        }
+        StringBuilder tracks = new StringBuilder();
+        for (Mp4Parser.Track t : mp4.tracks) {
+            if (tracks.length() > 0) tracks.append("; ");
+            tracks.append(t.handler).append('/').append(t.codec)
+                    .append(String.format(Locale.US, " %.2fs", t.durationSec));
+            if (!t.edits.isEmpty()) tracks.append(" edits=").append(t.edits.size());
+        }
+        if (tracks.length() > 0) map.put("Tracks", tracks.toString());
+        if (!mp4.indicators.isEmpty()) map.put("RemuxIndicators", String.join(", ", mp4.indicators));
+        if (mp4.fragmented) map.put("Fragmented", "true");
+        return map;
+    }
+
+    /** Revision history from the xref/trailer chain; content streams are not read. */
+    private static HashMap<String, String> readPdf(PdfRevisions.Result pdf) {
+        HashMap<String, String> map = new HashMap<>();
+        map.put("PdfVersion", pdf.version);
+        map.put("PdfRevisions", String.valueOf(pdf.revisions.size()));
+        map.put("PdfIncrementalUpdates", String.valueOf(pdf.incrementalUpdates()));
+        if (!pdf.signatures.isEmpty()) map.put("PdfSignatures", String.valueOf(pdf.signatures.size()));
+        if (pdf.editedAfterSigning) map.put("PdfEditedAfterSigning", "true");
+        if (!pdf.revisions.isEmpty()) {
+            PdfRevisions.Revision last = pdf.revisions.get(pdf.revisions.size() - 1);
+            if (last.info.containsKey("Producer")) map.put("PdfProducer", last.info.get("Producer"));
+            if (last.info.containsKey("ModDate")) map.put("PdfModDate", last.info.get("ModDate"));
+        }
+        if (!pdf.indicators.isEmpty()) map.put("PdfIndicators", String.join(", ", pdf.indicators));
+        return map;
+    }
+
     /**
      * Quick header read for PDF (detect "%PDF-" signature).
      */
@@ -80,22 +148,110 @@ public class MediaForensics {
         return false;
     }
 
+    /** One format analyzer inside {@link #inspectFile}; I/O failures abort the file. */
+    private interface Analyzer {
+        Map<String, String> run() throws IOException;
+    }
+
+    /**
+     * Run one analyzer; a parser bug or malformed input it did not anticipate is
+     * recorded under {@code <name>Error} instead of discarding the other formats' keys.
+     */
+    private static void analyze(HashMap<String, String> map, String name, Analyzer a) throws IOException {
+        try {
+            map.putAll(a.run());
+        } catch (RuntimeException e) {
+            Log.e(TAG, name + " analysis failed: " + e);
+            map.put(name + "Error", String.valueOf(e));
+        }
+    }
+
+    private static HashMap<String, String> readRecompression(JpegRecompression.Result rc) {
+        HashMap<String, String> map = new HashMap<>();
+        map.put("RecompressionScore", String.format(Locale.US, "%.3f", rc.score));
+        if (rc.estimatedQuality > 0) map.put("JpegQuality", String.valueOf(rc.estimatedQuality));
+        if (rc.flagged) map.put("RecompressionSuspected", "true");
+        return map;
+    }
+
+    private static HashMap<String, String> readStego(PngSteganalysis.Result st) {
+        HashMap<String, String> map = new HashMap<>();
+        if (st.analyzed) {
+            map.put("StegoScore", String.format(Locale.US, "%.3f", st.score));
+            map.put("StegoLsbRate", String.format(Locale.US, "%.3f", st.rsEstimate));
+            map.put("StegoChiSquareP", String.format(Locale.US, "%.3f", st.chiSquareP));
+            if (st.leadingEmbeddedRows > 0) map.put("StegoLeadingRows", String.valueOf(st.leadingEmbeddedRows));
+            if (st.flagged) map.put("SteganographySuspected", "true");
+        }
+        return map;
+    }
+
+    private static HashMap<String, String> readAudio(AudioForensics.Result af) {
+        HashMap<String, String> map = new HashMap<>();
+        map.put("AudioSpliceScore", String.format(Locale.US, "%.3f", af.spliceScore));
+        map.put("AudioDiscontinuities", String.valueOf(af.discontinuities));
+        map.put("AudioDigitalSilenceRuns", String.valueOf(af.digitalSilenceRuns));
+        map.put("AudioSilenceGaps", String.valueOf(af.silenceGaps));
+        map.put("AudioNoiseFloorShifts", String.valueOf(af.noiseFloorShifts));
+        map.put("AudioSpectralJumps", String.valueOf(af.spectralJumps));
+        return map;
+    }
+
     /**
-     * Convenience wrapper: auto-detect by extension.
+     * Convenience wrapper: detect the format from its magic bytes (not the
+     * extension) and route to the matching inspectors.  The file is opened once;
+     * every analyzer reads through the same channel.  An analyzer that throws is
+     * recorded as {@code <name>Error} (Exif, Recompression, Stego, Mp4, Audio, Pdf)
+     * and the remaining analyzers still run.  Thresholds are the defaults; see
+     * {@link #inspectFile(File, JSONObject)}.
      */
     public static HashMap<String, String> inspectFile(File file) {
-        String name = file.getName().toLowerCase();
-        if (name.endsWith(".jpg") || name.endsWith(".jpeg") ||
-                name.endsWith(".png") || name.endsWith(".webp")) {
-            return inspectImage(file);
-        } else if (name.endsWith(".mp3") || name.endsWith(".mp4") ||
-                name.endsWith(".wav") || name.endsWith(".m4a")) {
-            return inspectMedia(file);
-        } else if (name.endsWith(".pdf")) {
-            HashMap<String, String> pdfInfo = new HashMap<>();
-            pdfInfo.put("IsPdf", String.valueOf(isPdf(file)));
-            return pdfInfo;
+        return inspectFile(file, null);
+    }
+
+    /** As {@link #inspectFile(File)}, with thresholds from the detection rules. */
+    public static HashMap<String, String> inspectFile(File file, JSONObject rules) {
+        HashMap<String, String> map = new HashMap<>();
+        try (FileInputStream fis = new FileInputStream(file)) {
+            FileChannel ch = fis.getChannel();
+            FileSniffer.Sniff sniff = FileSniffer.sniff(ch);
+            FileSniffer.Type type = sniff.type;
+            map.put("DetectedType", type.name());
+            map.put("DetectedMime", type.mime);
+            if (!type.matchesExtension(file.getName())) {
+                map.put("ExtensionMismatch", "true");
+            }
+
+            switch (type.kind) {
+                case IMAGE:
+                    if (ExifParser.supports(type)) analyze(map, "Exif", () -> ExifParser.parse(ch).tags);
+                    else analyze(map, "Exif", () -> readExif(new ExifInterface(fis.getFD())));
+                    if (type == FileSniffer.Type.JPEG) {
+                        analyze(map, "Recompression", () -> readRecompression(
+                                JpegRecompression.analyze(ch, JpegRecompression.threshold(rules))));
+                    } else if (type == FileSniffer.Type.PNG) {
+                        analyze(map, "Stego", () -> readStego(PngSteganalysis.analyze(
+                                ch, PngSteganalysis.DEFAULT_SCORE_MIN, ForkJoinPool.commonPool())));
+                    }
+                    break;
+                case AUDIO:
+                case VIDEO:
+                    if (isIsoBmff(type)) analyze(map, "Mp4", () -> readMp4(Mp4Parser.parse(ch), type));
+                    else map.putAll(inspectMedia(file.getAbsolutePath(), fis.getFD()));
+                    if (type == FileSniffer.Type.WAV) {
+                        analyze(map, "Audio", () -> readAudio(AudioForensics.analyze(ch)));
+                    }
+                    break;
+                default:
+                    if (type == FileSniffer.Type.PDF) {
+                        map.put("IsPdf", "true");
+                        analyze(map, "Pdf", () -> readPdf(PdfRevisions.inspect(ch)));
+                    }
+                    break;
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to inspect file: " + e.getMessage());
         }
-        return new HashMap<>();
+        return map;
     }
 }
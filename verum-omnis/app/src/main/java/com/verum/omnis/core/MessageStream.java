@@ -0,0 +1,806 @@
+package com.verum.omnis.core;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Streaming message-level parsers for chat exports and mailboxes
+ * - WhatsApp text exports (Android "d/m/y, h:mm - Name: text" and iOS "[d/m/y, h:mm:ss] Name: text"),
+ *   Telegram Desktop JSON exports (result.json), mbox mailboxes and single .eml files
+ * - Files are read once, front to back, through a fixed buffer; nothing but the current
+ *   message is held in memory, and non-text MIME parts are skipped without being decoded
+ * - Each message is handed to a {@link Sink} as it completes: channel, sender, time, body;
+ *   mail also carries its Message-ID and the delivery time from its topmost Received header
+ * - Chat timestamps carry no zone and are kept as wall-clock time read as UTC;
+ *   mail Date headers are converted to UTC
+ */
+public final class MessageStream {
+
+    private static final int M_PARSE = Metrics.stage("messages.parse");
+    private static final int C_MESSAGES = Metrics.counter("messages_parsed");
+    private static final int C_BYTES = Metrics.counter("messages_bytes");
+
+    public static final long NO_TIME = TimelineEngine.NO_TIME;
+    /** Bodies are truncated beyond this many characters. */
+    public static final int MAX_BODY = 256 * 1024;
+    /** Bytes inspected by {@link #detect}. */
+    static final int DETECT_BYTES = 64 * 1024;
+
+    public enum Format { WHATSAPP, TELEGRAM_JSON, MBOX, EML, NONE }
+
+    public static class Message {
+        public String channel;      // chat or mail thread
+        public String sender;       // display name for chats, lower-cased address for mail; "" for system lines
+        public String subject;      // mail only
+        public String messageId;    // mail only: Message-ID header, as written
+        public long timeMs = NO_TIME;
+        public long receivedMs = NO_TIME; // mail only: date of the topmost Received header (final delivery)
+        public String body;
+        public long offset;         // byte offset of the message's first line (JSON: its object)
+        public long bodyOffset = -1; // byte offset of the body where it is stored verbatim (WhatsApp)
+        public int index;
+    }
+
+    public interface Sink {
+        void accept(Message m);
+    }
+
+    public static class Stats {
+        public Format format = Format.NONE;
+        public int messages;
+        public long bytes;
+        public int truncated;
+    }
+
+    private MessageStream() {}
+
+    // ------------------------------------------------------------ detection
+
+    public static Format detect(File f) {
+        return probe(f).format;
+    }
+
+    private static final class Probe {
+        Format format = Format.NONE;
+        boolean dayFirst = true;
+    }
+
+    private static Probe probe(File f) {
+        Probe p = new Probe();
+        byte[] head = new byte[DETECT_BYTES];
+        int n = 0;
+        try (FileInputStream in = new FileInputStream(f)) {
+            int r;
+            while (n < head.length && (r = in.read(head, n, head.length - n)) > 0) n += r;
+        } catch (IOException e) {
+            return p;
+        }
+        String s = new String(head, 0, n, StandardCharsets.UTF_8);
+        String lead = s.replace("\ufeff", "").trim();
+        if (lead.startsWith("From ")) {
+            p.format = Format.MBOX;
+            return p;
+        }
+        if (lead.startsWith("{") && s.contains("\"messages\"") && s.contains("\"date\"")) {
+            p.format = Format.TELEGRAM_JSON;
+            return p;
+        }
+        // WhatsApp: most of the first header-looking lines parse, and the date order is settled
+        int seen = 0, parsed = 0, dmy = 0, mdy = 0;
+        WaHeader h = new WaHeader();
+        for (String line : s.split("\n", 200)) {
+            if (line.trim().isEmpty()) continue;
+            if (++seen > 40) break;
+            String t = line.trim();
+            if (h.parse(t, true) || h.parse(t, false)) {
+                parsed++;
+                if (h.a > 12) dmy++;
+                if (h.b > 12) mdy++;
+            }
+        }
+        if (parsed >= 2 && parsed * 2 >= Math.min(seen, 40) / 2) {
+            p.format = Format.WHATSAPP;
+            p.dayFirst = mdy == 0 || dmy > 0;
+            return p;
+        }
+        try {
+            if (FileSniffer.sniff(f).type == FileSniffer.Type.EML) p.format = Format.EML;
+        } catch (IOException ignored) {
+            // not sniffable: not a message format
+        }
+        return p;
+    }
+
+    // ------------------------------------------------------------ entry point
+
+    /** Parse {@code f} in its detected format; Stats.format is NONE when it is not a message file. */
+    public static Stats parse(File f, Sink sink) throws IOException {
+        long t0 = Metrics.begin();
+        Probe p = probe(f);
+        Stats st = new Stats();
+        st.format = p.format;
+        String channel = f.getName();
+        try (InputStream in = new FileInputStream(f)) {
+            switch (p.format) {
+                case WHATSAPP: whatsapp(in, channel, p.dayFirst, sink, st); break;
+                case TELEGRAM_JSON: telegram(in, channel, sink, st); break;
+                case MBOX: mail(in, channel, true, sink, st); break;
+                case EML: mail(in, channel, false, sink, st); break;
+                default: break;
+            }
+        } finally {
+            Metrics.add(C_MESSAGES, st.messages);
+            Metrics.add(C_BYTES, st.bytes);
+            Metrics.end(M_PARSE, t0);
+        }
+        return st;
+    }
+
+    private static void emit(Message m, StringBuilder body, Sink sink, Stats st) {
+        m.body = body.toString().trim();
+        m.index = st.messages++;
+        sink.accept(m);
+    }
+
+    private static void append(StringBuilder body, String s, Stats st, boolean newline) {
+        if (body.length() >= MAX_BODY) return;
+        if (newline && body.length() > 0) body.append('\n');
+        if (body.length() + s.length() > MAX_BODY) {
+            body.append(s, 0, MAX_BODY - body.length());
+            st.truncated++;
+        } else {
+            body.append(s);
+        }
+    }
+
+    // ------------------------------------------------------------ WhatsApp
+
+    private static void whatsapp(InputStream in, String channel, boolean dayFirst, Sink sink, Stats st)
+            throws IOException {
+        LineReader lr = new LineReader(in);
+        WaHeader h = new WaHeader();
+        Message cur = null;
+        StringBuilder body = new StringBuilder();
+        while (lr.next()) {
+            String line = lr.text();
+            if (h.parse(line, dayFirst)) {
+                if (cur != null) emit(cur, body, sink, st);
+                cur = new Message();
+                cur.channel = channel;
+                cur.sender = h.sender;
+                cur.timeMs = h.timeMs;
+                cur.offset = lr.lineOffset;
+                cur.bodyOffset = lr.lineOffset
+                        + line.substring(0, h.bodyStart).getBytes(StandardCharsets.UTF_8).length;
+                body.setLength(0);
+                append(body, line.substring(h.bodyStart), st, false);
+            } else if (cur != null) {
+                append(body, line, st, true); // continuation of a multi-line message
+            }
+        }
+        if (cur != null) emit(cur, body, sink, st);
+        st.bytes = lr.consumed;
+    }
+
+    /** One WhatsApp header line; fields are reused between calls. */
+    static final class WaHeader {
+        int a, b, bodyStart;
+        long timeMs;
+        String sender;
+
+        boolean parse(String line, boolean dayFirst) {
+            int i = 0, n = line.length();
+            while (i < n && (line.charAt(i) == '\u200e' || line.charAt(i) == '\ufeff')) i++;
+            boolean bracket = i < n && line.charAt(i) == '[';
+            if (bracket) i++;
+            int[] v = new int[3];
+            for (int k = 0; k < 3; k++) {
+                int s = i;
+                while (i < n && Character.isDigit(line.charAt(i)) && i - s < 4) i++;
+                if (i == s) return false;
+                v[k] = Integer.parseInt(line.substring(s, i));
+                if (k < 2) {
+                    if (i >= n || "/.-".indexOf(line.charAt(i)) < 0) return false;
+                    i++;
+                }
+            }
+            if (i >= n || line.charAt(i) != ',') return false;
+            i++;
+            while (i < n && line.charAt(i) == ' ') i++;
+            int[] t = new int[3];
+            int parts = 0;
+            while (parts < 3) {
+                int s = i;
+                while (i < n && Character.isDigit(line.charAt(i)) && i - s < 2) i++;
+                if (i == s) break;
+                t[parts++] = Integer.parseInt(line.substring(s, i));
+                if (i < n && line.charAt(i) == ':') i++;
+                else break;
+            }
+            if (parts < 2) return false;
+            int save = i;
+            while (i < n && (line.charAt(i) == ' ' || line.charAt(i) == '\u202f' || line.charAt(i) == '\u00a0')) i++;
+            String rest = line.substring(i).toLowerCase(Locale.ROOT);
+            if (rest.startsWith("am") || rest.startsWith("pm") || rest.startsWith("a.m.") || rest.startsWith("p.m.")) {
+                boolean pm = rest.charAt(0) == 'p';
+                if (t[0] == 12) t[0] = 0;
+                if (pm) t[0] += 12;
+                i += rest.startsWith("am") || rest.startsWith("pm") ? 2 : 4;
+            } else {
+                i = save;
+            }
+            if (bracket) {
+                if (i >= n || line.charAt(i) != ']') return false;
+                i++;
+                while (i < n && line.charAt(i) == ' ') i++;
+            } else {
+                if (!line.startsWith(" - ", i)) return false;
+                i += 3;
+            }
+            a = v[0];
+            b = v[1];
+            int day = dayFirst ? v[0] : v[1], month = dayFirst ? v[1] : v[0], year = v[2] < 100 ? 2000 + v[2] : v[2];
+            if (month < 1 || month > 12 || day < 1 || day > 31 || t[0] > 23 || t[1] > 59) return false;
+            timeMs = utc(year, month, day, t[0], t[1], t[2]);
+            int colon = line.indexOf(": ", i);
+            if (colon > i && colon - i <= 80) {
+                sender = line.substring(i, colon).replace("\u200e", "").trim();
+                bodyStart = colon + 2;
+            } else {
+                sender = ""; // system line ("Messages are end-to-end encrypted", joins, ...)
+                bodyStart = i;
+            }
+            return true;
+        }
+    }
+
+    // ------------------------------------------------------------ Telegram JSON
+
+    /**
+     * Walks the JSON character stream tracking only string state and depth; each object
+     * directly inside the top-level "messages" array is buffered alone and parsed.
+     */
+    private static void telegram(InputStream raw, String channel, Sink sink, Stats st) throws IOException {
+        Reader in = new InputStreamReader(raw, StandardCharsets.UTF_8);
+        char[] buf = new char[1 << 16];
+        StringBuilder obj = new StringBuilder();
+        StringBuilder key = new StringBuilder();
+        boolean inString = false, escape = false, keyDone = false, capturing = false, overflow = false;
+        String lastTopKey = null;
+        int depth = 0, arrayDepth = -1;
+        long bytePos = 0, objStart = 0;
+        int n;
+        while ((n = in.read(buf)) > 0) {
+            for (int k = 0; k < n; k++) {
+                char c = buf[k];
+                long at = bytePos;
+                bytePos += c < 0x80 ? 1 : c < 0x800 || Character.isSurrogate(c) ? 2 : 3;
+                if (capturing && !overflow) {
+                    if (obj.length() < 2 * MAX_BODY) obj.append(c);
+                    else overflow = true;
+                }
+                if (inString) {
+                    if (escape) escape = false;
+                    else if (c == '\\') escape = true;
+                    else if (c == '"') {
+                        inString = false;
+                        if (depth == 1) keyDone = true;
+                    } else if (depth == 1 && !capturing) key.append(c);
+                    continue;
+                }
+                switch (c) {
+                    case '"':
+                        inString = true;
+                        if (depth == 1 && !capturing) {
+                            key.setLength(0);
+                            keyDone = false;
+                        }
+                        break;
+                    case ':':
+                        if (depth == 1 && keyDone) lastTopKey = key.toString();
+                        break;
+                    case '[':
+                    case '{':
+                        if (c == '[' && depth == 1 && "messages".equals(lastTopKey)) arrayDepth = depth + 1;
+                        if (c == '{' && depth == arrayDepth && !capturing) {
+                            capturing = true;
+                            objStart = at;
+                            overflow = false;
+                            obj.setLength(0);
+                            obj.append('{');
+                        }
+                        depth++;
+                        break;
+                    case ']':
+                    case '}':
+                        depth--;
+                        if (c == ']' && depth == arrayDepth - 1) arrayDepth = -1;
+                        if (c == '}' && capturing && depth == arrayDepth) {
+                            capturing = false;
+                            if (overflow) st.truncated++;
+                            else telegramMessage(obj.toString(), objStart, channel, sink, st);
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+        st.bytes = bytePos;
+    }
+
+    private static void telegramMessage(String json, long offset, String channel, Sink sink, Stats st) {
+        JSONObject o;
+        try {
+            o = new JSONObject(json);
+        } catch (Exception e) {
+            return;
+        }
+        if (!"message".equals(o.optString("type", "message"))) return;
+        Message m = new Message();
+        m.channel = channel;
+        m.offset = offset;
+        m.sender = o.optString("from", o.optString("actor", ""));
+        String unix = o.optString("date_unixtime", "");
+        if (!unix.isEmpty()) {
+            try {
+                m.timeMs = Long.parseLong(unix) * 1000L;
+            } catch (NumberFormatException ignored) {
+                // fall back to the local date below
+            }
+        }
+        if (m.timeMs == NO_TIME) m.timeMs = isoLocal(o.optString("date", ""));
+        StringBuilder body = new StringBuilder();
+        Object text = o.opt("text");
+        if (text instanceof JSONArray) {
+            JSONArray parts = (JSONArray) text;
+            for (int i = 0; i < parts.length(); i++) {
+                Object part = parts.opt(i);
+                append(body, part instanceof JSONObject ? ((JSONObject) part).optString("text") : String.valueOf(part), st, false);
+            }
+        } else if (text != null) {
+            append(body, String.valueOf(text), st, false);
+        }
+        emit(m, body, sink, st);
+    }
+
+    // ------------------------------------------------------------ mbox / eml
+
+    private static final int HEADERS = 0, BODY = 1, PART_HEADERS = 2;
+
+    private static void mail(InputStream in, String channel, boolean mbox, Sink sink, Stats st) throws IOException {
+        LineReader lr = new LineReader(in);
+        MailState ms = new MailState();
+        boolean prevBlank = true;
+        while (lr.next()) {
+            if (mbox && prevBlank && lr.startsWith("From ")) {
+                ms.finish(sink, st);
+                ms.start(channel, lr.lineOffset);
+                prevBlank = false;
+                continue;
+            }
+            prevBlank = lr.length() == 0;
+            if (!ms.active) {
+                if (mbox) continue;
+                ms.start(channel, lr.lineOffset);
+            }
+            ms.line(lr, st);
+        }
+        ms.finish(sink, st);
+        st.bytes = lr.consumed;
+    }
+
+    /** One message being read: header unfolding, a MIME boundary stack and the text body. */
+    private static final class MailState {
+        boolean active;
+        int mode;
+        Message msg;
+        final StringBuilder body = new StringBuilder();
+        final StringBuilder header = new StringBuilder();
+        final List<String> boundaries = new ArrayList<>();
+        // current part
+        String partType, partEncoding, partBoundary;
+        boolean include, textSeen;
+        final StringBuilder pending = new StringBuilder(); // undecoded base64/QP text of the part
+
+        void start(String channel, long offset) {
+            active = true;
+            mode = HEADERS;
+            msg = new Message();
+            msg.channel = channel;
+            msg.offset = offset;
+            msg.sender = "";
+            body.setLength(0);
+            header.setLength(0);
+            boundaries.clear();
+            partType = "text/plain";
+            partEncoding = "";
+            partBoundary = null;
+            textSeen = false;
+            pending.setLength(0);
+        }
+
+        void finish(Sink sink, Stats st) {
+            if (!active) return;
+            if (mode == HEADERS) headerDone();
+            flushPart(st);
+            if (msg.subject != null) {
+                String thread = msg.subject.replaceAll("(?i)^((re|fw|fwd|aw|sv)\\s*:\\s*)+", "").trim();
+                if (!thread.isEmpty()) msg.channel = thread;
+            }
+            emit(msg, body, sink, st);
+            active = false;
+        }
+
+        void line(LineReader lr, Stats st) {
+            if (mode == HEADERS || mode == PART_HEADERS) {
+                if (lr.length() == 0) {
+                    if (mode == HEADERS) headerDone();
+                    else partHeaderDone();
+                    return;
+                }
+                String s = lr.text();
+                if ((s.charAt(0) == ' ' || s.charAt(0) == '\t') && header.length() > 0) {
+                    header.append(' ').append(s.trim());
+                } else {
+                    if (header.length() > 0) headerLine(header.toString(), mode == HEADERS);
+                    header.setLength(0);
+                    header.append(s);
+                }
+                return;
+            }
+            // body: boundaries are checked on raw bytes so skipped parts are never decoded
+            if (!boundaries.isEmpty() && lr.startsWith("--")) {
+                String s = lr.text().trim();
+                for (int k = boundaries.size() - 1; k >= 0; k--) {
+                    String b = "--" + boundaries.get(k);
+                    if (s.equals(b) || s.equals(b + "--")) {
+                        flushPart(st);
+                        while (boundaries.size() > k + 1) boundaries.remove(boundaries.size() - 1);
+                        if (s.endsWith("--") && !s.equals(b)) {
+                            boundaries.remove(k);
+                            include = false;
+                        } else {
+                            mode = PART_HEADERS;
+                            partType = "text/plain";
+                            partEncoding = "";
+                            partBoundary = null;
+                            header.setLength(0);
+                        }
+                        return;
+                    }
+                }
+            }
+            if (!include || body.length() >= MAX_BODY) return;
+            String s = lr.text();
+            if (s.startsWith(">From ")) s = s.substring(1); // mboxrd/mboxo quoting
+            if (partEncoding.equals("base64") || partEncoding.equals("quoted-printable")) {
+                if (pending.length() < MAX_BODY * 2) pending.append(s).append('\n');
+            } else {
+                append(body, s, st, true);
+            }
+        }
+
+        private void headerLine(String h, boolean top) {
+            int colon = h.indexOf(':');
+            if (colon <= 0) return;
+            String name = h.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+            String value = h.substring(colon + 1).trim();
+            switch (name) {
+                case "from":
+                    if (top) msg.sender = address(decodeWords(value));
+                    break;
+                case "date":
+                    if (top) msg.timeMs = rfc2822(value);
+                    break;
+                case "subject":
+                    if (top) msg.subject = decodeWords(value);
+                    break;
+                case "message-id":
+                    if (top) msg.messageId = value;
+                    break;
+                case "received": {
+                    // headers are prepended hop by hop: the first one is the delivery
+                    int semi = value.lastIndexOf(';');
+                    if (top && msg.receivedMs == NO_TIME && semi >= 0) msg.receivedMs = rfc2822(value.substring(semi + 1));
+                    break;
+                }
+                case "content-type": {
+                    String lower = value.toLowerCase(Locale.ROOT);
+                    int semi = lower.indexOf(';');
+                    partType = (semi < 0 ? lower : lower.substring(0, semi)).trim();
+                    partBoundary = param(value, "boundary");
+                    break;
+                }
+                case "content-transfer-encoding":
+                    partEncoding = value.toLowerCase(Locale.ROOT).trim();
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private void headerDone() {
+            if (header.length() > 0) headerLine(header.toString(), true);
+            header.setLength(0);
+            partHeaderDone();
+        }
+
+        private void partHeaderDone() {
+            if (mode == PART_HEADERS && header.length() > 0) headerLine(header.toString(), false);
+            header.setLength(0);
+            mode = BODY;
+            if (partType.startsWith("multipart/") && partBoundary != null) {
+                boundaries.add(partBoundary);
+                include = false;
+            } else {
+                // first plain-text part wins; html only when no plain text has been seen
+                include = partType.equals("text/plain") || (partType.equals("text/html") && !textSeen);
+                if (include && partType.equals("text/plain")) textSeen = true;
+            }
+            pending.setLength(0);
+        }
+
+        private void flushPart(Stats st) {
+            if (pending.length() == 0) return;
+            byte[] bytes = partEncoding.equals("base64") ? base64(pending) : quotedPrintable(pending);
+            append(body, new String(bytes, StandardCharsets.UTF_8), st, true);
+            pending.setLength(0);
+        }
+    }
+
+    static String address(String from) {
+        int lt = from.lastIndexOf('<'), gt = from.lastIndexOf('>');
+        String a = lt >= 0 && gt > lt ? from.substring(lt + 1, gt) : from;
+        return a.trim().toLowerCase(Locale.ROOT);
+    }
+
+    static String param(String header, String name) {
+        String lower = header.toLowerCase(Locale.ROOT);
+        int at = lower.indexOf(name + "=");
+        if (at < 0) return null;
+        int s = at + name.length() + 1;
+        if (s < header.length() && header.charAt(s) == '"') {
+            int e = header.indexOf('"', s + 1);
+            return e < 0 ? header.substring(s + 1) : header.substring(s + 1, e);
+        }
+        int e = s;
+        while (e < header.length() && header.charAt(e) != ';' && !Character.isWhitespace(header.charAt(e))) e++;
+        return header.substring(s, e);
+    }
+
+    /** RFC 2047 encoded words (=?charset?B|Q?...?=), UTF-8/ASCII only. */
+    static String decodeWords(String v) {
+        if (!v.contains("=?")) return v;
+        StringBuilder out = new StringBuilder();
+        int i = 0;
+        while (i < v.length()) {
+            int s = v.indexOf("=?", i);
+            if (s < 0) break;
+            int q1 = v.indexOf('?', s + 2), q2 = q1 < 0 ? -1 : v.indexOf('?', q1 + 1), e = q2 < 0 ? -1 : v.indexOf("?=", q2 + 1);
+            if (e < 0) break;
+            String between = v.substring(i, s);
+            if (!between.trim().isEmpty() || out.length() == 0) out.append(between);
+            char enc = Character.toUpperCase(v.charAt(q1 + 1));
+            String text = v.substring(q2 + 1, e);
+            byte[] bytes = enc == 'B' ? base64(new StringBuilder(text))
+                    : quotedPrintable(new StringBuilder(text.replace('_', ' ')));
+            out.append(new String(bytes, StandardCharsets.UTF_8));
+            i = e + 2;
+        }
+        out.append(v.substring(i));
+        return out.toString();
+    }
+
+    static byte[] base64(CharSequence s) {
+        StringBuilder clean = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (Character.isLetterOrDigit(c) || c == '+' || c == '/') clean.append(c);
+        }
+        while (clean.length() % 4 != 0) clean.append('=');
+        try {
+            return Base64.getDecoder().decode(clean.toString());
+        } catch (IllegalArgumentException e) {
+            return new byte[0];
+        }
+    }
+
+    static byte[] quotedPrintable(CharSequence s) {
+        byte[] out = new byte[s.length()];
+        int n = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '=' && i + 1 < s.length() && s.charAt(i + 1) == '\n') {
+                i++; // soft line break
+            } else if (c == '=' && i + 2 < s.length() && hex(s.charAt(i + 1)) >= 0 && hex(s.charAt(i + 2)) >= 0) {
+                out[n++] = (byte) (hex(s.charAt(i + 1)) * 16 + hex(s.charAt(i + 2)));
+                i += 2;
+            } else if (c < 0x80) {
+                out[n++] = (byte) c;
+            } else {
+                byte[] u = String.valueOf(c).getBytes(StandardCharsets.UTF_8);
+                if (n + u.length > out.length) out = Arrays.copyOf(out, out.length * 2 + u.length);
+                System.arraycopy(u, 0, out, n, u.length);
+                n += u.length;
+            }
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    private static int hex(char c) {
+        if (c >= '0' && c <= '9') return c - '0';
+        if (c >= 'A' && c <= 'F') return c - 'A' + 10;
+        if (c >= 'a' && c <= 'f') return c - 'a' + 10;
+        return -1;
+    }
+
+    // ------------------------------------------------------------ time
+
+    private static final String MONTHS = "janfebmaraprmayjunjulaugsepoctnovdec";
+
+    /** "Fri, 12 Mar 2021 14:05:33 +0200" (weekday, seconds and zone optional). */
+    static long rfc2822(String v) {
+        String[] p = v.replace(',', ' ').trim().split("\\s+");
+        int i = 0;
+        if (p.length > 0 && !p[0].isEmpty() && Character.isLetter(p[0].charAt(0))) i++;
+        if (p.length < i + 4) return NO_TIME;
+        try {
+            int day = Integer.parseInt(p[i]);
+            int month = MONTHS.indexOf(p[i + 1].toLowerCase(Locale.ROOT).substring(0, Math.min(3, p[i + 1].length()))) / 3 + 1;
+            if (month < 1 || p[i + 1].length() < 3) return NO_TIME;
+            int year = Integer.parseInt(p[i + 2]);
+            if (year < 100) year += year < 50 ? 2000 : 1900;
+            String[] hms = p[i + 3].split(":");
+            int h = Integer.parseInt(hms[0]), m = Integer.parseInt(hms[1]);
+            int s = hms.length > 2 ? Integer.parseInt(hms[2]) : 0;
+            long t = utc(year, month, day, h, m, s);
+            if (p.length > i + 4) t -= zoneOffsetMs(p[i + 4]);
+            return t;
+        } catch (RuntimeException e) {
+            return NO_TIME;
+        }
+    }
+
+    private static long zoneOffsetMs(String z) {
+        if ((z.startsWith("+") || z.startsWith("-")) && z.length() >= 5) {
+            int hh = Integer.parseInt(z.substring(1, 3)), mm = Integer.parseInt(z.substring(3, 5));
+            long off = (hh * 60L + mm) * 60_000L;
+            return z.charAt(0) == '-' ? -off : off;
+        }
+        switch (z.toUpperCase(Locale.ROOT)) {
+            case "EST": return -5 * 3_600_000L;
+            case "EDT": return -4 * 3_600_000L;
+            case "CST": return -6 * 3_600_000L;
+            case "CDT": return -5 * 3_600_000L;
+            case "MST": return -7 * 3_600_000L;
+            case "MDT": return -6 * 3_600_000L;
+            case "PST": return -8 * 3_600_000L;
+            case "PDT": return -7 * 3_600_000L;
+            default: return 0; // GMT, UT, UTC, Z and unknown names
+        }
+    }
+
+    /** "2021-03-12T14:05:33" as wall-clock UTC. */
+    static long isoLocal(String v) {
+        if (v.length() < 19) return NO_TIME;
+        try {
+            return utc(Integer.parseInt(v.substring(0, 4)), Integer.parseInt(v.substring(5, 7)),
+                    Integer.parseInt(v.substring(8, 10)), Integer.parseInt(v.substring(11, 13)),
+                    Integer.parseInt(v.substring(14, 16)), Integer.parseInt(v.substring(17, 19)));
+        } catch (NumberFormatException e) {
+            return NO_TIME;
+        }
+    }
+
+    /** Proleptic Gregorian civil time to epoch milliseconds, no allocation. */
+    static long utc(int y, int mo, int d, int h, int mi, int s) {
+        y -= mo <= 2 ? 1 : 0;
+        long era = Math.floorDiv(y, 400);
+        long yoe = y - era * 400;
+        long doy = (153L * (mo + (mo > 2 ? -3 : 9)) + 2) / 5 + d - 1;
+        long doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        long days = era * 146097 + doe - 719468;
+        return ((days * 24 + h) * 60 + mi) * 60_000L + s * 1000L;
+    }
+
+    // ------------------------------------------------------------ lines
+
+    /**
+     * Byte-level line splitter over a fixed buffer.  Lines are exposed as a range so
+     * callers can test a prefix without building a String; over-long lines are cut.
+     */
+    static final class LineReader {
+        static final int MAX_LINE = 1 << 20;
+        private final InputStream in;
+        private byte[] buf = new byte[1 << 16];
+        private int pos, lim, scanned;
+        private boolean eof, skipping;
+        int start, end;
+        long lineOffset, consumed;
+
+        LineReader(InputStream in) {
+            this.in = in;
+        }
+
+        boolean next() throws IOException {
+            while (true) {
+                int nl = -1;
+                for (int i = Math.max(pos, scanned); i < lim; i++) {
+                    if (buf[i] == '\n') {
+                        nl = i;
+                        break;
+                    }
+                }
+                if (nl >= 0 || (eof && pos < lim)) {
+                    boolean drop = skipping;
+                    skipping = false;
+                    setLine(pos, nl >= 0 ? nl : lim);
+                    consume(nl >= 0 ? nl + 1 : lim);
+                    if (drop) continue; // tail of a cut line
+                    return true;
+                }
+                if (eof) return false;
+                scanned = lim;
+                if (pos > 0) {
+                    System.arraycopy(buf, pos, buf, 0, lim - pos);
+                    lim -= pos;
+                    scanned -= pos;
+                    pos = 0;
+                } else if (lim == buf.length) {
+                    if (buf.length < MAX_LINE) {
+                        buf = Arrays.copyOf(buf, buf.length * 2);
+                    } else {
+                        // longer than MAX_LINE: hand out the first part, drop the rest
+                        setLine(0, lim);
+                        consume(lim);
+                        skipping = true;
+                        return true;
+                    }
+                }
+                int r = in.read(buf, lim, buf.length - lim);
+                if (r < 0) eof = true;
+                else lim += r;
+            }
+        }
+
+        private void setLine(int s, int e) {
+            if (e > s && buf[e - 1] == '\r') e--;
+            start = s;
+            end = e;
+            lineOffset = consumed;
+        }
+
+        private void consume(int to) {
+            consumed += to - pos;
+            pos = to;
+        }
+
+        int length() {
+            return end - start;
+        }
+
+        boolean startsWith(String ascii) {
+            if (end - start < ascii.length()) return false;
+            for (int i = 0; i < ascii.length(); i++) if (buf[start + i] != ascii.charAt(i)) return false;
+            return true;
+        }
+
+        String text() {
+            return new String(buf, start, end - start, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package com.verum.omnis.core;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Metrics – low-overhead timing and counters (local-only, no Android dependencies).
+ *
+ * <p>Stages and counters are registered once by name and then referred to by
+ * int id.  Recording a span or a counter increment does not allocate: spans
+ * go into a fixed ring buffer of primitive arrays and into per-stage
+ * aggregates, all updated with atomics.  Timestamps come from the monotonic
+ * {@link System#nanoTime()} clock.</p>
+ *
+ * <p>Usage:</p>
+ * <pre>
+ *   static final int STAGE = Metrics.stage("analysis.hash");
+ *   long t0 = Metrics.begin();
+ *   ...
+ *   Metrics.end(STAGE, t0);
+ * </pre>
+ *
+ * <p>{@link #exportTo(File, String, String)} writes {@code verum_metrics.json}
+ * and {@code verum_metrics.prom} (Prometheus text exposition) so runs can be
+ * compared across devices and releases.</p>
+ */
+public final class Metrics {
+
+    private static final int MAX_STAGES = 64;
+    private static final int MAX_COUNTERS = 64;
+    private static final int RING_SIZE = 4096; // power of two
+    private static final int RING_MASK = RING_SIZE - 1;
+    private static final int RECENT_EXPORT = 64; // raw spans included in the JSON export
+
+    private static final String[] stageNames = new String[MAX_STAGES];
+    private static final String[] counterNames = new String[MAX_COUNTERS];
+    private static int stageCount;
+    private static int counterCount;
+
+    // Per-stage aggregates
+    private static final AtomicLongArray stageCalls = new AtomicLongArray(MAX_STAGES);
+    private static final AtomicLongArray stageTotalNs = new AtomicLongArray(MAX_STAGES);
+    private static final AtomicLongArray stageMaxNs = new AtomicLongArray(MAX_STAGES);
+    private static final AtomicLongArray counters = new AtomicLongArray(MAX_COUNTERS);
+
+    // Ring buffer of the most recent spans.  A slot is valid when seq[slot] == index + 1.
+    private static final AtomicLong cursor = new AtomicLong();
+    private static final int[] ringStage = new int[RING_SIZE];
+    private static final long[] ringStartNs = new long[RING_SIZE];
+    private static final long[] ringDurNs = new long[RING_SIZE];
+    private static final AtomicLongArray ringSeq = new AtomicLongArray(RING_SIZE);
+
+    private static final long originNs = System.nanoTime();
+    private static volatile boolean enabled = true;
+
+    private Metrics() {}
+
+    /** Register (or look up) a stage; call once and keep the id in a static final. */
+    public static synchronized int stage(String name) {
+        for (int i = 0; i < stageCount; i++) if (stageNames[i].equals(name)) return i;
+        if (stageCount == MAX_STAGES) return MAX_STAGES - 1; // overflow shares the last slot
+        stageNames[stageCount] = name;
+        return stageCount++;
+    }
+
+    /** Register (or look up) a monotonically increasing counter. */
+    public static synchronized int counter(String name) {
+        for (int i = 0; i < counterCount; i++) if (counterNames[i].equals(name)) return i;
+        if (counterCount == MAX_COUNTERS) return MAX_COUNTERS - 1;
+        counterNames[counterCount] = name;
+        return counterCount++;
+    }
+
+    public static void setEnabled(boolean on) {
+        enabled = on;
+    }
+
+    /** Start of a span (monotonic nanoseconds). */
+    public static long begin() {
+        return System.nanoTime();
+    }
+
+    /** Close the span started at {@code startNs}; returns its duration in ns. */
+    public static long end(int stage, long startNs) {
+        long dur = System.nanoTime() - startNs;
+        if (!enabled) return dur;
+
+        stageCalls.incrementAndGet(stage);
+        stageTotalNs.addAndGet(stage, dur);
+        long max;
+        while (dur > (max = stageMaxNs.get(stage))) {
+            if (stageMaxNs.compareAndSet(stage, max, dur)) break;
+        }
+
+        long idx = cursor.getAndIncrement();
+        int slot = (int) (idx & RING_MASK);
+        ringSeq.set(slot, 0); // mark in-flight so readers skip a half-written slot
+        ringStage[slot] = stage;
+        ringStartNs[slot] = startNs - originNs;
+        ringDurNs[slot] = dur;
+        ringSeq.set(slot, idx + 1);
+        return dur;
+    }
+
+    public static void add(int counter, long delta) {
+        if (enabled) counters.addAndGet(counter, delta);
+    }
+
+    public static void inc(int counter) {
+        add(counter, 1);
+    }
+
+    /** Clear aggregates, counters and the ring (registrations are kept). */
+    public static synchronized void reset() {
+        for (int i = 0; i < MAX_STAGES; i++) {
+            stageCalls.set(i, 0);
+            stageTotalNs.set(i, 0);
+            stageMaxNs.set(i, 0);
+        }
+        for (int i = 0; i < MAX_COUNTERS; i++) counters.set(i, 0);
+        for (int i = 0; i < RING_SIZE; i++) ringSeq.set(i, 0);
+        cursor.set(0);
+    }
+
+    // === Export (allocates; not on the hot path) ===
+
+    /** Recent span durations for {@code stage} still in the ring, sorted ascending. */
+    private static long[] recentDurations(int stage) {
+        long end = cursor.get();
+        long start = Math.max(0, end - RING_SIZE);
+        long[] tmp = new long[(int) (end - start)];
+        int n = 0;
+        for (long idx = start; idx < end; idx++) {
+            int slot = (int) (idx & RING_MASK);
+            if (ringSeq.get(slot) != idx + 1) continue;
+            int st = ringStage[slot];
+            long dur = ringDurNs[slot];
+            if (ringSeq.get(slot) == idx + 1 && st == stage) tmp[n++] = dur; // unchanged while read
+        }
+        long[] out = Arrays.copyOf(tmp, n);
+        Arrays.sort(out);
+        return out;
+    }
+
+    private static double quantile(long[] sorted, double q) {
+        if (sorted.length == 0) return 0;
+        int i = (int) Math.min(sorted.length - 1, Math.round(q * (sorted.length - 1)));
+        return sorted[i] / 1e9;
+    }
+
+    public static synchronized String toJson(String device, String release) {
+        StringBuilder sb = new StringBuilder(1024);
+        sb.append("{\"device\":\"").append(esc(device))
+                .append("\",\"release\":\"").append(esc(release))
+                .append("\",\"uptime_ms\":").append((System.nanoTime() - originNs) / 1_000_000L)
+                .append(",\"stages\":{");
+        for (int i = 0; i < stageCount; i++) {
+            if (i > 0) sb.append(',');
+            long[] recent = recentDurations(i);
+            sb.append('"').append(esc(stageNames[i])).append("\":{")
+                    .append("\"count\":").append(stageCalls.get(i))
+                    .append(",\"total_ms\":").append(fmt(stageTotalNs.get(i) / 1e6))
+                    .append(",\"max_ms\":").append(fmt(stageMaxNs.get(i) / 1e6))
+                    .append(",\"p50_ms\":").append(fmt(quantile(recent, 0.5) * 1e3))
+                    .append(",\"p95_ms\":").append(fmt(quantile(recent, 0.95) * 1e3))
+                    .append('}');
+        }
+        sb.append("},\"counters\":{");
+        for (int i = 0; i < counterCount; i++) {
+            if (i > 0) sb.append(',');
+            sb.append('"').append(esc(counterNames[i])).append("\":").append(counters.get(i));
+        }
+        sb.append("},\"recent\":[");
+        long end = cursor.get();
+        boolean first = true;
+        for (long idx = Math.max(0, end - RECENT_EXPORT); idx < end; idx++) {
+            int slot = (int) (idx & RING_MASK);
+            if (ringSeq.get(slot) != idx + 1) continue;
+            int st = ringStage[slot];
+            long start = ringStartNs[slot];
+            long dur = ringDurNs[slot];
+            if (ringSeq.get(slot) != idx + 1) continue;
+            if (!first) sb.append(',');
+            first = false;
+            sb.append("{\"stage\":\"").append(esc(stageNames[st]))
+                    .append("\",\"start_ms\":").append(fmt(start / 1e6))
+                    .append(",\"dur_ms\":").append(fmt(dur / 1e6)).append('}');
+        }
+        sb.append("]}");
+        return sb.toString();
+    }
+
+    public static synchronized String toPrometheus(String device, String release) {
+        String labels = "device=\"" + esc(device) + "\",release=\"" + esc(release) + "\"";
+        StringBuilder sb = new StringBuilder(2048);
+        sb.append("# HELP verum_stage_duration_seconds Wall time per pipeline stage.\n");
+        sb.append("# TYPE verum_stage_duration_seconds summary\n");
+        for (int i = 0; i < stageCount; i++) {
+            String l = labels + ",stage=\"" + esc(stageNames[i]) + "\"";
+            long[] recent = recentDurations(i);
+            sb.append("verum_stage_duration_seconds{").append(l).append(",quantile=\"0.5\"} ")
+                    .append(fmt(quantile(recent, 0.5))).append('\n');
+            sb.append("verum_stage_duration_seconds{").append(l).append(",quantile=\"0.95\"} ")
+                    .append(fmt(quantile(recent, 0.95))).append('\n');
+            sb.append("verum_stage_duration_seconds_sum{").append(l).append("} ")
+                    .append(fmt(stageTotalNs.get(i) / 1e9)).append('\n');
+            sb.append("verum_stage_duration_seconds_count{").append(l).append("} ")
+                    .append(stageCalls.get(i)).append('\n');
+        }
+        sb.append("# HELP verum_stage_duration_max_seconds Slowest observed span per stage.\n");
+        sb.append("# TYPE verum_stage_duration_max_seconds gauge\n");
+        for (int i = 0; i < stageCount; i++) {
+            sb.append("verum_stage_duration_max_seconds{").append(labels)
+                    .append(",stage=\"").append(esc(stageNames[i])).append("\"} ")
+                    .append(fmt(stageMaxNs.get(i) / 1e9)).append('\n');
+        }
+        for (int i = 0; i < counterCount; i++) {
+            String name = "verum_" + counterNames[i].replaceAll("[^A-Za-z0-9_]", "_") + "_total";
+            sb.append("# TYPE ").append(name).append(" counter\n");
+            sb.append(name).append('{').append(labels).append("} ").append(counters.get(i)).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Write {@code verum_metrics.json} and {@code verum_metrics.prom} into {@code dir}.
+     *
+     * @param device  device label (e.g. Build.MODEL)
+     * @param release app/OS release label
+     */
+    public static void exportTo(File dir, String device, String release) throws Exception {
+        write(new File(dir, "verum_metrics.json"), toJson(device, release));
+        write(new File(dir, "verum_metrics.prom"), toPrometheus(device, release));
+    }
+
+    private static void write(File f, String s) throws Exception {
+        File tmp = new File(f.getPath() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmp)) {
+            fos.write(s.getBytes(StandardCharsets.UTF_8));
+        }
+        if (!tmp.renameTo(f)) {
+            tmp.delete();
+            throw new java.io.IOException("Could not replace " + f.getName());
+        }
+    }
+
+    // Double.toString is locale-independent and valid in both JSON and the Prometheus format.
+    private static String fmt(double v) {
+        return Double.toString(v);
+    }
+
+    private static String esc(String s) {
+        if (s == null) return "";
+        return s.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", " ");
+    }
+}
@@ -0,0 +1,502 @@
+package com.verum.omnis.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * Mp4Parser – pure-Java ISO-BMFF / QuickTime box walker (MP4, MOV, M4A, 3GP).
+ *
+ * <p>Walks the box tree with positional FileChannel reads and only reads the
+ * small header boxes it needs; {@code mdat} and other payloads are skipped by
+ * size, so the cost is independent of file length.  Extracts movie and track
+ * creation/modification times, durations, edit lists, codecs, encoder and
+ * device tags (udta, iTunes ilst and Apple mdta keys) and derives re-mux
+ * indicators such as an ffmpeg encoder tag, faststart layout, zeroed or
+ * inconsistent timestamps and trimming edit lists.</p>
+ */
+public final class Mp4Parser {
+
+    private static final long EPOCH_1904_OFFSET = 2082844800L; // seconds 1904-01-01 → 1970-01-01
+    private static final int MAX_DEPTH = 16;
+    private static final int MAX_BOXES = 20000;
+    private static final int MAX_LEAF_READ = 1 << 16;
+
+    private static final int M_PARSE = Metrics.stage("mp4.parse");
+
+    public static class Edit {
+        public final long segmentDuration;   // movie timescale
+        public final long mediaTime;         // media timescale, -1 = empty edit
+        public final double rate;
+
+        Edit(long segmentDuration, long mediaTime, double rate) {
+            this.segmentDuration = segmentDuration;
+            this.mediaTime = mediaTime;
+            this.rate = rate;
+        }
+    }
+
+    public static class Track {
+        public int id;
+        public String handler = "";          // vide, soun, meta, ...
+        public String codec = "";            // sample entry fourcc (avc1, hvc1, mp4a, ...)
+        public String compressor = "";       // VisualSampleEntry compressorname
+        public long created = -1, modified = -1;           // tkhd, epoch ms
+        public long mediaCreated = -1, mediaModified = -1; // mdhd, epoch ms
+        public double durationSec;           // mdhd
+        public double headerDurationSec;     // tkhd (movie timescale)
+        public int width, height;
+        public String language = "";
+        public long sampleCount;
+        public long firstChunkOffset = -1;
+        public final List<Edit> edits = new ArrayList<>();
+    }
+
+    public static class Result {
+        public String majorBrand = "";
+        public String compatibleBrands = "";
+        public long created = -1, modified = -1;   // mvhd, epoch ms
+        public double durationSec;
+        public long timescale;
+        public final List<Track> tracks = new ArrayList<>();
+        public final Map<String, String> tags = new LinkedHashMap<>();
+        public final List<String> indicators = new ArrayList<>();
+        public long moovOffset = -1;
+        public long mdatOffset = -1;
+        public long mdatSize;
+        public int mdatCount;
+        public int freeBoxes;
+        public boolean fragmented;
+        public int boxes;
+        public long bytesRead;
+        public String note = "";
+    }
+
+    private Mp4Parser() {}
+
+    public static Result parse(File f) throws IOException {
+        long t0 = Metrics.begin();
+        try (RandomAccessFile raf = new RandomAccessFile(f, "r")) {
+            return parse(raf.getChannel());
+        } finally {
+            Metrics.end(M_PARSE, t0);
+        }
+    }
+
+    /** Parse using positional reads only (the channel position is untouched). */
+    public static Result parse(FileChannel ch) throws IOException {
+        Walker w = new Walker(ch);
+        try {
+            w.children(0, ch.size(), 0, null);
+        } catch (IOException e) {
+            w.r.note = "truncated box tree: " + e.getMessage();
+        }
+        w.finish();
+        return w.r;
+    }
+
+    /** Epoch milliseconds as ISO-8601 UTC, or "" when unset. */
+    public static String iso(long epochMs) {
+        if (epochMs < 0) return "";
+        SimpleDateFormat fmt = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.US);
+        fmt.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return fmt.format(new Date(epochMs));
+    }
+
+    private static final class Walker {
+        final FileChannel ch;
+        final Result r = new Result();
+        final ByteBuffer hdr = ByteBuffer.allocate(16);
+        final List<String> keys = new ArrayList<>();   // Apple mdta key table
+        Track track;
+
+        Walker(FileChannel ch) {
+            this.ch = ch;
+        }
+
+        void children(long start, long end, int depth, String parent) throws IOException {
+            long pos = start;
+            while (pos + 8 <= end && r.boxes < MAX_BOXES) {
+                ByteBuffer h = read(pos, 16, hdr);
+                if (h.remaining() < 8) break;
+                long size = h.getInt() & 0xFFFFFFFFL;
+                String type = fourcc(h.getInt());
+                int headerLen = 8;
+                if (size == 1) {
+                    if (h.remaining() < 8) break;
+                    size = h.getLong();
+                    headerLen = 16;
+                } else if (size == 0) {
+                    size = end - pos;
+                }
+                if (size < headerLen || size > end - pos) {   // a 64-bit largesize must not wrap pos
+                    r.note = "box " + type + " at " + pos + " overruns its parent";
+                    size = end - pos;
+                    if (size < headerLen) break;
+                }
+                r.boxes++;
+                try {
+                    box(type, pos, pos + headerLen, pos + size, depth, parent);
+                } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+                    // a leaf shorter than its fields claim; skip it, keep walking
+                    r.note = "malformed box " + type + " at " + pos;
+                }
+                pos += size;
+            }
+        }
+
+        void box(String type, long boxStart, long body, long end, int depth, String parent) throws IOException {
+            if (depth > MAX_DEPTH) return;
+            switch (type) {
+                case "ftyp": ftyp(body, end); break;
+                case "moov":
+                    if (r.moovOffset < 0) r.moovOffset = boxStart;
+                    children(body, end, depth + 1, type);
+                    break;
+                case "trak":
+                    track = new Track();
+                    r.tracks.add(track);
+                    children(body, end, depth + 1, type);
+                    track = null;
+                    break;
+                case "mdia": case "minf": case "stbl": case "edts": case "udta": case "ilst": case "dinf":
+                    children(body, end, depth + 1, type);
+                    break;
+                case "moof":   // fragment headers repeat per segment; noting them is enough
+                    r.fragmented = true;
+                    break;
+                case "meta": {
+                    // ISO meta is a FullBox; QuickTime meta is a plain container
+                    ByteBuffer b = read(body, 8, null);
+                    boolean full = b.remaining() >= 8 && !isBoxType(b.getInt(4));
+                    children(full ? body + 4 : body, end, depth + 1, type);
+                    break;
+                }
+                case "mvhd": mvhd(body, end); break;
+                case "tkhd": tkhd(body, end); break;
+                case "mdhd": mdhd(body, end); break;
+                case "hdlr": hdlr(body, end, parent); break;
+                case "elst": elst(body, end); break;
+                case "stsd": stsd(body, end); break;
+                case "stsz": case "stz2": stsz(body, end); break;
+                case "stco": case "co64": chunkOffsets(body, end, "co64".equals(type)); break;
+                case "keys": keys(body, end); break;
+                case "mdat":
+                    r.mdatCount++;
+                    if (r.mdatOffset < 0) {
+                        r.mdatOffset = body;
+                        r.mdatSize = end - body;
+                    }
+                    break;
+                case "free": case "skip": case "wide":
+                    r.freeBoxes++;
+                    break;
+                default:
+                    if ("ilst".equals(parent)) ilstItem(type, body, end);
+                    else if ("udta".equals(parent) && type.charAt(0) == '©') udtaText(type, body, end);
+                    break;
+            }
+        }
+
+        void ftyp(long body, long end) throws IOException {
+            ByteBuffer b = read(body, (int) Math.min(end - body, 256), null);
+            if (b.remaining() < 8) return;
+            r.majorBrand = fourcc(b.getInt()).trim();
+            b.getInt(); // minor version
+            StringBuilder sb = new StringBuilder();
+            while (b.remaining() >= 4) {
+                if (sb.length() > 0) sb.append(',');
+                sb.append(fourcc(b.getInt()).trim());
+            }
+            r.compatibleBrands = sb.toString();
+        }
+
+        void mvhd(long body, long end) throws IOException {
+            ByteBuffer b = read(body, (int) Math.min(end - body, 32), null);
+            if (b.remaining() < 4) return;
+            int version = b.get(0) & 0xFF;
+            if (b.remaining() < (version == 1 ? 32 : 20)) return;
+            b.position(4);
+            long c = version == 1 ? b.getLong() : b.getInt() & 0xFFFFFFFFL;
+            long m = version == 1 ? b.getLong() : b.getInt() & 0xFFFFFFFFL;
+            r.timescale = b.getInt() & 0xFFFFFFFFL;
+            long d = version == 1 ? b.getLong() : b.getInt() & 0xFFFFFFFFL;
+            r.created = epochMs(c);
+            r.modified = epochMs(m);
+            if (r.timescale > 0) r.durationSec = (double) d / r.timescale;
+        }
+
+        void tkhd(long body, long end) throws IOException {
+            if (track == null) return;
+            ByteBuffer b = read(body, (int) Math.min(end - body, 96), null);
+            if (b.remaining() < 4) return;
+            int version = b.get(0) & 0xFF;
+            if (b.remaining() < (version == 1 ? 36 : 24)) return;
+            b.position(4);
+            track.created = epochMs(version == 1 ? b.getLong() : b.getInt() & 0xFFFFFFFFL);
+            track.modified = epochMs(version == 1 ? b.getLong() : b.getInt() & 0xFFFFFFFFL);
+            track.id = b.getInt();
+            b.getInt(); // reserved
+            long d = version == 1 ? b.getLong() : b.getInt() & 0xFFFFFFFFL;
+            if (r.timescale > 0) track.headerDurationSec = (double) d / r.timescale;
+            // reserved(8) layer(2) alt(2) volume(2) reserved(2) matrix(36) width(4) height(4)
+            int wpos = b.position() + 8 + 8 + 36;
+            if (b.limit() >= wpos + 8) {
+                track.width = b.getInt(wpos) >>> 16;
+                track.height = b.getInt(wpos + 4) >>> 16;
+            }
+        }
+
+        void mdhd(long body, long end) throws IOException {
+            if (track == null) return;
+            ByteBuffer b = read(body, (int) Math.min(end - body, 36), null);
+            if (b.remaining() < 4) return;
+            int version = b.get(0) & 0xFF;
+            if (b.remaining() < (version == 1 ? 32 : 24)) return;
+            b.position(4);
+            track.mediaCreated = epochMs(version == 1 ? b.getLong() : b.getInt() & 0xFFFFFFFFL);
+            track.mediaModified = epochMs(version == 1 ? b.getLong() : b.getInt() & 0xFFFFFFFFL);
+            long scale = b.getInt() & 0xFFFFFFFFL;
+            long d = version == 1 ? b.getLong() : b.getInt() & 0xFFFFFFFFL;
+            if (scale > 0) track.durationSec = (double) d / scale;
+            if (b.remaining() >= 2) {
+                int lang = b.getShort() & 0x7FFF;
+                if (lang != 0 && lang != 0x7FFF) {
+                    track.language = new String(new char[]{
+                            (char) (((lang >> 10) & 31) + 0x60),
+                            (char) (((lang >> 5) & 31) + 0x60),
+                            (char) ((lang & 31) + 0x60)});
+                }
+            }
+        }
+
+        void hdlr(long body, long end, String parent) throws IOException {
+            ByteBuffer b = read(body, (int) Math.min(end - body, 128), null);
+            if (b.remaining() < 12) return;
+            String handler = fourcc(b.getInt(8));
+            if (track != null && "mdia".equals(parent)) track.handler = handler;
+            if (b.remaining() > 24 && "mdia".equals(parent)) {
+                String name = cstring(b, 24).trim();
+                if (!name.isEmpty()) r.tags.put("HandlerName:" + handler, name);
+            }
+        }
+
+        void elst(long body, long end) throws IOException {
+            if (track == null) return;
+            ByteBuffer b = read(body, (int) Math.min(end - body, MAX_LEAF_READ), null);
+            if (b.remaining() < 8) return;
+            int version = b.get() & 0xFF;
+            b.position(4);
+            long n = b.getInt() & 0xFFFFFFFFL;
+            int entry = version == 1 ? 20 : 12;
+            for (long i = 0; i < n && b.remaining() >= entry; i++) {
+                long dur = version == 1 ? b.getLong() : b.getInt() & 0xFFFFFFFFL;
+                long mt = version == 1 ? b.getLong() : b.getInt();
+                double rate = b.getShort() + (b.getShort() & 0xFFFF) / 65536.0;
+                track.edits.add(new Edit(dur, mt, rate));
+            }
+        }
+
+        void stsd(long body, long end) throws IOException {
+            if (track == null) return;
+            ByteBuffer b = read(body, (int) Math.min(end - body, 128), null);
+            if (b.remaining() < 16) return;
+            track.codec = fourcc(b.getInt(12)).trim();
+            // VisualSampleEntry: compressorname is a 32-byte Pascal string 42 bytes into the entry body
+            int cn = 8 + 8 + 42;
+            if ("vide".equals(track.handler) && b.limit() >= cn + 32) {
+                int len = Math.min(31, b.get(cn) & 0xFF);
+                byte[] s = new byte[len];
+                for (int i = 0; i < len; i++) s[i] = b.get(cn + 1 + i);
+                track.compressor = new String(s, StandardCharsets.UTF_8).trim();
+            }
+        }
+
+        void stsz(long body, long end) throws IOException {
+            if (track == null) return;
+            ByteBuffer b = read(body, 12, null);
+            if (b.remaining() >= 12) track.sampleCount = b.getInt(8) & 0xFFFFFFFFL;
+        }
+
+        void chunkOffsets(long body, long end, boolean wide) throws IOException {
+            if (track == null) return;
+            ByteBuffer b = read(body, 16, null);
+            if (b.remaining() < 12) return;
+            long n = b.getInt(4) & 0xFFFFFFFFL;
+            if (n > 0) track.firstChunkOffset = wide ? (b.remaining() >= 16 ? b.getLong(8) : -1) : b.getInt(8) & 0xFFFFFFFFL;
+        }
+
+        void keys(long body, long end) throws IOException {
+            ByteBuffer b = read(body, (int) Math.min(end - body, MAX_LEAF_READ), null);
+            if (b.remaining() < 8) return;
+            long n = b.getInt(4) & 0xFFFFFFFFL;
+            b.position(8);
+            keys.clear();
+            for (long i = 0; i < n && b.remaining() >= 8; i++) {
+                int size = b.getInt();
+                b.getInt(); // namespace, normally 'mdta'
+                int len = size - 8;
+                if (len < 0 || len > b.remaining()) break;
+                byte[] s = new byte[len];
+                b.get(s);
+                keys.add(new String(s, StandardCharsets.UTF_8));
+            }
+        }
+
+        /** iTunes/mdta item: a child 'data' box holds type(4) locale(4) value. */
+        void ilstItem(String type, long body, long end) throws IOException {
+            ByteBuffer b = read(body, (int) Math.min(end - body, 4096), null);
+            if (b.remaining() < 16 || b.getInt(4) != 0x64617461 /* data */) return;
+            int dataLen = Math.min(b.getInt(0), b.remaining());
+            int dataType = b.getInt(8) & 0xFFFFFF;
+            if (dataType != 1 || dataLen < 16) return; // UTF-8 text only
+            String value = new String(bytes(b, 16, dataLen - 16), StandardCharsets.UTF_8).trim();
+            String key;
+            int index = fourccInt(type);
+            if (!keys.isEmpty() && index >= 1 && index <= keys.size()) key = keys.get(index - 1);
+            else key = type;
+            putTag(key, value);
+        }
+
+        /** QuickTime udta text atom: len(2) lang(2) text. */
+        void udtaText(String type, long body, long end) throws IOException {
+            ByteBuffer b = read(body, (int) Math.min(end - body, 1024), null);
+            if (b.remaining() < 4) return;
+            if (b.remaining() >= 8 && b.getInt(4) == 0x64617461) { // iTunes-style child data box
+                ilstItem(type, body, end);
+                return;
+            }
+            int len = Math.min(b.getShort(0) & 0xFFFF, b.remaining() - 4);
+            if (len <= 0) return;
+            putTag(type, new String(bytes(b, 4, len), StandardCharsets.UTF_8).trim());
+        }
+
+        void putTag(String key, String value) {
+            if (value.isEmpty()) return;
+            String name;
+            switch (key) {
+                case "©too": case "©swr": case "com.apple.quicktime.software": name = "Encoder"; break;
+                case "©day": case "com.apple.quicktime.creationdate": name = "CreationDate"; break;
+                case "©xyz": case "com.apple.quicktime.location.ISO6709": name = "Location"; break;
+                case "©mak": case "com.apple.quicktime.make": name = "Make"; break;
+                case "©mod": case "com.apple.quicktime.model": name = "Model"; break;
+                case "©cmt": name = "Comment"; break;
+                case "©nam": name = "Title"; break;
+                default: name = key.replace('©', '@');
+            }
+            r.tags.put(name, value);
+        }
+
+        void finish() throws IOException {
+            r.bytesRead = bytesRead;
+            List<String> ind = r.indicators;
+            String enc = r.tags.containsKey("Encoder") ? r.tags.get("Encoder") : "";
+            for (Track t : r.tracks) if (enc.isEmpty() && !t.compressor.isEmpty()) enc = t.compressor;
+            String encLower = enc.toLowerCase(Locale.US);
+            if (encLower.startsWith("lavf") || encLower.contains("ffmpeg") || encLower.contains("handbrake")
+                    || encLower.contains("premiere") || encLower.contains("imovie") || encLower.contains("capcut")) {
+                ind.add("encoder:" + enc);
+            }
+            if (r.moovOffset >= 0 && r.mdatOffset >= 0 && r.moovOffset < r.mdatOffset) ind.add("moov_before_mdat");
+            if (r.mdatCount > 1) ind.add("multiple_mdat:" + r.mdatCount);
+            if (r.created == 0) ind.add("zero_creation_time");
+            if (r.created > 0 && r.modified > 0 && Math.abs(r.modified - r.created) > 2000) {
+                ind.add("modified_after_creation:" + (r.modified - r.created) / 1000 + "s");
+            }
+            double vDur = -1, aDur = -1;
+            for (Track t : r.tracks) {
+                if (r.created > 0 && t.created > 0 && Math.abs(t.created - r.created) > 2000) {
+                    ind.add("track_time_mismatch:" + t.id);
+                }
+                if (t.edits.size() > 1 || (t.edits.size() == 1 && (t.edits.get(0).mediaTime != 0
+                        && t.edits.get(0).mediaTime != -1))) {
+                    boolean priming = t.edits.size() == 1 && "soun".equals(t.handler);
+                    if (!priming) ind.add("edit_list:" + t.id + ":" + t.edits.size());
+                }
+                for (Edit e : t.edits) {
+                    if (e.mediaTime == -1 && t.edits.size() > 1) {
+                        ind.add("empty_edit:" + t.id);
+                        break;
+                    }
+                }
+                if (t.firstChunkOffset >= 0 && r.mdatOffset >= 0 && r.mdatCount == 1
+                        && (t.firstChunkOffset < r.mdatOffset || t.firstChunkOffset >= r.mdatOffset + r.mdatSize)) {
+                    ind.add("chunk_outside_mdat:" + t.id);
+                }
+                if ("vide".equals(t.handler) && vDur < 0) vDur = t.durationSec;
+                if ("soun".equals(t.handler) && aDur < 0) aDur = t.durationSec;
+            }
+            if (vDur > 0 && aDur > 0 && Math.abs(vDur - aDur) > 1.0) {
+                ind.add(String.format(Locale.US, "track_duration_mismatch:%.2fs", vDur - aDur));
+            }
+        }
+
+        // === I/O ===
+
+        private long bytesRead;
+
+        ByteBuffer read(long pos, int len, ByteBuffer reuse) throws IOException {
+            ByteBuffer b = reuse != null && reuse.capacity() >= len ? reuse : ByteBuffer.allocate(Math.max(0, len));
+            b.clear();
+            b.limit(Math.max(0, len));
+            long p = pos;
+            while (b.hasRemaining()) {
+                int n = ch.read(b, p);
+                if (n <= 0) break;
+                p += n;
+            }
+            bytesRead += b.position();
+            b.flip();
+            return b;
+        }
+    }
+
+    // === Helpers ===
+
+    private static long epochMs(long secs1904) {
+        if (secs1904 == 0) return 0;
+        return (secs1904 - EPOCH_1904_OFFSET) * 1000L;
+    }
+
+    private static String fourcc(int v) {
+        return new String(new byte[]{(byte) (v >>> 24), (byte) (v >>> 16), (byte) (v >>> 8), (byte) v},
+                StandardCharsets.ISO_8859_1);
+    }
+
+    private static int fourccInt(String s) {
+        byte[] b = s.getBytes(StandardCharsets.ISO_8859_1);
+        return ((b[0] & 0xFF) << 24) | ((b[1] & 0xFF) << 16) | ((b[2] & 0xFF) << 8) | (b[3] & 0xFF);
+    }
+
+    private static boolean isBoxType(int v) {
+        for (int i = 0; i < 4; i++) {
+            int c = (v >>> (24 - 8 * i)) & 0xFF;
+            if (c < 0x20 || c > 0x7E) return false;
+        }
+        return true;
+    }
+
+    private static byte[] bytes(ByteBuffer b, int off, int len) {
+        byte[] out = new byte[Math.max(0, Math.min(len, b.limit() - off))];
+        for (int i = 0; i < out.length; i++) out[i] = b.get(off + i);
+        return out;
+    }
+
+    private static String cstring(ByteBuffer b, int off) {
+        int end = off;
+        while (end < b.limit() && b.get(end) != 0) end++;
+        return new String(bytes(b, off, end - off), StandardCharsets.UTF_8);
+    }
+}
@@ -29,8 +29,8 @@ public class PDFSealer {
          */
         public String title;
         /**
-         * Summary description shown beneath the title.  If null or empty, a
-         * default message will be printed.
+         * Summary description shown beneath the title, one line per {@code \n}.
+         * If null or empty, a default message will be printed.
          */
         public String summary;
         /**
@@ -81,7 +81,11 @@ public class PDFSealer {
         textPaint.setTextSize(sp(ctx, 12));
         String summary = (req != null && req.summary != null && !req.summary.trim().isEmpty())
                 ? req.summary : "No summary provided.";
-        canvas.drawText(summary, 40f, 190f, textPaint);
+        float summaryY = 190f;
+        for (String line : summary.split("\n")) {
+            canvas.drawText(line, 40f, summaryY, textPaint);
+            summaryY += textPaint.getFontSpacing();
+        }
 
         // Certification block (tick + truncated hash) – conditional
         boolean includeHash = req == null || req.includeHash;
@@ -0,0 +1,181 @@
+package com.verum.omnis.core;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * PerceptualHash – 64-bit dHash / pHash fingerprints for near-duplicate images.
+ *
+ * <p>Both hashes work on a small luma image.  Baseline JPEGs are never fully
+ * decoded: {@link JpegRecompression#dcLuma(File)} yields the 1/8-scale image
+ * straight from the DC coefficients.  Other formats are decoded through
+ * BitmapFactory with {@code inSampleSize} so only a thumbnail-sized bitmap is
+ * ever allocated.</p>
+ *
+ * <p>Near duplicates (re-encodes, resizes, light crops and colour edits) land
+ * within a small Hamming distance of each other; see {@link PhashIndex}.</p>
+ */
+public final class PerceptualHash {
+
+    private static final int M_HASH = Metrics.stage("phash.compute");
+
+    /** Bitmap fallback decodes to at least this many pixels on the short side. */
+    private static final int MIN_DECODE = 64;
+    private static final int DCT = 32;
+
+    /** cos((2x+1) u pi / 64) for u < 8, x < 32. */
+    private static final double[] COS = new double[8 * DCT];
+    static {
+        for (int u = 0; u < 8; u++)
+            for (int x = 0; x < DCT; x++)
+                COS[u * DCT + x] = Math.cos((2 * x + 1) * u * Math.PI / (2 * DCT));
+    }
+
+    public static class Hashes {
+        public long dHash;
+        public long pHash;
+        public int width, height;   // luma image the hashes were taken from
+        public String source;       // "jpeg_dc" or "bitmap"
+    }
+
+    private PerceptualHash() {}
+
+    /** Hash an image file; returns null when it cannot be decoded. */
+    public static Hashes compute(File f) {
+        long t0 = Metrics.begin();
+        try {
+            float[] luma = null;
+            int w = 0, h = 0;
+            String source = null;
+            try {
+                if (FileSniffer.sniff(f).type == FileSniffer.Type.JPEG) {
+                    JpegRecompression.DcImage dc = JpegRecompression.dcLuma(f);
+                    if (dc != null && dc.width >= 9 && dc.height >= 8) {
+                        luma = dc.luma;
+                        w = dc.width;
+                        h = dc.height;
+                        source = "jpeg_dc";
+                    }
+                }
+            } catch (IOException | RuntimeException ignored) {
+                // fall through to the platform decoder
+            }
+            if (luma == null) {
+                Bitmap bmp = decodeSmall(f);
+                if (bmp == null) return null;
+                w = bmp.getWidth();
+                h = bmp.getHeight();
+                int[] px = new int[w * h];
+                bmp.getPixels(px, 0, w, 0, 0, w, h);
+                bmp.recycle();
+                luma = new float[w * h];
+                for (int i = 0; i < px.length; i++) {
+                    int c = px[i];
+                    luma[i] = 0.299f * ((c >> 16) & 0xFF) + 0.587f * ((c >> 8) & 0xFF) + 0.114f * (c & 0xFF);
+                }
+                source = "bitmap";
+            }
+            Hashes r = fromLuma(luma, w, h);
+            r.source = source;
+            return r;
+        } finally {
+            Metrics.end(M_HASH, t0);
+        }
+    }
+
+    /** Both hashes of a row-major luma image. */
+    public static Hashes fromLuma(float[] luma, int w, int h) {
+        Hashes r = new Hashes();
+        r.width = w;
+        r.height = h;
+        r.dHash = dHash(resize(luma, w, h, 9, 8));
+        r.pHash = pHash(resize(luma, w, h, DCT, DCT));
+        return r;
+    }
+
+    public static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+
+    /** Horizontal gradient sign on a 9x8 image. */
+    static long dHash(float[] s) {
+        long bits = 0;
+        for (int y = 0; y < 8; y++)
+            for (int x = 0; x < 8; x++)
+                if (s[y * 9 + x] < s[y * 9 + x + 1]) bits |= 1L << (y * 8 + x);
+        return bits;
+    }
+
+    /** Lowest 8x8 DCT-II coefficients of a 32x32 image, thresholded at the AC median. */
+    static long pHash(float[] s) {
+        // rows first: tmp[y][u] = sum_x s[y][x] cos_u(x)
+        double[] tmp = new double[DCT * 8];
+        for (int y = 0; y < DCT; y++)
+            for (int u = 0; u < 8; u++) {
+                double acc = 0;
+                for (int x = 0; x < DCT; x++) acc += s[y * DCT + x] * COS[u * DCT + x];
+                tmp[y * 8 + u] = acc;
+            }
+        double[] c = new double[64];
+        for (int v = 0; v < 8; v++)
+            for (int u = 0; u < 8; u++) {
+                double acc = 0;
+                for (int y = 0; y < DCT; y++) acc += tmp[y * 8 + u] * COS[v * DCT + y];
+                c[v * 8 + u] = acc;
+            }
+        double[] ac = new double[63];
+        System.arraycopy(c, 1, ac, 0, 63);
+        Arrays.sort(ac);
+        double median = ac[31];
+        long bits = 0;
+        for (int i = 1; i < 64; i++) if (c[i] > median) bits |= 1L << i;
+        return bits;
+    }
+
+    /** Area-weighted resample; works for both shrinking and (tiny) enlarging. */
+    static float[] resize(float[] src, int w, int h, int ow, int oh) {
+        float[] tmp = new float[ow * h];
+        double sx = (double) w / ow;
+        for (int x = 0; x < ow; x++) {
+            double a = x * sx, b = a + sx;
+            for (int y = 0; y < h; y++) tmp[y * ow + x] = (float) span(src, y * w, 1, w, a, b);
+        }
+        float[] out = new float[ow * oh];
+        double sy = (double) h / oh;
+        for (int y = 0; y < oh; y++) {
+            double a = y * sy, b = a + sy;
+            for (int x = 0; x < ow; x++) out[y * ow + x] = (float) span(tmp, x, ow, h, a, b);
+        }
+        return out;
+    }
+
+    /** Mean of samples base + i*step over the real interval [a, b) of an n-sample line. */
+    private static double span(float[] s, int base, int step, int n, double a, double b) {
+        int i0 = (int) a, i1 = Math.min(n - 1, (int) Math.ceil(b) - 1);
+        double sum = 0, wsum = 0;
+        for (int i = i0; i <= i1; i++) {
+            double wgt = Math.min(b, i + 1) - Math.max(a, i);
+            if (wgt <= 0) continue;
+            sum += s[base + i * step] * wgt;
+            wsum += wgt;
+        }
+        return wsum > 0 ? sum / wsum : s[base + Math.min(i0, n - 1) * step];
+    }
+
+    private static Bitmap decodeSmall(File f) {
+        BitmapFactory.Options o = new BitmapFactory.Options();
+        o.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(f.getPath(), o);
+        if (o.outWidth <= 0 || o.outHeight <= 0) return null;
+        int sample = 1;
+        while (Math.min(o.outWidth, o.outHeight) / (sample * 2) >= MIN_DECODE) sample *= 2;
+        o = new BitmapFactory.Options();
+        o.inSampleSize = sample;
+        o.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        return BitmapFactory.decodeFile(f.getPath(), o);
+    }
+}
@@ -0,0 +1,287 @@
+package com.verum.omnis.core;
+
+import android.content.Context;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * PhashIndex – per-case near-duplicate image index.
+ *
+ * <p>Multi-index hashing over 64-bit pHashes: the hash is split into four
+ * 16-bit substrings, each with its own bucket table, all chained through flat
+ * primitive arrays (no node objects).  Two hashes within Hamming distance r
+ * agree to within r/4 bits on at least one substring, so a query probes only
+ * the buckets in that small neighbourhood and verifies the candidates.  Each
+ * entry also carries the dHash, reported with every match as an independent
+ * second opinion.</p>
+ *
+ * <p>Persistence is an append-only log of length-prefixed, CRC32-checked
+ * records in {@code files/cases/<caseId>/phash.idx}.  Adding an image writes
+ * one record; opening replays the log and truncates a torn tail left by a
+ * crash, so the index grows incrementally and never needs a rewrite.</p>
+ */
+public final class PhashIndex {
+
+    private static final int M_QUERY = Metrics.stage("phash.query");
+    private static final int C_ENTRIES = Metrics.counter("phash_entries_added");
+
+    /** pHash Hamming radius treated as "same picture" (of 64 bits). */
+    public static final int DEFAULT_RADIUS = 10;
+    static final String FILE_NAME = "phash.idx";
+    private static final int MAX_RECORD = 64 * 1024;
+
+    /** Case indexes kept open; an evicted one is replayed from its log on next use. */
+    static final int MAX_CASES = 8;
+    private static final Map<String, PhashIndex> OPEN =
+            new LinkedHashMap<String, PhashIndex>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, PhashIndex> eldest) {
+                    return size() > MAX_CASES;
+                }
+            };
+
+    public static class Match {
+        public String id;        // evidence hash
+        public String label;     // file name at insertion time
+        public int pDistance;
+        public int dDistance;
+    }
+
+    private static final int CHUNKS = 4;
+    /** Per-substring probe radius above which a linear scan is cheaper. */
+    private static final int MAX_PROBE = 3;
+    /** XOR masks of 16 bits with popcount <= k, ordered by popcount. */
+    private static final int[] PROBES;
+    private static final int[] PROBES_UPTO = new int[MAX_PROBE + 2];
+    static {
+        int[] all = new int[1 << 16];
+        int n = 0;
+        for (int k = 0; k <= MAX_PROBE; k++) {
+            PROBES_UPTO[k] = n;
+            for (int m = 0; m < 1 << 16; m++) if (Integer.bitCount(m) == k) all[n++] = m;
+        }
+        PROBES_UPTO[MAX_PROBE + 1] = n;
+        PROBES = Arrays.copyOf(all, n);
+    }
+
+    private final File file;
+    private long[] pHash = new long[64];
+    private long[] dHash = new long[64];
+    private String[] ids = new String[64];
+    private String[] labels = new String[64];
+    private final int[][] head = new int[CHUNKS][1 << 16];
+    private int[][] next = new int[CHUNKS][64];
+    private int[] seen = new int[64];
+    private int stamp;
+    private int size;
+    private final Map<String, Integer> byId = new HashMap<>();
+
+    private PhashIndex(File file) {
+        this.file = file;
+        for (int[] h : head) Arrays.fill(h, -1);
+    }
+
+    /**
+     * {@code files/cases/<caseId>}, with the id reduced to a single safe path
+     * segment.  Ids that are empty or only dots ("." and ".." included) would
+     * name the cases directory or its parent, so they are refused.
+     */
+    static File caseDir(Context ctx, String caseId) {
+        String name = caseId.replaceAll("[^A-Za-z0-9._-]", "_");
+        if (name.replace(".", "").isEmpty()) throw new IllegalArgumentException("invalid case id: \"" + caseId + "\"");
+        return new File(new File(ctx.getFilesDir(), "cases"), name);
+    }
+
+    /** The shared index for a case, loaded from disk on first use. */
+    public static PhashIndex forCase(Context ctx, String caseId) throws IOException {
+        File f = new File(caseDir(ctx, caseId), FILE_NAME);
+        synchronized (OPEN) {
+            PhashIndex idx = OPEN.get(f.getPath());
+            if (idx == null) {
+                idx = open(f);
+                OPEN.put(f.getPath(), idx);
+            }
+            return idx;
+        }
+    }
+
+    /** Open (or create) an index backed by {@code f}. */
+    public static PhashIndex open(File f) throws IOException {
+        File dir = f.getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) throw new IOException("cannot create " + dir);
+        PhashIndex idx = new PhashIndex(f);
+        idx.load();
+        return idx;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /** Entries whose pHash is within {@code radius} of {@code p}, nearest first. */
+    public synchronized List<Match> query(long p, long d, int radius) {
+        long t0 = Metrics.begin();
+        List<Match> out = new ArrayList<>();
+        if (size == 0) {
+            Metrics.end(M_QUERY, t0);
+            return out;
+        }
+        int sub = radius / CHUNKS;
+        if (sub > MAX_PROBE) {
+            for (int n = 0; n < size; n++) collect(n, p, d, radius, out);
+        } else {
+            if (++stamp == 0) {
+                Arrays.fill(seen, 0);
+                stamp = 1;
+            }
+            int probes = PROBES_UPTO[sub + 1];
+            for (int c = 0; c < CHUNKS; c++) {
+                int key = (int) (p >>> (16 * c)) & 0xFFFF;
+                int[] h = head[c], nx = next[c];
+                for (int i = 0; i < probes; i++) {
+                    for (int n = h[key ^ PROBES[i]]; n >= 0; n = nx[n]) {
+                        if (seen[n] == stamp) continue;
+                        seen[n] = stamp;
+                        collect(n, p, d, radius, out);
+                    }
+                }
+            }
+        }
+        out.sort((a, b) -> a.pDistance != b.pDistance ? a.pDistance - b.pDistance : a.dDistance - b.dDistance);
+        Metrics.end(M_QUERY, t0);
+        return out;
+    }
+
+    private void collect(int n, long p, long d, int radius, List<Match> out) {
+        int dist = Long.bitCount(pHash[n] ^ p);
+        if (dist > radius) return;
+        Match m = new Match();
+        m.id = ids[n];
+        m.label = labels[n];
+        m.pDistance = dist;
+        m.dDistance = Long.bitCount(dHash[n] ^ d);
+        out.add(m);
+    }
+
+    /**
+     * Match {@code h} against the case, then add it.  The entry itself is not
+     * part of the result; re-adding an id already present only queries.
+     */
+    public synchronized List<Match> addAndQuery(String id, String label, PerceptualHash.Hashes h, int radius)
+            throws IOException {
+        List<Match> hits = query(h.pHash, h.dHash, radius);
+        hits.removeIf(m -> m.id.equals(id));
+        if (!byId.containsKey(id)) {
+            append(h.pHash, h.dHash, id, label == null ? "" : label);
+            insert(h.pHash, h.dHash, id, label == null ? "" : label);
+            Metrics.inc(C_ENTRIES);
+        }
+        return hits;
+    }
+
+    // ---------------------------------------------------------------- tables
+
+    private void insert(long p, long d, String id, String label) {
+        if (size == pHash.length) grow();
+        int n = size++;
+        pHash[n] = p;
+        dHash[n] = d;
+        ids[n] = id;
+        labels[n] = label;
+        for (int c = 0; c < CHUNKS; c++) {
+            int key = (int) (p >>> (16 * c)) & 0xFFFF;
+            next[c][n] = head[c][key];
+            head[c][key] = n;
+        }
+        byId.put(id, n);
+    }
+
+    private void grow() {
+        int cap = pHash.length * 2;
+        pHash = Arrays.copyOf(pHash, cap);
+        dHash = Arrays.copyOf(dHash, cap);
+        ids = Arrays.copyOf(ids, cap);
+        labels = Arrays.copyOf(labels, cap);
+        for (int c = 0; c < CHUNKS; c++) next[c] = Arrays.copyOf(next[c], cap);
+        seen = Arrays.copyOf(seen, cap);
+    }
+
+    // ---------------------------------------------------------------- log
+    // record: int len | long pHash | long dHash | short idLen | id | short labelLen | label | int crc32
+
+    private void append(long p, long d, String id, String label) throws IOException {
+        byte[] idb = id.getBytes(StandardCharsets.UTF_8);
+        byte[] lb = label.getBytes(StandardCharsets.UTF_8);
+        if (lb.length > 1024) lb = Arrays.copyOf(lb, 1024);
+        int len = 8 + 8 + 2 + idb.length + 2 + lb.length;
+        ByteBuffer b = ByteBuffer.allocate(4 + len + 4);
+        b.putInt(len).putLong(p).putLong(d)
+                .putShort((short) idb.length).put(idb)
+                .putShort((short) lb.length).put(lb);
+        CRC32 crc = new CRC32();
+        crc.update(b.array(), 4, len);
+        b.putInt((int) crc.getValue());
+        b.flip();
+        synchronized (OPEN) {   // a reload must not see, and truncate, a half-written record
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+                 FileChannel ch = raf.getChannel()) {
+                ch.position(ch.size());
+                while (b.hasRemaining()) ch.write(b);
+                ch.force(false);
+            }
+        }
+    }
+
+    private void load() throws IOException {
+        synchronized (OPEN) {
+            replay();
+        }
+    }
+
+    private void replay() throws IOException {
+        if (!file.exists()) return;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+             FileChannel ch = raf.getChannel()) {
+            long total = ch.size();
+            ByteBuffer all = ByteBuffer.allocate((int) Math.min(total, Integer.MAX_VALUE - 8));
+            while (all.hasRemaining() && ch.read(all) >= 0) { /* fill */ }
+            all.flip();
+            CRC32 crc = new CRC32();
+            long good = 0;
+            while (all.remaining() >= 4) {
+                int start = all.position();
+                int len = all.getInt();
+                if (len < 20 || len > MAX_RECORD || all.remaining() < len + 4) break;
+                crc.reset();
+                crc.update(all.array(), start + 4, len);
+                long p = all.getLong(), d = all.getLong();
+                int il = all.getShort() & 0xFFFF;
+                if (il > len - 20) break;
+                String id = new String(all.array(), all.position(), il, StandardCharsets.UTF_8);
+                all.position(all.position() + il);
+                int ll = all.getShort() & 0xFFFF;
+                if (ll != len - 20 - il) break;
+                String label = new String(all.array(), all.position(), ll, StandardCharsets.UTF_8);
+                all.position(all.position() + ll);
+                if (all.getInt() != (int) crc.getValue()) break;
+                if (!byId.containsKey(id)) insert(p, d, id, label);
+                good = all.position();
+            }
+            if (good < total) ch.truncate(good);   // torn or corrupt tail
+        }
+    }
+}
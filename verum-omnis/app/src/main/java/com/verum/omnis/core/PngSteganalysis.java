@@ -0,0 +1,526 @@
+package com.verum.omnis.core;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * PngSteganalysis – LSB-embedding screen for PNG ({@code steganography_hint}).
+ *
+ * <p>IDAT data is inflated a row at a time with {@link Inflater} and
+ * unfiltered between two reusable row buffers.  Finished rows are copied into
+ * fixed-size strips that are scored on the pool while inflation continues;
+ * strip buffers are allocated as rows arrive and recycled through a bounded
+ * queue, so memory stays at a handful of strips no matter how large the image
+ * is.  Headers declaring more than {@value #MAX_IMAGE_BYTES} bytes of samples
+ * are refused before anything is allocated: IDAT deflates at up to ~1000:1,
+ * so a few kilobytes of file can claim gigabytes of pixels.</p>
+ *
+ * <p>Two classic statistics are computed per colour channel:</p>
+ * <ul>
+ *   <li>Westfeld–Pfitzmann chi-square on the pairs of values (2k, 2k+1):
+ *       LSB replacement equalizes each pair, pushing the p-value towards 1.
+ *       Noise alone can equalize pairs too, so a strip only counts as
+ *       embedded when its own RS estimate agrees; the run of such strips from
+ *       the top shows where sequential embedding ends.</li>
+ *   <li>Fridrich RS analysis: regular/singular group counts under the
+ *       LSB-flip masks on the image and its LSB-inverted copy give an estimate
+ *       of the embedded message length as a fraction of the capacity.</li>
+ * </ul>
+ * Palette and interlaced images are reported but not scored.
+ */
+public final class PngSteganalysis {
+
+    private static final int M_STEGO = Metrics.stage("png.steganalysis");
+    private static final int C_ROWS = Metrics.counter("png_rows_inflated");
+
+    public static final double DEFAULT_SCORE_MIN = 0.15;
+    /** Chi-square p-value above which a strip counts as embedded. */
+    public static final double CHI_P_EMBEDDED = 0.95;
+    /** ... and the strip's RS rate needed to corroborate it. */
+    static final double STRIP_RS_EMBEDDED = 0.5;
+    static final int STRIP_ROWS = 64;
+    /** Decoded sample budget (width x height x bytes per pixel): 8K x 8K RGBA at 8 bits. */
+    static final long MAX_IMAGE_BYTES = 1L << 28;
+    private static final int IO_BUF = 64 * 1024;
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A};
+
+    public static class Result {
+        public int width, height, bitDepth, colorType, channels;
+        public boolean analyzed;
+        public int strips;
+        public double chiSquareP;        // whole image, max over channels
+        public float[] stripChiP;        // per strip, max over channels
+        public float[] stripRs;          // per strip, mean RS rate over channels
+        public int leadingEmbeddedRows;  // rows from the top whose strips look embedded
+        public double[] rsRate;          // per channel estimated embedding rate
+        public double rsEstimate;        // mean over channels
+        public double score;
+        public boolean flagged;
+        public long rowsDecoded;
+        public long bytesRead;
+        public String note;
+    }
+
+    private PngSteganalysis() {}
+
+    public static Result analyze(File f) throws IOException {
+        return analyze(f, DEFAULT_SCORE_MIN, ForkJoinPool.commonPool());
+    }
+
+    public static Result analyze(File f, double scoreMin, ForkJoinPool pool) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(f, "r");
+             FileChannel ch = raf.getChannel()) {
+            return analyze(ch, scoreMin, pool);
+        }
+    }
+
+    /** Analyze from the start of an already open channel; the channel position is moved. */
+    public static Result analyze(FileChannel ch, double scoreMin, ForkJoinPool pool) throws IOException {
+        long t0 = Metrics.begin();
+        Result r = new Result();
+        try {
+            ch.position(0);
+            new Scanner(ch, pool, r).run();
+        } catch (EOFException e) {
+            if (r.note == null) r.note = "truncated PNG";
+        } catch (DataFormatException | IllegalStateException e) {
+            r.note = "corrupt image data: " + e.getMessage();
+        } finally {
+            Metrics.end(M_STEGO, t0);
+        }
+        if (r.analyzed) {
+            double chiPart = r.strips > 0 ? (double) r.leadingEmbeddedRows / r.height : 0;
+            if (r.chiSquareP > CHI_P_EMBEDDED) chiPart = Math.max(chiPart, 1);
+            r.score = Math.max(r.rsEstimate, chiPart);
+            r.flagged = r.score >= scoreMin;
+        }
+        return r;
+    }
+
+    // ------------------------------------------------------------ streaming
+
+    private static final class Scanner {
+        final FileChannel ch;
+        final ForkJoinPool pool;
+        final Result r;
+        final ByteBuffer io = ByteBuffer.allocate(IO_BUF);
+        long pos;
+
+        int stride, bpp, sampleBytes, stripRows;
+        int[] chanOffset;                 // byte offset of each colour channel's LSB byte in a pixel
+        ArrayBlockingQueue<byte[]> free;
+        int inFlight, allocated;
+        final List<ForkJoinTask<Stats>> pending = new ArrayList<>();
+
+        Scanner(FileChannel ch, ForkJoinPool pool, Result r) {
+            this.ch = ch;
+            this.pool = pool;
+            this.r = r;
+            io.limit(0);
+        }
+
+        void run() throws IOException, DataFormatException {
+            byte[] sig = new byte[8];
+            readFully(sig, 0, 8);
+            for (int i = 0; i < 8; i++) {
+                if (sig[i] != SIGNATURE[i]) {
+                    r.note = "not a PNG";
+                    return;
+                }
+            }
+            byte[] hdr = new byte[8];
+            Inflater inf = null;
+            byte[] cur = null, prev = null, strip = null, chunk = new byte[IO_BUF];
+            int rowFill = 0, y = 0, stripRow = 0, stripIndex = 0;
+            try {
+                while (true) {
+                    readFully(hdr, 0, 8);
+                    long len = ((hdr[0] & 0xFFL) << 24) | ((hdr[1] & 0xFF) << 16) | ((hdr[2] & 0xFF) << 8) | (hdr[3] & 0xFF);
+                    String type = new String(hdr, 4, 4, StandardCharsets.ISO_8859_1);
+                    if ("IHDR".equals(type)) {
+                        byte[] d = new byte[13];
+                        readFully(d, 0, 13);
+                        skip(len - 13 + 4);
+                        if (!header(d)) return;
+                        inf = new Inflater();
+                        cur = new byte[stride + 1];
+                        prev = new byte[stride + 1];
+                        inFlight = Math.max(2, pool.getParallelism() * 2);
+                        free = new ArrayBlockingQueue<>(inFlight);
+                        continue;
+                    }
+                    if ("IDAT".equals(type) && inf != null) {
+                        long left = len;
+                        while (left > 0) {
+                            int n = (int) Math.min(left, chunk.length);
+                            readFully(chunk, 0, n);
+                            left -= n;
+                            inf.setInput(chunk, 0, n);
+                            while (y < r.height) {
+                                int got = inf.inflate(cur, rowFill, cur.length - rowFill);
+                                if (got == 0) break;
+                                rowFill += got;
+                                if (rowFill < cur.length) continue;
+                                unfilter(cur, prev, bpp);
+                                if (strip == null) strip = takeStrip();
+                                System.arraycopy(cur, 1, strip, stripRow * stride, stride);
+                                byte[] t = prev; prev = cur; cur = t;
+                                rowFill = 0;
+                                y++;
+                                if (++stripRow == stripRows || y == r.height) {
+                                    submit(strip, stripRow, stripIndex++);
+                                    strip = null;
+                                    stripRow = 0;
+                                }
+                            }
+                        }
+                        skip(4);
+                        if (y == r.height) break;   // trailing chunks carry no pixels
+                        continue;
+                    }
+                    skip(len + 4);
+                    if ("IEND".equals(type)) break;
+                }
+            } catch (EOFException e) {
+                if (stripRow > 0 && strip != null) submit(strip, stripRow, stripIndex++);
+                finish(y, stripIndex);
+                throw e;
+            } finally {
+                if (inf != null) inf.end();
+            }
+            if (stripRow > 0 && strip != null) submit(strip, stripRow, stripIndex++);
+            finish(y, stripIndex);
+        }
+
+        private boolean header(byte[] d) {
+            r.width = ByteBuffer.wrap(d, 0, 4).getInt();
+            r.height = ByteBuffer.wrap(d, 4, 4).getInt();
+            r.bitDepth = d[8] & 0xFF;
+            r.colorType = d[9] & 0xFF;
+            int interlace = d[12] & 0xFF;
+            int colour, total;
+            switch (r.colorType) {
+                case 0: colour = 1; total = 1; break;
+                case 2: colour = 3; total = 3; break;
+                case 4: colour = 1; total = 2; break;
+                case 6: colour = 3; total = 4; break;
+                case 3: r.note = "palette image: LSB statistics not applicable"; return false;
+                default: r.note = "unknown colour type " + r.colorType; return false;
+            }
+            if (r.bitDepth != 8 && r.bitDepth != 16) {
+                r.note = "bit depth " + r.bitDepth + " not analysed";
+                return false;
+            }
+            if (interlace != 0) {
+                r.note = "interlaced PNG not analysed";
+                return false;
+            }
+            if (r.width <= 0 || r.height <= 0) {
+                r.note = "implausible dimensions";
+                return false;
+            }
+            if ((long) r.width * r.height * total * (r.bitDepth / 8) > MAX_IMAGE_BYTES) {
+                r.note = "image exceeds " + (MAX_IMAGE_BYTES >> 20) + " MB of samples; not analysed";
+                return false;
+            }
+            sampleBytes = r.bitDepth / 8;
+            bpp = total * sampleBytes;
+            stride = r.width * bpp;
+            stripRows = Math.min(STRIP_ROWS, r.height);
+            r.channels = colour;
+            chanOffset = new int[colour];
+            for (int c = 0; c < colour; c++) chanOffset[c] = c * sampleBytes + sampleBytes - 1;
+            return true;
+        }
+
+        /** A free strip buffer; a new one only while fewer than {@code inFlight} exist. */
+        private byte[] takeStrip() throws IOException {
+            byte[] b = free.poll();
+            if (b != null) return b;
+            if (allocated < inFlight) {
+                allocated++;
+                return new byte[stripRows * stride];
+            }
+            try {
+                return free.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted");
+            }
+        }
+
+        private void submit(byte[] strip, int rows, int index) {
+            final int w = r.width, n = chanOffset.length;
+            final int[] off = chanOffset;
+            final int px = bpp, st = stride;
+            pending.add(pool.submit(() -> {
+                try {
+                    return Stats.of(strip, rows, st, w, px, off, n, index);
+                } finally {
+                    free.offer(strip);
+                }
+            }));
+        }
+
+        private void finish(int rows, int strips) {
+            r.rowsDecoded = rows;
+            r.bytesRead = pos;
+            Metrics.add(C_ROWS, rows);
+            if (pending.isEmpty()) {
+                if (r.note == null) r.note = "no image data";
+                return;
+            }
+            int n = r.channels;
+            long[][] hist = new long[n][256];
+            long[][] rs = new long[n][Stats.RS_COUNTS];
+            r.stripChiP = new float[strips];
+            r.stripRs = new float[strips];
+            for (ForkJoinTask<Stats> t : pending) {
+                Stats s;
+                try {
+                    s = t.join();
+                } catch (RuntimeException e) {   // join() rethrows whatever the strip task threw
+                    for (ForkJoinTask<Stats> p : pending) p.cancel(false);
+                    r.note = "strip analysis failed: " + e;
+                    return;
+                }
+                float worst = 0, rate = 0;
+                for (int c = 0; c < n; c++) {
+                    for (int v = 0; v < 256; v++) hist[c][v] += s.hist[c][v];
+                    for (int k = 0; k < Stats.RS_COUNTS; k++) rs[c][k] += s.rs[c][k];
+                    worst = Math.max(worst, (float) chiSquareP(s.hist[c]));
+                    rate += rsEstimate(s.rs[c]);
+                }
+                r.stripChiP[s.index] = worst;
+                r.stripRs[s.index] = rate / n;
+            }
+            r.strips = strips;
+            int lead = 0;
+            while (lead < strips && r.stripChiP[lead] > CHI_P_EMBEDDED && r.stripRs[lead] > STRIP_RS_EMBEDDED) lead++;
+            r.leadingEmbeddedRows = Math.min(rows, lead * stripRows);
+            r.rsRate = new double[n];
+            double sum = 0;
+            for (int c = 0; c < n; c++) {
+                r.chiSquareP = Math.max(r.chiSquareP, chiSquareP(hist[c]));
+                r.rsRate[c] = rsEstimate(rs[c]);
+                sum += r.rsRate[c];
+            }
+            r.rsEstimate = sum / n;
+            r.analyzed = rows > 0;
+            if (rows < r.height && r.note == null) r.note = "image data ends after " + rows + " of " + r.height + " rows";
+        }
+
+        private void readFully(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (!io.hasRemaining()) fill();
+                int n = Math.min(len, io.remaining());
+                io.get(b, off, n);
+                off += n;
+                len -= n;
+                pos += n;
+            }
+        }
+
+        private void skip(long n) throws IOException {
+            while (n > 0) {
+                if (!io.hasRemaining()) {
+                    // large skips go straight to the channel
+                    if (n > IO_BUF) {
+                        long p = ch.position();
+                        if (p + n > ch.size()) throw new EOFException();
+                        ch.position(p + n);
+                        pos += n;
+                        return;
+                    }
+                    fill();
+                }
+                int k = (int) Math.min(n, io.remaining());
+                io.position(io.position() + k);
+                n -= k;
+                pos += k;
+            }
+        }
+
+        private void fill() throws IOException {
+            io.clear();
+            int n;
+            do {
+                n = ch.read(io);
+            } while (n == 0);
+            io.flip();
+            if (n < 0) throw new EOFException();
+        }
+    }
+
+    /** Reverse the PNG row filter of {@code row[1..]} in place, given the previous unfiltered row. */
+    static void unfilter(byte[] row, byte[] prev, int bpp) {
+        int n = row.length;
+        switch (row[0]) {
+            case 0:
+                break;
+            case 1:
+                for (int i = 1 + bpp; i < n; i++) row[i] += row[i - bpp];
+                break;
+            case 2:
+                for (int i = 1; i < n; i++) row[i] += prev[i];
+                break;
+            case 3:
+                for (int i = 1; i < n; i++) {
+                    int left = i > bpp ? row[i - bpp] & 0xFF : 0;
+                    row[i] += (byte) ((left + (prev[i] & 0xFF)) >>> 1);
+                }
+                break;
+            case 4:
+                for (int i = 1; i < n; i++) {
+                    int a = i > bpp ? row[i - bpp] & 0xFF : 0;
+                    int b = prev[i] & 0xFF;
+                    int c = i > bpp ? prev[i - bpp] & 0xFF : 0;
+                    int p = a + b - c;
+                    int pa = Math.abs(p - a), pb = Math.abs(p - b), pc = Math.abs(p - c);
+                    row[i] += (byte) (pa <= pb && pa <= pc ? a : pb <= pc ? b : c);
+                }
+                break;
+            default:
+                throw new IllegalStateException("bad filter type " + row[0]);
+        }
+    }
+
+    // ------------------------------------------------------------ statistics
+
+    /** Mergeable per-strip counts. */
+    static final class Stats {
+        static final int RS_COUNTS = 8;   // R+, S+, R-, S- on the image, then on its LSB-inverted copy
+        int index;
+        long[][] hist;
+        long[][] rs;
+
+        static Stats of(byte[] strip, int rows, int stride, int width, int bpp, int[] off, int n, int index) {
+            Stats s = new Stats();
+            s.index = index;
+            s.hist = new long[n][256];
+            s.rs = new long[n][RS_COUNTS];
+            int[] g = new int[4];
+            for (int c = 0; c < n; c++) {
+                long[] h = s.hist[c], rs = s.rs[c];
+                for (int y = 0; y < rows; y++) {
+                    int base = y * stride + off[c];
+                    for (int x = 0; x < width; x++) h[strip[base + x * bpp] & 0xFF]++;
+                    for (int x = 0; x + 4 <= width; x += 4) {
+                        for (int k = 0; k < 4; k++) g[k] = strip[base + (x + k) * bpp] & 0xFF;
+                        classify(g, 0, rs);
+                        for (int k = 0; k < 4; k++) g[k] ^= 1;
+                        classify(g, 4, rs);
+                    }
+                }
+            }
+            return s;
+        }
+
+        /** Mask M = [0 1 1 0]: count regular/singular groups under F1 and F-1. */
+        private static void classify(int[] g, int at, long[] rs) {
+            int f0 = smooth(g[0], g[1], g[2], g[3]);
+            int fp = smooth(g[0], g[1] ^ 1, g[2] ^ 1, g[3]);
+            int fm = smooth(g[0], ((g[1] + 1) ^ 1) - 1, ((g[2] + 1) ^ 1) - 1, g[3]);
+            if (fp > f0) rs[at]++; else if (fp < f0) rs[at + 1]++;
+            if (fm > f0) rs[at + 2]++; else if (fm < f0) rs[at + 3]++;
+        }
+
+        private static int smooth(int a, int b, int c, int d) {
+            return Math.abs(b - a) + Math.abs(c - b) + Math.abs(d - c);
+        }
+    }
+
+    /**
+     * RS message-length estimate (Fridrich, Goljan &amp; Du 2001) from the
+     * eight group counts; 0 = clean, 1 = every LSB carries payload.
+     */
+    static double rsEstimate(long[] k) {
+        double d0 = k[0] - k[1], dm0 = k[2] - k[3];
+        double d1 = k[4] - k[5], dm1 = k[6] - k[7];
+        // fully randomized LSBs: R_M meets S_M while R_-M stays apart, and
+        // the quadratic below degenerates
+        if (dm0 > 0 && Math.abs(d0) < 0.05 * dm0) return 1;
+        double a = 2 * (d1 + d0), b = dm0 - dm1 - d1 - 3 * d0, c = d0 - dm0;
+        double x;
+        if (Math.abs(a) < 1e-9) {
+            if (Math.abs(b) < 1e-9) return 0;
+            x = -c / b;
+        } else {
+            double disc = b * b - 4 * a * c;
+            if (disc < 0) return 0;
+            double s = Math.sqrt(disc);
+            double x1 = (-b + s) / (2 * a), x2 = (-b - s) / (2 * a);
+            x = Math.abs(x1) < Math.abs(x2) ? x1 : x2;
+        }
+        double p = x / (x - 0.5);
+        if (Double.isNaN(p)) return 0;
+        return Math.max(0, Math.min(1, p));
+    }
+
+    /** p-value that the (2k, 2k+1) pairs of {@code h} are equalized, as LSB replacement leaves them. */
+    static double chiSquareP(long[] h) {
+        double chi = 0;
+        int pairs = 0;
+        for (int k = 0; k < 128; k++) {
+            long n = h[2 * k] + h[2 * k + 1];
+            if (n < 10) continue;
+            double e = n / 2.0, d = h[2 * k] - e;
+            chi += d * d / e;
+            pairs++;
+        }
+        if (pairs < 2) return 0;
+        return upperGammaQ((pairs - 1) / 2.0, chi / 2);
+    }
+
+    /** Regularized upper incomplete gamma Q(a, x). */
+    static double upperGammaQ(double a, double x) {
+        if (x <= 0) return 1;
+        double lg = a * Math.log(x) - x - logGamma(a);
+        if (x < a + 1) {
+            double sum = 1 / a, term = sum;
+            for (int n = 1; n < 500; n++) {
+                term *= x / (a + n);
+                sum += term;
+                if (Math.abs(term) < Math.abs(sum) * 1e-14) break;
+            }
+            return Math.max(0, 1 - sum * Math.exp(lg));
+        }
+        // Lentz continued fraction
+        double b = x + 1 - a, c = 1 / 1e-300, d = 1 / b, hh = d;
+        for (int i = 1; i < 500; i++) {
+            double an = -i * (i - a);
+            b += 2;
+            d = an * d + b;
+            if (Math.abs(d) < 1e-300) d = 1e-300;
+            c = b + an / c;
+            if (Math.abs(c) < 1e-300) c = 1e-300;
+            d = 1 / d;
+            double del = d * c;
+            hh *= del;
+            if (Math.abs(del - 1) < 1e-14) break;
+        }
+        return Math.exp(lg) * hh;
+    }
+
+    private static double logGamma(double x) {
+        double[] g = {76.18009172947146, -86.50532032941677, 24.01409824083091,
+                -1.231739572450155, 0.1208650973866179e-2, -0.5395239384953e-5};
+        double y = x, tmp = x + 5.5;
+        tmp -= (x + 0.5) * Math.log(tmp);
+        double ser = 1.000000000190015;
+        for (double c : g) ser += c / ++y;
+        return -tmp + Math.log(2.5066282746310005 * ser / x);
+    }
+}
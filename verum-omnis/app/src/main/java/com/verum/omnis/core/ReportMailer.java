@@ -9,7 +9,6 @@ import javax.mail.internet.*;
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.security.MessageDigest;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Locale;
@@ -46,9 +45,8 @@ public class ReportMailer {
             packet.put("timestampUtc", isoNow());
             packet.put("feedback", feedback);
 
-            // Sign packet
-            String body = packet.toString();
-            String hash = sha512(body.getBytes("UTF-8"));
+            // Sign packet (canonical form, so the hash survives re-serialization)
+            String hash = CanonicalJson.sha512(packet, null);
             packet.put("sha512", hash);
 
             // Mail server props
@@ -80,7 +78,7 @@ public class ReportMailer {
             textPart.setText("See attached analysis report.");
 
             MimeBodyPart attachPart = new MimeBodyPart();
-            InputStream jsonStream = new ByteArrayInputStream(packet.toString(2).getBytes("UTF-8"));
+            InputStream jsonStream = new ByteArrayInputStream(CanonicalJson.encode(packet));
             attachPart.setDataHandler(new javax.activation.DataHandler(
                     new javax.activation.DataSource() {
                         @Override
@@ -120,15 +118,6 @@ public class ReportMailer {
     }
 
     // === Helpers ===
-    private static String sha512(byte[] b) throws Exception {
-        MessageDigest md = MessageDigest.getInstance("SHA-512");
-        md.update(b);
-        byte[] d = md.digest();
-        StringBuilder sb = new StringBuilder();
-        for (byte x : d) sb.append(String.format("%02x", x));
-        return sb.toString();
-    }
-
     private static String isoNow() {
         SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.US);
         sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
@@ -2,26 +2,16 @@ package com.verum.omnis.core;
 
 import android.content.Context;
 
-import java.io.ByteArrayOutputStream;
-import java.io.InputStream;
+import com.verum.omnis.security.AssetRegistry;
 
 public final class RulesProvider {
     private RulesProvider() {}
 
+    /** Verified text from the shared {@link AssetRegistry}; throws if the asset is missing or tampered. */
     private static String readAsset(Context ctx, String path) throws Exception {
-        try (InputStream is = ctx.getAssets().open(path)) {
-            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-            byte[] data = new byte[8192];
-            int nRead;
-            while ((nRead = is.read(data, 0, data.length)) != -1) {
-                buffer.write(data, 0, nRead);
-            }
-            buffer.flush();
-            return buffer.toString("UTF-8");
-        }
+        return AssetRegistry.get(ctx).text(path);
     }
 
-
     public static String getConstitution(Context ctx) throws Exception {
         return readAsset(ctx, "verum_constitution/constitution.json");
     }
@@ -0,0 +1,742 @@
+package com.verum.omnis.core;
+
+import android.content.Context;
+import android.util.Log;
+
+import org.json.JSONObject;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.zip.CRC32;
+
+/**
+ * TimelineEngine – case-wide timeline and geo-consistency checks (timeline_geo rules).
+ *
+ * <p>Events are stored column-wise in primitive arrays, so a case can hold
+ * millions of them without per-event objects.  A permutation of event
+ * indices is kept in time order; events added since the last sweep are
+ * sorted on their own and merged in linearly, so new evidence costs
+ * O(k log k + n) rather than a full re-sort.</p>
+ *
+ * <p>Each sweep is a single pass over the time order:</p>
+ * <ul>
+ *   <li>impossible travel – consecutive geotagged events of one device
+ *       implying a speed above {@code geo_speed_max_kmh};</li>
+ *   <li>clock skew – device time against an independent clock (GPS UTC,
+ *       server time) off by more than {@code clock_skew_max_minutes};
+ *       zone-less device times are compared modulo the 15-minute time-zone
+ *       grid;</li>
+ *   <li>received before sent – the same message (correlation key) received
+ *       earlier than it was sent, beyond the allowed skew.  Mail supplies both
+ *       sides through {@link Messages}: the Date header is the send time, the
+ *       topmost Received header the delivery, and the Message-ID links copies
+ *       of one message across mailboxes;</li>
+ *   <li>why-now latency – evidence surfaced more than
+ *       {@code why_now_latency_days_warn} after its last content event and
+ *       after the case was opened (its first surfaced event), so evidence
+ *       that predates the case and arrives with it is not late.</li>
+ * </ul>
+ * Range and radius queries binary-search the same time order.
+ *
+ * <p>{@link #forCase} keeps the {@value #MAX_CASES} most recently used case
+ * timelines in memory.  Each is backed by an append-only log of
+ * length-prefixed, CRC32-checked event records in
+ * {@code files/cases/<caseId>/timeline.log}, written after every
+ * {@link #addMetadata}; a case that was evicted, or opened before a restart,
+ * is replayed with its events, surfaced sources and opening time intact.</p>
+ */
+public final class TimelineEngine {
+
+    private static final String TAG = "TimelineEngine";
+
+    private static final int M_SORT = Metrics.stage("timeline.sort");
+    private static final int M_SWEEP = Metrics.stage("timeline.sweep");
+    private static final int C_EVENTS = Metrics.counter("timeline_events");
+
+    public enum Kind { OCCURRED, MODIFIED, SENT, RECEIVED, SURFACED }
+
+    public enum FindingType { IMPOSSIBLE_TRAVEL, CLOCK_SKEW, RECEIVED_BEFORE_SENT, WHY_NOW_LATENCY }
+
+    /** Sentinel for "no independent reference time". */
+    public static final long NO_TIME = Long.MIN_VALUE;
+    /** Position slack subtracted from every jump, so fix jitter at short intervals is not travel. */
+    static final double GPS_SLACK_KM = 1.0;
+    static final int MAX_FINDINGS_PER_TYPE = 1000;
+    private static final long ZONE_GRID_MS = 15 * 60_000L;
+    private static final byte FLAG_ZONELESS = 1;
+    private static final Kind[] KINDS = Kind.values();
+
+    public static class Thresholds {
+        public double clockSkewMaxMinutes = 2;
+        public double geoSpeedMaxKmh = 900;
+        public double whyNowLatencyDaysWarn = 7;
+
+        public static Thresholds from(JSONObject rules) {
+            Thresholds t = new Thresholds();
+            JSONObject tg = rules == null ? null : rules.optJSONObject("timeline_geo");
+            if (tg != null) {
+                t.clockSkewMaxMinutes = tg.optDouble("clock_skew_max_minutes", t.clockSkewMaxMinutes);
+                t.geoSpeedMaxKmh = tg.optDouble("geo_speed_max_kmh", t.geoSpeedMaxKmh);
+                t.whyNowLatencyDaysWarn = tg.optDouble("why_now_latency_days_warn", t.whyNowLatencyDaysWarn);
+            }
+            return t;
+        }
+    }
+
+    public static class Finding {
+        public FindingType type;
+        public String source, otherSource, device;
+        public long timeMs;
+        public double value;            // km/h, skew minutes, or latency days
+        public String detail;
+    }
+
+    public static class Sweep {
+        public int impossibleTravel, clockSkew, receivedBeforeSent, whyNow;
+        public int events;
+        public List<Finding> findings = new ArrayList<>();   // capped per type
+
+        public int total() {
+            return impossibleTravel + clockSkew + receivedBeforeSent + whyNow;
+        }
+    }
+
+    static final String LOG_NAME = "timeline.log";
+    // record: int len | byte kind | byte flags | long time | long refTime | long corr
+    //         | float lat | float lon | short srcLen | src | short devLen | dev | int crc32
+    private static final int FIXED_RECORD = 1 + 1 + 8 + 8 + 8 + 4 + 4 + 2 + 2;
+    private static final int MAX_NAME_BYTES = 1024;
+
+    static final int MAX_CASES = 8;
+    private static final Map<String, TimelineEngine> CASES =
+            new LinkedHashMap<String, TimelineEngine>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, TimelineEngine> eldest) {
+                    return size() > MAX_CASES;
+                }
+            };
+
+    private long[] time = new long[1024];
+    private long[] refTime = new long[1024];
+    private long[] corr = new long[1024];
+    private float[] lat = new float[1024];
+    private float[] lon = new float[1024];
+    private int[] device = new int[1024];
+    private int[] source = new int[1024];
+    private byte[] kind = new byte[1024];
+    private byte[] flags = new byte[1024];
+    private int size;
+
+    private int[] order = new int[0];   // time order of the first order.length events
+    private final Map<String, Integer> deviceIds = new HashMap<>(), sourceIds = new HashMap<>();
+    private final List<String> devices = new ArrayList<>(), sources = new ArrayList<>();
+    private final BitSet surfaced = new BitSet();   // sources that already have a SURFACED event
+    private long openedMs = NO_TIME;                 // earliest SURFACED event: when the case opened
+    private File log;                                // null: in memory only
+    private int persisted;                           // events [0, persisted) are in the log
+
+    /** The shared timeline for a case, replayed from its log on first use. */
+    public static TimelineEngine forCase(Context ctx, String caseId) throws IOException {
+        return forLog(new File(PhashIndex.caseDir(ctx, caseId), LOG_NAME));
+    }
+
+    static TimelineEngine forLog(File f) throws IOException {
+        synchronized (CASES) {
+            TimelineEngine t = CASES.get(f.getPath());
+            if (t == null) {
+                t = open(f);
+                CASES.put(f.getPath(), t);
+            }
+            return t;
+        }
+    }
+
+    /** Open (or create) a timeline backed by the log {@code f}. */
+    public static TimelineEngine open(File f) throws IOException {
+        File dir = f.getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) throw new IOException("cannot create " + dir);
+        TimelineEngine t = new TimelineEngine();
+        t.log = f;
+        synchronized (CASES) {   // an evicted instance may still be appending
+            t.replay();
+        }
+        return t;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Add one event.  {@code lat}/{@code lon} may be NaN; {@code refTimeMs} is the same
+     * instant on an independent clock, or {@link #NO_TIME}; {@code correlation} links the
+     * sent/received copies of one message (0 = none).  The event reaches the case log
+     * with the next {@link #addMetadata}.
+     */
+    public synchronized int add(String src, String dev, Kind k, long timeMs, double lat, double lon,
+                                long refTimeMs, long correlation, boolean zoneless) {
+        if (size == time.length) grow();
+        int i = size++;
+        time[i] = timeMs;
+        refTime[i] = refTimeMs;
+        corr[i] = correlation;
+        this.lat[i] = (float) lat;
+        this.lon[i] = (float) lon;
+        device[i] = intern(dev == null ? "" : dev, deviceIds, devices);
+        source[i] = intern(src == null ? "" : src, sourceIds, sources);
+        kind[i] = (byte) k.ordinal();
+        flags[i] = zoneless ? FLAG_ZONELESS : 0;
+        if (k == Kind.SURFACED) {
+            surfaced.set(source[i]);
+            if (openedMs == NO_TIME || timeMs < openedMs) openedMs = timeMs;
+        }
+        Metrics.inc(C_EVENTS);
+        return i;
+    }
+
+    public int add(String src, String dev, Kind k, long timeMs) {
+        return add(src, dev, k, timeMs, Double.NaN, Double.NaN, NO_TIME, 0, false);
+    }
+
+    /**
+     * Events from {@link MediaForensics#inspectFile} keys: capture time (with GPS fix and
+     * GPS clock when present), modification time, and {@code ingestedMs} as the moment the
+     * evidence surfaced in the case (skipped when &lt;= 0).  A source that already surfaced
+     * is in the timeline and is not added again, so re-analysing a file neither duplicates
+     * its events nor moves its surfaced time.  Returns the number of events added.
+     */
+    public synchronized int addMetadata(String src, Map<String, String> m, long ingestedMs) {
+        return addMetadata(src, m, null, ingestedMs);
+    }
+
+    /**
+     * As {@link #addMetadata(String, Map, long)}, plus the send and delivery times of the
+     * messages in {@code msgs} (may be null) as SENT and RECEIVED events.
+     */
+    public synchronized int addMetadata(String src, Map<String, String> m, Messages msgs, long ingestedMs) {
+        Integer known = sourceIds.get(src == null ? "" : src);
+        if (known != null && surfaced.get(known)) return 0;
+        String dev = join(m.get("CameraMake"), m.get("CameraModel"), m.get("BodySerialNumber"));
+        int added = 0;
+        String offset = m.get("OffsetTimeOriginal");
+        long captured = exifTime(m.get("DateTimeOriginal"), offset);
+        boolean zoneless = offset == null;
+        if (captured == NO_TIME) {
+            captured = isoTime(m.get("CreationTime"));
+            zoneless = false;
+        }
+        if (captured == NO_TIME) {
+            captured = exifTime(m.get("DateTime"), m.get("OffsetTime"));
+            zoneless = m.get("OffsetTime") == null;
+        }
+        if (captured != NO_TIME) {
+            double la = num(m.get("GPSLatitude")), lo = num(m.get("GPSLongitude"));
+            long gps = gpsTime(m.get("GPSDateStamp"), m.get("GPSTimeStamp"));
+            add(src, dev, Kind.OCCURRED, captured, la, lo, gps, 0, zoneless);
+            added++;
+        }
+        long modified = isoTime(m.get("ModificationTime"));
+        if (modified == NO_TIME && m.containsKey("DateTimeOriginal")) modified = exifTime(m.get("DateTime"), m.get("OffsetTime"));
+        if (modified == NO_TIME) modified = pdfTime(m.get("PdfModDate"));
+        if (modified != NO_TIME && modified != captured) {
+            add(src, dev, Kind.MODIFIED, modified);
+            added++;
+        }
+        if (msgs != null) added += msgs.addTo(this, src);
+        if (ingestedMs > 0 && added > 0) {
+            add(src, "", Kind.SURFACED, ingestedMs);
+            added++;
+        }
+        persist();
+        return added;
+    }
+
+    /**
+     * Message times collected during a {@link MessageStream} pass, to be added to a
+     * timeline once the file is read.  Every dated message is a SENT event on its
+     * sender's clock; mail with a Received header adds the RECEIVED event, and both
+     * carry a key from the Message-ID (or, without one, from the message's position),
+     * so the two sides of a message are compared wherever they come from.
+     */
+    public static final class Messages implements MessageStream.Sink {
+        /** Messages kept per file; a chat export beyond this adds no further events. */
+        static final int MAX_MESSAGES = 100_000;
+
+        private long[] sent = new long[64], received = new long[64], key = new long[64];
+        private String[] sender = new String[64];
+        private int n;
+
+        @Override
+        public void accept(MessageStream.Message m) {
+            if (m.timeMs == NO_TIME && m.receivedMs == NO_TIME) return;
+            if (n == MAX_MESSAGES) return;
+            if (n == sent.length) {
+                int cap = n * 2;
+                sent = Arrays.copyOf(sent, cap);
+                received = Arrays.copyOf(received, cap);
+                key = Arrays.copyOf(key, cap);
+                sender = Arrays.copyOf(sender, cap);
+            }
+            sent[n] = m.timeMs;
+            received[n] = m.receivedMs;
+            key[n] = m.messageId != null && !m.messageId.isEmpty() ? hash64(m.messageId)
+                    : m.receivedMs != NO_TIME ? hash64(m.channel + '#' + m.offset) : 0;
+            sender[n] = m.sender == null ? "" : m.sender;
+            n++;
+        }
+
+        public int size() {
+            return n;
+        }
+
+        int addTo(TimelineEngine t, String src) {
+            int added = 0;
+            for (int i = 0; i < n; i++) {
+                if (sent[i] != NO_TIME) {
+                    t.add(src, sender[i], Kind.SENT, sent[i], Double.NaN, Double.NaN, NO_TIME, key[i], false);
+                    added++;
+                }
+                if (received[i] != NO_TIME) {
+                    t.add(src, "", Kind.RECEIVED, received[i], Double.NaN, Double.NaN, NO_TIME, key[i], false);
+                    added++;
+                }
+            }
+            return added;
+        }
+
+        /** FNV-1a over the UTF-16 units; never 0, which means "uncorrelated". */
+        static long hash64(String s) {
+            long h = 0xcbf29ce484222325L;
+            for (int i = 0; i < s.length(); i++) {
+                h ^= s.charAt(i);
+                h *= 0x100000001b3L;
+            }
+            return h == 0 ? 1 : h;
+        }
+    }
+
+    // ------------------------------------------------------------ log
+
+    /**
+     * Append the events added since the last write.  A failed write leaves them in memory
+     * and is retried with the next batch; a torn record is dropped on the next replay.
+     */
+    private void persist() {
+        if (log == null || persisted == size) return;
+        try {
+            ByteBuffer b = ByteBuffer.allocate(64 * 1024);
+            CRC32 crc = new CRC32();
+            synchronized (CASES) {
+                try (RandomAccessFile raf = new RandomAccessFile(log, "rw");
+                     FileChannel ch = raf.getChannel()) {
+                    ch.position(ch.size());
+                    for (int i = persisted; i < size; i++) {
+                        byte[] s = name(sources.get(source[i])), d = name(devices.get(device[i]));
+                        int len = FIXED_RECORD + s.length + d.length;
+                        if (b.remaining() < 4 + len + 4) {
+                            b.flip();
+                            while (b.hasRemaining()) ch.write(b);
+                            b.clear();
+                        }
+                        int start = b.position();
+                        b.putInt(len).put(kind[i]).put(flags[i]).putLong(time[i]).putLong(refTime[i]).putLong(corr[i])
+                                .putFloat(lat[i]).putFloat(lon[i])
+                                .putShort((short) s.length).put(s).putShort((short) d.length).put(d);
+                        crc.reset();
+                        crc.update(b.array(), start + 4, len);
+                        b.putInt((int) crc.getValue());
+                    }
+                    b.flip();
+                    while (b.hasRemaining()) ch.write(b);
+                    ch.force(false);
+                }
+            }
+            persisted = size;
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to write " + log + ": " + e.getMessage());
+        }
+    }
+
+    private static byte[] name(String s) {
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        return b.length > MAX_NAME_BYTES ? Arrays.copyOf(b, MAX_NAME_BYTES) : b;
+    }
+
+    /** Re-add every intact record, then truncate a torn or corrupt tail left by a crash. */
+    private void replay() throws IOException {
+        if (!log.exists()) return;
+        long good = 0;
+        byte[] rec = new byte[FIXED_RECORD + 2 * MAX_NAME_BYTES];
+        CRC32 crc = new CRC32();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(log)))) {
+            while (true) {
+                int len = in.readInt();
+                if (len < FIXED_RECORD || len > rec.length) break;
+                in.readFully(rec, 0, len);
+                int sum = in.readInt();
+                crc.reset();
+                crc.update(rec, 0, len);
+                if (sum != (int) crc.getValue()) break;
+                ByteBuffer r = ByteBuffer.wrap(rec, 0, len);
+                int k = r.get(), fl = r.get();
+                long tm = r.getLong(), ref = r.getLong(), co = r.getLong();
+                float la = r.getFloat(), lo = r.getFloat();
+                int sl = r.getShort() & 0xFFFF;
+                if (k < 0 || k >= KINDS.length || sl > len - FIXED_RECORD) break;
+                String src = new String(rec, r.position(), sl, StandardCharsets.UTF_8);
+                r.position(r.position() + sl);
+                int dl = r.getShort() & 0xFFFF;
+                if (dl != len - FIXED_RECORD - sl) break;
+                String dev = new String(rec, r.position(), dl, StandardCharsets.UTF_8);
+                add(src, dev, KINDS[k], tm, la, lo, ref, co, (fl & FLAG_ZONELESS) != 0);
+                good += 4 + len + 4;
+            }
+        } catch (EOFException torn) {
+            // a partial record at the end: dropped below
+        }
+        persisted = size;
+        if (good < log.length()) {
+            try (RandomAccessFile raf = new RandomAccessFile(log, "rw")) {
+                raf.setLength(good);
+            }
+        }
+    }
+
+    // ------------------------------------------------------------ queries
+
+    /** Event indices with {@code from <= time < to}, in time order. */
+    public synchronized int[] range(long fromMs, long toMs) {
+        ensureSorted();
+        int a = lowerBound(fromMs), b = lowerBound(toMs);
+        return Arrays.copyOfRange(order, a, Math.max(a, b));
+    }
+
+    /** Geotagged events within {@code radiusKm} of a point during [from, to), in time order. */
+    public synchronized int[] near(double la, double lo, double radiusKm, long fromMs, long toMs) {
+        ensureSorted();
+        int a = lowerBound(fromMs), b = lowerBound(toMs);
+        int[] out = new int[Math.max(0, b - a)];
+        int n = 0;
+        for (int k = a; k < b; k++) {
+            int i = order[k];
+            if (!Float.isNaN(lat[i]) && haversineKm(la, lo, lat[i], lon[i]) <= radiusKm) out[n++] = i;
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    public synchronized long time(int i) { return time[i]; }
+    public synchronized String source(int i) { return sources.get(source[i]); }
+    public synchronized String device(int i) { return devices.get(device[i]); }
+    public synchronized Kind kind(int i) { return KINDS[kind[i]]; }
+
+    // ------------------------------------------------------------ sweep
+
+    public synchronized Sweep sweep(Thresholds t) {
+        ensureSorted();
+        long t0 = Metrics.begin();
+        Sweep s = new Sweep();
+        s.events = size;
+        long skewMs = (long) (t.clockSkewMaxMinutes * 60_000);
+        long whyNowMs = (long) (t.whyNowLatencyDaysWarn * 86_400_000L);
+
+        int[] lastGeo = new int[devices.size()];
+        Arrays.fill(lastGeo, -1);
+        long[] lastContent = new long[sources.size()];
+        Arrays.fill(lastContent, NO_TIME);
+        int[] skewCount = new int[devices.size()], refCount = new int[devices.size()];
+        long[] skewMax = new long[devices.size()];
+        int[] skewAt = new int[devices.size()];
+        int correlated = 0;
+
+        for (int k = 0; k < size; k++) {
+            int i = order[k];
+            int d = device[i];
+            if (corr[i] != 0) correlated++;
+
+            if (!Float.isNaN(lat[i]) && !Float.isNaN(lon[i]) && !devices.get(d).isEmpty()) {
+                int p = lastGeo[d];
+                if (p >= 0) {
+                    double km = haversineKm(lat[p], lon[p], lat[i], lon[i]);
+                    double hours = (time[i] - time[p]) / 3_600_000.0;
+                    double kmh = hours > 0 ? km / hours : Double.POSITIVE_INFINITY;
+                    if (km > GPS_SLACK_KM && (hours <= 0 || (km - GPS_SLACK_KM) / hours > t.geoSpeedMaxKmh)) {
+                        s.impossibleTravel++;
+                        if (s.impossibleTravel <= MAX_FINDINGS_PER_TYPE) {
+                            Finding f = finding(FindingType.IMPOSSIBLE_TRAVEL, i, Double.isInfinite(kmh) ? -1 : kmh);
+                            f.otherSource = sources.get(source[p]);
+                            f.detail = String.format(Locale.US, "%.1f km in %.1f min (%s)", km, hours * 60,
+                                    Double.isInfinite(kmh) ? "no elapsed time" : String.format(Locale.US, "%.0f km/h", kmh));
+                            s.findings.add(f);
+                        }
+                    }
+                }
+                lastGeo[d] = i;
+            }
+
+            if (refTime[i] != NO_TIME) {
+                long off = time[i] - refTime[i];
+                if ((flags[i] & FLAG_ZONELESS) != 0) off = Math.floorMod(off + ZONE_GRID_MS / 2, ZONE_GRID_MS) - ZONE_GRID_MS / 2;
+                refCount[d]++;
+                if (Math.abs(off) > skewMs) {
+                    skewCount[d]++;
+                    if (Math.abs(off) > Math.abs(skewMax[d])) {
+                        skewMax[d] = off;
+                        skewAt[d] = i;
+                    }
+                }
+            }
+
+            Kind kd = KINDS[kind[i]];
+            int sr = source[i];
+            if (kd == Kind.SURFACED) {
+                // latency counts from the later of the content and the case opening
+                long since = Math.max(lastContent[sr], openedMs);
+                if (lastContent[sr] != NO_TIME && time[i] - since > whyNowMs) {
+                    s.whyNow++;
+                    if (s.whyNow <= MAX_FINDINGS_PER_TYPE) {
+                        double days = (time[i] - since) / 86_400_000.0;
+                        Finding f = finding(FindingType.WHY_NOW_LATENCY, i, days);
+                        f.detail = String.format(Locale.US, "surfaced %.1f days into the case, %.1f days after its last content event",
+                                days, (time[i] - lastContent[sr]) / 86_400_000.0);
+                        s.findings.add(f);
+                    }
+                }
+            } else {
+                lastContent[sr] = time[i];
+            }
+        }
+
+        for (int d = 0; d < devices.size(); d++) {
+            if (skewCount[d] == 0) continue;
+            s.clockSkew++;
+            if (s.clockSkew > MAX_FINDINGS_PER_TYPE) continue;
+            Finding f = finding(FindingType.CLOCK_SKEW, skewAt[d], skewMax[d] / 60_000.0);
+            f.detail = String.format(Locale.US, "%d of %d events off the reference clock, worst %+.1f min",
+                    skewCount[d], refCount[d], f.value);
+            s.findings.add(f);
+        }
+
+        if (correlated > 0) receivedBeforeSent(s, correlated, skewMs);
+        Metrics.end(M_SWEEP, t0);
+        return s;
+    }
+
+    /** Group correlated events by key (one sort of just those events), then compare send and receive times. */
+    private void receivedBeforeSent(Sweep s, int correlated, long skewMs) {
+        int[] idx = new int[correlated];
+        int n = 0;
+        for (int k = 0; k < size; k++) {
+            int i = order[k];
+            if (corr[i] != 0) idx[n++] = i;
+        }
+        sortBy(idx, 0, n, corr);   // stable: time order survives inside each key
+        for (int a = 0; a < n; ) {
+            int b = a;
+            long sent = NO_TIME;
+            int sentAt = -1;
+            while (b < n && corr[idx[b]] == corr[idx[a]]) {
+                int i = idx[b++];
+                if (kind[i] == Kind.SENT.ordinal() && sent == NO_TIME) {
+                    sent = time[i];
+                    sentAt = i;
+                }
+            }
+            if (sent != NO_TIME) {
+                for (int k = a; k < b; k++) {
+                    int i = idx[k];
+                    if (kind[i] != Kind.RECEIVED.ordinal() || time[i] >= sent - skewMs) continue;
+                    s.receivedBeforeSent++;
+                    if (s.receivedBeforeSent > MAX_FINDINGS_PER_TYPE) continue;
+                    double min = (sent - time[i]) / 60_000.0;
+                    Finding f = finding(FindingType.RECEIVED_BEFORE_SENT, i, min);
+                    f.otherSource = sources.get(source[sentAt]);
+                    f.detail = String.format(Locale.US, "received %.1f min before it was sent on %s", min,
+                            devices.get(device[sentAt]));
+                    s.findings.add(f);
+                }
+            }
+            a = b;
+        }
+    }
+
+    private Finding finding(FindingType type, int i, double value) {
+        Finding f = new Finding();
+        f.type = type;
+        f.source = sources.get(source[i]);
+        f.device = devices.get(device[i]);
+        f.timeMs = time[i];
+        f.value = value;
+        return f;
+    }
+
+    // ------------------------------------------------------------ ordering
+
+    /** Sort the events added since the last call and merge them into the time order. */
+    private void ensureSorted() {
+        int old = order.length;
+        if (old == size) return;
+        long t0 = Metrics.begin();
+        int[] fresh = new int[size - old];
+        for (int i = 0; i < fresh.length; i++) fresh[i] = old + i;
+        sortBy(fresh, 0, fresh.length, time);
+        int[] merged = new int[size];
+        int a = 0, b = 0, k = 0;
+        while (a < old && b < fresh.length) {
+            merged[k++] = time[fresh[b]] < time[order[a]] ? fresh[b++] : order[a++];
+        }
+        while (a < old) merged[k++] = order[a++];
+        while (b < fresh.length) merged[k++] = fresh[b++];
+        order = merged;
+        Metrics.end(M_SORT, t0);
+    }
+
+    private int lowerBound(long t) {
+        int lo = 0, hi = order.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (time[order[mid]] < t) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /** Stable bottom-up merge sort of {@code idx[from, to)} by {@code key[idx]}. */
+    static void sortBy(int[] idx, int from, int to, long[] key) {
+        int n = to - from;
+        if (n < 2) return;
+        int[] src = Arrays.copyOfRange(idx, from, to), dst = new int[n];
+        for (int w = 1; w < n; w <<= 1) {
+            for (int lo = 0; lo < n; lo += 2 * w) {
+                int mid = Math.min(lo + w, n), hi = Math.min(lo + 2 * w, n);
+                int a = lo, b = mid, k = lo;
+                while (a < mid && b < hi) dst[k++] = key[src[b]] < key[src[a]] ? src[b++] : src[a++];
+                while (a < mid) dst[k++] = src[a++];
+                while (b < hi) dst[k++] = src[b++];
+            }
+            int[] t = src; src = dst; dst = t;
+        }
+        System.arraycopy(src, 0, idx, from, n);
+    }
+
+    private void grow() {
+        int cap = time.length * 2;
+        time = Arrays.copyOf(time, cap);
+        refTime = Arrays.copyOf(refTime, cap);
+        corr = Arrays.copyOf(corr, cap);
+        lat = Arrays.copyOf(lat, cap);
+        lon = Arrays.copyOf(lon, cap);
+        device = Arrays.copyOf(device, cap);
+        source = Arrays.copyOf(source, cap);
+        kind = Arrays.copyOf(kind, cap);
+        flags = Arrays.copyOf(flags, cap);
+    }
+
+    private static int intern(String s, Map<String, Integer> ids, List<String> names) {
+        Integer id = ids.get(s);
+        if (id == null) {
+            id = names.size();
+            ids.put(s, id);
+            names.add(s);
+        }
+        return id;
+    }
+
+    // ------------------------------------------------------------ helpers
+
+    public static double haversineKm(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1), dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * 6371.0088 * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    /** EXIF "yyyy:MM:dd HH:mm:ss", with an optional "+hh:mm" offset (UTC otherwise). */
+    static long exifTime(String v, String offset) {
+        if (v == null || v.length() < 19 || v.startsWith("0000")) return NO_TIME;
+        String zone = offset != null && offset.matches("[+-]\\d\\d:\\d\\d") ? "GMT" + offset : "UTC";
+        return parse("yyyy:MM:dd HH:mm:ss", v.substring(0, 19), zone);
+    }
+
+    static long isoTime(String v) {
+        if (v == null || v.isEmpty()) return NO_TIME;
+        return parse("yyyy-MM-dd'T'HH:mm:ss", v.endsWith("Z") ? v.substring(0, v.length() - 1) : v, "UTC");
+    }
+
+    /** PDF "D:YYYYMMDDHHmmSS[+-Z]HH'mm'", seconds-resolution, offset honoured. */
+    static long pdfTime(String v) {
+        if (v == null) return NO_TIME;
+        String s = v.startsWith("D:") ? v.substring(2) : v;
+        if (s.length() < 14) return NO_TIME;
+        String zone = "UTC";
+        if (s.length() >= 17 && (s.charAt(14) == '+' || s.charAt(14) == '-')) {
+            zone = "GMT" + s.charAt(14) + s.substring(15, 17) + ":" + (s.length() >= 20 ? s.substring(18, 20) : "00");
+        }
+        return parse("yyyyMMddHHmmss", s.substring(0, 14), zone);
+    }
+
+    /** GPSDateStamp "yyyy:MM:dd" + GPSTimeStamp "h m s" (UTC). */
+    static long gpsTime(String date, String hms) {
+        if (date == null || hms == null) return NO_TIME;
+        long day = parse("yyyy:MM:dd", date.trim(), "UTC");
+        if (day == NO_TIME) return NO_TIME;
+        String[] p = hms.trim().split("\\s+");
+        if (p.length < 3) return NO_TIME;
+        try {
+            double sec = Double.parseDouble(p[0]) * 3600 + Double.parseDouble(p[1]) * 60 + Double.parseDouble(p[2]);
+            return day + Math.round(sec * 1000);
+        } catch (NumberFormatException e) {
+            return NO_TIME;
+        }
+    }
+
+    private static long parse(String pattern, String v, String zone) {
+        SimpleDateFormat f = new SimpleDateFormat(pattern, Locale.US);
+        f.setTimeZone(TimeZone.getTimeZone(zone));
+        f.setLenient(false);
+        try {
+            return f.parse(v).getTime();
+        } catch (ParseException | RuntimeException e) {
+            return NO_TIME;
+        }
+    }
+
+    private static double num(String s) {
+        if (s == null) return Double.NaN;
+        try {
+            return Double.parseDouble(s);
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    private static String join(String... parts) {
+        StringBuilder sb = new StringBuilder();
+        for (String p : parts) {
+            if (p == null || p.trim().isEmpty()) continue;
+            if (sb.length() > 0) sb.append(' ');
+            sb.append(p.trim());
+        }
+        return sb.toString();
+    }
+}
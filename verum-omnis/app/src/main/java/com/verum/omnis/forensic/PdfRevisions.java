@@ -0,0 +1,1023 @@
+package com.verum.omnis.forensic;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * PDF revision forensics (no Android dependencies)
+ * - Maps the file and follows startxref → /Prev back through every incremental-update
+ *   section (classic xref tables, xref streams and hybrid files)
+ * - Per revision: Info dictionary, XMP packet, document ID and the objects it rewrote
+ * - Signature fields are resolved through the AcroForm; a /ByteRange that ends before
+ *   the end of the file means the document was updated after it was signed
+ * - Only the header, trailers, xref sections and the few small dictionaries they point at
+ *   are touched; page content streams are never read
+ */
+public class PdfRevisions {
+
+    private static final int TAIL_SCAN = 2048;
+    private static final int OBJ_WINDOW = 4096;
+    private static final int OBJ_WINDOW_MAX = 64 * 1024;
+    private static final int MAX_SECTIONS = 512;
+    private static final int MAX_FIELDS = 1000;
+    private static final int MAX_INFLATE = 8 * 1024 * 1024;
+    private static final int MAX_RESOLVE_DEPTH = 32;
+    private static final int MAX_NESTING = 256;
+
+    /** One incremental-update section; index 0 is the original document. */
+    public static class Revision {
+        public int index;
+        public long xrefOffset;
+        public long endOffset;              // just past this revision's %%EOF
+        public boolean xrefStream;
+        public int objects;                 // entries defined in this section
+        public String id0 = "";
+        public final Map<String, String> info = new LinkedHashMap<>();
+        public final Map<String, String> xmp = new LinkedHashMap<>();
+    }
+
+    public static class Signature {
+        public String field = "";
+        public String subFilter = "";
+        public String signingTime = "";
+        public long[] byteRange;
+        public long signedLength;           // end of the signed byte range
+        public int revision = -1;           // revision whose %%EOF the range ends at
+        public boolean coversWholeFile;
+    }
+
+    public static class Result {
+        public String version = "";
+        public long length;
+        public boolean linearized;
+        public boolean encrypted;
+        public final List<Revision> revisions = new ArrayList<>();
+        public final List<Signature> signatures = new ArrayList<>();
+        public final List<String> indicators = new ArrayList<>();
+        public boolean editedAfterSigning;
+        public long bytesRead;
+        public String note = "";
+
+        /** Incremental updates after the original (a linearized file's first-page section is part of it). */
+        public int incrementalUpdates() {
+            return Math.max(0, revisions.size() - 1);
+        }
+    }
+
+    public static Result inspect(File pdf) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(pdf, "r");
+             FileChannel ch = raf.getChannel()) {
+            return inspect(ch);
+        }
+    }
+
+    /** Inspect an already open channel; the caller keeps ownership of it. */
+    public static Result inspect(FileChannel ch) throws IOException {
+        Result r = new Result();
+        r.length = ch.size();
+        if (r.length > Integer.MAX_VALUE) {
+            r.note = "file too large to map";
+            return r;
+        }
+        MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, 0, r.length);
+        Inspector in = new Inspector(map, r);
+        try {
+            in.run();
+        } catch (RuntimeException e) {
+            r.note = "malformed structure: " + e;
+        }
+        r.bytesRead = in.touched;
+        return r;
+    }
+
+    // === Object model ===
+
+    static final class Ref {
+        final int num, gen;
+
+        Ref(int num, int gen) {
+            this.num = num;
+            this.gen = gen;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Ref && ((Ref) o).num == num && ((Ref) o).gen == gen;
+        }
+
+        @Override
+        public int hashCode() {
+            return num * 31 + gen;
+        }
+
+        @Override
+        public String toString() {
+            return num + " " + gen + " R";
+        }
+    }
+
+    /** Name objects keep their slash so they cannot be confused with strings. */
+    static final class Name {
+        final String value;
+
+        Name(String value) {
+            this.value = value;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Name && ((Name) o).value.equals(value);
+        }
+
+        @Override
+        public int hashCode() {
+            return value.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return "/" + value;
+        }
+    }
+
+    /** A parsed indirect object: its value plus the stream payload position, if any. */
+    static final class Obj {
+        Object value;
+        int streamStart = -1;
+    }
+
+    /** One xref section: object number → {type, field2, field3} (type 1: offset/gen, 2: objstm/index). */
+    static final class Section {
+        long offset;
+        boolean stream;
+        Map<String, Object> trailer;
+        final HashMap<Integer, long[]> entries = new HashMap<>();
+    }
+
+    // === Inspector ===
+
+    static final class Inspector {
+        private final MappedByteBuffer buf;
+        private final Result r;
+        private final int len;
+        long touched;
+        private final List<Section> sections = new ArrayList<>(); // newest first while reading
+        private final HashMap<Integer, byte[]> objStmCache = new HashMap<>();
+        private final HashSet<Integer> openObjStms = new HashSet<>();  // guards objstm → objstm cycles
+        private int resolveDepth;
+
+        Inspector(MappedByteBuffer buf, Result r) {
+            this.buf = buf;
+            this.r = r;
+            this.len = buf.limit();
+        }
+
+        void run() {
+            byte[] head = bytes(0, Math.min(len, 1024));
+            String h = new String(head, StandardCharsets.ISO_8859_1);
+            int v = h.indexOf("%PDF-");
+            if (v < 0) {
+                r.note = "no %PDF header";
+                return;
+            }
+            r.version = h.substring(v + 5, Math.min(h.length(), v + 8)).trim();
+            r.linearized = h.contains("/Linearized");
+
+            long start = findStartXref();
+            if (start < 0) {
+                r.note = "startxref not found";
+                return;
+            }
+            readSections(start);
+            if (sections.isEmpty()) return;
+
+            // Oldest first from here on.  Updates are appended, so file order is revision order;
+            // a linearized file's first-page section sits near the start but belongs to the original
+            Collections.reverse(sections);
+            if (r.linearized) mergeFirstPageSection();
+            Collections.sort(sections, (a, b) -> Long.compare(a.offset, b.offset));
+            for (int i = 0; i < sections.size(); i++) {
+                Section s = sections.get(i);
+                Revision rev = new Revision();
+                rev.index = i;
+                rev.xrefOffset = s.offset;
+                rev.xrefStream = s.stream;
+                rev.objects = s.entries.size();
+                rev.endOffset = eofAfter(s.offset);
+                Object id = s.trailer.get("ID");
+                if (id instanceof List && !((List<?>) id).isEmpty()) rev.id0 = hex(((List<?>) id).get(0));
+                if (s.trailer.containsKey("Encrypt")) r.encrypted = true;
+                readInfo(i, s.trailer.get("Info"), rev);
+                readXmp(i, s.trailer.get("Root"), rev);
+                r.revisions.add(rev);
+            }
+            readSignatures();
+            indicators();
+        }
+
+        // --- xref chain ---
+
+        private long findStartXref() {
+            int from = Math.max(0, len - TAIL_SCAN);
+            String tail = new String(bytes(from, len - from), StandardCharsets.ISO_8859_1);
+            int i = tail.lastIndexOf("startxref");
+            if (i < 0) return -1;
+            Lexer lx = new Lexer(from + i + 9);
+            Object o = lx.next();
+            return o instanceof Long ? (Long) o : -1;
+        }
+
+        private void readSections(long start) {
+            HashSet<Long> seen = new HashSet<>();
+            long off = start;
+            while (off >= 0 && off < len && seen.add(off) && sections.size() < MAX_SECTIONS) {
+                Section s = readSection(off);
+                if (s == null) {
+                    r.indicators.add("broken_xref_at:" + off);
+                    break;
+                }
+                sections.add(s);
+                Object prev = s.trailer.get("Prev");
+                off = prev instanceof Long ? (Long) prev : -1;
+            }
+        }
+
+        private Section readSection(long off) {
+            Lexer lx = new Lexer((int) off);
+            lx.skipWs();
+            if (lx.startsWith("xref")) {
+                lx.pos += 4;
+                Section s = new Section();
+                s.offset = off;
+                while (true) {
+                    lx.skipWs();
+                    if (lx.startsWith("trailer")) {
+                        lx.pos += 7;
+                        Object t = lx.next();
+                        if (!(t instanceof Map)) return null;
+                        s.trailer = asDict(t);
+                        break;
+                    }
+                    Object a = lx.next(), b = lx.next();
+                    if (!(a instanceof Long) || !(b instanceof Long)) return null;
+                    long first = (Long) a, count = (Long) b;
+                    for (long k = 0; k < count; k++) {
+                        Object o1 = lx.next(), o2 = lx.next(), kind = lx.keyword();
+                        if (!(o1 instanceof Long) || !(o2 instanceof Long)) return null;
+                        if ("n".equals(kind)) {
+                            s.entries.put((int) (first + k), new long[]{1, (Long) o1, (Long) o2});
+                        } else {
+                            s.entries.put((int) (first + k), new long[]{0, 0, 0});
+                        }
+                    }
+                }
+                // Hybrid file: objects in object streams are listed in the XRefStm
+                Object stm = s.trailer.get("XRefStm");
+                if (stm instanceof Long) {
+                    Section x = readStreamSection((Long) stm);
+                    if (x != null) {
+                        for (Map.Entry<Integer, long[]> e : x.entries.entrySet()) {
+                            s.entries.putIfAbsent(e.getKey(), e.getValue());
+                        }
+                    }
+                }
+                return s;
+            }
+            return readStreamSection(off);
+        }
+
+        private Section readStreamSection(long off) {
+            Obj o = readObjectAt((int) off);
+            if (o == null || !(o.value instanceof Map)) return null;
+            Map<String, Object> d = asDict(o.value);
+            if (!new Name("XRef").equals(d.get("Type"))) return null;
+            byte[] data = streamData(d, o.streamStart);
+            if (data == null) return null;
+            Object w = d.get("W");
+            if (!(w instanceof List) || ((List<?>) w).size() < 3) return null;
+            int[] widths = new int[3];
+            for (int i = 0; i < 3; i++) widths[i] = (int) num(((List<?>) w).get(i));
+            int row = widths[0] + widths[1] + widths[2];
+            if (row <= 0) return null;
+            List<?> index = d.get("Index") instanceof List ? (List<?>) d.get("Index")
+                    : Arrays.asList(0L, num(d.get("Size")));
+            Section s = new Section();
+            s.offset = off;
+            s.stream = true;
+            s.trailer = d;
+            int p = 0;
+            for (int i = 0; i + 1 < index.size(); i += 2) {
+                long first = num(index.get(i)), count = num(index.get(i + 1));
+                for (long k = 0; k < count && p + row <= data.length; k++, p += row) {
+                    long type = widths[0] == 0 ? 1 : field(data, p, widths[0]);
+                    long f2 = field(data, p + widths[0], widths[1]);
+                    long f3 = field(data, p + widths[0] + widths[1], widths[2]);
+                    s.entries.put((int) (first + k), new long[]{type, f2, f3});
+                }
+            }
+            return s;
+        }
+
+        /**
+         * Fold the linearization first-page section (the lowest xref in the file, whose /Prev
+         * points forward to the main xref) into the main section, so the two count as one
+         * revision that ends at the main section's %%EOF.
+         */
+        private void mergeFirstPageSection() {
+            Section first = null;
+            for (Section s : sections) if (first == null || s.offset < first.offset) first = s;
+            Object prev = first.trailer.get("Prev");
+            if (!(prev instanceof Long) || (Long) prev <= first.offset) return;
+            Section main = null;
+            for (Section s : sections) if (s.offset == (Long) prev) main = s;
+            if (main == null) return;
+            for (Map.Entry<Integer, long[]> e : main.entries.entrySet()) first.entries.putIfAbsent(e.getKey(), e.getValue());
+            Map<String, Object> trailer = new LinkedHashMap<>(main.trailer);
+            trailer.putAll(first.trailer);   // Root, Info and ID live in the first-page trailer
+            trailer.remove("Prev");
+            main.trailer = trailer;
+            main.entries.clear();
+            main.entries.putAll(first.entries);
+            sections.remove(first);
+        }
+
+        private long eofAfter(long xrefOffset) {
+            int from = (int) xrefOffset;
+            // trailers are small, but xref tables can be long: search in growing windows,
+            // each one only past the previous (less a marker's length, in case it straddles)
+            int start = from;
+            for (long win = 4096; ; win *= 4) {
+                int to = (int) Math.min(len, from + win);
+                int i = indexOf(start, to, "%%EOF");
+                if (i >= 0) {
+                    int end = i + 5;
+                    while (end < len && (buf.get(end) == '\r' || buf.get(end) == '\n')) end++;
+                    touched += end - from;
+                    return end;
+                }
+                if (to >= len) return len;
+                start = to - 4;
+            }
+        }
+
+        // --- object resolution ---
+
+        /** Object {@code num} as it stood in revision {@code rev} (oldest = 0). */
+        private Obj resolve(int num, int rev) {
+            if (resolveDepth >= MAX_RESOLVE_DEPTH) return null;
+            resolveDepth++;
+            try {
+                for (int s = rev; s >= 0; s--) {
+                    long[] e = sections.get(s).entries.get(num);
+                    if (e == null) continue;
+                    if (e[0] == 1) return readObjectAt((int) e[1]);
+                    if (e[0] == 2) return readFromObjStm((int) e[1], (int) e[2], num, rev);
+                    return null; // free
+                }
+                return null;
+            } finally {
+                resolveDepth--;
+            }
+        }
+
+        private Object deref(Object o, int rev) {
+            if (o instanceof Ref) {
+                Obj ob = resolve(((Ref) o).num, rev);
+                return ob == null ? null : ob.value;
+            }
+            return o;
+        }
+
+        private Obj readObjectAt(int off) {
+            if (off < 0 || off >= len) return null;
+            for (int win = OBJ_WINDOW; win <= OBJ_WINDOW_MAX; win *= 4) {
+                Lexer lx = new Lexer(off, (int) Math.min(len, (long) off + win));
+                try {
+                    Object n = lx.next(), g = lx.next(), kw = lx.keyword();
+                    if (!(n instanceof Long) || !(g instanceof Long) || !"obj".equals(kw)) return null;
+                    Obj o = new Obj();
+                    o.value = lx.next();
+                    lx.skipWs();
+                    if (lx.startsWith("stream")) {
+                        int p = lx.pos + 6;
+                        if (p < len && buf.get(p) == '\r') p++;
+                        if (p < len && buf.get(p) == '\n') p++;
+                        o.streamStart = p;
+                    }
+                    touched += lx.pos - off;
+                    return o;
+                } catch (IndexOutOfBoundsException grow) {
+                    // dictionary runs past the window; retry with a larger one
+                }
+            }
+            return null;
+        }
+
+        private Obj readFromObjStm(int stmNum, int index, int num, int rev) {
+            // an object stream stored in itself (or in a cycle of object streams) has no value
+            if (!openObjStms.add(stmNum)) return null;
+            try {
+                return readFromOpenObjStm(stmNum, index, num, rev);
+            } finally {
+                openObjStms.remove(stmNum);
+            }
+        }
+
+        private Obj readFromOpenObjStm(int stmNum, int index, int num, int rev) {
+            byte[] data = objStmCache.get(stmNum);
+            Obj stm = resolve(stmNum, rev);
+            if (stm == null || !(stm.value instanceof Map)) return null;
+            Map<String, Object> d = asDict(stm.value);
+            if (data == null) {
+                data = streamData(d, stm.streamStart);
+                if (data == null) return null;
+                objStmCache.put(stmNum, data);
+            }
+            int n = (int) num(d.get("N")), first = (int) num(d.get("First"));
+            ArrayLexer hl = new ArrayLexer(data, 0, Math.min(data.length, first));
+            for (int i = 0; i < n; i++) {
+                Object on = hl.next(), oo = hl.next();
+                if (!(on instanceof Long) || !(oo instanceof Long)) return null;
+                if (((Long) on).intValue() == num || i == index) {
+                    ArrayLexer vl = new ArrayLexer(data, first + ((Long) oo).intValue(), data.length);
+                    Obj o = new Obj();
+                    o.value = vl.next();
+                    return o;
+                }
+            }
+            return null;
+        }
+
+        private byte[] streamData(Map<String, Object> d, int start) {
+            if (start < 0) return null;
+            long length = num(d.get("Length"));
+            if (d.get("Length") instanceof Ref) {
+                Obj lo = resolve(((Ref) d.get("Length")).num, sections.size() - 1);
+                length = lo == null ? -1 : num(lo.value);
+            }
+            if (length < 0 || start + length > len) {
+                int e = indexOf(start, len, "endstream");
+                if (e < 0) return null;
+                length = e - start;
+            }
+            byte[] raw = bytes(start, (int) Math.min(length, MAX_INFLATE));
+            Object filter = d.get("Filter");
+            if (filter instanceof List && ((List<?>) filter).size() == 1) filter = ((List<?>) filter).get(0);
+            if (filter == null) return raw;
+            if (!new Name("FlateDecode").equals(filter)) return null;
+            byte[] out = inflate(raw);
+            if (out == null) return null;
+            Object parms = d.get("DecodeParms");
+            if (parms instanceof List && !((List<?>) parms).isEmpty()) parms = ((List<?>) parms).get(0);
+            if (parms instanceof Map) {
+                Map<String, Object> p = asDict(parms);
+                long pred = num(p.get("Predictor"));
+                if (pred >= 10) {
+                    long cols = p.containsKey("Columns") ? num(p.get("Columns")) : 1;
+                    out = unpredictPng(out, (int) cols);
+                }
+            }
+            return out;
+        }
+
+        // --- Info / XMP ---
+
+        private void readInfo(int rev, Object infoRef, Revision out) {
+            Object info = deref(infoRef, rev);
+            if (!(info instanceof Map)) return;
+            for (String k : new String[]{"Title", "Author", "Creator", "Producer", "CreationDate", "ModDate"}) {
+                Object v = asDict(info).get(k);
+                if (v instanceof String) out.info.put(k, (String) v);
+                else if (v instanceof HexString) out.info.put(k, decodeText(((HexString) v).bytes));
+            }
+        }
+
+        private void readXmp(int rev, Object rootRef, Revision out) {
+            Object root = deref(rootRef, rev);
+            if (!(root instanceof Map)) return;
+            Object mref = asDict(root).get("Metadata");
+            if (!(mref instanceof Ref)) return;
+            Obj m = resolve(((Ref) mref).num, rev);
+            if (m == null || !(m.value instanceof Map)) return;
+            byte[] data = streamData(asDict(m.value), m.streamStart);
+            if (data == null) return;
+            String x = new String(data, StandardCharsets.UTF_8);
+            xmp(x, "xmp:CreateDate", out);
+            xmp(x, "xmp:ModifyDate", out);
+            xmp(x, "xmp:MetadataDate", out);
+            xmp(x, "xmp:CreatorTool", out);
+            xmp(x, "pdf:Producer", out);
+            xmp(x, "xmpMM:DocumentID", out);
+            xmp(x, "xmpMM:InstanceID", out);
+        }
+
+        private static void xmp(String x, String name, Revision out) {
+            int i = x.indexOf(name + "=\"");
+            if (i >= 0) {
+                int s = i + name.length() + 2, e = x.indexOf('"', s);
+                if (e > s) out.xmp.put(name, x.substring(s, e));
+                return;
+            }
+            i = x.indexOf("<" + name + ">");
+            if (i >= 0) {
+                int s = i + name.length() + 2, e = x.indexOf('<', s);
+                if (e > s) out.xmp.put(name, x.substring(s, e).trim());
+            }
+        }
+
+        // --- signatures ---
+
+        private void readSignatures() {
+            int latest = sections.size() - 1;
+            Object root = deref(sections.get(latest).trailer.get("Root"), latest);
+            if (!(root instanceof Map)) return;
+            Object acro = deref(asDict(root).get("AcroForm"), latest);
+            if (!(acro instanceof Map)) return;
+            Object fields = deref(asDict(acro).get("Fields"), latest);
+            if (!(fields instanceof List)) return;
+            int[] budget = {MAX_FIELDS};
+            for (Object f : (List<?>) fields) walkField(f, latest, "", 0, budget);
+        }
+
+        private void walkField(Object ref, int rev, String parentName, int depth, int[] budget) {
+            if (depth > 8 || budget[0]-- <= 0) return;
+            Object f = deref(ref, rev);
+            if (!(f instanceof Map)) return;
+            Map<String, Object> d = asDict(f);
+            String name = d.get("T") instanceof String
+                    ? (parentName.isEmpty() ? "" : parentName + ".") + d.get("T") : parentName;
+            if (new Name("Sig").equals(d.get("FT"))) {
+                Object v = deref(d.get("V"), rev);
+                if (v instanceof Map) signature(name, asDict(v));
+            }
+            Object kids = deref(d.get("Kids"), rev);
+            if (kids instanceof List) {
+                for (Object k : (List<?>) kids) walkField(k, rev, name, depth + 1, budget);
+            }
+        }
+
+        private void signature(String field, Map<String, Object> v) {
+            Signature s = new Signature();
+            s.field = field;
+            if (v.get("SubFilter") instanceof Name) s.subFilter = ((Name) v.get("SubFilter")).value;
+            if (v.get("M") instanceof String) s.signingTime = (String) v.get("M");
+            Object br = v.get("ByteRange");
+            if (br instanceof List && ((List<?>) br).size() == 4) {
+                s.byteRange = new long[4];
+                for (int i = 0; i < 4; i++) s.byteRange[i] = num(((List<?>) br).get(i));
+                s.signedLength = s.byteRange[2] + s.byteRange[3];
+                s.coversWholeFile = s.signedLength >= r.length;
+                for (Revision rev : r.revisions) {
+                    if (Math.abs(rev.endOffset - s.signedLength) <= 2) s.revision = rev.index;
+                }
+                if (s.revision < 0) {
+                    for (Revision rev : r.revisions) if (rev.endOffset <= s.signedLength) s.revision = rev.index;
+                }
+            }
+            r.signatures.add(s);
+        }
+
+        // --- verdicts ---
+
+        private void indicators() {
+            List<String> ind = r.indicators;
+            List<Revision> revs = r.revisions;
+            int updates = r.incrementalUpdates();
+            if (updates > 0) ind.add("incremental_updates:" + updates);
+            for (int i = 1; i < revs.size(); i++) {
+                Revision a = revs.get(i - 1), b = revs.get(i);
+                diff(ind, a.info, b.info, "info", i);
+                diff(ind, a.xmp, b.xmp, "xmp", i);
+                if (!a.id0.isEmpty() && !b.id0.isEmpty() && !a.id0.equals(b.id0)) ind.add("document_id_changed:rev" + i);
+                if (a.xrefStream != b.xrefStream) ind.add("xref_format_changed:rev" + i);
+            }
+            if (!revs.isEmpty()) {
+                Revision last = revs.get(revs.size() - 1);
+                String infoProducer = last.info.get("Producer"), xmpProducer = last.xmp.get("pdf:Producer");
+                if (infoProducer != null && xmpProducer != null && !infoProducer.equals(xmpProducer)) {
+                    ind.add("producer_info_xmp_mismatch");
+                }
+                String infoMod = digits(last.info.get("ModDate")), xmpMod = digits(last.xmp.get("xmp:ModifyDate"));
+                if (infoMod.length() >= 12 && xmpMod.length() >= 12 && !infoMod.substring(0, 12).equals(xmpMod.substring(0, 12))) {
+                    ind.add("moddate_info_xmp_mismatch");
+                }
+                long end = 0;
+                for (Revision rev : revs) end = Math.max(end, rev.endOffset);
+                if (end < r.length - 2) ind.add("trailing_bytes_after_eof:" + (r.length - end));
+            }
+            for (Signature s : r.signatures) {
+                if (s.byteRange == null) continue;
+                if (!s.coversWholeFile) {
+                    r.editedAfterSigning = true;
+                    int later = s.revision < 0 ? -1 : revs.size() - 1 - s.revision;
+                    ind.add("edited_after_signing:" + s.field + (later >= 0 ? ":" + later + "_revisions" : "")
+                            + ":" + (r.length - s.signedLength) + "_bytes");
+                }
+            }
+        }
+
+        private static void diff(List<String> ind, Map<String, String> a, Map<String, String> b, String what, int rev) {
+            for (Map.Entry<String, String> e : b.entrySet()) {
+                String before = a.get(e.getKey());
+                if (before != null && !Objects.equals(before, e.getValue())) {
+                    boolean expected = e.getKey().contains("ModDate") || e.getKey().contains("ModifyDate")
+                            || e.getKey().contains("MetadataDate") || e.getKey().contains("InstanceID");
+                    ind.add((expected ? "" : "changed_") + what + "_" + e.getKey().replace("xmp:", "").replace("xmpMM:", "")
+                            .replace("pdf:", "") + ":rev" + rev);
+                }
+            }
+            for (String k : a.keySet()) {
+                if (!b.containsKey(k)) ind.add("removed_" + what + "_" + k + ":rev" + rev);
+            }
+        }
+
+        // --- byte access ---
+
+        private byte[] bytes(int off, int n) {
+            n = Math.max(0, Math.min(n, len - off));
+            byte[] b = new byte[n];
+            for (int i = 0; i < n; i++) b[i] = buf.get(off + i);
+            touched += n;
+            return b;
+        }
+
+        private int indexOf(int from, int to, String s) {
+            byte first = (byte) s.charAt(0);
+            outer:
+            for (int i = from; i <= to - s.length(); i++) {
+                if (buf.get(i) != first) continue;
+                for (int k = 1; k < s.length(); k++) if (buf.get(i + k) != (byte) s.charAt(k)) continue outer;
+                return i;
+            }
+            return -1;
+        }
+
+        /** Tokenizer over the mapped file. */
+        final class Lexer extends BaseLexer {
+            Lexer(int pos) {
+                this(pos, len);
+            }
+
+            Lexer(int pos, int end) {
+                super(pos, end);
+            }
+
+            @Override
+            int at(int i) {
+                if (i >= end) throw new IndexOutOfBoundsException();
+                return buf.get(i) & 0xFF;
+            }
+        }
+    }
+
+    /** Tokenizer over an inflated object stream. */
+    static final class ArrayLexer extends BaseLexer {
+        private final byte[] data;
+
+        ArrayLexer(byte[] data, int pos, int end) {
+            super(pos, end);
+            this.data = data;
+        }
+
+        @Override
+        int at(int i) {
+            if (i >= end) throw new IndexOutOfBoundsException();
+            return data[i] & 0xFF;
+        }
+    }
+
+    /** Minimal PDF object parser: numbers, refs, names, strings, arrays, dictionaries, keywords. */
+    abstract static class BaseLexer {
+        int pos;
+        final int end;
+
+        BaseLexer(int pos, int end) {
+            this.pos = pos;
+            this.end = end;
+        }
+
+        private int nesting;
+
+        abstract int at(int i);
+
+        private void nest() {
+            if (++nesting > MAX_NESTING) throw new IllegalStateException("objects nested deeper than " + MAX_NESTING);
+        }
+
+        boolean startsWith(String s) {
+            if (pos + s.length() > end) return false;
+            for (int i = 0; i < s.length(); i++) if (at(pos + i) != s.charAt(i)) return false;
+            return true;
+        }
+
+        void skipWs() {
+            while (pos < end) {
+                int c = at(pos);
+                if (c == '%') {
+                    while (pos < end && at(pos) != '\n' && at(pos) != '\r') pos++;
+                } else if (c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == '\f' || c == 0) {
+                    pos++;
+                } else {
+                    break;
+                }
+            }
+        }
+
+        String keyword() {
+            skipWs();
+            int s = pos;
+            while (pos < end && isRegular(at(pos))) pos++;
+            StringBuilder sb = new StringBuilder();
+            for (int i = s; i < pos; i++) sb.append((char) at(i));
+            return sb.toString();
+        }
+
+        Object next() {
+            skipWs();
+            int c = at(pos);
+            if (c == '/') {
+                pos++;
+                return new Name(name());
+            }
+            if (c == '(') return literal();
+            if (c == '<') {
+                if (at(pos + 1) == '<') {
+                    pos += 2;
+                    nest();
+                    Map<String, Object> d = new LinkedHashMap<>();
+                    while (true) {
+                        skipWs();
+                        if (at(pos) == '>' && at(pos + 1) == '>') {
+                            pos += 2;
+                            nesting--;
+                            return d;
+                        }
+                        Object k = next();
+                        if (!(k instanceof Name)) throw new IllegalStateException("bad dictionary key");
+                        d.put(((Name) k).value, next());
+                    }
+                }
+                return hexString();
+            }
+            if (c == '[') {
+                pos++;
+                nest();
+                List<Object> a = new ArrayList<>();
+                while (true) {
+                    skipWs();
+                    if (at(pos) == ']') {
+                        pos++;
+                        nesting--;
+                        return a;
+                    }
+                    a.add(next());
+                }
+            }
+            if (c == '+' || c == '-' || c == '.' || (c >= '0' && c <= '9')) {
+                Object n = number();
+                if (n instanceof Long) {
+                    // "num gen R" lookahead
+                    int save = pos;
+                    skipWs();
+                    if (pos < end && at(pos) >= '0' && at(pos) <= '9') {
+                        Object g = number();
+                        skipWs();
+                        if (g instanceof Long && pos < end && at(pos) == 'R'
+                                && (pos + 1 >= end || !isRegular(at(pos + 1)))) {
+                            pos++;
+                            return new Ref(((Long) n).intValue(), ((Long) g).intValue());
+                        }
+                    }
+                    pos = save;
+                }
+                return n;
+            }
+            String kw = keyword();
+            if (kw.isEmpty()) {
+                pos++;
+                return null;
+            }
+            if ("true".equals(kw)) return Boolean.TRUE;
+            if ("false".equals(kw)) return Boolean.FALSE;
+            if ("null".equals(kw)) return null;
+            return kw;
+        }
+
+        private Object number() {
+            int s = pos;
+            boolean real = false;
+            if (at(pos) == '+' || at(pos) == '-') pos++;
+            while (pos < end && ((at(pos) >= '0' && at(pos) <= '9') || at(pos) == '.')) {
+                if (at(pos) == '.') real = true;
+                pos++;
+            }
+            StringBuilder sb = new StringBuilder();
+            for (int i = s; i < pos; i++) sb.append((char) at(i));
+            try {
+                return real ? (Object) Double.parseDouble(sb.toString()) : (Object) Long.parseLong(sb.toString());
+            } catch (NumberFormatException e) {
+                return 0L;
+            }
+        }
+
+        private String name() {
+            StringBuilder sb = new StringBuilder();
+            while (pos < end && isRegular(at(pos))) {
+                int c = at(pos++);
+                if (c == '#' && pos + 1 < end) {
+                    c = Integer.parseInt("" + (char) at(pos) + (char) at(pos + 1), 16);
+                    pos += 2;
+                }
+                sb.append((char) c);
+            }
+            return sb.toString();
+        }
+
+        private String literal() {
+            pos++; // (
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            int depth = 1;
+            while (true) {
+                int c = at(pos++);
+                if (c == '\\') {
+                    int e = at(pos++);
+                    switch (e) {
+                        case 'n': out.write('\n'); break;
+                        case 'r': out.write('\r'); break;
+                        case 't': out.write('\t'); break;
+                        case 'b': out.write('\b'); break;
+                        case 'f': out.write('\f'); break;
+                        case '\r': if (at(pos) == '\n') pos++; break;
+                        case '\n': break;
+                        default:
+                            if (e >= '0' && e <= '7') {
+                                int v = e - '0';
+                                for (int k = 0; k < 2 && at(pos) >= '0' && at(pos) <= '7'; k++) v = v * 8 + (at(pos++) - '0');
+                                out.write(v & 0xFF);
+                            } else {
+                                out.write(e);
+                            }
+                    }
+                    continue;
+                }
+                if (c == '(') depth++;
+                if (c == ')' && --depth == 0) break;
+                out.write(c);
+            }
+            return decodeText(out.toByteArray());
+        }
+
+        private Object hexString() {
+            pos++; // <
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            int hi = -1;
+            while (true) {
+                int c = at(pos++);
+                if (c == '>') break;
+                int d = Character.digit(c, 16);
+                if (d < 0) continue;
+                if (hi < 0) hi = d;
+                else {
+                    out.write(hi * 16 + d);
+                    hi = -1;
+                }
+            }
+            if (hi >= 0) out.write(hi * 16);
+            byte[] b = out.toByteArray();
+            // Keep binary strings (IDs) as hex; decode text strings
+            boolean text = b.length >= 2 && (b[0] & 0xFF) == 0xFE && (b[1] & 0xFF) == 0xFF;
+            return text ? decodeText(b) : new HexString(b);
+        }
+
+        static boolean isRegular(int c) {
+            return c > ' ' && "()<>[]{}/%".indexOf(c) < 0;
+        }
+    }
+
+    /** Binary hex string such as a document ID. */
+    static final class HexString {
+        final byte[] bytes;
+
+        HexString(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder(bytes.length * 2);
+            for (byte b : bytes) sb.append(String.format("%02x", b));
+            return sb.toString();
+        }
+    }
+
+    // === Helpers ===
+
+    private static String decodeText(byte[] b) {
+        if (b.length >= 2 && (b[0] & 0xFF) == 0xFE && (b[1] & 0xFF) == 0xFF) {
+            return new String(b, 2, b.length - 2, StandardCharsets.UTF_16BE);
+        }
+        return new String(b, StandardCharsets.ISO_8859_1); // PDFDocEncoding ≈ Latin-1 for metadata
+    }
+
+    private static String hex(Object o) {
+        if (o instanceof HexString) return o.toString();
+        if (o instanceof String) return new HexString(((String) o).getBytes(StandardCharsets.ISO_8859_1)).toString();
+        return "";
+    }
+
+    private static String digits(String s) {
+        if (s == null) return "";
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < s.length() && sb.length() < 14; i++) {
+            char c = s.charAt(i);
+            if (c >= '0' && c <= '9') sb.append(c);
+            else if (c == '+' || c == 'Z' || (c == '-' && sb.length() >= 14)) break;
+        }
+        return sb.toString();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> asDict(Object o) {
+        return (Map<String, Object>) o;
+    }
+
+    private static long num(Object o) {
+        if (o instanceof Long) return (Long) o;
+        if (o instanceof Double) return (long) (double) (Double) o;
+        return -1;
+    }
+
+    private static long field(byte[] d, int p, int w) {
+        long v = 0;
+        for (int i = 0; i < w; i++) v = (v << 8) | (d[p + i] & 0xFF);
+        return v;
+    }
+
+    private static byte[] inflate(byte[] raw) {
+        Inflater inf = new Inflater();
+        try {
+            inf.setInput(raw);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length * 4);
+            byte[] chunk = new byte[16384];
+            while (!inf.finished() && out.size() < MAX_INFLATE) {
+                int n = inf.inflate(chunk);
+                if (n == 0 && (inf.needsInput() || inf.needsDictionary())) break;
+                out.write(chunk, 0, n);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            return null;
+        } finally {
+            inf.end();
+        }
+    }
+
+    /** PNG predictor rows (xref streams normally use Up with 1 byte per filter tag). */
+    private static byte[] unpredictPng(byte[] in, int columns) {
+        int stride = columns + 1;
+        int rows = in.length / stride;
+        byte[] out = new byte[rows * columns];
+        byte[] prev = new byte[columns];
+        for (int r = 0; r < rows; r++) {
+            int filter = in[r * stride] & 0xFF;
+            int o = r * columns;
+            for (int i = 0; i < columns; i++) {
+                int x = in[r * stride + 1 + i] & 0xFF;
+                int a = i > 0 ? out[o + i - 1] & 0xFF : 0;
+                int b = prev[i] & 0xFF;
+                int c = i > 0 ? prev[i - 1] & 0xFF : 0;
+                int v;
+                switch (filter) {
+                    case 1: v = x + a; break;
+                    case 2: v = x + b; break;
+                    case 3: v = x + ((a + b) >> 1); break;
+                    case 4: {
+                        int p = a + b - c, pa = Math.abs(p - a), pb = Math.abs(p - b), pc = Math.abs(p - c);
+                        v = x + (pa <= pb && pa <= pc ? a : pb <= pc ? b : c);
+                        break;
+                    }
+                    default: v = x;
+                }
+                out[o + i] = (byte) v;
+            }
+            System.arraycopy(out, o, prev, 0, columns);
+        }
+        return out;
+    }
+}
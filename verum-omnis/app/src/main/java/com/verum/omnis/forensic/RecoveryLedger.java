@@ -12,11 +12,13 @@ import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Locale;
 import java.util.TimeZone;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Recovery Ledger (business-only)
  * - Local JSONL file under app files dir
  * - Each entry sealed with SHA-512 and mirrored as a sealed PDF
+ * - PDF sealing is queued on SealQueue, so a burst of appends produces one seal
  * - Ignores private citizens; logs only if responsible_party looks like a business
  */
 public class RecoveryLedger {
@@ -32,7 +34,8 @@ public class RecoveryLedger {
         public String detectedAt; // ISO-8601 UTC
         public String detectedBy; // app version
         public String entrySha512;
-        public File sealedPdf; // sealed PDF generated automatically
+        public volatile File sealedPdf; // sealed PDF, set once the background seal completes
+        public CompletableFuture<PdfSealer.Result> sealFuture; // pending ledger seal (shared by a burst of writes)
     }
 
     private static final String[] BUSINESS_TOKENS = new String[]{
@@ -91,10 +94,10 @@ public class RecoveryLedger {
             fos.write((out.toString() + "\n").getBytes(StandardCharsets.UTF_8));
         }
 
-        // Auto-seal the ledger snapshot
-        PdfSealer sealer = new PdfSealerV2();
-        PdfSealer.Result r = sealer.seal(ctx, ledger, null);
-        e.sealedPdf = r.pdfFile;
+        // Auto-seal the ledger snapshot in the background; appends inside the
+        // coalescing window share the same seal.
+        e.sealFuture = SealQueue.shared(ctx).submit(ledger, null, SealQueue.Priority.BULK);
+        e.sealFuture.thenAccept(r -> e.sealedPdf = r.pdfFile);
 
         return e;
     }
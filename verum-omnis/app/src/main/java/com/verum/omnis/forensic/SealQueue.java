@@ -0,0 +1,255 @@
+package com.verum.omnis.forensic;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Background coalescing seal queue (wraps any PdfSealer)
+ * - Requests for the same target within the coalescing window share one seal
+ * - INTERACTIVE requests are sealed immediately, BULK requests wait out the window
+ * - Bounded: submit() blocks while the queue is full (back-pressure on writers)
+ * - Every request gets a future completed with the delegate's Result
+ */
+public class SealQueue implements PdfSealer {
+
+    private static final String TAG = "SealQueue";
+
+    /** Default window used by the shared queue; a burst of ledger writes collapses into one seal. */
+    public static final long DEFAULT_WINDOW_MS = 750;
+    public static final int DEFAULT_CAPACITY = 32;
+
+    public enum Priority { INTERACTIVE, BULK }
+
+    private static class Pending {
+        final String key;
+        final File target;
+        Bitmap logo;
+        Priority priority;
+        long dueAtMs;
+        final CompletableFuture<Result> future = new CompletableFuture<>();
+
+        Pending(String key, File target) {
+            this.key = key;
+            this.target = target;
+        }
+    }
+
+    private static SealQueue shared;
+
+    private final Context ctx;
+    private final PdfSealer delegate;
+    private final long windowMs;
+    private final int capacity;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    // Insertion-ordered so equal-priority requests are sealed first-come, first-served.
+    private final LinkedHashMap<String, Pending> pending = new LinkedHashMap<>();
+    private final Thread worker;
+    private volatile boolean shutdown;
+    private long sealsRun;
+    private long requestsMerged;
+
+    public SealQueue(Context ctx, PdfSealer delegate, long windowMs, int capacity) {
+        if (delegate == null) throw new IllegalArgumentException("delegate == null");
+        if (capacity <= 0) throw new IllegalArgumentException("capacity must be > 0");
+        this.ctx = ctx.getApplicationContext() != null ? ctx.getApplicationContext() : ctx;
+        this.delegate = delegate;
+        this.windowMs = Math.max(0, windowMs);
+        this.capacity = capacity;
+        this.worker = new Thread(this::runLoop, "verum-seal-queue");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /** Process-wide queue in front of {@link PdfSealerV2}. */
+    public static synchronized SealQueue shared(Context ctx) {
+        if (shared == null) {
+            shared = new SealQueue(ctx, new PdfSealerV2(), DEFAULT_WINDOW_MS, DEFAULT_CAPACITY);
+        }
+        return shared;
+    }
+
+    /**
+     * Queue a seal of {@code target}.  If a request for the same file is still
+     * waiting, this one is merged into it and receives the same future.
+     * Blocks while the queue already holds {@code capacity} distinct targets.
+     */
+    public CompletableFuture<Result> submit(File target, Bitmap logo, Priority priority)
+            throws InterruptedException {
+        if (target == null) throw new IllegalArgumentException("target == null");
+        if (priority == null) priority = Priority.BULK;
+        String key = target.getAbsolutePath();
+        long now = System.currentTimeMillis();
+
+        lock.lockInterruptibly();
+        try {
+            while (true) {
+                if (shutdown) {
+                    CompletableFuture<Result> f = new CompletableFuture<>();
+                    f.completeExceptionally(new IllegalStateException("SealQueue is shut down"));
+                    return f;
+                }
+                Pending p = pending.get(key);
+                if (p != null) {
+                    // Coalesce: the latest logo wins, priority only ever goes up.
+                    if (logo != null) p.logo = logo;
+                    requestsMerged++;
+                    if (priority == Priority.INTERACTIVE) {
+                        p.priority = Priority.INTERACTIVE;
+                        p.dueAtMs = Math.min(p.dueAtMs, now);
+                        notEmpty.signal();
+                    }
+                    return p.future;
+                }
+                if (pending.size() < capacity) break;
+                notFull.await();
+            }
+
+            Pending p = new Pending(key, target);
+            p.logo = logo;
+            p.priority = priority;
+            // The window is fixed from the first request so a steady stream cannot starve the seal.
+            p.dueAtMs = priority == Priority.INTERACTIVE ? now : now + windowMs;
+            pending.put(key, p);
+            notEmpty.signal();
+            return p.future;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Synchronous PdfSealer view: seals at INTERACTIVE priority and waits for the result. */
+    @Override
+    public Result seal(Context ctx, File inputFile, Bitmap logo) throws Exception {
+        try {
+            return submit(inputFile, logo, Priority.INTERACTIVE).get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) throw (Exception) cause;
+            throw e;
+        }
+    }
+
+    /** Number of targets waiting to be sealed. */
+    public int pendingCount() {
+        lock.lock();
+        try {
+            return pending.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Seals actually run vs. requests absorbed by coalescing. */
+    public long[] stats() {
+        lock.lock();
+        try {
+            return new long[]{sealsRun, requestsMerged};
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stop accepting new requests.  Requests already queued are sealed before the
+     * worker exits; waits up to {@code timeoutMs} for that to happen.
+     */
+    public boolean shutdown(long timeoutMs) throws InterruptedException {
+        lock.lock();
+        try {
+            shutdown = true;
+            for (Pending p : pending.values()) p.dueAtMs = 0;
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        worker.join(Math.max(1, timeoutMs));
+        return !worker.isAlive();
+    }
+
+    // === Worker ===
+
+    private void runLoop() {
+        while (true) {
+            Pending next;
+            try {
+                next = take();
+            } catch (InterruptedException e) {
+                failAll(e);
+                return;
+            }
+            if (next == null) return;
+
+            try {
+                Result r = delegate.seal(ctx, next.target, next.logo);
+                next.future.complete(r);
+            } catch (Throwable t) {
+                Log.e(TAG, "Seal failed for " + next.target.getName() + ": " + t.getMessage());
+                next.future.completeExceptionally(t);
+            }
+        }
+    }
+
+    /** Waits for the next due request; INTERACTIVE first, then oldest due time. Null once drained after shutdown. */
+    private Pending take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (true) {
+                if (pending.isEmpty()) {
+                    if (shutdown) return null;
+                    notEmpty.await();
+                    continue;
+                }
+                long now = System.currentTimeMillis();
+                Pending best = null;
+                long earliestDue = Long.MAX_VALUE;
+                for (Pending p : pending.values()) {
+                    earliestDue = Math.min(earliestDue, p.dueAtMs);
+                    if (p.dueAtMs > now) continue;
+                    if (best == null
+                            || (p.priority == Priority.INTERACTIVE && best.priority != Priority.INTERACTIVE)
+                            || (p.priority == best.priority && p.dueAtMs < best.dueAtMs)) {
+                        best = p;
+                    }
+                }
+                if (best != null) {
+                    pending.remove(best.key);
+                    sealsRun++;
+                    notFull.signal();
+                    return best;
+                }
+                notEmpty.await(earliestDue - now, TimeUnit.MILLISECONDS);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void failAll(Throwable cause) {
+        lock.lock();
+        try {
+            Iterator<Map.Entry<String, Pending>> it = pending.entrySet().iterator();
+            while (it.hasNext()) {
+                it.next().getValue().future.completeExceptionally(cause);
+                it.remove();
+            }
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
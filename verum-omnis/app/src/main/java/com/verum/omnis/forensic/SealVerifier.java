@@ -0,0 +1,368 @@
+package com.verum.omnis.forensic;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Sealed-report verification (no Android dependencies; also runs as a CLI)
+ * - Checks sealed PDFs against their recorded SHA-512 without re-running a sealer
+ * - Files are read with positional reads into one reused direct buffer per worker
+ *   thread; mapped buffers are only unmapped by the GC, so an archive of 100k
+ *   reports would pin address space long after each file was checked
+ * - Many reports are verified concurrently on a work-stealing pool
+ * - Recorded hashes of the form "tree:&lt;hex&gt;" are chunk-tree digests
+ *   (see {@link #treeHash(File)}) and are hashed in parallel chunks, so a single
+ *   very large file also uses every core.  A plain SHA-512 is inherently
+ *   sequential and is verified in one pass.  {@link #writeManifest} records either.
+ *
+ * CLI: {@code java com.verum.omnis.forensic.SealVerifier [-j threads] manifest.txt}
+ * where each manifest line is {@code <hash>  <path>} (sha512sum format).
+ * Exit code is 0 only if every report passes.
+ * {@code SealVerifier -w [--tree] manifest.txt file...} writes such a manifest.
+ */
+public class SealVerifier {
+
+    /** Recorded-hash prefix for chunk-tree digests. */
+    public static final String TREE_PREFIX = "tree:";
+    /** Chunk size of the tree digest; fixed, because it is part of the recorded hash. */
+    public static final int TREE_CHUNK = 4 * 1024 * 1024;
+
+    private static final int READ_BUFFER = 1024 * 1024;
+    private static final ThreadLocal<ByteBuffer> BUFFER = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocateDirect(READ_BUFFER);
+        }
+    };
+
+    public enum Status { PASS, MISMATCH, MISSING, ERROR }
+
+    /** One sealed report to check. */
+    public static class Request {
+        public final File pdf;
+        public final String recordedHash;
+
+        public Request(File pdf, String recordedHash) {
+            this.pdf = pdf;
+            this.recordedHash = recordedHash;
+        }
+    }
+
+    /** Outcome for a single report. */
+    public static class Item {
+        public File pdf;
+        public String expected;
+        public String actual;     // null unless hashing completed
+        public Status status;
+        public String message;    // failure detail, null on PASS
+        public long bytes;
+    }
+
+    /** Structured pass/fail report over a batch. */
+    public static class Report {
+        public List<Item> items = new ArrayList<>();
+        public int passed;
+        public int failed;        // MISMATCH + MISSING + ERROR
+        public long bytesHashed;
+        public long elapsedMs;
+
+        public boolean allPassed() {
+            return failed == 0;
+        }
+    }
+
+    private SealVerifier() {}
+
+    /** Verify one report on the calling thread (tree hashes still fan out on the common pool). */
+    public static Item verify(File pdf, String recordedHash) {
+        return verifyOne(new Request(pdf, recordedHash));
+    }
+
+    /** Verify a batch concurrently with one worker per available core. */
+    public static Report verifyAll(List<Request> requests) {
+        return verifyAll(requests, Runtime.getRuntime().availableProcessors());
+    }
+
+    public static Report verifyAll(List<Request> requests, int parallelism) {
+        long start = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, parallelism));
+        Report report = new Report();
+        try {
+            List<ForkJoinTask<Item>> tasks = new ArrayList<>(requests.size());
+            for (final Request r : requests) {
+                tasks.add(pool.submit(() -> verifyOne(r)));
+            }
+            for (ForkJoinTask<Item> t : tasks) {
+                Item item = t.join();
+                report.items.add(item);
+                report.bytesHashed += item.bytes;
+                if (item.status == Status.PASS) report.passed++;
+                else report.failed++;
+            }
+        } finally {
+            pool.shutdown();
+        }
+        report.elapsedMs = (System.nanoTime() - start) / 1_000_000L;
+        return report;
+    }
+
+    /**
+     * Chunk-tree digest: SHA-512 over the concatenated SHA-512 of each
+     * {@link #TREE_CHUNK}-byte chunk, returned with the {@link #TREE_PREFIX}.
+     * Record this instead of a plain SHA-512 for archives of large reports.
+     */
+    public static String treeHash(File f) throws Exception {
+        try (RandomAccessFile raf = new RandomAccessFile(f, "r");
+             FileChannel ch = raf.getChannel()) {
+            return TREE_PREFIX + toHex(treeDigest(ch, ch.size()));
+        }
+    }
+
+    /** Recorded hash of {@code f}: a chunk-tree digest if {@code tree}, else a plain SHA-512. */
+    public static String recordHash(File f, boolean tree) throws Exception {
+        if (tree) return treeHash(f);
+        try (RandomAccessFile raf = new RandomAccessFile(f, "r");
+             FileChannel ch = raf.getChannel()) {
+            return toHex(linearDigest(ch, ch.size()));
+        }
+    }
+
+    /**
+     * Write a manifest that {@link #readManifest} and {@link #verifyAll} accept: one
+     * {@code <hash>  <path>} line per file, paths relative to the manifest when they are
+     * under its directory.  Files are hashed concurrently.
+     */
+    public static void writeManifest(File manifest, List<File> files, final boolean tree, int parallelism)
+            throws Exception {
+        File base = manifest.getAbsoluteFile().getParentFile();
+        String prefix = base == null ? null : base.getPath() + File.separator;
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, parallelism));
+        try (Writer w = new OutputStreamWriter(new FileOutputStream(manifest), StandardCharsets.UTF_8)) {
+            List<ForkJoinTask<String>> tasks = new ArrayList<>(files.size());
+            for (final File f : files) tasks.add(pool.submit(() -> recordHash(f, tree)));
+            for (int i = 0; i < files.size(); i++) {
+                String path = files.get(i).getAbsolutePath();
+                if (prefix != null && path.startsWith(prefix)) path = path.substring(prefix.length());
+                w.write(tasks.get(i).join() + "  " + path + "\n");
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // === Internals ===
+
+    private static Item verifyOne(Request r) {
+        Item item = new Item();
+        item.pdf = r.pdf;
+        item.expected = r.recordedHash;
+        try {
+            if (r.pdf == null || !r.pdf.isFile()) {
+                item.status = Status.MISSING;
+                item.message = "File not found";
+                return item;
+            }
+            String recorded = r.recordedHash == null ? "" : r.recordedHash.trim().toLowerCase(Locale.ROOT);
+            boolean tree = recorded.startsWith(TREE_PREFIX);
+            byte[] want = fromHex(tree ? recorded.substring(TREE_PREFIX.length()) : recorded);
+            if (want == null || want.length != 64) {
+                item.status = Status.ERROR;
+                item.message = "Recorded hash is not a SHA-512 hex digest";
+                return item;
+            }
+
+            byte[] got;
+            try (RandomAccessFile raf = new RandomAccessFile(r.pdf, "r");
+                 FileChannel ch = raf.getChannel()) {
+                long size = ch.size();
+                item.bytes = size;
+                got = tree ? treeDigest(ch, size) : linearDigest(ch, size);
+            }
+            item.actual = (tree ? TREE_PREFIX : "") + toHex(got);
+            if (MessageDigest.isEqual(want, got)) {
+                item.status = Status.PASS;
+            } else {
+                item.status = Status.MISMATCH;
+                item.message = "Hash mismatch";
+            }
+        } catch (Exception e) {
+            item.status = Status.ERROR;
+            item.message = e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage();
+        }
+        return item;
+    }
+
+    private static byte[] linearDigest(FileChannel ch, long size) throws Exception {
+        MessageDigest md = MessageDigest.getInstance("SHA-512");
+        update(md, ch, 0, size);
+        return md.digest();
+    }
+
+    /** Hash {@code length} bytes at {@code offset} through this thread's read buffer. */
+    private static void update(MessageDigest md, FileChannel ch, long offset, long length) throws IOException {
+        ByteBuffer buf = BUFFER.get();
+        long pos = offset, end = offset + length;
+        while (pos < end) {
+            buf.clear();
+            if (end - pos < buf.capacity()) buf.limit((int) (end - pos));
+            int n = ch.read(buf, pos);
+            if (n < 0) throw new IOException("File shrank while hashing at offset " + pos);
+            buf.flip();
+            md.update(buf);
+            pos += n;
+        }
+    }
+
+    private static byte[] treeDigest(FileChannel ch, long size) throws Exception {
+        int chunks = (int) Math.max(1, (size + TREE_CHUNK - 1) / TREE_CHUNK);
+        List<ChunkTask> tasks = new ArrayList<>(chunks);
+        for (int i = 0; i < chunks; i++) {
+            long off = (long) i * TREE_CHUNK;
+            tasks.add(new ChunkTask(ch, off, Math.min(TREE_CHUNK, size - off)));
+        }
+        // invokeAll forks onto the current pool (or the common pool from a plain thread).
+        ForkJoinTask.invokeAll(tasks);
+        MessageDigest root = MessageDigest.getInstance("SHA-512");
+        for (ChunkTask t : tasks) root.update(t.join());
+        return root.digest();
+    }
+
+    private static class ChunkTask extends RecursiveTask<byte[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final FileChannel ch;
+        private final long offset;
+        private final long length;
+
+        ChunkTask(FileChannel ch, long offset, long length) {
+            this.ch = ch;
+            this.offset = offset;
+            this.length = Math.max(0, length);
+        }
+
+        @Override
+        protected byte[] compute() {
+            try {
+                MessageDigest md = MessageDigest.getInstance("SHA-512");
+                update(md, ch, offset, length);
+                return md.digest();
+            } catch (Exception e) {
+                throw new IllegalStateException("Chunk hash failed at offset " + offset + ": " + e.getMessage(), e);
+            }
+        }
+    }
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static String toHex(byte[] b) {
+        char[] out = new char[b.length * 2];
+        for (int i = 0; i < b.length; i++) {
+            out[2 * i] = HEX[(b[i] >> 4) & 0xF];
+            out[2 * i + 1] = HEX[b[i] & 0xF];
+        }
+        return new String(out);
+    }
+
+    private static byte[] fromHex(String s) {
+        if ((s.length() & 1) != 0) return null;
+        byte[] out = new byte[s.length() / 2];
+        for (int i = 0; i < out.length; i++) {
+            int hi = Character.digit(s.charAt(2 * i), 16);
+            int lo = Character.digit(s.charAt(2 * i + 1), 16);
+            if (hi < 0 || lo < 0) return null;
+            out[i] = (byte) ((hi << 4) | lo);
+        }
+        return out;
+    }
+
+    // === CLI ===
+
+    /** Parse a sha512sum-style manifest: {@code <hash>  <path>} per line, '#' comments allowed. */
+    public static List<Request> readManifest(File manifest) throws IOException {
+        List<Request> out = new ArrayList<>();
+        File base = manifest.getAbsoluteFile().getParentFile();
+        try (BufferedReader br = new BufferedReader(
+                new InputStreamReader(new FileInputStream(manifest), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                int sp = line.indexOf(' ');
+                if (sp < 0) continue;
+                String hash = line.substring(0, sp);
+                String path = line.substring(sp).trim();
+                if (path.startsWith("*")) path = path.substring(1); // sha512sum binary-mode marker
+                File f = new File(path);
+                if (!f.isAbsolute()) f = new File(base, path);
+                out.add(new Request(f, hash));
+            }
+        }
+        return out;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int threads = Runtime.getRuntime().availableProcessors();
+        String manifestPath = null;
+        boolean write = false, tree = false;
+        List<File> inputs = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if ("-j".equals(args[i]) && i + 1 < args.length) {
+                threads = Integer.parseInt(args[++i]);
+            } else if ("-w".equals(args[i])) {
+                write = true;
+            } else if ("--tree".equals(args[i])) {
+                tree = true;
+            } else if (manifestPath == null) {
+                manifestPath = args[i];
+            } else {
+                inputs.add(new File(args[i]));
+            }
+        }
+        if (manifestPath == null || (write ? inputs.isEmpty() : !inputs.isEmpty())) {
+            System.err.println("usage: SealVerifier [-j threads] <manifest>  (lines: <sha512|tree:hex>  <path>)");
+            System.err.println("       SealVerifier -w [--tree] [-j threads] <manifest> <file>...");
+            System.exit(2);
+            return;
+        }
+        if (write) {
+            writeManifest(new File(manifestPath), inputs, tree, threads);
+            System.out.println("recorded=" + inputs.size() + " manifest=" + manifestPath);
+            return;
+        }
+
+        List<Request> reqs = readManifest(new File(manifestPath));
+        Report report = verifyAll(reqs, threads);
+
+        List<Item> failures = new ArrayList<>();
+        for (Item it : report.items) if (it.status != Status.PASS) failures.add(it);
+        Collections.sort(failures, (a, b) -> a.pdf.getPath().compareTo(b.pdf.getPath()));
+        for (Item it : failures) {
+            System.out.println(it.status + "  " + it.pdf.getPath() + "  (" + it.message + ")");
+        }
+        double mb = report.bytesHashed / (1024.0 * 1024.0);
+        double secs = Math.max(1, report.elapsedMs) / 1000.0;
+        System.out.println(String.format(Locale.US,
+                "verified=%d passed=%d failed=%d bytes=%d elapsed_ms=%d throughput_mb_s=%.1f",
+                report.items.size(), report.passed, report.failed,
+                report.bytesHashed, report.elapsedMs, mb / secs));
+        System.exit(report.allPassed() ? 0 : 1);
+    }
+}
@@ -0,0 +1,234 @@
+package com.verum.omnis.security;
+
+import android.content.Context;
+
+import com.verum.omnis.core.Metrics;
+
+import org.json.JSONObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Verify-once, read-once asset registry
+ * - Each asset is read from the APK once per process and SHA-512 hashed in the same pass
+ * - Pins come from {@link ExpectedHashes} and hash_manifest.json; an asset is VERIFIED only
+ *   if it matches every pin recorded for its path
+ * - Consumers (ConstitutionGate, IntegrityChecker, RulesProvider, CurrencyConverter) receive
+ *   the exact bytes that were hashed, so there is no window between verification and use
+ * - Thread-safe: concurrent first requests for one asset share a single load
+ * - A MISSING result is not kept: the next request reads the asset again, so one transient
+ *   I/O error does not disable an asset for the life of the process
+ * - The manifest is an asset like any other: read and hashed once, then parsed for its pins
+ */
+public final class AssetRegistry {
+
+    public enum Status { VERIFIED, UNPINNED, TAMPERED, MISSING }
+
+    public static final String MANIFEST = "verum_constitution/hash_manifest.json";
+
+    /** Assets pinned in code, independent of the (in-APK) manifest. */
+    static final Map<String, String> PINNED;
+    static {
+        Map<String, String> m = new LinkedHashMap<>();
+        m.put("verum_constitution/constitution.json",
+                ExpectedHashes.VERUM_CONSTITUTION_CONSTITUTION_JSON);
+        m.put("verum_constitution/brains.json",
+                ExpectedHashes.VERUM_CONSTITUTION_BRAINS_JSON);
+        m.put("verum_constitution/detection_rules.json",
+                ExpectedHashes.VERUM_CONSTITUTION_DETECTION_RULES_JSON);
+        m.put("verum_constitution/model_hashes.json",
+                ExpectedHashes.VERUM_CONSTITUTION_MODEL_HASHES_JSON);
+        m.put("verum_constitution/jurisdiction_packs.json",
+                ExpectedHashes.VERUM_CONSTITUTION_JURISDICTION_PACKS_JSON);
+        m.put("docs/Verum_Omnis_Constitution_Core.pdf",
+                ExpectedHashes.TEMPLATES_VERUM_OMNIS_CONSTITUTION_CORE_PDF);
+        PINNED = Collections.unmodifiableMap(m);
+    }
+
+    /** An asset as loaded and hashed; the bytes are never exposed mutably. */
+    public static final class Asset {
+        public final String path;
+        public final Status status;
+        public final String sha512;     // null if MISSING
+        public final String expected;   // first pin that did not match (or the pin, if VERIFIED); null if UNPINNED
+        public final String error;      // load failure detail when MISSING
+        private final byte[] bytes;
+        private volatile String text;
+
+        Asset(String path, Status status, byte[] bytes, String sha512, String expected, String error) {
+            this.path = path;
+            this.status = status;
+            this.bytes = bytes;
+            this.sha512 = sha512;
+            this.expected = expected;
+            this.error = error;
+        }
+
+        public boolean isUsable() {
+            return status == Status.VERIFIED || status == Status.UNPINNED;
+        }
+
+        public int size() {
+            return bytes == null ? 0 : bytes.length;
+        }
+
+        public InputStream open() {
+            return new ByteArrayInputStream(checked());
+        }
+
+        public ByteBuffer buffer() {
+            return ByteBuffer.wrap(checked()).asReadOnlyBuffer();
+        }
+
+        /** UTF-8 text, decoded once. */
+        public String text() {
+            String t = text;
+            if (t == null) {
+                t = new String(checked(), StandardCharsets.UTF_8);
+                text = t;
+            }
+            return t;
+        }
+
+        private byte[] checked() {
+            if (!isUsable()) {
+                throw new SecurityException("Asset " + path + " is " + status
+                        + (error != null ? " (" + error + ")" : ""));
+            }
+            return bytes;
+        }
+    }
+
+    private static final int M_LOAD = Metrics.stage("assets.load");
+    private static final int C_BYTES = Metrics.counter("assets_bytes_hashed");
+
+    private static AssetRegistry instance;
+
+    private final Context ctx;
+    private final ConcurrentHashMap<String, FutureTask<Asset>> assets = new ConcurrentHashMap<>();
+    private volatile Map<String, String> manifestPins;
+
+    private AssetRegistry(Context ctx) {
+        this.ctx = ctx;
+    }
+
+    public static synchronized AssetRegistry get(Context ctx) {
+        if (instance == null) {
+            Context app = ctx.getApplicationContext() != null ? ctx.getApplicationContext() : ctx;
+            instance = new AssetRegistry(app);
+        }
+        return instance;
+    }
+
+    /** Load (first successful call only), hash and classify the asset at {@code path}. Never throws. */
+    public Asset asset(String path) {
+        FutureTask<Asset> task = assets.get(path);
+        if (task == null) {
+            FutureTask<Asset> created = new FutureTask<>(() -> load(path));
+            task = assets.putIfAbsent(path, created);
+            if (task == null) {
+                task = created;
+                task.run();
+            }
+        }
+        Asset a;
+        try {
+            a = task.get();
+        } catch (Exception e) {
+            a = new Asset(path, Status.MISSING, null, null, null, String.valueOf(e.getMessage()));
+        }
+        // callers already waiting share this failure; the next request retries
+        if (a.status == Status.MISSING) assets.remove(path, task);
+        return a;
+    }
+
+    /** Verified (or unpinned) UTF-8 text; throws if the asset is missing or tampered. */
+    public String text(String path) {
+        return asset(path).text();
+    }
+
+    /** Manifest pins (asset path → SHA-512), in file order, parsed from the registry's manifest asset. */
+    public Map<String, String> manifest() throws Exception {
+        Map<String, String> pins = manifestPins;
+        if (pins == null) {
+            JSONObject obj = new JSONObject(asset(MANIFEST).text());
+            Map<String, String> m = new LinkedHashMap<>();
+            Iterator<String> keys = obj.keys();
+            while (keys.hasNext()) {
+                String k = keys.next();
+                m.put(k, obj.optString(k, ""));
+            }
+            pins = Collections.unmodifiableMap(m);
+            manifestPins = pins;
+        }
+        return pins;
+    }
+
+    // === Internals ===
+
+    private Asset load(String path) {
+        byte[] bytes;
+        String got;
+        long t0 = Metrics.begin();
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-512");
+            bytes = read(path, md);
+            got = toHex(md.digest());
+            Metrics.add(C_BYTES, bytes.length);
+        } catch (Exception e) {
+            String msg = e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage();
+            return new Asset(path, Status.MISSING, null, null, null, msg);
+        } finally {
+            Metrics.end(M_LOAD, t0);
+        }
+
+        String codePin = PINNED.get(path);
+        String manifestPin = null;
+        if (!MANIFEST.equals(path)) {
+            try {
+                manifestPin = manifest().get(path);
+            } catch (Exception ignore) {
+                // manifest unreadable: the code pins still apply
+            }
+        }
+        if (codePin == null && manifestPin == null) {
+            return new Asset(path, Status.UNPINNED, bytes, got, null, null);
+        }
+        for (String pin : new String[]{codePin, manifestPin}) {
+            if (pin != null && !pin.equalsIgnoreCase(got)) {
+                return new Asset(path, Status.TAMPERED, null, got, pin, null);
+            }
+        }
+        return new Asset(path, Status.VERIFIED, bytes, got, codePin != null ? codePin : manifestPin, null);
+    }
+
+    private byte[] read(String path, MessageDigest md) throws Exception {
+        try (InputStream is = ctx.getAssets().open(path);
+             ByteArrayOutputStream buffer = new ByteArrayOutputStream()) {
+            byte[] data = new byte[8192];
+            int nRead;
+            while ((nRead = is.read(data, 0, data.length)) != -1) {
+                buffer.write(data, 0, nRead);
+                if (md != null) md.update(data, 0, nRead);
+            }
+            return buffer.toByteArray();
+        }
+    }
+
+    private static String toHex(byte[] d) {
+        StringBuilder sb = new StringBuilder(d.length * 2);
+        for (byte b : d) sb.append(String.format("%02x", b));
+        return sb.toString();
+    }
+}
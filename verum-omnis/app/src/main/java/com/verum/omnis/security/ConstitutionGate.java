@@ -1,67 +1,270 @@
 package com.verum.omnis.security;
 
 import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.os.Build;
+import android.os.Looper;
+import android.security.keystore.KeyGenParameterSpec;
+import android.security.keystore.KeyProperties;
+
+import com.verum.omnis.core.Metrics;
 
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.Key;
+import java.security.KeyStore;
 import java.security.MessageDigest;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
 
+/**
+ * Constitution gate
+ * - Hashes every asset named in hash_manifest.json (in parallel, via AssetRegistry) against its pin
+ * - start() runs the check off the main thread; awaitVerified() is the hard stop before analysis
+ * - A passing result is cached, HMAC-signed and keyed by the APK install/update identity, so an
+ *   unchanged install skips re-hashing.  Failures are never cached.
+ * - The HMAC key lives in the Android Keystore, never next to the cache it signs; without a
+ *   keystore key nothing is cached and every start re-hashes
+ * - awaitVerified() refuses to block the main thread; run analysis on a worker
+ */
 public class ConstitutionGate {
     public static class VerificationResult {
         public final boolean ok;
         public final Map<String, String> details;
+        public final boolean fromCache;
         public VerificationResult(boolean ok, Map<String, String> details) {
+            this(ok, details, false);
+        }
+        public VerificationResult(boolean ok, Map<String, String> details, boolean fromCache) {
             this.ok = ok;
             this.details = details;
+            this.fromCache = fromCache;
         }
     }
 
-    private static String sha512(byte[] data) throws Exception {
-        MessageDigest md = MessageDigest.getInstance("SHA-512");
-        byte[] d = md.digest(data);
-        StringBuilder sb = new StringBuilder();
-        for (byte b : d) sb.append(String.format("%02x", b));
-        return sb.toString();
+    private static final String CACHE_FILE = "constitution_gate.cache";
+    private static final String LEGACY_KEY_FILE = "constitution_gate.key";
+    private static final String KEY_ALIAS = "verum.constitution_gate.hmac";
+    private static final String KEYSTORE = "AndroidKeyStore";
+
+    private static final int M_VERIFY = Metrics.stage("gate.verify");
+    private static final int M_HASH_ALL = Metrics.stage("gate.hash_all");
+
+    private static CompletableFuture<VerificationResult> pending;
+
+    /**
+     * Start verification on a background thread (once per process) and return
+     * its future.  Safe to call from Application.onCreate.
+     */
+    public static synchronized CompletableFuture<VerificationResult> start(Context ctx) {
+        if (pending == null) {
+            final Context app = ctx.getApplicationContext() != null ? ctx.getApplicationContext() : ctx;
+            pending = CompletableFuture.supplyAsync(() -> verifyCached(app));
+        }
+        return pending;
     }
 
-    private static byte[] load(Context ctx, String path) throws Exception {
-        try (InputStream is = ctx.getAssets().open(path);
-             ByteArrayOutputStream buffer = new ByteArrayOutputStream()) {
-            byte[] data = new byte[4096];
-            int nRead;
-            while ((nRead = is.read(data, 0, data.length)) != -1) {
-                buffer.write(data, 0, nRead);
-            }
-            return buffer.toByteArray();
+    /**
+     * Hard stop: block until the gate has finished and throw if the constitution
+     * did not verify.  Every analysis entry point must call this first, off the main
+     * thread: a gate still hashing there would freeze the UI, so that throws instead.
+     */
+    public static VerificationResult awaitVerified(Context ctx) {
+        CompletableFuture<VerificationResult> gate = start(ctx);
+        if (!gate.isDone() && Looper.myLooper() == Looper.getMainLooper()) {
+            throw new IllegalStateException("awaitVerified() would block the main thread; analyze on a worker");
+        }
+        VerificationResult res = gate.join();
+        if (!res.ok) {
+            throw new IllegalStateException("HARD_STOP: INTEGRITY_BREACH => " + res.details.toString());
         }
+        return res;
     }
 
+    /** Verify using the signed cache when the install identity is unchanged. */
+    public static VerificationResult verifyCached(Context ctx) {
+        long t0 = Metrics.begin();
+        try {
+            return verifyCachedTimed(ctx);
+        } finally {
+            Metrics.end(M_VERIFY, t0);
+        }
+    }
+
+    private static VerificationResult verifyCachedTimed(Context ctx) {
+        String identity = installIdentity(ctx);
+        try {
+            AssetRegistry.Asset manifest = AssetRegistry.get(ctx).asset(AssetRegistry.MANIFEST);
+            if (manifest.sha512 == null) throw new IllegalStateException("Manifest missing: " + manifest.error);
+            String manifestHash = manifest.sha512;
+            if (identity != null && readCache(ctx, identity, manifestHash)) {
+                Map<String, String> details = new LinkedHashMap<>();
+                details.put("cache", "verified for " + identity);
+                return new VerificationResult(true, details, true);
+            }
+            VerificationResult res = verifyAll(ctx);
+            if (res.ok && identity != null) writeCache(ctx, identity, manifestHash);
+            return res;
+        } catch (Exception ex) {
+            Map<String, String> details = new LinkedHashMap<>();
+            details.put("error", ex.getMessage() == null ? "unknown" : ex.getMessage());
+            return new VerificationResult(false, details);
+        }
+    }
 
+    /**
+     * Full check: every manifest asset is loaded and hashed (in parallel) through
+     * the {@link AssetRegistry}, so later consumers reuse the verified bytes.
+     * Bypasses the gate cache.
+     */
     public static VerificationResult verifyAll(Context ctx) {
+        long t0 = Metrics.begin();
         Map<String, String> details = new LinkedHashMap<>();
         try {
-            String manifest = new String(load(ctx, "verum_constitution/hash_manifest.json"));
-            Pattern rx = Pattern.compile("\"([^\"]+)\"\\s*:\\s*\"([0-9a-fA-F]{128})\"");
-            Matcher m = rx.matcher(manifest);
-            Map<String, String> expected = new LinkedHashMap<>();
-            while (m.find()) expected.put(m.group(1), m.group(2));
-
-            boolean ok = true;
-            for (Map.Entry<String, String> e : expected.entrySet()) {
-                String rel = e.getKey();
-                String want = e.getValue();
-                String got = sha512(load(ctx, rel));
-                details.put(rel, got);
-                if (!got.equalsIgnoreCase(want)) ok = false;
+            final AssetRegistry registry = AssetRegistry.get(ctx);
+            Map<String, String> expected = registry.manifest();
+
+            int threads = Math.max(1, Math.min(expected.size(), Runtime.getRuntime().availableProcessors()));
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            try {
+                List<String> paths = new ArrayList<>(expected.keySet());
+                List<Future<AssetRegistry.Asset>> loads = new ArrayList<>(paths.size());
+                for (final String rel : paths) {
+                    loads.add(pool.submit(() -> registry.asset(rel)));
+                }
+                boolean ok = true;
+                for (int i = 0; i < paths.size(); i++) {
+                    AssetRegistry.Asset a = loads.get(i).get();
+                    if (a.status == AssetRegistry.Status.MISSING) {
+                        details.put(a.path, "MISSING: " + a.error);
+                        ok = false;
+                        continue;
+                    }
+                    details.put(a.path, a.sha512);
+                    if (a.status != AssetRegistry.Status.VERIFIED) ok = false;
+                }
+                return new VerificationResult(ok, details);
+            } finally {
+                pool.shutdownNow();
             }
-            return new VerificationResult(ok, details);
         } catch (Exception ex) {
-            details.put("error", ex.getMessage() == null ? "unknown" : ex.getMessage());
+            Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+            details.put("error", cause.getMessage() == null ? "unknown" : cause.getMessage());
             return new VerificationResult(false, details);
+        } finally {
+            Metrics.end(M_HASH_ALL, t0);
         }
     }
-}
\ No newline at end of file
+
+    // === Signed cache ===
+
+    /** Identity of the installed APK; any install or update changes it.  Null if unavailable. */
+    static String installIdentity(Context ctx) {
+        try {
+            PackageInfo pi = ctx.getPackageManager().getPackageInfo(ctx.getPackageName(), 0);
+            long version = Build.VERSION.SDK_INT >= 28 ? pi.getLongVersionCode() : pi.versionCode;
+            String apk = pi.applicationInfo != null ? pi.applicationInfo.sourceDir : "";
+            long apkStamp = 0;
+            if (apk != null && !apk.isEmpty()) {
+                File f = new File(apk);
+                apkStamp = f.length() ^ f.lastModified();
+            }
+            return pi.packageName + "|" + version + "|" + pi.firstInstallTime + "|"
+                    + pi.lastUpdateTime + "|" + apkStamp;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static File cacheDir(Context ctx) {
+        File dir = ctx.getNoBackupFilesDir();
+        return dir != null ? dir : ctx.getFilesDir();
+    }
+
+    private static boolean readCache(Context ctx, String identity, String manifestHash) {
+        try {
+            File f = new File(cacheDir(ctx), CACHE_FILE);
+            if (!f.isFile()) return false;
+            String[] lines = new String(readFile(f), StandardCharsets.UTF_8).split("\n");
+            if (lines.length < 3) return false;
+            String body = lines[0] + "\n" + lines[1];
+            if (!identity.equals(lines[0]) || !manifestHash.equals(lines[1])) return false;
+            byte[] mac = hmac(ctx, body.getBytes(StandardCharsets.UTF_8));
+            return MessageDigest.isEqual(mac, lines[2].trim().getBytes(StandardCharsets.US_ASCII));
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private static void writeCache(Context ctx, String identity, String manifestHash) {
+        try {
+            String body = identity + "\n" + manifestHash;
+            String signed = body + "\n" + new String(hmac(ctx, body.getBytes(StandardCharsets.UTF_8)),
+                    StandardCharsets.US_ASCII) + "\n";
+            File dir = cacheDir(ctx);
+            File tmp = new File(dir, CACHE_FILE + ".tmp");
+            try (FileOutputStream fos = new FileOutputStream(tmp)) {
+                fos.write(signed.getBytes(StandardCharsets.UTF_8));
+                fos.getFD().sync();
+            }
+            if (!tmp.renameTo(new File(dir, CACHE_FILE))) tmp.delete();
+        } catch (Exception ignore) {
+            // cache is an optimisation only; next start simply re-hashes
+        }
+    }
+
+    /**
+     * HMAC-SHA512 (hex, as ASCII bytes) under a per-install Android Keystore key.  The key
+     * material never leaves the keystore, so whoever can rewrite the cache file cannot
+     * re-sign it.  Throws when no keystore key is available; callers then skip the cache.
+     */
+    private static byte[] hmac(Context ctx, byte[] body) throws Exception {
+        File legacy = new File(cacheDir(ctx), LEGACY_KEY_FILE);
+        if (legacy.exists()) legacy.delete();   // earlier builds kept the key beside the cache
+        Mac mac = Mac.getInstance("HmacSHA512");
+        mac.init(key());
+        return toHex(mac.doFinal(body)).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static synchronized SecretKey key() throws Exception {
+        KeyStore ks = KeyStore.getInstance(KEYSTORE);
+        ks.load(null);
+        Key k = ks.getKey(KEY_ALIAS, null);
+        if (k instanceof SecretKey) return (SecretKey) k;
+        KeyGenerator gen = KeyGenerator.getInstance(KeyProperties.KEY_ALGORITHM_HMAC_SHA512, KEYSTORE);
+        gen.init(new KeyGenParameterSpec.Builder(KEY_ALIAS, KeyProperties.PURPOSE_SIGN).build());
+        return gen.generateKey();
+    }
+
+    private static byte[] readFile(File f) throws Exception {
+        try (InputStream is = new FileInputStream(f);
+             ByteArrayOutputStream buffer = new ByteArrayOutputStream()) {
+            byte[] data = new byte[4096];
+            int nRead;
+            while ((nRead = is.read(data, 0, data.length)) != -1) {
+                buffer.write(data, 0, nRead);
+            }
+            return buffer.toByteArray();
+        }
+    }
+
+    private static String toHex(byte[] d) {
+        StringBuilder sb = new StringBuilder(d.length * 2);
+        for (byte b : d) sb.append(String.format("%02x", b));
+        return sb.toString();
+    }
+}
@@ -1,11 +1,9 @@
 package com.verum.omnis.security;
 
 import android.content.Context;
-import android.content.res.AssetManager;
 
 import com.verum.omnis.core.HashUtil;
 
-import java.io.InputStream;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
@@ -13,43 +11,31 @@ public final class IntegrityChecker {
 
     private IntegrityChecker() {}
 
-    /** Run checks and return map: assetPath → status message */
+    /**
+     * Run checks and return map: assetPath → status message.
+     * Assets are hashed once per process by {@link AssetRegistry}; repeat calls reuse that result.
+     */
     public static Map<String, String> runChecks(Context ctx) {
         Map<String, String> results = new LinkedHashMap<>();
         try {
-            AssetManager am = ctx.getAssets();
+            AssetRegistry registry = AssetRegistry.get(ctx);
 
-            Map<String, String> checks = new LinkedHashMap<>();
-            checks.put("verum_constitution/constitution.json",
-                    ExpectedHashes.VERUM_CONSTITUTION_CONSTITUTION_JSON);
-            checks.put("verum_constitution/brains.json",
-                    ExpectedHashes.VERUM_CONSTITUTION_BRAINS_JSON);
-            checks.put("verum_constitution/detection_rules.json",
-                    ExpectedHashes.VERUM_CONSTITUTION_DETECTION_RULES_JSON);
-            checks.put("verum_constitution/model_hashes.json",
-                    ExpectedHashes.VERUM_CONSTITUTION_MODEL_HASHES_JSON);
-            checks.put("verum_constitution/jurisdiction_packs.json",
-                    ExpectedHashes.VERUM_CONSTITUTION_JURISDICTION_PACKS_JSON);
-
-            checks.put("docs/Verum_Omnis_Constitution_Core.pdf",
-                    ExpectedHashes.TEMPLATES_VERUM_OMNIS_CONSTITUTION_CORE_PDF);
-
-            for (Map.Entry<String, String> e : checks.entrySet()) {
-                String assetPath = e.getKey();
-                String expected = e.getValue();
-                try {
-                    byte[] data = readAsset(am, assetPath);
-                    String actual = HashUtil.sha512(data);
-                    if (expected.equalsIgnoreCase(actual)) {
+            for (String assetPath : AssetRegistry.PINNED.keySet()) {
+                AssetRegistry.Asset a = registry.asset(assetPath);
+                switch (a.status) {
+                    case VERIFIED:
+                    case UNPINNED:
                         results.put(assetPath, "✔ OK");
-                    } else {
+                        break;
+                    case TAMPERED:
                         results.put(assetPath, "❌ Tampered!\nExpected: " +
-                                HashUtil.truncate(expected, 12) +
+                                HashUtil.truncate(a.expected, 12) +
                                 "...\nActual: " +
-                                HashUtil.truncate(actual, 12) + "...");
-                    }
-                } catch (Exception ex) {
-                    results.put(assetPath, "⚠ Missing or unreadable (" + ex.getMessage() + ")");
+                                HashUtil.truncate(a.sha512, 12) + "...");
+                        break;
+                    default:
+                        results.put(assetPath, "⚠ Missing or unreadable (" + a.error + ")");
+                        break;
                 }
             }
         } catch (Exception ex) {
@@ -57,14 +43,4 @@ public final class IntegrityChecker {
         }
         return results;
     }
-
-    private static byte[] readAsset(AssetManager am, String path) throws Exception {
-        try (InputStream is = am.open(path)) {
-            java.io.ByteArrayOutputStream buffer = new java.io.ByteArrayOutputStream();
-            byte[] tmp = new byte[8192];
-            int n;
-            while ((n = is.read(tmp)) != -1) buffer.write(tmp, 0, n);
-            return buffer.toByteArray();
-        }
-    }
-}
+}
\ No newline at end of file
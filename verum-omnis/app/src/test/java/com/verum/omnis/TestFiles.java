@@ -0,0 +1,27 @@
+package com.verum.omnis;
+
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/** Fixture files for the JVM unit tests; everything lives under the test's TemporaryFolder. */
+public final class TestFiles {
+
+    private TestFiles() {}
+
+    /** Write {@code data} to a new uniquely named file under {@code tmp}. */
+    public static File write(TemporaryFolder tmp, byte[] data) throws IOException {
+        File f = tmp.newFile();
+        Files.write(f.toPath(), data);
+        return f;
+    }
+
+    /** Write {@code data} to {@code tmp/name}. */
+    public static File write(TemporaryFolder tmp, String name, byte[] data) throws IOException {
+        File f = tmp.newFile(name);
+        Files.write(f.toPath(), data);
+        return f;
+    }
+}
@@ -0,0 +1,86 @@
+package com.verum.omnis.ai;
+
+import com.verum.omnis.core.CanonicalJson;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RnDMeshExchangeTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static byte[] packet(String timestamp) throws IOException, JSONException {
+        JSONObject p = new JSONObject();
+        p.put("schema", RnDMeshExchange.SCHEMA);
+        p.put("templateVersion", "5.1.1");
+        p.put("appVersion", "5.2.6");
+        p.put("timestampUtc", timestamp);
+        p.put("directives", new JSONObject().put("prioritize_contradictions", true));
+        p.put("stats", new JSONObject().put("risk_score", 0.5));
+        p.put("sha512", CanonicalJson.sha512(p, null));
+        return p.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] oversized() {
+        byte[] b = new byte[RnDMeshExchange.MAX_PACKET_BYTES + 1];
+        Arrays.fill(b, (byte) ' ');
+        return b;
+    }
+
+    @Test
+    public void oversizedZipEntryCountsAsAPacket() throws IOException, JSONException {
+        File zip = tmp.newFile("packets.zip");
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zip))) {
+            out.putNextEntry(new ZipEntry("a.json"));
+            out.write(packet("2026-01-01T00:00:00Z"));
+            out.putNextEntry(new ZipEntry("huge.json"));
+            out.write(oversized());
+            out.closeEntry();
+        }
+        RnDMeshExchange.BulkImport r = RnDMeshExchange.importAll(zip, null, 2);
+        assertEquals(2, r.packets);
+        assertEquals(1, r.applied);
+        assertEquals(1, r.malformed);
+    }
+
+    @Test(timeout = 30_000)
+    public void packetAboveTheByteBudgetStillRuns() throws IOException, JSONException {
+        File dir = tmp.newFolder();
+        Files.write(new File(dir, "a.json").toPath(), packet("2026-01-01T00:00:00Z"));
+        Files.write(new File(dir, "b.json").toPath(), packet("2026-01-02T00:00:00Z"));
+        Files.write(new File(dir, "huge.json").toPath(), oversized());
+        RnDMeshExchange.BulkImport r = RnDMeshExchange.importAll(dir, null, 2);
+        assertEquals(3, r.packets);
+        assertEquals(2, r.applied);
+        assertEquals(1, r.malformed);
+    }
+
+    @Test(timeout = 30_000)
+    public void directoryWalkDoesNotFollowLinks() throws IOException, JSONException {
+        File dir = tmp.newFolder();
+        File sub = new File(dir, "sub");
+        assertTrue(sub.mkdir());
+        Files.write(new File(sub, "a.json").toPath(), packet("2026-01-01T00:00:00Z"));
+        Files.createSymbolicLink(new File(sub, "loop").toPath(), dir.toPath());
+        Files.createSymbolicLink(new File(dir, "linked.json").toPath(), new File(sub, "a.json").toPath());
+        RnDMeshExchange.BulkImport r = RnDMeshExchange.importAll(dir, null, 2);
+        assertEquals(1, r.packets);
+        assertEquals(1, r.applied);
+    }
+}
@@ -0,0 +1,59 @@
+package com.verum.omnis.core;
+
+import com.verum.omnis.TestFiles;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AudioForensicsTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    /** 16-bit stereo PCM sine; {@code extra} bytes of a cut-off frame are appended to the data chunk. */
+    private File wav(int frames, int extra) throws IOException {
+        int dataLen = frames * 4 + extra;
+        ByteBuffer b = ByteBuffer.allocate(44 + dataLen).order(ByteOrder.LITTLE_ENDIAN);
+        b.putInt(0x46464952).putInt(36 + dataLen).putInt(0x45564157);
+        b.putInt(0x20746d66).putInt(16).putShort((short) 1).putShort((short) 2)
+                .putInt(8000).putInt(8000 * 4).putShort((short) 4).putShort((short) 16);
+        b.putInt(0x61746164).putInt(dataLen);
+        for (int i = 0; i < frames; i++) {
+            short v = (short) (8000 * Math.sin(2 * Math.PI * 440 * i / 8000.0));
+            b.putShort(v).putShort(v);
+        }
+        for (int i = 0; i < extra; i++) b.put((byte) 1);
+        return TestFiles.write(tmp, b.array());
+    }
+
+    @Test(timeout = 10_000)
+    public void dataChunkCutMidFrameTerminates() throws IOException {
+        AudioForensics.Result r = AudioForensics.analyze(wav(16_000, 3));
+        assertEquals(8000, r.sampleRate);
+        assertEquals(2.0, r.durationSec, 1e-9);
+        assertTrue(r.note, r.note.contains("mid-frame"));
+        assertTrue(r.frames > 0);
+    }
+
+    @Test(timeout = 10_000)
+    public void dataShorterThanOneFrameTerminates() throws IOException {
+        AudioForensics.Result r = AudioForensics.analyze(wav(0, 3));
+        assertEquals(0.0, r.durationSec, 0);
+    }
+
+    @Test(timeout = 10_000)
+    public void wholeFramesLeaveNoNote() throws IOException {
+        AudioForensics.Result r = AudioForensics.analyze(wav(16_000, 0));
+        assertEquals("", r.note);
+        assertEquals(2.0, r.durationSec, 1e-9);
+    }
+}
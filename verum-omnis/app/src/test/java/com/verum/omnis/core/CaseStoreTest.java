@@ -0,0 +1,111 @@
+package com.verum.omnis.core;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CaseStoreTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static CaseStore.Exhibit exhibit(int i, String... speakers) {
+        CaseStore.Exhibit e = new CaseStore.Exhibit();
+        e.hash = "hash-" + i;
+        e.name = "exhibit-" + i + ".txt";
+        e.bytes = 100 + i;
+        e.risk = 0.1 * i;
+        if (speakers.length > 0) {
+            e.subjects = BehavioralAnalyzer.fromRules(null);
+            for (String sp : speakers) e.subjects.merge(sp, new int[]{1, 10, 0, 0, 0, 0, 0, 0, 0, 0});
+        }
+        return e;
+    }
+
+    @Test
+    public void tornTailIsDroppedAndEarlierExhibitsSurvive() throws IOException, JSONException {
+        File dir = tmp.newFolder();
+        CaseStore s = CaseStore.open(dir, null);
+        for (int i = 1; i <= 3; i++) s.add(exhibit(i));
+        File log = new File(dir, CaseStore.LOG);
+        long intact = log.length();
+        try (RandomAccessFile raf = new RandomAccessFile(log, "rw")) {
+            raf.seek(intact);
+            raf.writeInt(1000);                 // header of a record whose body never made it
+            raf.write("{\"seq\":4,\"ha".getBytes("UTF-8"));
+        }
+
+        CaseStore reopened = CaseStore.open(dir, null);
+        assertEquals(3, reopened.exhibits());
+        assertEquals(intact, log.length());
+        assertEquals(101 + 102 + 103, reopened.summary().getLong("bytes"));
+
+        reopened.add(exhibit(4));
+        assertEquals(4, CaseStore.open(dir, null).exhibits());
+    }
+
+    @Test
+    public void crashBetweenSnapshotRenameAndLogTruncationAppliesNothingTwice() throws IOException, JSONException {
+        File dir = tmp.newFolder();
+        CaseStore s = CaseStore.open(dir, null);
+        s.add(exhibit(1));
+        s.add(exhibit(2));
+        File log = new File(dir, CaseStore.LOG);
+        byte[] beforeSnapshot = Files.readAllBytes(log.toPath());
+        s.snapshot();
+        assertEquals(0, log.length());
+        Files.write(log.toPath(), beforeSnapshot);    // the truncation never happened
+
+        CaseStore reopened = CaseStore.open(dir, null);
+        assertEquals(2, reopened.exhibits());
+        JSONObject sum = reopened.summary();
+        assertEquals(101 + 102, sum.getLong("bytes"));
+        assertEquals(0.15, sum.getDouble("risk_mean"), 1e-9);
+
+        reopened.add(exhibit(3));
+        CaseStore third = CaseStore.open(dir, null);
+        assertEquals(3, third.exhibits());
+        assertEquals(101 + 102 + 103, third.summary().getLong("bytes"));
+    }
+
+    @Test
+    public void addSummaryReportsOnlyTheExhibitsSubjects() throws IOException, JSONException {
+        CaseStore s = CaseStore.open(tmp.newFolder(), null);
+        s.add(exhibit(1, "alice", "carol"));
+        CaseStore.Update u = s.add(exhibit(2, "bob", "alice"));
+
+        JSONObject speakers = u.summary.getJSONObject("subjects").getJSONObject("speakers");
+        assertEquals(2, speakers.length());
+        assertEquals(2, speakers.getJSONObject("alice").getInt("messages"));
+        assertTrue(speakers.has("bob"));
+        assertFalse(speakers.has("carol"));
+        assertEquals(2, u.summary.getInt("exhibits"));
+
+        JSONObject all = s.summary().getJSONObject("subjects").getJSONObject("speakers");
+        assertEquals(3, all.length());
+    }
+
+    @Test
+    public void dotOnlyCaseIdsAreRefused() throws IOException {
+        for (String id : new String[]{"", ".", "..", "..."}) {
+            try {
+                CaseStore.forCase(null, id, null);
+                fail("accepted case id \"" + id + "\"");
+            } catch (IllegalArgumentException expected) {
+                // never resolved against the files directory
+            }
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.verum.omnis.core;
+
+import com.verum.omnis.TestFiles;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ExifParserTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    /** Little-endian TIFF: IFD0 {Make="Abc", ExifIFD -> past the end}, IFD1 {thumbnail at 100, 50 bytes}. */
+    private static byte[] tiff() {
+        ByteArrayOutputStream b = new ByteArrayOutputStream();
+        b.write('I'); b.write('I'); le16(b, 42); le32(b, 8);
+        le16(b, 2);
+        entry(b, 0x010F, 2, 4, 'A' | 'b' << 8 | 'c' << 16);
+        entry(b, 0x8769, 4, 1, 0x00FFFF00);
+        le32(b, 38);
+        le16(b, 2);
+        entry(b, 0x0201, 4, 1, 100);
+        entry(b, 0x0202, 4, 1, 50);
+        le32(b, 0);
+        return b.toByteArray();
+    }
+
+    private static byte[] jpeg(int exifSegments) {
+        ByteArrayOutputStream b = new ByteArrayOutputStream();
+        b.write(0xFF); b.write(0xD8);
+        byte[] t = tiff();
+        for (int i = 0; i < exifSegments; i++) {
+            b.write(0xFF); b.write(0xE1);
+            int len = 2 + 6 + t.length;
+            b.write(len >> 8); b.write(len);
+            b.write('E'); b.write('x'); b.write('i'); b.write('f'); b.write(0); b.write(0);
+            b.write(t, 0, t.length);
+        }
+        b.write(0xFF); b.write(0xDA); b.write(0); b.write(2);
+        return b.toByteArray();
+    }
+
+    @Test
+    public void thumbnailOffsetIsAbsoluteAndMatchesTag() throws IOException {
+        ExifParser.Result r = ExifParser.parse(write(jpeg(1)));
+        // SOI (2) + APP1 marker and length (4) + "Exif\0\0" (6) = TIFF header at 12
+        assertEquals(112, r.thumbnailOffset);
+        assertEquals("112", r.tags.get("ThumbnailOffset"));
+        assertEquals(50, r.thumbnailLength);
+    }
+
+    @Test
+    public void secondExifSegmentIsNotOffsetTwice() throws IOException {
+        ExifParser.Result r = ExifParser.parse(write(jpeg(2)));
+        long secondBase = 12 + 2 + 6 + tiff().length + 2;
+        assertEquals(secondBase + 100, r.thumbnailOffset);
+        assertEquals(String.valueOf(secondBase + 100), r.tags.get("ThumbnailOffset"));
+    }
+
+    @Test
+    public void badSubIfdOffsetKeepsTagsAlreadyParsed() throws IOException {
+        ExifParser.Result r = ExifParser.parse(write(jpeg(1)));
+        assertEquals("JPEG", r.format);
+        assertEquals("Abc", r.tags.get("CameraMake"));
+        assertEquals("APP1,SOS", r.segments);
+    }
+
+    @Test
+    public void truncatedSegmentKeepsEarlierResults() throws IOException {
+        byte[] full = jpeg(2);
+        byte[] cut = new byte[full.length - 40];
+        System.arraycopy(full, 0, cut, 0, cut.length);
+        ExifParser.Result r = ExifParser.parse(write(cut));
+        assertEquals("Abc", r.tags.get("CameraMake"));
+        assertEquals(112, r.thumbnailOffset);
+    }
+
+    /** PNG signature, then each chunk as {type, body}; the last body may be cut short. */
+    private static byte[] png(int declaredLastLength, Object... chunks) {
+        ByteArrayOutputStream b = new ByteArrayOutputStream();
+        b.write(0x89); b.write('P'); b.write('N'); b.write('G');
+        b.write('\r'); b.write('\n'); b.write(0x1A); b.write('\n');
+        for (int i = 0; i < chunks.length; i += 2) {
+            byte[] body = (byte[]) chunks[i + 1];
+            boolean last = i + 2 == chunks.length;
+            be32(b, last ? declaredLastLength : body.length);
+            for (char c : ((String) chunks[i]).toCharArray()) b.write(c);
+            b.write(body, 0, body.length);
+            if (!last) be32(b, 0); // CRC is not checked
+        }
+        return b.toByteArray();
+    }
+
+    private static byte[] ihdr() {
+        ByteArrayOutputStream b = new ByteArrayOutputStream();
+        be32(b, 640);
+        be32(b, 480);
+        b.write(8); b.write(2); b.write(0); b.write(0); b.write(0);
+        return b.toByteArray();
+    }
+
+    @Test
+    public void truncatedPngHeaderIsReportedNotThrown() throws IOException {
+        byte[] cut = new byte[6];
+        System.arraycopy(ihdr(), 0, cut, 0, cut.length);
+        ExifParser.Result r = ExifParser.parse(write(png(13, "IHDR", cut)));
+        assertEquals("PNG", r.format);
+        assertTrue(r.tags.containsKey("MetadataTruncated"));
+        assertFalse(r.tags.containsKey("PngBitDepth"));
+    }
+
+    @Test
+    public void truncatedPngTimeKeepsHeaderTags() throws IOException {
+        ExifParser.Result r = ExifParser.parse(write(png(7, "IHDR", ihdr(), "tIME", new byte[]{0x07, (byte) 0xE8, 1})));
+        assertEquals("640", r.tags.get("PngWidth"));
+        assertEquals("480", r.tags.get("PngHeight"));
+        assertTrue(r.tags.containsKey("MetadataTruncated"));
+        assertFalse(r.tags.containsKey("PngModified"));
+    }
+
+    private static void entry(ByteArrayOutputStream b, int tag, int type, int count, int value) {
+        le16(b, tag);
+        le16(b, type);
+        le32(b, count);
+        le32(b, value);
+    }
+
+    private static void le16(ByteArrayOutputStream b, int v) {
+        b.write(v);
+        b.write(v >> 8);
+    }
+
+    private static void le32(ByteArrayOutputStream b, int v) {
+        le16(b, v);
+        le16(b, v >>> 16);
+    }
+
+    private static void be32(ByteArrayOutputStream b, int v) {
+        b.write(v >>> 24);
+        b.write(v >>> 16);
+        b.write(v >>> 8);
+        b.write(v);
+    }
+
+    private File write(byte[] data) throws IOException {
+        return TestFiles.write(tmp, data);
+    }
+}
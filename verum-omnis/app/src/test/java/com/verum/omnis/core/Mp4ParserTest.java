@@ -0,0 +1,85 @@
+package com.verum.omnis.core;
+
+import com.verum.omnis.TestFiles;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class Mp4ParserTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static byte[] box(String type, byte[]... children) {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        for (byte[] c : children) body.write(c, 0, c.length);
+        ByteBuffer b = ByteBuffer.allocate(8 + body.size());
+        b.putInt(8 + body.size()).put(type.getBytes()).put(body.toByteArray());
+        return b.array();
+    }
+
+    /** FullBox body of {@code length} bytes: the version byte, then zeros. */
+    private static byte[] full(int version, int length) {
+        byte[] b = new byte[length];
+        b[0] = (byte) version;
+        return b;
+    }
+
+    private static byte[] mvhdV1(long timescale, long duration) {
+        ByteBuffer b = ByteBuffer.allocate(32);
+        b.put((byte) 1).put(new byte[3]).putLong(0).putLong(0).putInt((int) timescale).putLong(duration);
+        return b.array();
+    }
+
+    @Test
+    public void shortVersionOneHeadersAreSkipped() throws IOException {
+        byte[] mp4 = concat(box("ftyp", "isom\0\0\0\0isom".getBytes()),
+                box("moov",
+                        box("mvhd", full(1, 24)),
+                        box("trak",
+                                box("tkhd", full(1, 28)),
+                                box("mdia", box("mdhd", full(1, 26))))));
+        Mp4Parser.Result r = Mp4Parser.parse(write(mp4));
+        assertEquals("isom", r.majorBrand);
+        assertEquals(1, r.tracks.size());
+        assertEquals(0, r.timescale);
+    }
+
+    @Test
+    public void fullVersionOneHeaderIsRead() throws IOException {
+        byte[] mp4 = concat(box("ftyp", "isom\0\0\0\0".getBytes()), box("moov", box("mvhd", mvhdV1(1000, 5000))));
+        Mp4Parser.Result r = Mp4Parser.parse(write(mp4));
+        assertEquals(1000, r.timescale);
+        assertEquals(5.0, r.durationSec, 1e-9);
+    }
+
+    @Test
+    public void hugeLargesizeIsClampedToTheFile() throws IOException {
+        ByteBuffer big = ByteBuffer.allocate(24);
+        big.putInt(1).put("free".getBytes()).putLong(Long.MAX_VALUE - 4).putLong(0);
+        byte[] mp4 = concat(box("ftyp", "isom\0\0\0\0".getBytes()), big.array());
+        Mp4Parser.Result r = Mp4Parser.parse(write(mp4));
+        assertEquals("isom", r.majorBrand);
+        assertEquals(2, r.boxes);
+        assertTrue(r.note, r.note.contains("overruns"));
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] p : parts) out.write(p, 0, p.length);
+        return out.toByteArray();
+    }
+
+    private File write(byte[] data) throws IOException {
+        return TestFiles.write(tmp, data);
+    }
+}
@@ -0,0 +1,129 @@
+package com.verum.omnis.core;
+
+import com.verum.omnis.TestFiles;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class TimelineEngineTest {
+
+    private static final long DAY = 86_400_000L;
+    private static final long CAPTURED = TimelineEngine.isoTime("2026-01-01T10:00:00Z");
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static Map<String, String> photo(String createdIso) {
+        Map<String, String> m = new HashMap<>();
+        m.put("CreationTime", createdIso);
+        return m;
+    }
+
+    @Test
+    public void oldEvidenceArrivingWithTheCaseIsNotLate() {
+        TimelineEngine t = new TimelineEngine();
+        t.addMetadata("a.jpg", photo("2026-01-01T10:00:00Z"), CAPTURED + 60 * DAY);
+        t.addMetadata("b.jpg", photo("2026-01-02T10:00:00Z"), CAPTURED + 60 * DAY + 1000);
+        assertEquals(0, t.sweep(new TimelineEngine.Thresholds()).whyNow);
+    }
+
+    @Test
+    public void evidenceSurfacingWeeksIntoTheCaseIsLate() {
+        TimelineEngine t = new TimelineEngine();
+        t.addMetadata("a.jpg", photo("2026-01-01T10:00:00Z"), CAPTURED + 60 * DAY);
+        t.addMetadata("b.jpg", photo("2026-01-02T10:00:00Z"), CAPTURED + 70 * DAY);
+        TimelineEngine.Sweep s = t.sweep(new TimelineEngine.Thresholds());
+        assertEquals(1, s.whyNow);
+        assertEquals("b.jpg", s.findings.get(0).source);
+        assertEquals(10.0, s.findings.get(0).value, 1e-6);
+    }
+
+    @Test
+    public void reanalysingASourceKeepsItsFirstSurfacedTime() {
+        TimelineEngine t = new TimelineEngine();
+        assertEquals(2, t.addMetadata("a.jpg", photo("2026-01-01T10:00:00Z"), CAPTURED + DAY));
+        assertEquals(0, t.addMetadata("a.jpg", photo("2026-01-01T10:00:00Z"), CAPTURED + 30 * DAY));
+        assertEquals(2, t.size());
+        assertEquals(0, t.sweep(new TimelineEngine.Thresholds()).whyNow);
+    }
+
+    @Test
+    public void caseCacheEvictsTheLeastRecentlyUsed() throws IOException {
+        TimelineEngine first = TimelineEngine.forLog(caseLog(0));
+        TimelineEngine second = TimelineEngine.forLog(caseLog(1));
+        assertSame(first, TimelineEngine.forLog(caseLog(0)));
+        for (int i = 2; i <= TimelineEngine.MAX_CASES; i++) TimelineEngine.forLog(caseLog(i));
+        // one case too many: the least recently used (1, not 0) goes
+        assertSame(first, TimelineEngine.forLog(caseLog(0)));
+        assertNotSame(second, TimelineEngine.forLog(caseLog(1)));
+    }
+
+    @Test
+    public void reopenedCaseKeepsItsEventsAndOpeningTime() throws IOException {
+        File log = caseLog(0);
+        TimelineEngine before = TimelineEngine.open(log);
+        before.addMetadata("a.jpg", photo("2026-01-01T10:00:00Z"), CAPTURED + 60 * DAY);
+        // a restart: the case is replayed, not started again empty
+        TimelineEngine after = TimelineEngine.open(log);
+        assertEquals(2, after.size());
+        assertEquals(0, after.addMetadata("a.jpg", photo("2026-01-01T10:00:00Z"), CAPTURED + 90 * DAY));
+        after.addMetadata("b.jpg", photo("2026-01-02T10:00:00Z"), CAPTURED + 70 * DAY);
+        TimelineEngine.Sweep s = after.sweep(new TimelineEngine.Thresholds());
+        assertEquals(1, s.whyNow);
+        assertEquals(10.0, s.findings.get(0).value, 1e-6);
+        assertEquals(4, TimelineEngine.open(log).size());
+    }
+
+    @Test
+    public void tornLogTailIsDropped() throws IOException {
+        File log = caseLog(0);
+        TimelineEngine.open(log).addMetadata("a.jpg", photo("2026-01-01T10:00:00Z"), CAPTURED + DAY);
+        long intact = log.length();
+        try (FileOutputStream out = new FileOutputStream(log, true)) {
+            out.write(new byte[]{0, 0, 0, 60, 2, 0, 1});   // a record cut off mid-write
+        }
+        assertEquals(2, TimelineEngine.open(log).size());
+        assertEquals(intact, log.length());
+    }
+
+    @Test
+    public void mailDeliveredBeforeItsDateIsReceivedBeforeSent() throws IOException {
+        String mbox = "From a@example.com Mon Mar  2 09:00:00 2026\n"
+                + "Received: from mx.example.com by mail.example.org; Mon, 2 Mar 2026 09:00:00 +0000\n"
+                + "Message-ID: <1@example.com>\n"
+                + "From: a@example.com\n"
+                + "Date: Mon, 2 Mar 2026 11:00:00 +0000\n"
+                + "Subject: backdated\n\nfirst\n\n"
+                + "From a@example.com Mon Mar  2 12:00:00 2026\n"
+                + "Received: from mx.example.com by mail.example.org; Mon, 2 Mar 2026 12:00:05 +0000\n"
+                + "Message-ID: <2@example.com>\n"
+                + "From: a@example.com\n"
+                + "Date: Mon, 2 Mar 2026 12:00:00 +0000\n"
+                + "Subject: on time\n\nsecond\n";
+        File f = TestFiles.write(tmp, "inbox.mbox", mbox.getBytes(StandardCharsets.UTF_8));
+        TimelineEngine.Messages msgs = new TimelineEngine.Messages();
+        MessageStream.parse(f, msgs);
+        assertEquals(2, msgs.size());
+        TimelineEngine t = new TimelineEngine();
+        assertEquals(4, t.addMetadata(f.getName(), new HashMap<>(), msgs, 0));
+        TimelineEngine.Sweep s = t.sweep(new TimelineEngine.Thresholds());
+        assertEquals(1, s.receivedBeforeSent);
+        assertEquals(120.0, s.findings.get(0).value, 1e-6);
+    }
+
+    private File caseLog(int n) {
+        return new File(new File(tmp.getRoot(), "case-" + n), TimelineEngine.LOG_NAME);
+    }
+}
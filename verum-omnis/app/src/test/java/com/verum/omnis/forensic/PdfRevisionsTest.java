@@ -0,0 +1,168 @@
+package com.verum.omnis.forensic;
+
+import com.verum.omnis.TestFiles;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PdfRevisionsTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    /** PDF text with a running offset, so xref rows can point at the objects written so far. */
+    private static final class Pdf {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final long[] offsets = new long[16];
+
+        Pdf raw(String s) {
+            byte[] b = s.getBytes(StandardCharsets.ISO_8859_1);
+            out.write(b, 0, b.length);
+            return this;
+        }
+
+        Pdf obj(int num, String body) {
+            offsets[num] = out.size();
+            return raw(num + " 0 obj " + body + " endobj\n");
+        }
+
+        long at() {
+            return out.size();
+        }
+
+        /** Classic xref subsection of {@code count} in-use objects starting at {@code first}. */
+        Pdf xref(int first, int count) {
+            raw("xref\n" + first + " " + count + "\n");
+            for (int i = first; i < first + count; i++) raw(String.format("%010d 00000 n \n", offsets[i]));
+            return this;
+        }
+
+        Pdf tail(String trailer, long startxref) {
+            return raw("trailer " + trailer + "\nstartxref\n" + startxref + "\n%%EOF\n");
+        }
+    }
+
+    /** A linearized original: first-page xref near the top, main xref at the end. */
+    private static Pdf linearized() {
+        long main = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            Pdf p = new Pdf().raw("%PDF-1.4\n");
+            p.obj(1, "<</Linearized 1>>");
+            long firstPage = p.at();
+            p.xref(1, 1).tail(String.format("<</Size 5/Root 2 0 R/Info 4 0 R/Prev %010d/ID[<aa><aa>]>>", main), 0);
+            p.obj(2, "<</Type/Catalog/Pages 3 0 R>>");
+            p.obj(3, "<</Type/Pages/Kids[]/Count 0>>");
+            p.obj(4, "<</Producer(Original)>>");
+            if (pass == 1) return p.xref(2, 3).tail("<</Size 5>>", firstPage);
+            main = p.at();
+        }
+        throw new AssertionError();
+    }
+
+    @Test
+    public void linearizedOriginalIsOneRevision() throws IOException {
+        PdfRevisions.Result r = PdfRevisions.inspect(write(linearized().out.toByteArray()));
+        assertTrue(r.linearized);
+        assertEquals(1, r.revisions.size());
+        assertEquals(0, r.incrementalUpdates());
+        assertEquals(r.length, r.revisions.get(0).endOffset);
+        assertEquals("Original", r.revisions.get(0).info.get("Producer"));
+        assertNoIndicator(r, "trailing_bytes_after_eof");
+    }
+
+    @Test
+    public void updateToLinearizedFileFollowsTheOriginal() throws IOException {
+        Pdf p = linearized();
+        long original = p.at();
+        long firstPage = p.offsets[1] + "1 0 obj <</Linearized 1>> endobj\n".length();
+        p.obj(4, "<</Producer(Editor)>>");
+        long update = p.at();
+        p.xref(4, 1).tail("<</Size 5/Root 2 0 R/Info 4 0 R/Prev " + firstPage + "/ID[<aa><bb>]>>", update);
+        PdfRevisions.Result r = PdfRevisions.inspect(write(p.out.toByteArray()));
+        assertEquals(2, r.revisions.size());
+        assertEquals(1, r.incrementalUpdates());
+        assertEquals(original, r.revisions.get(0).endOffset);
+        assertEquals(r.length, r.revisions.get(1).endOffset);
+        assertEquals("Original", r.revisions.get(0).info.get("Producer"));
+        assertEquals("Editor", r.revisions.get(1).info.get("Producer"));
+        assertNoIndicator(r, "trailing_bytes_after_eof");
+        assertNoIndicator(r, "xref_format_changed");
+    }
+
+    @Test(timeout = 10_000)
+    public void objectStreamStoredInItselfDoesNotRecurse() throws IOException {
+        Pdf p = new Pdf().raw("%PDF-1.5\n");
+        p.obj(2, "<</Type/Catalog/Pages 3 0 R>>");
+        p.obj(3, "<</Type/Pages/Kids[]/Count 0>>");
+        long xref = p.at();
+        // W [1 2 1]: objects 4 and 5 both claim to live in object stream 5
+        int[][] rows = {{0, 0, 0}, {0, 0, 0}, {1, (int) p.offsets[2], 0}, {1, (int) p.offsets[3], 0},
+                {2, 5, 0}, {2, 5, 1}, {1, (int) xref, 0}};
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        for (int[] row : rows) {
+            data.write(row[0]);
+            data.write(row[1] >> 8);
+            data.write(row[1]);
+            data.write(row[2]);
+        }
+        p.raw("6 0 obj <</Type/XRef/Size 7/W[1 2 1]/Root 2 0 R/Info 4 0 R/Length " + data.size() + ">>\nstream\n");
+        p.out.write(data.toByteArray(), 0, data.size());
+        p.raw("\nendstream\nendobj\n").raw("startxref\n" + xref + "\n%%EOF\n");
+        PdfRevisions.Result r = PdfRevisions.inspect(write(p.out.toByteArray()));
+        assertEquals(1, r.revisions.size());
+        assertTrue(r.revisions.get(0).info.isEmpty());
+    }
+
+    @Test
+    public void deeplyNestedObjectIsMalformedNotFatal() throws IOException {
+        StringBuilder deep = new StringBuilder();
+        for (int i = 0; i < 100_000; i++) deep.append('[');
+        Pdf p = new Pdf().raw("%PDF-1.4\n");
+        p.obj(1, "<</Type/Catalog/Pages 2 0 R>>");
+        p.obj(2, "<</Type/Pages/Kids[]/Count 0>>");
+        p.obj(3, "<</Producer " + deep + ">>");
+        long xref = p.at();
+        p.xref(1, 3).tail("<</Size 4/Root 1 0 R/Info 3 0 R>>", xref);
+        PdfRevisions.Result r = PdfRevisions.inspect(write(p.out.toByteArray()));
+        assertFalse(r.note, r.note.isEmpty());
+    }
+
+    @Test(timeout = 60_000)
+    public void eofMoreThanAGigabyteAfterTheXrefIsFound() throws IOException {
+        Pdf p = new Pdf().raw("%PDF-1.4\n");
+        p.obj(1, "<</Type/Catalog/Pages 2 0 R>>");
+        p.obj(2, "<</Type/Pages/Kids[]/Count 0>>");
+        long xref = p.at();
+        p.xref(1, 2).raw("trailer <</Size 3/Root 1 0 R>>\n");
+        File f = write(p.out.toByteArray());
+        byte[] tail = ("startxref\n" + xref + "\n%%EOF\n").getBytes(StandardCharsets.ISO_8859_1);
+        long size = (1L << 30) + (1 << 16);
+        try (RandomAccessFile raf = new RandomAccessFile(f, "rw")) {
+            raf.setLength(size);   // sparse zeros between the trailer and the final marker
+            raf.seek(size - tail.length);
+            raf.write(tail);
+        }
+        PdfRevisions.Result r = PdfRevisions.inspect(f);
+        assertEquals(1, r.revisions.size());
+        assertEquals(size, r.length);
+    }
+
+    private static void assertNoIndicator(PdfRevisions.Result r, String prefix) {
+        for (String i : r.indicators) assertFalse(i, i.startsWith(prefix));
+    }
+
+    private File write(byte[] pdf) throws IOException {
+        return TestFiles.write(tmp, pdf);
+    }
+}
@@ -0,0 +1,61 @@
+package com.verum.omnis.forensic;
+
+import com.verum.omnis.TestFiles;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SealVerifierTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private List<File> reports() throws Exception {
+        byte[] big = new byte[SealVerifier.TREE_CHUNK * 2 + 12345];
+        new Random(7).nextBytes(big);
+        return Arrays.asList(TestFiles.write(tmp, "big.pdf", big),
+                TestFiles.write(tmp, "small.pdf", "%PDF-1.4 sealed".getBytes("US-ASCII")),
+                TestFiles.write(tmp, "empty.pdf", new byte[0]));
+    }
+
+    @Test
+    public void writtenManifestsVerify() throws Exception {
+        List<File> files = reports();
+        for (boolean tree : new boolean[]{false, true}) {
+            File manifest = new File(tmp.getRoot(), tree ? "tree.txt" : "plain.txt");
+            SealVerifier.writeManifest(manifest, files, tree, 2);
+            List<SealVerifier.Request> reqs = SealVerifier.readManifest(manifest);
+            assertEquals(3, reqs.size());
+            assertEquals(tree, reqs.get(0).recordedHash.startsWith(SealVerifier.TREE_PREFIX));
+            SealVerifier.Report r = SealVerifier.verifyAll(reqs, 2);
+            assertTrue(r.allPassed());
+            assertEquals(files.get(0).length() + files.get(1).length(), r.bytesHashed);
+        }
+    }
+
+    @Test
+    public void changedByteIsAMismatch() throws Exception {
+        List<File> files = reports();
+        File manifest = new File(tmp.getRoot(), "tree.txt");
+        SealVerifier.writeManifest(manifest, files, true, 2);
+        try (RandomAccessFile raf = new RandomAccessFile(files.get(0), "rw")) {
+            raf.seek(SealVerifier.TREE_CHUNK + 1);
+            int b = raf.read();
+            raf.seek(SealVerifier.TREE_CHUNK + 1);
+            raf.write(b ^ 1);
+        }
+        SealVerifier.Report r = SealVerifier.verifyAll(SealVerifier.readManifest(manifest), 2);
+        assertEquals(1, r.failed);
+        assertEquals(SealVerifier.Status.MISMATCH, r.items.get(0).status);
+    }
+}